@@ -0,0 +1,417 @@
+package cli;
+
+import common.utils.SafeEncoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 简单的压测工具，对应redis-benchmark
+ * 使用多个连接并发地向服务器发送命令，统计每秒处理的请求数
+ *
+ * 使用--io-threads参数时，会依次以不同的io-threads配置启动本地服务器（使用当前的classpath，并且设置io-threads-do-reads yes），
+ * 对每个配置运行同样的测试，最后输出对比结果，例如：
+ *     java -cp ... cli.ZedisBenchmark -c 50 -n 200000 -P 16 --io-threads 1,2,4,8
+ * --server-threads参数的用法相同，用于对比不同的server-threads配置，这时最好使用-r让key分布到所有的键空间分区中：
+ *     java -cp ... cli.ZedisBenchmark -c 50 -n 200000 -P 16 -r 100000 --server-threads 1,2,4
+ **/
+public class ZedisBenchmark {
+    private String host = "127.0.0.1";
+    private int port = 6379;
+    private int clients = 50;           // 并发连接数
+    private int requests = 100000;      // 每个测试的请求总数
+    private int pipeline = 1;           // 每个连接一次发送的请求数
+    private int dataSize = 3;           // SET命令的value大小
+    private String [] tests = {"ping", "set", "get"};
+    private int keyspaceLen = 0;        // 大于0时，将key中的__rand_int__替换为[0, keyspaceLen)中的随机数
+    private String compareOption;       // 需要对比的服务器配置项（io-threads或server-threads），为null时直接测试已经运行的服务器
+    private int [] compareValues;       // 需要对比的配置值
+
+    private static final byte [] RAND_PLACEHOLDER = SafeEncoder.encode("__rand_int__");
+
+    public static void main(String [] args) throws Exception {
+        ZedisBenchmark benchmark = new ZedisBenchmark();
+        benchmark.parseOption(args);
+
+        if (benchmark.compareOption == null) {
+            benchmark.runTests();
+        } else {
+            benchmark.compareConfigs();
+        }
+    }
+
+    private void parseOption(String [] args) {
+        for (int index = 0; index < args.length; index++) {
+            boolean lastarg = (index == args.length - 1);
+
+            if ("-h".equals(args[index]) && !lastarg) {
+                this.host = args[++index];
+            } else if ("-p".equals(args[index]) && !lastarg) {
+                this.port = Integer.valueOf(args[++index]);
+            } else if ("-c".equals(args[index]) && !lastarg) {
+                this.clients = Integer.valueOf(args[++index]);
+            } else if ("-n".equals(args[index]) && !lastarg) {
+                this.requests = Integer.valueOf(args[++index]);
+            } else if ("-P".equals(args[index]) && !lastarg) {
+                this.pipeline = Integer.valueOf(args[++index]);
+            } else if ("-d".equals(args[index]) && !lastarg) {
+                this.dataSize = Integer.valueOf(args[++index]);
+            } else if ("-t".equals(args[index]) && !lastarg) {
+                this.tests = args[++index].toLowerCase().split(",");
+            } else if ("-r".equals(args[index]) && !lastarg) {
+                this.keyspaceLen = Integer.valueOf(args[++index]);
+            } else if (("--io-threads".equals(args[index]) || "--server-threads".equals(args[index])) && !lastarg) {
+                this.compareOption = args[index].substring(2);
+                String [] values = args[++index].split(",");
+                this.compareValues = new int[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    this.compareValues[i] = Integer.valueOf(values[i]);
+                }
+            } else {
+                printUsage();
+            }
+        }
+    }
+
+    private static void printUsage() {
+        StringBuilder usage = new StringBuilder();
+
+        usage.append("Usage: zedis-benchmark [-h <host>] [-p <port>] [-c <clients>] [-n <requests>] [-P <numreq>] [-d <size>] [-t <tests>] [-r <keyspacelen>]\n");
+        usage.append("                      [--io-threads <list> | --server-threads <list>]\n");
+        usage.append("  -h <hostname>      Server hostname (default 127.0.0.1)\n");
+        usage.append("  -p <port>          Server port (default 6379)\n");
+        usage.append("  -c <clients>       Number of parallel connections (default 50)\n");
+        usage.append("  -n <requests>      Total number of requests (default 100000)\n");
+        usage.append("  -P <numreq>        Pipeline <numreq> requests. Default 1 (no pipeline).\n");
+        usage.append("  -d <size>          Data size of SET value in bytes (default 3)\n");
+        usage.append("  -t <tests>         Only run the comma separated list of tests (ping,set,get).\n");
+        usage.append("  -r <keyspacelen>   Use random keys for SET/GET, the substring __rand_int__ in the key\n");
+        usage.append("                     is replaced with a random number in the range [0, keyspacelen).\n");
+        usage.append("  --io-threads <list> Start a local server for each comma separated io-threads value\n");
+        usage.append("                     (for example 1,2,4,8) and compare the results.\n");
+        usage.append("  --server-threads <list> Same as --io-threads, but compare server-threads values.\n");
+
+        System.err.print(usage.toString());
+        System.exit(1);
+    }
+
+    /**
+     * 依次以不同的配置值启动服务器并运行测试，输出对比结果
+     */
+    private void compareConfigs() throws Exception {
+        Map<Integer, Map<String, Double>> results = new LinkedHashMap<>();
+
+        for (int value : this.compareValues) {
+            System.out.println("###### " + this.compareOption + " " + value + " ######");
+
+            Process server = startServer(value);
+            try {
+                results.put(value, runTests());
+            } finally {
+                server.destroy();
+                server.waitFor();
+            }
+        }
+
+        System.out.println("###### Summary (requests per second) ######");
+        StringBuilder header = new StringBuilder(String.format("%-16s", this.compareOption));
+        for (String test : this.tests) {
+            header.append(String.format("%14s", test.toUpperCase()));
+        }
+        System.out.println(header);
+
+        for (Map.Entry<Integer, Map<String, Double>> entry : results.entrySet()) {
+            StringBuilder line = new StringBuilder(String.format("%-16d", entry.getKey()));
+            for (String test : this.tests) {
+                line.append(String.format("%14.2f", entry.getValue().get(test)));
+            }
+            System.out.println(line);
+        }
+    }
+
+    /**
+     * 使用当前的classpath启动一个服务器进程，并等待服务器开始监听端口
+     * @param value 需要对比的配置项的值
+     */
+    private Process startServer(int value) throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + "/bin/java";
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("server.ZedisServer");
+        command.add("--port");
+        command.add(String.valueOf(this.port));
+        command.add("--" + this.compareOption);
+        command.add(String.valueOf(value));
+        if ("io-threads".equals(this.compareOption)) {
+            command.add("--io-threads-do-reads");
+            command.add("yes");
+        }
+
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+        Process process = builder.start();
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                // 能够建立连接说明服务器已经启动
+                SocketChannel channel = SocketChannel.open(new InetSocketAddress(this.host, this.port));
+                channel.close();
+                return process;
+            } catch (IOException e) {
+                Thread.sleep(100);
+            }
+        }
+
+        process.destroy();
+        throw new IOException("Server with " + this.compareOption + " " + value + " did not start");
+    }
+
+    /**
+     * 运行所有测试，并输出每个测试的结果
+     * @return 每个测试每秒处理的请求数
+     */
+    private Map<String, Double> runTests() throws Exception {
+        Map<String, Double> results = new LinkedHashMap<>();
+
+        byte [] value = new byte[this.dataSize];
+        for (int i = 0; i < value.length; i++) {
+            value[i] = 'x';
+        }
+
+        for (String test : this.tests) {
+            byte [] command;
+            if ("ping".equals(test)) {
+                command = encodeCommand(SafeEncoder.encode("ping"));
+            } else if ("set".equals(test)) {
+                command = encodeCommand(SafeEncoder.encode("set"), SafeEncoder.encode("key:__rand_int__"), value);
+            } else if ("get".equals(test)) {
+                command = encodeCommand(SafeEncoder.encode("get"), SafeEncoder.encode("key:__rand_int__"));
+            } else {
+                System.err.println("Unknown test: " + test);
+                continue;
+            }
+
+            double rps = runTest(command);
+            results.put(test, rps);
+
+            System.out.println("====== " + test.toUpperCase() + " ======");
+            System.out.println("  " + this.requests + " requests completed, " + this.clients + " parallel clients, pipeline " + this.pipeline);
+            System.out.println(String.format("  %.2f requests per second", rps));
+            System.out.println();
+        }
+
+        return results;
+    }
+
+    /**
+     * 使用多个连接发送同一条命令，直到发送了requests个请求为止
+     * @param command 已经按照协议编码好的命令
+     * @return 每秒处理的请求数
+     */
+    private double runTest(byte [] command) throws Exception {
+        AtomicInteger remaining = new AtomicInteger(this.requests);
+        List<Thread> threads = new ArrayList<>(this.clients);
+        List<Exception> errors = new ArrayList<>();
+
+        List<SocketChannel> channels = new ArrayList<>(this.clients);
+        for (int i = 0; i < this.clients; i++) {
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress(this.host, this.port));
+            channel.socket().setTcpNoDelay(true);
+            channels.add(channel);
+        }
+
+        long start = System.nanoTime();
+        for (SocketChannel channel : channels) {
+            Thread thread = new Thread(() -> {
+                try {
+                    runClient(channel, command, remaining);
+                } catch (IOException e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long cost = System.nanoTime() - start;
+
+        for (SocketChannel channel : channels) {
+            channel.close();
+        }
+
+        if (!errors.isEmpty()) {
+            throw errors.get(0);
+        }
+
+        return this.requests * 1e9 / cost;
+    }
+
+    /**
+     * 一个连接的测试循环：每次发送pipeline条命令，读取全部回复之后再发送下一批
+     */
+    private void runClient(SocketChannel channel, byte [] command, AtomicInteger remaining) throws IOException {
+        ByteBuffer output = ByteBuffer.allocate(command.length * this.pipeline);
+        ByteBuffer input = ByteBuffer.allocate(1024 * 64);
+        ReplyCounter counter = new ReplyCounter();
+        int [] randPositions = this.keyspaceLen > 0 ? findPlaceholders(command) : new int[0];
+
+        while (true) {
+            // 领取本批次的请求数量
+            int batch;
+            int left;
+            do {
+                left = remaining.get();
+                if (left <= 0) {
+                    return;
+                }
+                batch = Math.min(left, this.pipeline);
+            } while (!remaining.compareAndSet(left, left - batch));
+
+            output.clear();
+            for (int i = 0; i < batch; i++) {
+                int start = output.position();
+                output.put(command);
+                for (int pos : randPositions) {
+                    writeRandomNumber(output.array(), start + pos);
+                }
+            }
+            output.flip();
+            while (output.hasRemaining()) {
+                channel.write(output);
+            }
+
+            counter.expect(batch);
+            while (!counter.isDone()) {
+                input.clear();
+                if (channel.read(input) == -1) {
+                    throw new IOException("Connection closed by server");
+                }
+                input.flip();
+                counter.consume(input);
+            }
+        }
+    }
+
+    /**
+     * 查找命令中所有__rand_int__的位置
+     */
+    private static int [] findPlaceholders(byte [] command) {
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i + RAND_PLACEHOLDER.length <= command.length; i++) {
+            int j = 0;
+            while (j < RAND_PLACEHOLDER.length && command[i + j] == RAND_PLACEHOLDER[j]) {
+                j++;
+            }
+            if (j == RAND_PLACEHOLDER.length) {
+                positions.add(i);
+                i += j - 1;
+            }
+        }
+
+        int [] result = new int[positions.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = positions.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * 与redis-benchmark相同，用12位（占位符的长度）补零的随机数覆盖占位符，这样命令的长度保持不变
+     */
+    private void writeRandomNumber(byte [] buf, int offset) {
+        long r = ThreadLocalRandom.current().nextInt(this.keyspaceLen);
+        for (int i = offset + RAND_PLACEHOLDER.length - 1; i >= offset; i--) {
+            buf[i] = (byte) ('0' + r % 10);
+            r /= 10;
+        }
+    }
+
+    private static byte [] encodeCommand(byte [] ... args) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte [] header = SafeEncoder.encode("*" + args.length + "\r\n");
+        out.write(header, 0, header.length);
+        for (byte [] arg : args) {
+            byte [] length = SafeEncoder.encode("$" + arg.length + "\r\n");
+            out.write(length, 0, length.length);
+            out.write(arg, 0, arg.length);
+            out.write('\r');
+            out.write('\n');
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 统计收到的完整回复的数量，支持状态、错误、整数和bulk回复
+     * 回复可能被拆分到多次读取中，因此需要在多次consume()之间保存解析的状态
+     */
+    private static class ReplyCounter {
+        private int expected;       // 还需要收到的回复数量
+        private boolean inLine;     // 是否正在读取一行（回复的第一行）
+        private long lineValue;     // bulk回复第一行中的长度
+        private boolean lineIsBulk;
+        private boolean negative;
+        private long bulkRemaining; // bulk回复剩余的内容长度（包括结尾的\r\n）
+
+        void expect(int count) {
+            this.expected = count;
+        }
+
+        boolean isDone() {
+            return this.expected == 0;
+        }
+
+        void consume(ByteBuffer input) {
+            while (input.hasRemaining()) {
+                if (this.bulkRemaining > 0) {
+                    int skip = (int) Math.min(this.bulkRemaining, input.remaining());
+                    input.position(input.position() + skip);
+                    this.bulkRemaining -= skip;
+                    if (this.bulkRemaining == 0) {
+                        this.expected--;
+                    }
+                    continue;
+                }
+
+                byte b = input.get();
+                if (!this.inLine) {
+                    // 回复的第一个字节表示回复的类型
+                    this.inLine = true;
+                    this.lineIsBulk = (b == '$');
+                    this.lineValue = 0;
+                    this.negative = false;
+                } else if (b == '\n') {
+                    this.inLine = false;
+                    if (this.lineIsBulk && !this.negative) {
+                        this.bulkRemaining = this.lineValue + 2;
+                    } else {
+                        this.expected--;
+                    }
+                } else if (this.lineIsBulk) {
+                    if (b == '-') {
+                        this.negative = true;
+                    } else if (b >= '0' && b <= '9') {
+                        this.lineValue = this.lineValue * 10 + (b - '0');
+                    }
+                }
+            }
+        }
+    }
+}
@@ -2,6 +2,9 @@ package command;
 
 import server.client.InnerClient;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @Description Command接口的骨架实现，具体Command实现都应该继承该骨架实现
  * @Author zzz
@@ -9,6 +12,26 @@ import server.client.InnerClient;
  */
 public abstract class AbstractCommand implements Command{
 
+    // 命令的属性，对应redis中的CMD_*，由stringFlags中的字符分析得到
+    public static final int CMD_WRITE = 1 << 0;             // "w" 会修改数据库的写命令
+    public static final int CMD_READONLY = 1 << 1;          // "r" 不会修改数据库的读命令
+    public static final int CMD_DENYOOM = 1 << 2;           // "m" 可能增加内存使用，内存不足时拒绝执行
+    public static final int CMD_ADMIN = 1 << 3;             // "a" 管理命令，比如SAVE
+    public static final int CMD_PUBSUB = 1 << 4;            // "p" 订阅发布相关的命令
+    public static final int CMD_NOSCRIPT = 1 << 5;          // "s" 不能在脚本中执行
+    public static final int CMD_RANDOM = 1 << 6;            // "R" 结果不确定的命令
+    public static final int CMD_SORT_FOR_SCRIPT = 1 << 7;   // "S" 在脚本中执行时需要对结果排序
+    public static final int CMD_LOADING = 1 << 8;           // "l" 服务器加载数据时允许执行
+    public static final int CMD_STALE = 1 << 9;             // "t" 从服务器的数据过期时允许执行
+    public static final int CMD_SKIP_MONITOR = 1 << 10;     // "M" 不传播给MONITOR
+    public static final int CMD_ASKING = 1 << 11;           // "k" 集群模式下隐式地执行ASKING
+    public static final int CMD_FAST = 1 << 12;             // "F" 时间复杂度为O(1)或O(log(N))，不会阻塞服务器
+
+    // 各个属性对应的字符和名称（COMMAND命令回复中使用的名称），下标为属性在flags中的位置
+    private static final char [] FLAG_CHARS = {'w', 'r', 'm', 'a', 'p', 's', 'R', 'S', 'l', 't', 'M', 'k', 'F'};
+    private static final String [] FLAG_NAMES = {"write", "readonly", "denyoom", "admin", "pubsub", "noscript",
+            "random", "sort_for_script", "loading", "stale", "skip_monitor", "asking", "fast"};
+
     // 命令名字
     private String name;
     // 参数个数
@@ -19,13 +42,31 @@ public abstract class AbstractCommand implements Command{
     private String stringFlags;
     // 实际的 FLAG，对stringFlags进行分析得到
     private int flags;
+    // 第一个key参数的位置，为0表示命令没有key参数
+    private int firstKey;
+    // 最后一个key参数的位置，为负数时表示从最后一个参数开始倒数（-1表示最后一个参数）
+    private int lastKey;
+    // 相邻两个key参数之间的距离
+    private int keyStep;
 
     public AbstractCommand(String name, int arity,boolean isGreaterThanArity,  String stringFlags) {
+        this(name, arity, isGreaterThanArity, stringFlags, 0, 0, 0);
+    }
+
+    /**
+     * @param firstKey 第一个key参数的位置，与redis命令表中的firstkey相同
+     * @param lastKey 最后一个key参数的位置，与redis命令表中的lastkey相同
+     * @param keyStep 相邻两个key参数之间的距离，与redis命令表中的keystep相同
+     */
+    public AbstractCommand(String name, int arity, boolean isGreaterThanArity, String stringFlags, int firstKey, int lastKey, int keyStep) {
         this.name = name;
         this.arity = arity;
         this.isGreaterThanArity = isGreaterThanArity;
         this.stringFlags = stringFlags;
-        this.flags = 0;
+        this.flags = parseFlags(stringFlags);
+        this.firstKey = firstKey;
+        this.lastKey = lastKey;
+        this.keyStep = keyStep;
     }
 
     /**
@@ -52,6 +93,72 @@ public abstract class AbstractCommand implements Command{
         return this.isGreaterThanArity;
     }
 
+    public String getStringFlags() {
+        return this.stringFlags;
+    }
+
+    public int getFlags() {
+        return this.flags;
+    }
+
+    /**
+     * @param flag CMD_*，可以是多个属性的组合
+     * @return 命令是否具有其中任意一个属性
+     */
+    public boolean hasFlag(int flag) {
+        return (this.flags & flag) != 0;
+    }
+
+    /**
+     * 获取命令所有属性的名称，用于COMMAND命令
+     * @return 属性名称列表，顺序与CMD_*的定义顺序相同
+     */
+    public List<String> getFlagNames() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < FLAG_NAMES.length; i++) {
+            if ((this.flags & (1 << i)) != 0) {
+                names.add(FLAG_NAMES[i]);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 将字符串表示的属性转换为CMD_*的组合，对应redis中的populateCommandTable
+     * @param stringFlags 比如"wmF"
+     * @return 属性的组合
+     */
+    public static int parseFlags(String stringFlags) {
+        int flags = 0;
+        for (int i = 0; i < stringFlags.length(); i++) {
+            int index = -1;
+            for (int j = 0; j < FLAG_CHARS.length; j++) {
+                if (FLAG_CHARS[j] == stringFlags.charAt(i)) {
+                    index = j;
+                    break;
+                }
+            }
+
+            if (index == -1) {
+                throw new IllegalArgumentException("Unsupported command flag '" + stringFlags.charAt(i) + "'");
+            }
+            flags |= 1 << index;
+        }
+        return flags;
+    }
+
+    public int getFirstKey() {
+        return this.firstKey;
+    }
+
+    public int getLastKey() {
+        return this.lastKey;
+    }
+
+    public int getKeyStep() {
+        return this.keyStep;
+    }
+
     @Override
     public void execute(InnerClient client) {
         if (!checkCommandArgs(client)) {
@@ -2,15 +2,14 @@ package command;
 
 import common.persistence.AOFPersistence;
 import common.persistence.AofFsyncFrequency;
-import common.struct.impl.Sds;
+import common.struct.impl.SdsSlice;
+import database.Database;
 import server.ServerContext;
 import server.client.InnerClient;
 import command.commands.*;
 import server.config.ServerConfig;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * @Description 命令执行器
@@ -20,8 +19,8 @@ import java.util.Map;
 public class CommandExecutor {
     private final static CommandExecutor executor = new CommandExecutor();
 
-    // Zedis的所有命令映射表
-    private Map<String, AbstractCommand> commandTable = new HashMap<>();
+    // Zedis的所有命令映射表，以命令名称的字节为key，忽略大小写
+    private CommandTable commandTable = new CommandTable();
 
     private CommandExecutor() {
         // 将所有命令的实现写入表中
@@ -50,6 +49,10 @@ public class CommandExecutor {
         commandTable.put("publish", new PublishCommand());
         commandTable.put("save", new SaveCommand());
         commandTable.put("bgsave", new BackgroundSaveCommand());
+        commandTable.put("info", new InfoCommand());
+        commandTable.put("command", new CommandCommand());
+        commandTable.put("scan", new ScanCommand());
+        commandTable.put("randomkey", new RandomkeyCommand());
     }
 
     public static CommandExecutor getExecutor() {
@@ -57,12 +60,28 @@ public class CommandExecutor {
     }
 
     /**
-     * 从命令表中根据名字查找命令实现
+     * 从命令表中根据名字查找命令实现，忽略大小写
      * @param commandName 命令名称
      * @return 命令实现
      */
-    public Command lookupCommand(String commandName) {
-        return commandTable.get(commandName);
+    public AbstractCommand lookupCommand(String commandName) {
+        return commandTable.lookup(commandName);
+    }
+
+    /**
+     * 直接根据命令参数的字节查找命令实现，忽略大小写，不需要先将命令名称转换为String
+     * @param commandName 命令名称参数（argv[0]）
+     * @return 命令实现，找不到时返回null
+     */
+    public AbstractCommand lookupCommand(SdsSlice commandName) {
+        return commandTable.lookup(commandName.getBuffer(), commandName.getOffset(), commandName.length());
+    }
+
+    /**
+     * @return 所有命令的实现
+     */
+    public List<AbstractCommand> getCommands() {
+        return commandTable.getCommands();
     }
 
     /**
@@ -71,9 +90,15 @@ public class CommandExecutor {
      */
     public void execute(Command command, InnerClient client) {
         beforeExecute(client);
+
+        // 记录执行前数据库被修改的次数，执行后的差值就是该命令修改数据库的次数
+        Database database = client.getDatabase();
+        long dirty = database == null ? 0 : database.getDirty();
+
         // 执行命令
         command.execute(client);
-        afterExecute(client);
+
+        afterExecute(client, database == null ? 0 : database.getDirty() - dirty);
     }
 
     /**
@@ -85,15 +110,21 @@ public class CommandExecutor {
     }
     /**
      * 在命令执行之后进行
-     * (1) 如果AOF启用，则进行AOF持久化
+     * (1) 如果AOF启用，并且命令确实修改了数据库，则进行AOF持久化，对应redis中call()的传播逻辑
+     *     读命令、以及没有修改数据库的写命令（比如key不存在时的EXPIRE、条件不满足的SETNX）都不会写入AOF
      * @param client
+     * @param dirty 命令修改数据库的次数
      */
-    public void afterExecute(InnerClient client) {
+    public void afterExecute(InnerClient client, long dirty) {
+        if (dirty <= 0) {
+            return;
+        }
+
         // 将命令传播到AOF模块，进行AOF持久化
         ServerConfig config = ServerContext.getContext().getServerConfig();
         if (config.isAofOn()) {
             AOFPersistence aofPersistence = ServerContext.getContext().getServerInstance().getAofPersistence();
-            List<Sds> commands = client.getCommandArgs();
+            List<SdsSlice> commands = client.getCommandArgs();
             aofPersistence.feedCommand(commands);
         }
     }
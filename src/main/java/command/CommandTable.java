@@ -0,0 +1,155 @@
+package command;
+
+import common.utils.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 命令表：以命令名称的原始字节为key，查找时忽略ASCII字母的大小写
+ * 命令名称直接在客户端的命令参数（查询缓冲区中的字节）上进行hash和比较，查找过程不创建任何对象，
+ * 因此不需要为每条命令先把argv[0]转换为String，GET、Get、get都能找到同一个命令
+ *
+ * 命令表在服务器启动时一次性构建，之后只读，可以在多个线程中同时查找
+ * 使用开放寻址（线性探测）的散列表，容量是命令数量的4倍以上，大多数查找只需要探测一个槽位
+ **/
+public class CommandTable {
+    private static final int MIN_CAPACITY = 16;
+
+    // ASCII大写字母到小写字母的映射，其他字节保持不变
+    private static final byte [] LOWER_CASE = new byte[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            LOWER_CASE[i] = (byte) (i >= 'A' && i <= 'Z' ? i + ('a' - 'A') : i);
+        }
+    }
+
+    private byte [][] names;            // 各个槽位中命令名称的小写字节，null表示空槽位
+    private AbstractCommand [] commands;
+    private int size;
+
+    public CommandTable() {
+        this.names = new byte[MIN_CAPACITY][];
+        this.commands = new AbstractCommand[MIN_CAPACITY];
+        this.size = 0;
+    }
+
+    /**
+     * 将命令加入命令表，名称相同（忽略大小写）的命令会被替换
+     * @param name 命令名称
+     * @param command 命令实现
+     */
+    public void put(String name, AbstractCommand command) {
+        if ((this.size + 1) * 4 > this.names.length) {
+            resize(this.names.length * 2);
+        }
+
+        byte [] key = SafeEncoder.encode(name.toLowerCase());
+        int mask = this.names.length - 1;
+        int index = hash(key, 0, key.length) & mask;
+        while (this.names[index] != null) {
+            if (equalsIgnoreCase(this.names[index], key, 0, key.length)) {
+                this.commands[index] = command;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+
+        this.names[index] = key;
+        this.commands[index] = command;
+        this.size++;
+    }
+
+    /**
+     * 根据命令名称的字节查找命令，忽略ASCII字母的大小写，不创建任何对象
+     * @param buf 命令名称所在的数组
+     * @param offset 命令名称在数组中的起始位置
+     * @param length 命令名称的长度
+     * @return 命令实现，找不到时返回null
+     */
+    public AbstractCommand lookup(byte [] buf, int offset, int length) {
+        int mask = this.names.length - 1;
+        int index = hash(buf, offset, length) & mask;
+
+        byte [] name;
+        while ((name = this.names[index]) != null) {
+            if (equalsIgnoreCase(name, buf, offset, length)) {
+                return this.commands[index];
+            }
+            index = (index + 1) & mask;
+        }
+
+        return null;
+    }
+
+    public AbstractCommand lookup(String name) {
+        byte [] key = SafeEncoder.encode(name);
+        return lookup(key, 0, key.length);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return 命令表中的所有命令，顺序不确定
+     */
+    public List<AbstractCommand> getCommands() {
+        List<AbstractCommand> list = new ArrayList<>(this.size);
+        for (AbstractCommand command : this.commands) {
+            if (command != null) {
+                list.add(command);
+            }
+        }
+        return list;
+    }
+
+    private void resize(int capacity) {
+        byte [][] oldNames = this.names;
+        AbstractCommand [] oldCommands = this.commands;
+
+        this.names = new byte[capacity][];
+        this.commands = new AbstractCommand[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldNames.length; i++) {
+            if (oldNames[i] == null) {
+                continue;
+            }
+
+            int index = hash(oldNames[i], 0, oldNames[i].length) & mask;
+            while (this.names[index] != null) {
+                index = (index + 1) & mask;
+            }
+            this.names[index] = oldNames[i];
+            this.commands[index] = oldCommands[i];
+        }
+    }
+
+    /**
+     * 计算忽略大小写的hash值：先将每个字节转换为小写再参与计算
+     */
+    private static int hash(byte [] buf, int offset, int length) {
+        int h = 0;
+        for (int i = offset; i < offset + length; i++) {
+            h = 31 * h + LOWER_CASE[buf[i] & 0xff];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @param lowerName 命令表中保存的小写名称
+     * @param buf 待比较的字节，可以包含大写字母
+     */
+    private static boolean equalsIgnoreCase(byte [] lowerName, byte [] buf, int offset, int length) {
+        if (lowerName.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (lowerName[i] != LOWER_CASE[buf[offset + i] & 0xff]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -2,9 +2,10 @@ package command.commands;
 
 import server.client.InnerClient;
 import command.AbstractCommand;
+import common.shared.SharedObjects;
 import common.struct.ZedisObject;
 import common.struct.ZedisString;
-import common.struct.impl.Sds;
+import common.struct.impl.SdsSlice;
 import database.Database;
 
 import java.util.List;
@@ -13,7 +14,7 @@ import java.util.List;
 public class AppendCommand extends AbstractCommand {
 
     public AppendCommand() {
-        super("append", 3, false, "wm");
+        super("append", 3, false, "wm", 1, 1, 1);
     }
 
     @Override
@@ -26,10 +27,10 @@ public class AppendCommand extends AbstractCommand {
         Database db = client.getDatabase();
         long newLength = 0;
 
-        List<Sds> commandArgs = client.getCommandArgs();
+        List<SdsSlice> commandArgs = client.getCommandArgs();
 
-        Sds key = commandArgs.get(1);
-        Sds appendContent = commandArgs.get(2);
+        SdsSlice key = commandArgs.get(1);
+        SdsSlice appendContent = commandArgs.get(2);
 
         ZedisObject value = db.lookupByKey(key);
 
@@ -44,7 +45,7 @@ public class AppendCommand extends AbstractCommand {
 
             newLength = ((ZedisString) value).length() + appendContent.length();
             if (newLength > 1024 * 1024 * 512) {
-                client.replyError("string exceeds maximum allowed size (512MB)");
+                client.replyShared(SharedObjects.STRING_TOO_LONG_ERROR);
                 return;
             }
 
@@ -52,6 +53,7 @@ public class AppendCommand extends AbstractCommand {
             newLength = ((ZedisString) value).length();
         }
 
+        db.incrDirty(1);
         client.replyInteger(newLength);
     }
 }
@@ -9,7 +9,7 @@ import command.AbstractCommand;
  **/
 public class AuthCommand extends AbstractCommand {
     public AuthCommand() {
-        super("auth", 2, false, "rslt");
+        super("auth", 2, false, "rsltF");
     }
 
     @Override
@@ -2,6 +2,7 @@ package command.commands;
 
 import command.AbstractCommand;
 import common.persistence.RDBPersistence;
+import common.shared.SharedObjects;
 import server.ServerContext;
 import server.client.InnerClient;
 
@@ -22,12 +23,14 @@ public class BackgroundSaveCommand extends AbstractCommand {
 
         // 不能重复执行BGSAVE
         if (rdbPersistence.isInBackgroundSaveProcess()) {
-            client.replyError("Background save already in progress");
+            client.replyShared(SharedObjects.BGSAVE_IN_PROGRESS_ERROR);
             return;
         } else {
             // 执行BGSAVE
-            if (!rdbPersistence.backgroundSave()) {
-                client.replyStatus("Background saving started");
+            if (rdbPersistence.backgroundSave()) {
+                client.replyShared(SharedObjects.BGSAVE_STARTED);
+            } else {
+                client.replyShared(SharedObjects.BGSAVE_IN_PROGRESS_ERROR);
             }
         }
 
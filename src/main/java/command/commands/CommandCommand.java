@@ -0,0 +1,76 @@
+package command.commands;
+
+import command.AbstractCommand;
+import command.CommandExecutor;
+import common.shared.SharedObjects;
+import common.struct.impl.SdsSlice;
+import server.client.InnerClient;
+
+import java.util.List;
+
+/**
+ * command命令，返回命令表中命令的信息
+ * 命令格式：
+ *     COMMAND                      返回所有命令的信息
+ *     COMMAND COUNT                返回命令的数量
+ *     COMMAND INFO name [name ...] 返回指定命令的信息，命令不存在时对应的元素为nil
+ * 每个命令的信息与redis相同：[名称, arity（参数数量可变时为负数）, [属性...], 第一个key, 最后一个key, key之间的距离]
+ */
+public class CommandCommand extends AbstractCommand {
+    public CommandCommand() {
+        super("command", 1, true, "rlt");
+    }
+
+    @Override
+    public boolean checkCommandArgs(InnerClient client) {
+        return true;
+    }
+
+    @Override
+    public void doExecute(InnerClient client) {
+        List<SdsSlice> commandArgs = client.getCommandArgs();
+        CommandExecutor executor = CommandExecutor.getExecutor();
+
+        if (commandArgs.size() == 1) {
+            List<AbstractCommand> commands = executor.getCommands();
+            client.replyArrayHeader(commands.size());
+            for (AbstractCommand command : commands) {
+                replyCommandInfo(client, command);
+            }
+            return;
+        }
+
+        String subCommand = commandArgs.get(1).toString();
+        if ("count".equalsIgnoreCase(subCommand) && commandArgs.size() == 2) {
+            client.replyInteger(executor.getCommands().size());
+        } else if ("info".equalsIgnoreCase(subCommand)) {
+            client.replyArrayHeader(commandArgs.size() - 2);
+            for (int i = 2; i < commandArgs.size(); i++) {
+                replyCommandInfo(client, executor.lookupCommand(commandArgs.get(i)));
+            }
+        } else {
+            client.replyError("Unknown subcommand or wrong number of arguments for '" + subCommand + "'. Try COMMAND INFO");
+        }
+    }
+
+    private static void replyCommandInfo(InnerClient client, AbstractCommand command) {
+        if (command == null) {
+            client.replyShared(SharedObjects.NULL_BULK);
+            return;
+        }
+
+        client.replyArrayHeader(6);
+        client.replyBulk(command.getName());
+        client.replyInteger(command.isGreaterThanArity() ? -command.getArity() : command.getArity());
+
+        List<String> flags = command.getFlagNames();
+        client.replyArrayHeader(flags.size());
+        for (String flag : flags) {
+            client.replyStatus(flag);
+        }
+
+        client.replyInteger(command.getFirstKey());
+        client.replyInteger(command.getLastKey());
+        client.replyInteger(command.getKeyStep());
+    }
+}
@@ -2,7 +2,7 @@ package command.commands;
 
 import server.client.InnerClient;
 import command.AbstractCommand;
-import common.struct.impl.Sds;
+import common.struct.impl.SdsSlice;
 import database.Database;
 
 import java.util.List;
@@ -14,7 +14,7 @@ import java.util.List;
  **/
 public class DelCommand extends AbstractCommand {
     public DelCommand() {
-        super("del", 2, true, "w");
+        super("del", 2, true, "w", 1, -1, 1);
     }
 
     @Override
@@ -24,7 +24,7 @@ public class DelCommand extends AbstractCommand {
 
     @Override
     public void doExecute(InnerClient client) {
-        List<Sds> commandArgs = client.getCommandArgs();
+        List<SdsSlice> commandArgs = client.getCommandArgs();
 
         Database db = client.getDatabase();
 
@@ -39,6 +39,7 @@ public class DelCommand extends AbstractCommand {
             }
         }
 
+        db.incrDirty(deleted);
         client.replyInteger(deleted);
     }
 }
@@ -2,7 +2,7 @@ package command.commands;
 
 import server.client.InnerClient;
 import command.AbstractCommand;
-import common.struct.impl.Sds;
+import common.struct.impl.SdsSlice;
 
 import java.util.List;
 
@@ -13,7 +13,7 @@ import java.util.List;
  **/
 public class EchoCommand extends AbstractCommand {
     public EchoCommand() {
-        super("echo", 2, false, "r");
+        super("echo", 2, false, "rF");
     }
 
     @Override
@@ -23,9 +23,9 @@ public class EchoCommand extends AbstractCommand {
 
     @Override
     public void doExecute(InnerClient client) {
-        List<Sds> commandArgs = client.getCommandArgs();
+        List<SdsSlice> commandArgs = client.getCommandArgs();
 
-        Sds content = commandArgs.get(1);
+        SdsSlice content = commandArgs.get(1);
         client.replyBulk(content);
     }
 }
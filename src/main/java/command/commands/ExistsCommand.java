@@ -2,7 +2,7 @@ package command.commands;
 
 import server.client.InnerClient;
 import command.AbstractCommand;
-import common.struct.impl.Sds;
+import common.struct.impl.SdsSlice;
 import database.Database;
 
 import java.util.ArrayList;
@@ -14,7 +14,7 @@ import java.util.ArrayList;
  **/
 public class ExistsCommand extends AbstractCommand {
     public ExistsCommand() {
-        super("exists", 2, false, "r");
+        super("exists", 2, false, "rF", 1, 1, 1);
     }
 
     @Override
@@ -28,11 +28,11 @@ public class ExistsCommand extends AbstractCommand {
         // 检查键是否已经过期，如果已过期的话，那么将它删除
         // 这可以避免已过期的键被误认为存在
 
-        ArrayList<Sds> commandArgs = client.getCommandArgs();
+        ArrayList<SdsSlice> commandArgs = client.getCommandArgs();
 
         Database db = client.getDatabase();
 
-        Sds key = commandArgs.get(1);
+        SdsSlice key = commandArgs.get(1);
 
         if (db.exists(key)) {
             client.replyInteger(1);
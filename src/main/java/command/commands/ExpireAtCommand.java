@@ -12,7 +12,7 @@ import java.util.concurrent.TimeUnit;
 public class ExpireAtCommand extends GenericExpireCommand {
 
     public ExpireAtCommand() {
-        super("expireat", 3, false, "w");
+        super("expireat", 3, false, "wF", 1, 1, 1);
     }
 
     @Override
@@ -12,7 +12,7 @@ import java.util.concurrent.TimeUnit;
 public class ExpireCommand extends GenericExpireCommand {
 
     public ExpireCommand() {
-        super("expire", 3, false, "w");
+        super("expire", 3, false, "wF", 1, 1, 1);
     }
 
     @Override
@@ -2,7 +2,9 @@ package command.commands;
 
 import server.client.InnerClient;
 import command.AbstractCommand;
-import common.struct.impl.Sds;
+import common.struct.impl.SdsSlice;
+import common.shared.SharedObjects;
+import common.utils.ByteUtil;
 import database.Database;
 
 import java.util.List;
@@ -14,8 +16,8 @@ import java.util.concurrent.TimeUnit;
  * @Date 2021/12/3
  **/
 public abstract class GenericExpireCommand extends AbstractCommand {
-    public GenericExpireCommand(String name, int arity, boolean isGreaterThanArity, String stringFlags) {
-        super(name, arity, isGreaterThanArity, stringFlags);
+    public GenericExpireCommand(String name, int arity, boolean isGreaterThanArity, String stringFlags, int firstKey, int lastKey, int keyStep) {
+        super(name, arity, isGreaterThanArity, stringFlags, firstKey, lastKey, keyStep);
     }
 
     /**
@@ -28,16 +30,17 @@ public abstract class GenericExpireCommand extends AbstractCommand {
      * @param unit 时间单位second/millisecond
      */
     protected void genericExpire(InnerClient client, long baseTime, TimeUnit unit) {
-        List<Sds> commandArgs = client.getCommandArgs();
+        List<SdsSlice> commandArgs = client.getCommandArgs();
 
-        Sds key = commandArgs.get(1);
-        Sds expireTime = commandArgs.get(2);
+        SdsSlice key = commandArgs.get(1);
+        SdsSlice expireTime = commandArgs.get(2);
 
         long when;
 
         try {
-           when = Long.parseLong(expireTime.toString());
+           when = ByteUtil.parseLong(expireTime);
         } catch (NumberFormatException e) {
+            client.replyShared(SharedObjects.NOT_INTEGER_ERROR);
             return;
         }
 
@@ -59,6 +62,7 @@ public abstract class GenericExpireCommand extends AbstractCommand {
         } else {
             db.setExpire(key, when);
         }
+        db.incrDirty(1);
         client.replyInteger(1);
     }
 }
@@ -5,24 +5,24 @@ import command.AbstractCommand;
 import common.struct.ObjectType;
 import common.struct.ZedisObject;
 import common.struct.ZedisString;
-import common.struct.impl.Sds;
-import common.constants.ErrorConstants;
+import common.struct.impl.SdsSlice;
+import common.shared.SharedObjects;
 import database.Database;
 
 
 public abstract class GenericGetCommand extends AbstractCommand {
 
-    public GenericGetCommand(String name, int arity, boolean isGreaterThanArity, String stringFlags) {
-        super(name, arity, isGreaterThanArity, stringFlags);
+    public GenericGetCommand(String name, int arity, boolean isGreaterThanArity, String stringFlags, int firstKey, int lastKey, int keyStep) {
+        super(name, arity, isGreaterThanArity, stringFlags, firstKey, lastKey, keyStep);
     }
 
     protected void genericGet(InnerClient client) {
         Database db = client.getDatabase();
-        Sds[] args = client.getCommandArgs().toArray(new Sds[0]);
+        SdsSlice key = client.getCommandArgs().get(1);
 
         // 尝试从数据库中取出键 c->argv[1] 对应的值对象
         // 如果键不存在时，向客户端发送回复信息，并返回 NULL
-        ZedisObject value = db.lookupByKey(args[1]);
+        ZedisObject value = db.lookupByKey(key);
         if (value == null) {
             client.replyNil();
             return;
@@ -31,7 +31,7 @@ public abstract class GenericGetCommand extends AbstractCommand {
         // 值对象存在，检查它的类型
         if (value.getType() != ObjectType.STRING) {
             // 类型错误，向客户端返回错误信息
-            client.replyError(ErrorConstants.WRONG_TYPE_ERROR);
+            client.replyShared(SharedObjects.WRONG_TYPE_ERROR);
             return;
         } else {
             // 类型正确，向客户端返回对象的值
@@ -3,7 +3,8 @@ package command.commands;
 import server.client.InnerClient;
 import command.AbstractCommand;
 import common.struct.ZedisString;
-import common.constants.StatusConstants;
+import common.shared.SharedObjects;
+import common.utils.ByteUtil;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import database.Database;
@@ -19,8 +20,8 @@ public abstract class GenericSetCommand extends AbstractCommand {
     public static final int SET_NX = 1 << 0;    // 当key不存在时可以set
     public static final int SET_XX = 1 << 1;    // 当key存在时可以set
 
-    public GenericSetCommand(String name, int arity, boolean isGreaterThanArity, String stringFlags) {
-        super(name, arity, isGreaterThanArity, stringFlags);
+    public GenericSetCommand(String name, int arity, boolean isGreaterThanArity, String stringFlags, int firstKey, int lastKey, int keyStep) {
+        super(name, arity, isGreaterThanArity, stringFlags, firstKey, lastKey, keyStep);
     }
 
     protected void genericSet(InnerClient client, int flags, ZedisString key, ZedisString value, ZedisString expireTime, TimeUnit unit) {
@@ -30,15 +31,15 @@ public abstract class GenericSetCommand extends AbstractCommand {
         if (expireTime != null) {
             // 取出expire参数的值
             try {
-                milliseconds = Long.parseLong(expireTime.toString());
+                milliseconds = ByteUtil.parseLong(expireTime);
             } catch (NumberFormatException e) {
-                client.replyError("value is not an integer or out of range");
+                client.replyShared(SharedObjects.NOT_INTEGER_ERROR);
                 return;
             }
 
             // 验证expire参数的值
             if (milliseconds <= 0) {
-                client.replyError("invalid expire time in SETEX");
+                client.replyShared(SharedObjects.INVALID_EXPIRE_TIME_ERROR);
                 return;
             }
 
@@ -61,8 +62,8 @@ public abstract class GenericSetCommand extends AbstractCommand {
         // 将键值关联到数据库
         database.setKey(key, value);
 
-        // todo
         // 将数据库设为脏
+        database.incrDirty(1);
 
         // 为键设置过期时间
         if (expireTime != null) {
@@ -74,7 +75,7 @@ public abstract class GenericSetCommand extends AbstractCommand {
 
         // 设置成功，向客户端发送回复
         // 回复的内容由 ok_reply 决定
-        client.replyBulk(StatusConstants.OK_STATUS);
+        client.replyShared(SharedObjects.OK);
     }
 
     protected boolean nxExist(int flags) {
@@ -1,7 +1,7 @@
 package command.commands;
 
 import command.AbstractCommand;
-import common.struct.impl.Sds;
+import common.struct.impl.SdsSlice;
 import database.Database;
 import server.client.InnerClient;
 
@@ -17,14 +17,14 @@ public abstract class GenericTtlCommand extends AbstractCommand {
     public static final long KEY_NOT_EXISTS = -2L;
     public static final long KEY_NOT_EXPIRE = -1L;
 
-    public GenericTtlCommand(String name, int arity, boolean isGreaterThanArity, String stringFlags) {
-        super(name, arity, isGreaterThanArity, stringFlags);
+    public GenericTtlCommand(String name, int arity, boolean isGreaterThanArity, String stringFlags, int firstKey, int lastKey, int keyStep) {
+        super(name, arity, isGreaterThanArity, stringFlags, firstKey, lastKey, keyStep);
     }
 
     public void genericTtl(InnerClient client, TimeUnit unit) {
-        List<Sds> commandArgs = client.getCommandArgs();
+        List<SdsSlice> commandArgs = client.getCommandArgs();
 
-        Sds key = commandArgs.get(1);
+        SdsSlice key = commandArgs.get(1);
 
         Database db = client.getDatabase();
 
@@ -9,7 +9,7 @@ import server.client.InnerClient;
  */
 public class GetCommand extends GenericGetCommand {
     public GetCommand() {
-        super("get", 2, false, "r");
+        super("get", 2, false, "rF", 1, 1, 1);
     }
 
     @Override
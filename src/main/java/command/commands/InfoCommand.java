@@ -0,0 +1,27 @@
+package command.commands;
+
+import command.AbstractCommand;
+import server.ServerContext;
+import server.client.InnerClient;
+
+/**
+ * info命令
+ * 命令格式：INFO [section]
+ * 以文本形式返回服务器的统计信息
+ */
+public class InfoCommand extends AbstractCommand {
+    public InfoCommand() {
+        super("info", 1, true, "rlt");
+    }
+
+    @Override
+    public boolean checkCommandArgs(InnerClient client) {
+        return true;
+    }
+
+    @Override
+    public void doExecute(InnerClient client) {
+        String info = ServerContext.getContext().getServerInstance().getStats().toInfoString();
+        client.replyBulk(info);
+    }
+}
@@ -1,7 +1,7 @@
 package command.commands;
 
 import command.AbstractCommand;
-import common.struct.impl.Sds;
+import common.struct.impl.SdsSlice;
 import database.Database;
 import server.client.InnerClient;
 
@@ -14,7 +14,7 @@ import java.util.List;
  **/
 public class PersistCommand extends AbstractCommand {
     public PersistCommand() {
-        super("persist", 2, false, "w");
+        super("persist", 2, false, "wF", 1, 1, 1);
     }
 
     @Override
@@ -24,9 +24,9 @@ public class PersistCommand extends AbstractCommand {
 
     @Override
     public void doExecute(InnerClient client) {
-        List<Sds> commandArgs = client.getCommandArgs();
+        List<SdsSlice> commandArgs = client.getCommandArgs();
 
-        Sds key = commandArgs.get(1);
+        SdsSlice key = commandArgs.get(1);
 
         Database db = client.getDatabase();
 
@@ -36,6 +36,7 @@ public class PersistCommand extends AbstractCommand {
         } else {
             if (db.removeExpire(key) != null) {
                 // 删除过期时间成功
+                db.incrDirty(1);
                 client.replyInteger(1);
             } else {
                 // 过期时间不存在
@@ -11,7 +11,7 @@ import java.util.concurrent.TimeUnit;
  **/
 public class PexpireAtCommand extends GenericExpireCommand {
     public PexpireAtCommand() {
-        super("pexpireat", 3, false, "w");
+        super("pexpireat", 3, false, "wF", 1, 1, 1);
     }
 
     @Override
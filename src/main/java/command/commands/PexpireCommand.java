@@ -11,7 +11,7 @@ import java.util.concurrent.TimeUnit;
  **/
 public class PexpireCommand extends GenericExpireCommand {
     public PexpireCommand() {
-        super("pexpire", 3, false, "w");
+        super("pexpire", 3, false, "wF", 1, 1, 1);
     }
 
     @Override
@@ -2,7 +2,7 @@ package command.commands;
 
 import server.client.InnerClient;
 import command.AbstractCommand;
-import common.constants.StatusConstants;
+import common.shared.SharedObjects;
 
 /**
  * @Description
@@ -11,7 +11,7 @@ import common.constants.StatusConstants;
  **/
 public class PingCommand extends AbstractCommand {
     public PingCommand() {
-        super("pong", 1, false, "rt");
+        super("ping", 1, false, "rtF");
     }
 
     @Override
@@ -21,6 +21,6 @@ public class PingCommand extends AbstractCommand {
 
     @Override
     public void doExecute(InnerClient client) {
-        client.replyStatus(StatusConstants.PONG_STATUS);
+        client.replyShared(SharedObjects.PONG);
     }
 }
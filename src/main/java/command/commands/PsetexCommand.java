@@ -2,8 +2,8 @@ package command.commands;
 
 import server.client.InnerClient;
 import common.struct.ZedisString;
-import common.struct.impl.Sds;
-import common.utils.StringUtil;
+import common.struct.impl.SdsSlice;
+import common.utils.ByteUtil;
 
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -17,7 +17,7 @@ import java.util.concurrent.TimeUnit;
 public class PsetexCommand extends GenericSetCommand {
 
     public PsetexCommand() {
-        super("psetex", 4, false, "wm");
+        super("psetex", 4, false, "wm", 1, 1, 1);
     }
 
     @Override
@@ -26,11 +26,13 @@ public class PsetexCommand extends GenericSetCommand {
 
     @Override
     public boolean checkCommandArgs(InnerClient client) {
-        List<Sds> commandArgs = client.getCommandArgs();
+        List<SdsSlice> commandArgs = client.getCommandArgs();
 
-        Sds expireTime = commandArgs.get(2);                  // 超时时间
+        SdsSlice expireTime = commandArgs.get(2);                  // 超时时间
 
-        if (!StringUtil.isInteger(expireTime.toString())) {
+        try {
+            ByteUtil.parseLong(expireTime);
+        } catch (NumberFormatException e) {
             client.replyError("wrong type of args of command " + this.getName());
             return false;
         }
@@ -40,11 +42,11 @@ public class PsetexCommand extends GenericSetCommand {
 
     @Override
     public void doExecute(InnerClient client) {
-        List<Sds> commandArgs = client.getCommandArgs();
+        List<SdsSlice> commandArgs = client.getCommandArgs();
 
         // 调用通用的set方法，将key/value保存
         ZedisString key = commandArgs.get(1);
-        Sds expireTime = commandArgs.get(2);                  // 超时时间
+        SdsSlice expireTime = commandArgs.get(2);                  // 超时时间
         ZedisString value = commandArgs.get(3);
 
         genericSet(client, SET_NO_FLAGS, key, value, expireTime, TimeUnit.MILLISECONDS);
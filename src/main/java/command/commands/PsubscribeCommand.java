@@ -1,7 +1,7 @@
 package command.commands;
 
 import command.AbstractCommand;
-import common.struct.impl.Sds;
+import common.struct.impl.SdsSlice;
 import pubsub.PubSub;
 import server.ServerContext;
 import server.client.InnerClient;
@@ -21,7 +21,7 @@ public class PsubscribeCommand extends AbstractCommand {
 
     @Override
     public void doExecute(InnerClient client) {
-        List<Sds> commandArgs = client.getCommandArgs();
+        List<SdsSlice> commandArgs = client.getCommandArgs();
         PubSub pubSub = ServerContext.getContext().getServerInstance().getPubSub();
 
         for (int i = 1; i < commandArgs.size(); i++) {
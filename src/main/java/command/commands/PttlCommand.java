@@ -7,7 +7,7 @@ import java.util.concurrent.TimeUnit;
 
 public class PttlCommand extends GenericTtlCommand {
     public PttlCommand() {
-        super("pttl", 2, false, "r");
+        super("pttl", 2, false, "rF", 1, 1, 1);
     }
 
     @Override
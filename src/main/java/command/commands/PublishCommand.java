@@ -1,7 +1,7 @@
 package command.commands;
 
 import command.AbstractCommand;
-import common.struct.impl.Sds;
+import common.struct.impl.SdsSlice;
 import pubsub.PubSub;
 import server.ServerContext;
 import server.client.InnerClient;
@@ -11,7 +11,7 @@ import java.util.List;
 
 public class PublishCommand extends AbstractCommand {
     public PublishCommand() {
-        super("publish", 3, false, "pltr");
+        super("publish", 3, false, "pltF");
     }
 
     @Override
@@ -22,10 +22,10 @@ public class PublishCommand extends AbstractCommand {
     @Override
     public void doExecute(InnerClient client) {
         PubSub pubSub = ServerContext.getContext().getServerInstance().getPubSub();
-        List<Sds> commandArgs = client.getCommandArgs();
+        List<SdsSlice> commandArgs = client.getCommandArgs();
 
-        Sds channelName = commandArgs.get(1);
-        Sds message = commandArgs.get(2);
+        SdsSlice channelName = commandArgs.get(1);
+        SdsSlice message = commandArgs.get(2);
         int receivers = pubSub.publishMessage(channelName.toString(), message);
 
         client.replyInteger(receivers);
@@ -0,0 +1,30 @@
+package command.commands;
+
+import command.AbstractCommand;
+import common.struct.ZedisString;
+import server.client.InnerClient;
+
+/**
+ * randomkey命令，从数据库中随机返回一个键，数据库为空时返回nil
+ * 多reactor模式下每个reactor只拥有一个键空间分区，不支持该命令
+ */
+public class RandomkeyCommand extends AbstractCommand {
+    public RandomkeyCommand() {
+        super("randomkey", 1, false, "rR");
+    }
+
+    @Override
+    public boolean checkCommandArgs(InnerClient client) {
+        return true;
+    }
+
+    @Override
+    public void doExecute(InnerClient client) {
+        ZedisString key = client.getDatabase().randomKey();
+        if (key == null) {
+            client.replyNil();
+        } else {
+            client.replyBulk(key);
+        }
+    }
+}
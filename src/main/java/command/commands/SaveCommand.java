@@ -1,7 +1,7 @@
 package command.commands;
 
 import command.AbstractCommand;
-import common.constants.StatusConstants;
+import common.shared.SharedObjects;
 import common.persistence.RDBPersistence;
 import server.ServerContext;
 import server.client.InnerClient;
@@ -9,7 +9,7 @@ import server.client.InnerClient;
 
 public class SaveCommand extends AbstractCommand {
     public SaveCommand() {
-        super("save", 1, false, "arg");
+        super("save", 1, false, "as");
     }
 
     @Override
@@ -23,12 +23,12 @@ public class SaveCommand extends AbstractCommand {
         // BGSAVE 已经在执行中，不能再执行 SAVE
         // 否则将产生竞争条件
         if (rdbPersistence.isInBackgroundSaveProcess()) {
-            client.replyError("Background save already in progress");
+            client.replyShared(SharedObjects.BGSAVE_IN_PROGRESS_ERROR);
             return;
         }
 
         if (rdbPersistence.save()) {
-            client.replyStatus(StatusConstants.OK_STATUS);
+            client.replyShared(SharedObjects.OK);
         } else {
             client.replyError("");
         }
@@ -0,0 +1,108 @@
+package command.commands;
+
+import command.AbstractCommand;
+import common.struct.ZedisString;
+import common.shared.SharedObjects;
+import common.struct.impl.SdsSlice;
+import common.utils.ByteUtil;
+import common.utils.StringUtil;
+import database.Database;
+import server.client.InnerClient;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * scan命令，增量遍历数据库中的键
+ * 命令格式：SCAN cursor [MATCH pattern] [COUNT count]
+ * 回复：[下一次调用使用的游标, [键...]]，游标为0时表示遍历结束
+ *
+ * 游标按照反向二进制位递增，遍历期间键空间扩容或缩容也不会漏掉一直存在的键，但同一个键可能被返回多次
+ * 多reactor模式下每个reactor只拥有一个键空间分区，不支持该命令
+ */
+public class ScanCommand extends AbstractCommand {
+    public ScanCommand() {
+        super("scan", 2, true, "rR");
+    }
+
+    @Override
+    public boolean checkCommandArgs(InnerClient client) {
+        return true;
+    }
+
+    @Override
+    public void doExecute(InnerClient client) {
+        List<SdsSlice> commandArgs = client.getCommandArgs();
+
+        long cursor;
+        try {
+            cursor = ByteUtil.parseLong(commandArgs.get(1));
+        } catch (NumberFormatException e) {
+            cursor = -1;
+        }
+        if (cursor < 0) {
+            client.replyShared(SharedObjects.INVALID_CURSOR_ERROR);
+            return;
+        }
+
+        // 解析选项
+        long count = 10;
+        String pattern = null;
+        for (int i = 2; i < commandArgs.size(); i += 2) {
+            String option = commandArgs.get(i).toString();
+            if (i + 1 >= commandArgs.size()) {
+                client.replyShared(SharedObjects.SYNTAX_ERROR);
+                return;
+            }
+            if ("count".equalsIgnoreCase(option)) {
+                try {
+                    count = ByteUtil.parseLong(commandArgs.get(i + 1));
+                } catch (NumberFormatException e) {
+                    client.replyShared(SharedObjects.NOT_INTEGER_ERROR);
+                    return;
+                }
+                if (count < 1) {
+                    client.replyShared(SharedObjects.SYNTAX_ERROR);
+                    return;
+                }
+            } else if ("match".equalsIgnoreCase(option)) {
+                pattern = commandArgs.get(i + 1).toString();
+                // 模式为*时不需要匹配
+                if ("*".equals(pattern)) {
+                    pattern = null;
+                }
+            } else {
+                client.replyShared(SharedObjects.SYNTAX_ERROR);
+                return;
+            }
+        }
+
+        // 最多遍历count*10个桶，避免在稀疏的哈希表上花费太多时间
+        Database db = client.getDatabase();
+        List<ZedisString> keys = new ArrayList<>();
+        long maxIterations = count * 10;
+        do {
+            cursor = db.getKeySpace().scan(cursor, e -> keys.add(e.getKey()));
+        } while (cursor != 0 && --maxIterations > 0 && keys.size() < count);
+
+        // 过滤不匹配的键和已经过期的键
+        List<ZedisString> result = new ArrayList<>(keys.size());
+        for (ZedisString key : keys) {
+            if (pattern != null && !StringUtil.stringMatch(pattern, key.toString(), false)) {
+                continue;
+            }
+            if (db.isExpired(key)) {
+                db.remove(key);
+                continue;
+            }
+            result.add(key);
+        }
+
+        client.replyArrayHeader(2);
+        client.replyBulk(String.valueOf(cursor));
+        client.replyArrayHeader(result.size());
+        for (ZedisString key : result) {
+            client.replyBulk(key);
+        }
+    }
+}
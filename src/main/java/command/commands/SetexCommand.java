@@ -2,7 +2,7 @@ package command.commands;
 
 import server.client.InnerClient;
 import common.struct.ZedisString;
-import common.struct.impl.Sds;
+import common.struct.impl.SdsSlice;
 
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -14,7 +14,7 @@ import java.util.concurrent.TimeUnit;
 public class SetexCommand extends GenericSetCommand {
 
     public SetexCommand() {
-        super("setex", 4, false, "wm");
+        super("setex", 4, false, "wm", 1, 1, 1);
     }
 
     @Override
@@ -24,11 +24,11 @@ public class SetexCommand extends GenericSetCommand {
 
     @Override
     public void doExecute(InnerClient client) {
-        List<Sds> commandArgs = client.getCommandArgs();
+        List<SdsSlice> commandArgs = client.getCommandArgs();
 
         // 调用通用的set方法，将key/value保存
         ZedisString key = commandArgs.get(1);
-        Sds expireTime = commandArgs.get(2);                  // 超时时间
+        SdsSlice expireTime = commandArgs.get(2);                  // 超时时间
         ZedisString value = commandArgs.get(3);
 
         genericSet(client, SET_NO_FLAGS, key, value, expireTime, TimeUnit.SECONDS);
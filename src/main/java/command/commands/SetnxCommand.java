@@ -2,7 +2,7 @@ package command.commands;
 
 import server.client.InnerClient;
 import common.struct.ZedisString;
-import common.struct.impl.Sds;
+import common.struct.impl.SdsSlice;
 
 import java.util.List;
 
@@ -13,7 +13,7 @@ import java.util.List;
 public class SetnxCommand extends GenericSetCommand {
 
     public SetnxCommand() {
-        super("setnx", 3, false, "wm");
+        super("setnx", 3, false, "wmF", 1, 1, 1);
     }
 
     @Override
@@ -23,7 +23,7 @@ public class SetnxCommand extends GenericSetCommand {
 
     @Override
     public void doExecute(InnerClient client) {
-        List<Sds> commandArgs = client.getCommandArgs();
+        List<SdsSlice> commandArgs = client.getCommandArgs();
 
         // 调用通用的set方法，将key/value保存
         ZedisString key = commandArgs.get(1);
@@ -4,8 +4,8 @@ import server.client.InnerClient;
 import command.AbstractCommand;
 import common.struct.ZedisObject;
 import common.struct.ZedisString;
-import common.struct.impl.Sds;
-import common.constants.ErrorConstants;
+import common.struct.impl.SdsSlice;
+import common.shared.SharedObjects;
 import database.Database;
 
 import java.util.List;
@@ -13,7 +13,7 @@ import java.util.List;
 
 public class StrlenCommand extends AbstractCommand {
     public StrlenCommand() {
-        super("strlen", 2, false, "r");
+        super("strlen", 2, false, "rF", 1, 1, 1);
     }
 
     @Override
@@ -23,9 +23,9 @@ public class StrlenCommand extends AbstractCommand {
 
     @Override
     public void doExecute(InnerClient client) {
-        List<Sds> commandArgs = client.getCommandArgs();
+        List<SdsSlice> commandArgs = client.getCommandArgs();
 
-        Sds key = commandArgs.get(1);
+        SdsSlice key = commandArgs.get(1);
 
         Database db = client.getDatabase();
 
@@ -37,7 +37,7 @@ public class StrlenCommand extends AbstractCommand {
         }
 
         if (!(value instanceof ZedisString)) {
-            client.replyError(ErrorConstants.WRONG_TYPE_ERROR);
+            client.replyShared(SharedObjects.WRONG_TYPE_ERROR);
             return;
         }
 
@@ -1,7 +1,7 @@
 package command.commands;
 
 import command.AbstractCommand;
-import common.struct.impl.Sds;
+import common.struct.impl.SdsSlice;
 import pubsub.PubSub;
 import server.ServerContext;
 import server.client.InnerClient;
@@ -23,7 +23,7 @@ public class SubscribeCommand extends AbstractCommand {
     public void doExecute(InnerClient client) {
         PubSub pubSub = ServerContext.getContext().getServerInstance().getPubSub();
 
-        List<Sds> commandArgs = client.getCommandArgs();
+        List<SdsSlice> commandArgs = client.getCommandArgs();
 
         for (int i = 1; i < commandArgs.size(); i++) {
             pubSub.subscribeChannel(client, commandArgs.get(i).toString());
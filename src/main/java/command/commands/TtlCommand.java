@@ -7,7 +7,7 @@ import java.util.concurrent.TimeUnit;
 
 public class TtlCommand extends GenericTtlCommand {
     public TtlCommand() {
-        super("ttl", 2, false, "r");
+        super("ttl", 2, false, "rF", 1, 1, 1);
     }
 
     @Override
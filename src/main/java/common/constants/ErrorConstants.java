@@ -8,4 +8,12 @@ package common.constants;
 public class ErrorConstants {
     public static final String WRONG_TYPE_ERROR = "WRONGTYPE Operation against a key holding the wrong kind of value";
     public static final String SYNTAX_ERROR = "syntax error";
+    public static final String NOT_INTEGER_ERROR = "value is not an integer or out of range";
+    public static final String MAX_CLIENTS_ERROR = "max number of clients reached";
+    public static final String INVALID_EXPIRE_TIME_ERROR = "invalid expire time in SETEX";
+    public static final String INVALID_CURSOR_ERROR = "invalid cursor";
+    public static final String STRING_TOO_LONG_ERROR = "string exceeds maximum allowed size (512MB)";
+    public static final String BGSAVE_IN_PROGRESS_ERROR = "Background save already in progress";
+    public static final String UNSUPPORTED_COMMAND_ERROR = "this command is not supported when server-threads is greater than 1";
+    public static final String CROSS_PARTITION_ERROR = "this multi-key command can not be executed across partitions";
 }
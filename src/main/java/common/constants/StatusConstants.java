@@ -8,4 +8,5 @@ package common.constants;
 public class StatusConstants {
     public static final String OK_STATUS = "OK";
     public static final String PONG_STATUS = "PONG";
+    public static final String BGSAVE_STARTED_STATUS = "Background saving started";
 }
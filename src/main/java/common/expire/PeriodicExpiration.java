@@ -6,7 +6,7 @@ import common.struct.ZedisString;
 public interface PeriodicExpiration {
     int FAST_MODE = 0;
     int SLOW_MODE = 1;
-    int EXPIRE_CYCLE_FAST_DURATION = 1000;
+    int EXPIRE_CYCLE_FAST_DURATION = 1000;     // 快速模式的执行时间上限（微秒）
 
     void delExpiredPeriodicaly(int mode);
 
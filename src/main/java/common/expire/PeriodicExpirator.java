@@ -1,116 +1,178 @@
 package common.expire;
 
-import common.struct.ZedisString;
 import database.Database;
 import server.ServerContext;
+import server.ZedisServer;
 import server.config.ServerConfig;
 
-import java.util.Map;
-
 
+/**
+ * 定期删除过期键，对应redis中的activeExpireCycle
+ *     (1) 慢速模式：由serverCron调用，每次最多使用 EXPIRE_CYCLE_SLOW_TIME_PER_CALL% 的CPU时间
+ *     (2) 快速模式：在每次事件循环进入select之前调用，最多执行 EXPIRE_CYCLE_FAST_DURATION 微秒，
+ *         只有上一次执行因为超时而退出，或者估计的过期键比例高于可以接受的比例时才会执行
+ * 所有的时间限制都使用System.nanoTime计算
+ *
+ * active-expire-effort（1-10）越大，每轮取样的键越多、可用的时间越长、可以接受的过期键比例越低
+ */
 public class PeriodicExpirator implements PeriodicExpiration {
-    private boolean timeLimitExit;   //
+    private boolean timeLimitExit;  // 上一次执行是否因为超时而退出
+    private long lastFastCycle;     // 上一次快速模式开始的时间（纳秒）
+    private double staleRatio;      // 取样中过期键比例（百分比）的估计，每次执行后按指数移动平均更新
     private Database db;     // 数据库
 
     public static final int EXPIRE_CYCLE_SLOW_TIME_PER_CALL = 25;   // 默认为 25 ，也即是 25 % 的 CPU 时间
     public static final int EXPIRE_CYCLE_LOOKUPS_PER_LOOP = 20;
+    public static final int EXPIRE_CYCLE_ACCEPTABLE_STALE = 10;     // 可以接受的过期键比例（百分比）
+    public static final int EXPIRE_CYCLE_KEYS_PER_STEP = 256;      // 使用过期时间索引时，每检查一次时间之前最多删除的键数量
 
 
     public PeriodicExpirator() {
-        db = ServerContext.getContext().getDatabases();
+        this(ServerContext.getContext().getDatabases());
+    }
+
+    /**
+     * 删除指定数据库中的过期键，多reactor模式下每个reactor只处理自己的键空间分区
+     * @param db
+     */
+    public PeriodicExpirator(Database db) {
+        this.db = db;
+        this.lastFastCycle = System.nanoTime();
     }
 
     @Override
     public void delExpiredPeriodicaly(int mode) {
         // 函数开始的时间
-        long startTime = System.currentTimeMillis();
-
-        // 记录迭代次数
-        int iteration = 0;
-
-
-
-
-
+        long start = System.nanoTime();
 
+        // 根据active-expire-effort调整各项参数，effort为0时与默认值相同
         ServerConfig config = ServerContext.getContext().getServerConfig();
+        int effort = config.getActiveExpireEffort() - 1;
+        int keysPerLoop = EXPIRE_CYCLE_LOOKUPS_PER_LOOP + EXPIRE_CYCLE_LOOKUPS_PER_LOOP / 4 * effort;
+        long fastDuration = EXPIRE_CYCLE_FAST_DURATION + EXPIRE_CYCLE_FAST_DURATION / 4 * effort;   // 微秒
+        int slowTimePerCall = EXPIRE_CYCLE_SLOW_TIME_PER_CALL + 2 * effort;
+        int acceptableStale = EXPIRE_CYCLE_ACCEPTABLE_STALE - effort;
 
-
-        // 确定函数处理的微秒时间上限，不能让出来过期键的过程占用太长时间
-        // EXPIRE_CYCLE_SLOW_TIME_PER_CALL 默认为 25 ，也即是 25 % 的 CPU 时间
-        int serverHz = config.getHz();
-        long timeLimit = 1000000 * EXPIRE_CYCLE_SLOW_TIME_PER_CALL / serverHz / 100;
-
-        timeLimitExit = false;
-
-        if (timeLimit < 0) {
-            timeLimit = 1;
+        if (mode == FAST_MODE) {
+            // 上一次没有超时，并且过期键的比例已经可以接受，不需要执行快速模式
+            if (!this.timeLimitExit && this.staleRatio < acceptableStale) {
+                return;
+            }
+            // 两次快速模式之间至少间隔两倍的执行时间
+            if (start - this.lastFastCycle < fastDuration * 2 * 1000) {
+                return;
+            }
+            this.lastFastCycle = start;
         }
 
-        // 如果是运行在快速模式之下
-        // 那么最多只能运行 FAST_DURATION 微秒
-        // 默认值为 1000 （微秒）
+        // 确定函数处理的纳秒时间上限，不能让处理过期键的过程占用太长时间
+        // 慢速模式：每秒执行hz次，每次最多使用 slowTimePerCall% 的CPU时间
+        // 快速模式：最多运行 fastDuration 微秒
+        long timeLimit;
         if (mode == FAST_MODE) {
-            timeLimit = EXPIRE_CYCLE_FAST_DURATION; /* in microseconds. */
+            timeLimit = fastDuration * 1000;
+        } else {
+            timeLimit = 1000000000L * slowTimePerCall / config.getHz() / 100;
+        }
+        if (timeLimit <= 0) {
+            timeLimit = 1;
         }
 
+        this.timeLimitExit = false;
+
+        long totalSampled = 0;
+        long totalExpired;
+        if (db.isExpireTimeIndexEnabled()) {
+            // 开启了过期时间索引，按时间顺序删除所有到期的键，不需要随机取样
+            totalExpired = delExpiredByTimeIndex(start, timeLimit);
+        } else {
+            totalExpired = 0;
+
+            // 记录迭代次数
+            int iteration = 0;
+            int sampled;
+            int expired;
+            do {
+                long now = System.currentTimeMillis();
+
+                // 获取数据库中带过期时间的键的数量
+                // 如果该数量为 0 ，跳出循环
+                int num = db.expiredKeyNums();
+                if (num == 0) {
+                    break;
+                }
 
+                // 每次最多只能检查 keysPerLoop 个键
+                if (num > keysPerLoop) {
+                    num = keysPerLoop;
+                }
 
+                // 每轮重新统计，根据本轮取样中过期键的比例决定是否继续
+                sampled = 0;
+                expired = 0;
+                while ((num--) > 0) {
+                    // 从过期字典中均匀地随机取样验证
+                    // 如果键已经过期，那么删除它，并将 expired 计数器增一
+                    sampled++;
+                    if (db.tryExpireRandomKey(now)) {
+                        expired++;
+                    }
+                }
+                totalSampled += sampled;
+                totalExpired += expired;
+
+                // 我们不能用太长时间处理过期键，
+                // 所以每遍历 16 次检查一次是否超过了 timeLimit
+                iteration++;
+                if ((iteration & 0xf) == 0 && System.nanoTime() - start > timeLimit) {
+                    this.timeLimitExit = true;
+                    break;
+                }
 
+                // 本轮取样中过期键的比例不高于可以接受的比例时，不再遍历
+            } while (expired * 100 / sampled > acceptableStale);
 
-        int expired = 0;
-        do {
-            long now = System.currentTimeMillis();
-
-            // 获取数据库中带过期时间的键的数量
-            // 如果该数量为 0 ，跳出循环
-            int expiredKeyNums = db.expiredKeyNums();
-            if (expiredKeyNums == 0) {
-                break;
-            }
-
-            // 每次最多只能检查 LOOKUPS_PER_LOOP 个键
-            if (expiredKeyNums > EXPIRE_CYCLE_LOOKUPS_PER_LOOP) {
-                expiredKeyNums = EXPIRE_CYCLE_LOOKUPS_PER_LOOP;
-            }
-
-            // 开始遍历数据库
-            while ((expiredKeyNums--) > 0) {
-                // 从过期键map中随机取值验证
-                Map.Entry<ZedisString, Long> randomEntry = db.randomExpire();
-
-                ZedisString key = randomEntry.getKey();
-                Long expiresTime = randomEntry.getValue();
+            // 按照本次取样中过期键的比例更新估计值，最近的执行权重为5%
+            double current = totalSampled == 0 ? 0 : (double) totalExpired * 100 / totalSampled;
+            this.staleRatio = current * 0.05 + this.staleRatio * 0.95;
+        }
 
-                // 如果键已经过期，那么删除它，并将 expired 计数器增一
-                if (expiresTime <= now) {
-                    db.remove(key);
-                    expired++;
-                }
-            }
+        ZedisServer server = ServerContext.getContext().getServerInstance();
+        if (server != null) {
+            server.getStats().recordExpireCycle(totalExpired, System.nanoTime() - start, this.timeLimitExit, this.staleRatio);
+        }
+    }
 
-            // 我们不能用太长时间处理过期键，
-            // 所以这个函数执行一定时间之后就要返回
-            // 更新遍历次数
-            iteration++;
-
-            // 每遍历 16 次执行一次
-            if ((iteration & 0xf) == 0
-                && (System.currentTimeMillis() - startTime) > timeLimit) {
-                // 如果遍历次数正好是 16 的倍数
-                // 并且遍历的时间超过了 timeLimit
-                // 那么断开 timeLimitExit
-                timeLimitExit = true;
+    /**
+     * 按过期时间的顺序删除到期的键，直到没有到期的键或者用完时间
+     * 每删除EXPIRE_CYCLE_KEYS_PER_STEP个键检查一次时间，单次调用的工作量有上限，没删完的键在下一次调用时继续删除
+     * @param start 开始的时间（纳秒）
+     * @param timeLimit 时间上限（纳秒）
+     * @return 删除的键数量
+     */
+    private long delExpiredByTimeIndex(long start, long timeLimit) {
+        long now = System.currentTimeMillis();
+        long expired = 0;
+
+        int step;
+        do {
+            step = db.expireDueKeys(now, EXPIRE_CYCLE_KEYS_PER_STEP);
+            expired += step;
+            if (step == EXPIRE_CYCLE_KEYS_PER_STEP && System.nanoTime() - start > timeLimit) {
+                this.timeLimitExit = true;
+                break;
             }
+        } while (step == EXPIRE_CYCLE_KEYS_PER_STEP);
 
-            // 已经超时了，返回
-            if (timeLimitExit) {
-                return;
-            }
+        // 没有取样，过期键比例的估计保持为0，是否需要执行快速模式只取决于本次是否超时
+        return expired;
+    }
 
-            // 如果已删除的过期键占当前总数据库带过期时间的键数量的 25 %
-            // 那么不再遍历
-        } while (expired > EXPIRE_CYCLE_LOOKUPS_PER_LOOP / 4);
+    public boolean isTimeLimitExit() {
+        return this.timeLimitExit;
+    }
 
+    public double getStaleRatio() {
+        return this.staleRatio;
     }
 }
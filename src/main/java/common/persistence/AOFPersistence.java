@@ -1,5 +1,6 @@
 package common.persistence;
 
+import common.struct.ZedisString;
 import common.struct.impl.Sds;
 import common.utils.SafeEncoder;
 import org.apache.commons.logging.Log;
@@ -180,7 +181,7 @@ public class AOFPersistence {
      * 并且在该
      * @param command
      */
-    public void feedCommand(List<Sds> command) {
+    public void feedCommand(List<? extends ZedisString> command) {
 
 
         // 转换为协议格式
@@ -247,14 +248,14 @@ public class AOFPersistence {
         return this.aofFlushPostponedStart;
     }
 
-    public String transformCommandToProtocalFormat(List<Sds> commands) {
+    public String transformCommandToProtocalFormat(List<? extends ZedisString> commands) {
         StringBuilder message = new StringBuilder();
 
         message.append(Protocol.MULTI_BULK_PREFIX);
         message.append(commands.size());
         message.append(Protocol.DELIMITER);
 
-        for (Sds str : commands) {
+        for (ZedisString str : commands) {
             message.append(Protocol.BULK_PREFIX);
             // 这里记录的长度不是String类型content本身的长度，而应该是String转为UTF-8的bytes数组的长度
             int contentByteLength = str.length();
@@ -1,6 +1,7 @@
 package common.persistence;
 
 import common.struct.*;
+import common.struct.impl.Dict;
 import common.utils.ByteUtil;
 import common.utils.SafeEncoder;
 import database.Database;
@@ -8,12 +9,12 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import server.ZedisServer;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Iterator;
-import java.util.Map;
 
 
 public class RDBPersistence {
@@ -50,64 +51,82 @@ public class RDBPersistence {
     }
 
     /**
-     * 将数据库保存到磁盘上
+     * 将数据库保存到磁盘上，在事件循环线程中执行
      * @return 返回是否保存成功
      */
     public boolean save() {
-        FileOutputStream fos = null;
-        File tempFile = null;
-        long now = System.currentTimeMillis();
-
-        try {
-            // 创建临时文件
-            tempFile = new File("temp-"+Thread.currentThread().getId() + ".rdb");
-            if (tempFile.exists()) {
-                tempFile.delete();
-            }
-            tempFile.createNewFile();
+        return write(dump());
+    }
 
-            fos = new FileOutputStream(tempFile);
+    /**
+     * 在事件循环线程中把数据库序列化为RDB数据，相当于一个快照
+     * 键空间不是线程安全的，不能在其他线程中遍历
+     * @return RDB数据
+     */
+    private byte [] dump() {
+        long now = System.currentTimeMillis();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
 
-            // 写入 RDB 版本号
-            fos.write(SafeEncoder.encode("REDIS0006"));
+        // 写入 RDB 版本号
+        byte [] version = SafeEncoder.encode("REDIS0006");
+        bos.write(version, 0, version.length);
 
+        Database db = server.getDatabases();
 
-            Database db = server.getDatabases();
+        // 指向数据库键空间
+        Dict<ZedisString, ZedisObject> keySpace = db.getKeySpace();
 
-            // 指向数据库键空间
-            Map<ZedisString, ZedisObject> keySpace = db.getKeySpace();
+        // 创建键空间迭代器
+        Iterator<Dict.Entry<ZedisString, ZedisObject>> iterator = keySpace.iterator();
 
+        saveType(bos, RDB_OPCODE_SELECTDB);
 
+        /*
+         * 遍历数据库，并写入每个键值对的数据
+         */
+        while (iterator.hasNext()) {
+            Dict.Entry<ZedisString, ZedisObject> e = iterator.next();
+            ZedisString key = e.getKey();
+            ZedisObject value = e.getValue();
+            // 不能使用getExpire：遍历期间不能执行惰性删除
+            long expire = db.peekExpire(e);
+
+            // 没有过期时间的键不写入过期时间（-1会被当作已经过期而跳过）
+            saveKeyValuePair(bos, key, value, expire == -1 ? null : expire, now);
+        }
 
-            // 创建键空间迭代器
-            Iterator<Map.Entry<ZedisString, ZedisObject>> iterator = keySpace.entrySet().iterator();
+        /*
+         * 写入 EOF 代码
+         */
+        saveType(bos, RDB_OPCODE_EOF);
 
+        /* CRC64 校验和。
+         *
+         * 如果校验和功能已关闭，那么 rdb.cksum 将为 0 ，
+         * 在这种情况下， RDB 载入时会跳过校验和检查。*/
 
-            saveType(fos, RDB_OPCODE_SELECTDB);
+        return bos.toByteArray();
+    }
 
-            /*
-             * 遍历数据库，并写入每个键值对的数据
-             */
-            while (iterator.hasNext()) {
-                Map.Entry<ZedisString, ZedisObject> e = iterator.next();
-                ZedisString key = e.getKey();
-                ZedisObject value = e.getValue();
-                Long expire = db.getExpire(key);
+    /**
+     * 将RDB数据写入临时文件，再改名为RDB文件，可以在子线程中执行
+     * @param data dump生成的RDB数据
+     * @return 返回是否保存成功
+     */
+    private boolean write(byte [] data) {
+        FileOutputStream fos = null;
+        File tempFile = null;
 
-                saveKeyValuePair(fos, key, value, expire, now);
+        try {
+            // 创建临时文件
+            tempFile = new File("temp-"+Thread.currentThread().getId() + ".rdb");
+            if (tempFile.exists()) {
+                tempFile.delete();
             }
+            tempFile.createNewFile();
 
-
-            /*
-             * 写入 EOF 代码
-             */
-            saveType(fos, RDB_OPCODE_EOF);
-
-            /* CRC64 校验和。
-             *
-             * 如果校验和功能已关闭，那么 rdb.cksum 将为 0 ，
-             * 在这种情况下， RDB 载入时会跳过校验和检查。*/
-
+            fos = new FileOutputStream(tempFile);
+            fos.write(data);
 
             // 冲洗缓存，确保数据已写入磁盘
             fos.flush();
@@ -149,9 +168,16 @@ public class RDBPersistence {
         if (this.inBackgroundSaveProcess) {
             return false;
         }
-        //todo 暂时使用子线程
+        // todo 暂时使用子线程，没有写时复制
+        // 在事件循环线程中生成快照，子线程只负责写入文件，不会访问数据库
+        byte [] data = dump();
+        this.inBackgroundSaveProcess = true;
         Thread t = new Thread(() -> {
-            boolean ret = save();
+            try {
+                write(data);
+            } finally {
+                this.inBackgroundSaveProcess = false;
+            }
         });
 
         t.start();
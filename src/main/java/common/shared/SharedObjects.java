@@ -1,9 +1,60 @@
 package common.shared;
 
+import common.constants.ErrorConstants;
+import common.constants.StatusConstants;
+import common.utils.SafeEncoder;
+import remote.protocol.Protocol;
+
 /**
  * 共享对象
  * 为了优化内存，对于一些经常使用的字符串对象，将其提前创建，需要时直接共享
+ * 回复相关的共享对象都是已经按照协议格式编码好的字节数组（类似redis中的shared.*），回复时直接复制到回复缓冲区，不需要再创建Reply对象
+ * 注意：这些数组是所有客户端共享的，使用时不能修改其内容
  **/
 public class SharedObjects {
-    public static final String NULL_BULK = "$-1\r\n";
+    public static final int SHARED_INTEGERS = 10000;        // 共享的整数回复的范围：[0, SHARED_INTEGERS)
+    public static final int SHARED_BULK_HEADER_LEN = 32;    // 共享的bulk/multi bulk头部的长度范围：[0, SHARED_BULK_HEADER_LEN)
+
+    public static final byte [] NULL_BULK = SafeEncoder.encode("$-1\r\n");
+    public static final byte [] OK = encodeStatus(StatusConstants.OK_STATUS);
+    public static final byte [] PONG = encodeStatus(StatusConstants.PONG_STATUS);
+    public static final byte [] BGSAVE_STARTED = encodeStatus(StatusConstants.BGSAVE_STARTED_STATUS);
+    public static final byte [] CZERO = SafeEncoder.encode(":0\r\n");
+    public static final byte [] CONE = SafeEncoder.encode(":1\r\n");
+
+    public static final byte [] WRONG_TYPE_ERROR = encodeError(ErrorConstants.WRONG_TYPE_ERROR);
+    public static final byte [] SYNTAX_ERROR = encodeError(ErrorConstants.SYNTAX_ERROR);
+    public static final byte [] NOT_INTEGER_ERROR = encodeError(ErrorConstants.NOT_INTEGER_ERROR);
+    public static final byte [] MAX_CLIENTS_ERROR = encodeError(ErrorConstants.MAX_CLIENTS_ERROR);
+    public static final byte [] INVALID_EXPIRE_TIME_ERROR = encodeError(ErrorConstants.INVALID_EXPIRE_TIME_ERROR);
+    public static final byte [] INVALID_CURSOR_ERROR = encodeError(ErrorConstants.INVALID_CURSOR_ERROR);
+    public static final byte [] STRING_TOO_LONG_ERROR = encodeError(ErrorConstants.STRING_TOO_LONG_ERROR);
+    public static final byte [] BGSAVE_IN_PROGRESS_ERROR = encodeError(ErrorConstants.BGSAVE_IN_PROGRESS_ERROR);
+    public static final byte [] UNSUPPORTED_COMMAND_ERROR = encodeError(ErrorConstants.UNSUPPORTED_COMMAND_ERROR);
+    public static final byte [] CROSS_PARTITION_ERROR = encodeError(ErrorConstants.CROSS_PARTITION_ERROR);
+
+    public static final byte [][] INTEGERS = new byte[SHARED_INTEGERS][];                     // ":<n>\r\n"
+    public static final byte [][] BULK_HEADERS = new byte[SHARED_BULK_HEADER_LEN][];          // "$<len>\r\n"
+    public static final byte [][] MULTI_BULK_HEADERS = new byte[SHARED_BULK_HEADER_LEN][];    // "*<len>\r\n"
+
+    static {
+        for (int i = 0; i < SHARED_INTEGERS; i++) {
+            INTEGERS[i] = SafeEncoder.encode(Protocol.INTEGER_PREFIX + i + Protocol.DELIMITER);
+        }
+        INTEGERS[0] = CZERO;
+        INTEGERS[1] = CONE;
+
+        for (int i = 0; i < SHARED_BULK_HEADER_LEN; i++) {
+            BULK_HEADERS[i] = SafeEncoder.encode(Protocol.BULK_PREFIX + i + Protocol.DELIMITER);
+            MULTI_BULK_HEADERS[i] = SafeEncoder.encode(Protocol.MULTI_BULK_PREFIX + i + Protocol.DELIMITER);
+        }
+    }
+
+    private static byte [] encodeStatus(String status) {
+        return SafeEncoder.encode(Protocol.STATUS_PREFIX + status + Protocol.DELIMITER);
+    }
+
+    private static byte [] encodeError(String error) {
+        return SafeEncoder.encode(Protocol.ERROR_PREFIX + error + Protocol.DELIMITER);
+    }
 }
@@ -0,0 +1,574 @@
+package common.struct.impl;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 字典，对应redis中的dict，用于保存数据库的键空间
+ * 使用拉链法解决冲突，字典中有两个哈希表：
+ *     (1) 平时只使用0号哈希表
+ *     (2) 需要扩容或者缩容时创建1号哈希表，然后渐进式地把0号哈希表中的节点迁移到1号哈希表中，
+ *         迁移完成后1号哈希表成为新的0号哈希表
+ * 渐进式rehash把迁移的工作分散到每次查找、添加、删除操作（每次迁移一个桶）以及serverCron（每次最多执行1毫秒）中，
+ * 即使字典中有上千万个键，扩容也不会一次性阻塞事件循环
+ *
+ * 字典不是线程安全的，只能在其所属的线程中访问，包括遍历
+ **/
+public class Dict<K, V> implements Iterable<Dict.Entry<K, V>> {
+    public static final int DICT_HT_INITIAL_SIZE = 4;           // 哈希表的初始大小
+    public static final int DICT_HT_MAX_SIZE = 1 << 30;         // 哈希表的最大大小（数组长度的限制）
+    public static final int HASHTABLE_MIN_FILL = 10;            // 哈希表的使用率低于10%时缩容
+
+    /**
+     * 字典中的节点
+     */
+    public static class Entry<K, V> implements Map.Entry<K, V> {
+        private final K key;
+        private final int hash;
+        private V value;
+        private Entry<K, V> next;
+        private int metadata;   // 由字典的使用者维护的附加信息，字典本身不使用，默认为-1（键空间用来记录键在过期字典中的下标）
+
+        private Entry(K key, int hash, V value, Entry<K, V> next) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+            this.next = next;
+            this.metadata = -1;
+        }
+
+        @Override
+        public K getKey() {
+            return this.key;
+        }
+
+        @Override
+        public V getValue() {
+            return this.value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            V oldValue = this.value;
+            this.value = value;
+            return oldValue;
+        }
+
+        public int getMetadata() {
+            return this.metadata;
+        }
+
+        public void setMetadata(int metadata) {
+            this.metadata = metadata;
+        }
+    }
+
+    /**
+     * 哈希表，大小总是2的幂
+     */
+    private static class Table<K, V> {
+        private final Entry<K, V> [] buckets;
+        private final int sizeMask;
+        private int used;
+
+        private Table(int size) {
+            this.buckets = newEntryArray(size);
+            this.sizeMask = size - 1;
+            this.used = 0;
+        }
+
+        private int size() {
+            return this.buckets.length;
+        }
+    }
+
+    /**
+     * 创建节点数组，Java不能直接创建泛型数组
+     * @param size
+     * @return
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static <K, V> Entry<K, V> [] newEntryArray(int size) {
+        return (Entry<K, V> []) new Entry[size];
+    }
+
+    private Table<K, V> table0;     // 0号哈希表，第一次添加节点时才创建
+    private Table<K, V> table1;     // 1号哈希表，只在rehash期间存在
+    private int rehashIndex;        // 下一个要迁移的0号哈希表的桶，-1表示没有在进行rehash
+
+    public Dict() {
+        this.table0 = null;
+        this.table1 = null;
+        this.rehashIndex = -1;
+    }
+
+    public int size() {
+        return (this.table0 == null ? 0 : this.table0.used) + (this.table1 == null ? 0 : this.table1.used);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean isRehashing() {
+        return this.rehashIndex != -1;
+    }
+
+    /**
+     * @return 两个哈希表的桶数量之和
+     */
+    public long slots() {
+        return (this.table0 == null ? 0 : this.table0.size()) + (this.table1 == null ? 0 : this.table1.size());
+    }
+
+    /**
+     * 查找key对应的节点
+     * key可以是与字典中的key类型不同、但hashCode和equals兼容的对象（例如用SdsSlice查找Sds）
+     * @param key
+     * @return 找不到时返回null
+     */
+    public Entry<K, V> find(Object key) {
+        if (size() == 0) {
+            return null;
+        }
+        if (isRehashing()) {
+            rehashStep();
+        }
+
+        int h = hash(key);
+        Entry<K, V> e = findInTable(this.table0, key, h);
+        if (e == null && isRehashing()) {
+            e = findInTable(this.table1, key, h);
+        }
+        return e;
+    }
+
+    public V get(Object key) {
+        Entry<K, V> e = find(key);
+        return e == null ? null : e.value;
+    }
+
+    public boolean containsKey(Object key) {
+        return find(key) != null;
+    }
+
+    /**
+     * 添加或替换键值对
+     * @param key
+     * @param value
+     * @return 被替换的值，key原本不存在时返回null
+     */
+    public V put(K key, V value) {
+        Entry<K, V> e = addOrFind(key);
+        V oldValue = e.value;
+        e.value = value;
+        return oldValue;
+    }
+
+    /**
+     * 查找key对应的节点，不存在时添加一个值为null的新节点，对应redis中的dictAddRaw
+     * @param key
+     * @return key对应的节点
+     */
+    public Entry<K, V> addOrFind(K key) {
+        return addOrFind(key, Function.identity());
+    }
+
+    /**
+     * 查找key对应的节点，不存在时用toKey转换出的key添加一个值为null的新节点
+     * 用于查找时使用的key不能直接保存在字典中的情况（例如引用查询缓冲区的SdsSlice），只有真正添加新节点时才转换，
+     * 覆盖已经存在的key时不产生任何额外的对象
+     * @param key 查找时使用的key，与转换后的key的hashCode和equals必须兼容
+     * @param toKey 将查找时使用的key转换为保存在字典中的key
+     * @return key对应的节点
+     */
+    public <Q> Entry<K, V> addOrFind(Q key, Function<? super Q, ? extends K> toKey) {
+        if (isRehashing()) {
+            rehashStep();
+        }
+        expandIfNeeded();
+
+        int h = hash(key);
+        Entry<K, V> e = findInTable(this.table0, key, h);
+        if (e == null && isRehashing()) {
+            e = findInTable(this.table1, key, h);
+        }
+        if (e != null) {
+            return e;
+        }
+
+        // rehash期间新节点总是添加到1号哈希表中，0号哈希表的节点数量只减不增
+        Table<K, V> table = isRehashing() ? this.table1 : this.table0;
+        int index = h & table.sizeMask;
+        e = new Entry<>(toKey.apply(key), h, null, table.buckets[index]);
+        table.buckets[index] = e;
+        table.used++;
+        return e;
+    }
+
+    /**
+     * 删除key对应的节点
+     * @param key
+     * @return 被删除的节点，key不存在时返回null
+     */
+    public Entry<K, V> remove(Object key) {
+        if (size() == 0) {
+            return null;
+        }
+        if (isRehashing()) {
+            rehashStep();
+        }
+
+        int h = hash(key);
+        Entry<K, V> e = removeFromTable(this.table0, key, h);
+        if (e == null && isRehashing()) {
+            e = removeFromTable(this.table1, key, h);
+        }
+        return e;
+    }
+
+    public void clear() {
+        this.table0 = null;
+        this.table1 = null;
+        this.rehashIndex = -1;
+    }
+
+    /**
+     * 随机返回一个节点，对应redis中的dictGetRandomKey
+     * 先随机选择一个非空的桶，再在桶的链表中随机选择一个节点
+     * 哈希表的使用率不低于HASHTABLE_MIN_FILL（由serverCron负责缩容），因此期望的探测次数是常数
+     * @param random
+     * @return 字典为空时返回null
+     */
+    public Entry<K, V> randomEntry(Random random) {
+        if (size() == 0) {
+            return null;
+        }
+        if (isRehashing()) {
+            rehashStep();
+        }
+
+        Entry<K, V> head;
+        if (isRehashing()) {
+            // 0号哈希表中rehashIndex之前的桶都已经是空的
+            int size0 = this.table0.size();
+            do {
+                int h = this.rehashIndex + random.nextInt(size0 + this.table1.size() - this.rehashIndex);
+                head = h >= size0 ? this.table1.buckets[h - size0] : this.table0.buckets[h];
+            } while (head == null);
+        } else {
+            do {
+                head = this.table0.buckets[random.nextInt(this.table0.size())];
+            } while (head == null);
+        }
+
+        int length = 0;
+        for (Entry<K, V> e = head; e != null; e = e.next) {
+            length++;
+        }
+        Entry<K, V> e = head;
+        for (int i = random.nextInt(length); i > 0; i--) {
+            e = e.next;
+        }
+        return e;
+    }
+
+    /**
+     * 增量遍历字典，对应redis中的dictScan
+     * 游标按照反向二进制位递增（先递增最高位），因此即使两次调用之间字典发生了扩容或缩容，
+     * 遍历开始时就存在、并且一直没有被删除的节点至少会被返回一次（可能会重复返回）
+     * @param cursor 游标，第一次调用时为0
+     * @param fn 对每个节点调用
+     * @return 下一次调用使用的游标，为0时表示遍历结束
+     */
+    public long scan(long cursor, Consumer<Entry<K, V>> fn) {
+        if (size() == 0) {
+            return 0;
+        }
+
+        long v = cursor;
+        if (!isRehashing()) {
+            long m0 = this.table0.sizeMask;
+            emitBucket(this.table0.buckets[(int) (v & m0)], fn);
+
+            v = nextCursor(v, m0);
+        } else {
+            // 先遍历小表中游标对应的桶，再遍历大表中所有能映射到该桶的桶
+            Table<K, V> small = this.table0;
+            Table<K, V> large = this.table1;
+            if (small.size() > large.size()) {
+                small = this.table1;
+                large = this.table0;
+            }
+            long m0 = small.sizeMask;
+            long m1 = large.sizeMask;
+
+            emitBucket(small.buckets[(int) (v & m0)], fn);
+            do {
+                emitBucket(large.buckets[(int) (v & m1)], fn);
+                v = nextCursor(v, m1);
+            } while ((v & (m0 ^ m1)) != 0);
+        }
+
+        return v;
+    }
+
+    /**
+     * 执行n步渐进式rehash，每一步迁移0号哈希表中的一个桶
+     * 为了避免在连续的空桶上花费太多时间，最多访问n*10个空桶
+     * @param n
+     * @return rehash还没有完成时返回true
+     */
+    public boolean rehash(int n) {
+        if (!isRehashing()) {
+            return false;
+        }
+
+        int emptyVisits = n * 10;
+        while (n-- > 0 && this.table0.used != 0) {
+            while (this.table0.buckets[this.rehashIndex] == null) {
+                this.rehashIndex++;
+                if (--emptyVisits == 0) {
+                    return true;
+                }
+            }
+
+            Entry<K, V> e = this.table0.buckets[this.rehashIndex];
+            while (e != null) {
+                Entry<K, V> next = e.next;
+                int index = e.hash & this.table1.sizeMask;
+                e.next = this.table1.buckets[index];
+                this.table1.buckets[index] = e;
+                this.table0.used--;
+                this.table1.used++;
+                e = next;
+            }
+            this.table0.buckets[this.rehashIndex] = null;
+            this.rehashIndex++;
+        }
+
+        // 0号哈希表已经迁移完成，1号哈希表成为新的0号哈希表
+        if (this.table0.used == 0) {
+            this.table0 = this.table1;
+            this.table1 = null;
+            this.rehashIndex = -1;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 在指定的时间内执行rehash，每次迁移100个桶，由serverCron调用
+     * @param millis
+     * @return 执行的rehash步数
+     */
+    public int rehashMilliseconds(long millis) {
+        long deadline = System.nanoTime() + millis * 1000000;
+        int rehashes = 0;
+        while (rehash(100)) {
+            rehashes += 100;
+            if (System.nanoTime() > deadline) {
+                break;
+            }
+        }
+        return rehashes;
+    }
+
+    /**
+     * 哈希表的使用率低于HASHTABLE_MIN_FILL时，缩小到能容纳所有节点的最小大小，由serverCron调用
+     * @return 是否开始了缩容
+     */
+    public boolean shrinkIfNeeded() {
+        if (this.table0 == null || isRehashing()) {
+            return false;
+        }
+
+        int size = this.table0.size();
+        if (size > DICT_HT_INITIAL_SIZE && (long) this.table0.used * 100 / size < HASHTABLE_MIN_FILL) {
+            return expand(Math.max(this.table0.used, DICT_HT_INITIAL_SIZE));
+        }
+        return false;
+    }
+
+    /**
+     * 遍历字典中的所有节点，遍历期间可以删除当前节点，但不能执行其他修改
+     */
+    @Override
+    public Iterator<Entry<K, V>> iterator() {
+        return new DictIterator();
+    }
+
+    private class DictIterator implements Iterator<Entry<K, V>> {
+        private int tableIndex;         // 正在遍历的哈希表
+        private int bucketIndex;        // 正在遍历的桶
+        private Entry<K, V> nextEntry;
+
+        private DictIterator() {
+            this.tableIndex = 0;
+            this.bucketIndex = -1;
+            this.nextEntry = null;
+            advance();
+        }
+
+        private void advance() {
+            if (this.nextEntry != null) {
+                this.nextEntry = this.nextEntry.next;
+            }
+            while (this.nextEntry == null) {
+                Table<K, V> table = this.tableIndex == 0 ? Dict.this.table0 : Dict.this.table1;
+                if (table == null) {
+                    return;
+                }
+                if (++this.bucketIndex >= table.size()) {
+                    if (this.tableIndex == 1) {
+                        return;
+                    }
+                    this.tableIndex = 1;
+                    this.bucketIndex = -1;
+                    continue;
+                }
+                this.nextEntry = table.buckets[this.bucketIndex];
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.nextEntry != null;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (this.nextEntry == null) {
+                throw new NoSuchElementException();
+            }
+            Entry<K, V> e = this.nextEntry;
+            advance();
+            return e;
+        }
+    }
+
+    /**
+     * 执行一步rehash，在每次查找、添加、删除时调用
+     */
+    private void rehashStep() {
+        rehash(1);
+    }
+
+    /**
+     * 节点数量达到哈希表的大小时扩容为节点数量的两倍
+     */
+    private void expandIfNeeded() {
+        if (isRehashing()) {
+            return;
+        }
+        if (this.table0 == null) {
+            expand(DICT_HT_INITIAL_SIZE);
+            return;
+        }
+
+        int used = this.table0.used;
+        int size = this.table0.size();
+        if (used >= size) {
+            expand((int) Math.min((long) used * 2, DICT_HT_MAX_SIZE));
+        }
+    }
+
+    /**
+     * 创建一个能容纳size个节点的哈希表，如果0号哈希表还不存在则直接作为0号哈希表，否则开始rehash
+     * @param size
+     * @return 是否创建了新的哈希表
+     */
+    private boolean expand(int size) {
+        if (isRehashing() || (this.table0 != null && this.table0.used > size)) {
+            return false;
+        }
+
+        int realSize = nextPower(size);
+        if (this.table0 != null && realSize == this.table0.size()) {
+            return false;
+        }
+
+        Table<K, V> table = new Table<>(realSize);
+        if (this.table0 == null) {
+            this.table0 = table;
+            return true;
+        }
+
+        this.table1 = table;
+        this.rehashIndex = 0;
+        return true;
+    }
+
+    private Entry<K, V> findInTable(Table<K, V> table, Object key, int h) {
+        for (Entry<K, V> e = table.buckets[h & table.sizeMask]; e != null; e = e.next) {
+            if (e.hash == h && (e.key == key || key.equals(e.key))) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    private Entry<K, V> removeFromTable(Table<K, V> table, Object key, int h) {
+        int index = h & table.sizeMask;
+        Entry<K, V> prev = null;
+        for (Entry<K, V> e = table.buckets[index]; e != null; prev = e, e = e.next) {
+            if (e.hash == h && (e.key == key || key.equals(e.key))) {
+                if (prev == null) {
+                    table.buckets[index] = e.next;
+                } else {
+                    prev.next = e.next;
+                }
+                table.used--;
+                return e;
+            }
+        }
+        return null;
+    }
+
+    private static <K, V> void emitBucket(Entry<K, V> e, Consumer<Entry<K, V>> fn) {
+        while (e != null) {
+            // 先保存next，允许在回调中删除当前节点
+            Entry<K, V> next = e.next;
+            fn.accept(e);
+            e = next;
+        }
+    }
+
+    /**
+     * 反向二进制递增：把掩码之外的位置为1，反转后加1再反转回来，相当于从最高位开始递增游标
+     */
+    private static long nextCursor(long v, long mask) {
+        v |= ~mask;
+        v = Long.reverse(v);
+        v++;
+        return Long.reverse(v);
+    }
+
+    private static int nextPower(int size) {
+        if (size >= DICT_HT_MAX_SIZE) {
+            return DICT_HT_MAX_SIZE;
+        }
+        int n = DICT_HT_INITIAL_SIZE;
+        while (n < size) {
+            n <<= 1;
+        }
+        return n;
+    }
+
+    /**
+     * 对key的hashCode再做一次混淆，使低位也能反映整个hashCode，因为桶的下标只使用低位
+     */
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -5,6 +5,7 @@ import common.struct.ZedisString;
 import remote.protocol.Protocol;
 import common.utils.SafeEncoder;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -95,6 +96,33 @@ public class Sds implements ZedisString, Comparable<Sds> {
         return createSds(initlen, init);
     }
 
+    /**
+     * 根据给定数组中[offset, offset + length)范围内的内容创建Sds，数据只复制一次
+     * @param init 初始内容
+     * @param offset 初始内容在数组中的起始位置
+     * @param length 初始内容的长度
+     * @return 新的字符串
+     */
+    public static Sds createSds(byte[] init, int offset, int length) {
+        Sds sds = new Sds(length, 0, null);
+        System.arraycopy(init, offset, sds.buf, 0, length);
+        return sds;
+    }
+
+    /**
+     * 直接使用给定的数组作为Sds的存储数组，创建一个长度为数组长度的Sds，不会复制数据
+     * 调用方需要保证之后不再修改该数组
+     * @param buf 字符串内容
+     * @return 新的字符串
+     */
+    public static Sds wrapSds(byte[] buf) {
+        Sds sds = new Sds();
+        sds.buf = buf;
+        sds.len = buf.length;
+        sds.free = 0;
+        return sds;
+    }
+
     /**
      * 根据给定String创建Sds
      * @param str
@@ -184,9 +212,18 @@ public class Sds implements ZedisString, Comparable<Sds> {
 
     @Override
     public void append(ZedisString str) {
-        String string = str.toString();
-        byte [] bytes = SafeEncoder.encode(string);
-        append(bytes);
+        // Sds和SdsSlice可以直接复制底层的字节数据，无需转换为String
+        if (str instanceof Sds) {
+            Sds other = (Sds) str;
+            append(other.buf, 0, other.len);
+        } else if (str instanceof SdsSlice) {
+            SdsSlice other = (SdsSlice) str;
+            append(other.getBuffer(), other.getOffset(), other.length());
+        } else {
+            String string = str.toString();
+            byte [] bytes = SafeEncoder.encode(string);
+            append(bytes);
+        }
     }
 
     @Override
@@ -203,13 +240,39 @@ public class Sds implements ZedisString, Comparable<Sds> {
     }
 
     public void append(byte [] bytes) {
-        int length = bytes.length;
+        append(bytes, 0, bytes.length);
+    }
+
+    /**
+     * 将数组中[offset, offset + length)范围内的数据追加到Sds中
+     * @param bytes 数据
+     * @param offset 起始位置
+     * @param length 长度
+     */
+    public void append(byte [] bytes, int offset, int length) {
+        // 扩展空间，保证有足够的存储空间
+        this.expand(length);
+
+        // 填充数据
+        System.arraycopy(bytes, offset, this.buf, this.len, length);
+
+        // 更新Sds长度属性
+        increaseLength(length);
+    }
+
+    /**
+     * 将ByteBuffer中剩余的数据追加到Sds中
+     * 数据直接从ByteBuffer复制到Sds内部的字节数组，不会创建中间数组
+     * @param src 处于读模式的ByteBuffer
+     */
+    public void append(ByteBuffer src) {
+        int length = src.remaining();
 
         // 扩展空间，保证有足够的存储空间
         this.expand(length);
 
         // 填充数据
-        System.arraycopy(bytes, 0, this.buf, this.len, length);
+        src.get(this.buf, this.len, length);
 
         // 更新Sds长度属性
         increaseLength(length);
@@ -390,6 +453,9 @@ public class Sds implements ZedisString, Comparable<Sds> {
                 && this.compareTo(o) == 0) {
                 return true;
             }
+        } else if (other instanceof SdsSlice) {
+            // 命令参数以SdsSlice表示，需要能与数据库中保存的Sds进行比较
+            return ((SdsSlice) other).contentEquals(this.buf, 0, this.len);
         }
 
         return false;
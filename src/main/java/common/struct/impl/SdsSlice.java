@@ -0,0 +1,234 @@
+package common.struct.impl;
+
+import common.struct.ObjectType;
+import common.struct.ZedisString;
+import remote.protocol.Protocol;
+
+import java.util.Arrays;
+
+/**
+ * 字节数组的只读视图，由 (array, offset, length) 表示
+ * 主要用于表示从查询缓冲区中解析出的命令参数：参数直接引用查询缓冲区中的数据，而不需要将数据复制出来
+ *
+ * 注意：
+ * （1）由于引用的是查询缓冲区中的数据，SdsSlice只在命令执行期间有效，
+ *     命令需要保存参数（比如写入数据库）时，必须通过toSds()创建一个拥有独立数据的Sds
+ * （2）SdsSlice对象会被RequestParser复用，因此不能将其作为key放入Map之类的容器中长期保存
+ * （3）大参数会被直接读入一个单独分配的数组，这种情况下视图“拥有”该数组，toSds()会直接使用该数组创建Sds，而不需要再复制
+ * 线程不安全
+ */
+public class SdsSlice implements ZedisString {
+    private byte [] buf;    // 引用的字节数组
+    private int offset;     // 视图在字节数组中的起始位置
+    private int len;        // 视图的长度
+    private boolean owned;  // 视图是否独占引用的整个数组，为true时toSds()可以直接使用该数组
+
+    public SdsSlice(byte [] buf, int offset, int length) {
+        reset(buf, offset, length);
+    }
+
+    /**
+     * 根据给定Sds创建一个覆盖其全部内容的视图
+     * @param sds
+     * @return
+     */
+    public static SdsSlice createSlice(Sds sds) {
+        return new SdsSlice(sds.toArrayWithOutCopy(), 0, sds.length());
+    }
+
+    /**
+     * 重新设置视图引用的范围，用于复用SdsSlice对象
+     * @param buf 引用的字节数组
+     * @param offset 起始位置
+     * @param length 长度
+     */
+    public void reset(byte [] buf, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > buf.length) {
+            throw new IllegalArgumentException("The 'offset' or 'length' argument is illegal");
+        }
+        this.buf = buf;
+        this.offset = offset;
+        this.len = length;
+        this.owned = false;
+    }
+
+    /**
+     * 让视图引用一个独占的数组（视图覆盖数组的全部内容），之后调用toSds()时会直接使用该数组，不再复制
+     * @param buf 视图独占的字节数组，调用方之后不能再修改该数组
+     */
+    public void resetOwned(byte [] buf) {
+        this.buf = buf;
+        this.offset = 0;
+        this.len = buf.length;
+        this.owned = true;
+    }
+
+    /**
+     * 将视图引用的数据复制到一个独立的字节数组中，之后该视图不再引用原来的数组
+     * 当视图引用的原数组中的数据即将被覆盖时（比如查询缓冲区被压缩），需要调用该方法
+     */
+    public void detach() {
+        if (this.owned) {
+            return;
+        }
+        this.buf = Arrays.copyOfRange(this.buf, this.offset, this.offset + this.len);
+        this.offset = 0;
+    }
+
+    /**
+     * 创建一个包含该视图内容的Sds，新的Sds拥有独立的数据
+     * 如果视图独占引用的数组，则直接将数组的所有权转移给新的Sds，不复制数据，之后再次调用该方法会复制数据
+     * @return
+     */
+    public Sds toSds() {
+        if (this.owned) {
+            this.owned = false;
+            return Sds.wrapSds(this.buf);
+        }
+        return Sds.createSds(this.buf, this.offset, this.len);
+    }
+
+    public byte [] getBuffer() {
+        return this.buf;
+    }
+
+    public int getOffset() {
+        return this.offset;
+    }
+
+    /******************************************
+     * ZedisObject接口的方法
+     ******************************************/
+
+    @Override
+    public ObjectType getType() {
+        return ObjectType.STRING;
+    }
+
+    /******************************************
+     * ZedisString接口的方法
+     ******************************************/
+
+    @Override
+    public int length() {
+        return this.len;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index >= this.len) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        return (char)this.buf[this.offset + index];
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.len == 0;
+    }
+
+    @Override
+    public int indexOf(char c) {
+        return indexOf(0, c);
+    }
+
+    @Override
+    public int indexOf(int start, char c) {
+        byte byteC = (byte)c;
+        for (int i = start; i < this.len; i++) {
+            if (this.buf[this.offset + i] == byteC) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public void append(char c) {
+        throw new UnsupportedOperationException("SdsSlice is read-only");
+    }
+
+    @Override
+    public void append(ZedisString str) {
+        throw new UnsupportedOperationException("SdsSlice is read-only");
+    }
+
+    @Override
+    public void append(String str) {
+        throw new UnsupportedOperationException("SdsSlice is read-only");
+    }
+
+    /**
+     * 缩小视图的范围，保留指定的范围[start, end)，不会复制数据
+     * @param start 截取开始范围，包括该下标
+     * @param end 截取结束范围，不包括该下标
+     */
+    @Override
+    public void cut(int start, int end) {
+        if (start < 0 || start > end || end > this.len) {
+            throw new IllegalArgumentException("The 'start' or 'end' argument is illegal");
+        }
+        if (start != 0 || end != this.len) {
+            this.owned = false;
+        }
+        this.offset += start;
+        this.len = end - start;
+    }
+
+    /**
+     * hashCode的计算方式与Sds保持一致，保证内容相同的SdsSlice和Sds可以互相作为key查找
+     * @return
+     */
+    @Override
+    public int hashCode() {
+        int h = 0;
+        for (int i = this.offset; i < this.offset + this.len; i++) {
+            h = 31 * h + this.buf[i];
+        }
+        return h;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+
+        if (other instanceof SdsSlice) {
+            SdsSlice o = (SdsSlice)other;
+            return contentEquals(o.buf, o.offset, o.len);
+        } else if (other instanceof Sds) {
+            Sds o = (Sds)other;
+            return contentEquals(o.toArrayWithOutCopy(), 0, o.length());
+        }
+
+        return false;
+    }
+
+    /**
+     * 比较视图的内容与给定数组的指定范围是否相同
+     * @param otherBuf 字节数组
+     * @param otherOffset 起始位置
+     * @param otherLength 长度
+     * @return 内容相同返回true
+     */
+    public boolean contentEquals(byte [] otherBuf, int otherOffset, int otherLength) {
+        if (this.len != otherLength) {
+            return false;
+        }
+
+        for (int i = 0; i < this.len; i++) {
+            if (this.buf[this.offset + i] != otherBuf[otherOffset + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return new String(this.buf, this.offset, this.len, Protocol.CHARSET);
+    }
+}
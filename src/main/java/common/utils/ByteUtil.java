@@ -1,5 +1,9 @@
 package common.utils;
 
+import common.struct.ZedisString;
+import common.struct.impl.Sds;
+import common.struct.impl.SdsSlice;
+
 
 public class ByteUtil {
     public static byte [] longToBytes(long integer) {
@@ -99,31 +103,85 @@ public class ByteUtil {
     }
 
     /**
-     * 将bytes数组中的字符表示转换为整数
+     * 将bytes数组中的字符表示转换为整数，与parseLong(bytes, 0, bytes.length)相同
      * @param bytes
      * @return
+     * @throws NumberFormatException 格式错误或者溢出时抛出
      */
     public static long transformBytesToLong(byte [] bytes) {
-        long val = 0;
-        int index = 0;
+        return parseLong(bytes, 0, bytes.length);
+    }
+
+    /**
+     * 将bytes数组中[offset, offset + length)范围内的字符表示转换为long，整个过程不会创建任何对象（出错的情况除外）
+     * 格式与Long.parseLong相同：可选的正负号，之后至少有一个数字，不能有其他字符
+     * 会检查溢出，可以正确解析Long.MIN_VALUE
+     * @param bytes 字节数组
+     * @param offset 起始位置
+     * @param length 长度
+     * @return 转换结果
+     * @throws NumberFormatException 内容不是一个合法的整数，或者超出了long的表示范围
+     */
+    public static long parseLong(byte [] bytes, int offset, int length) {
+        if (length <= 0) {
+            throw new NumberFormatException("value is not an integer");
+        }
+
+        int index = offset;
+        int end = offset + length;
         boolean negative = false;
+        long limit = -Long.MAX_VALUE;
 
-        if ((char) bytes[0] == '-') {
-            negative = true;
+        byte first = bytes[index];
+        if (first == '-' || first == '+') {
+            if (first == '-') {
+                negative = true;
+                limit = Long.MIN_VALUE;
+            }
+            // 只有一个符号
+            if (length == 1) {
+                throw new NumberFormatException("value is not an integer");
+            }
             index++;
         }
 
-        while (index < bytes.length) {
-            char c = (char)bytes[index];
-            if (c >= '0' && c <= '9') {
-                val = val * 10 + (c - '0');
-                index++;
-            } else {
-                throw new IllegalStateException();
+        // 与Long.parseLong一样，以负数的形式进行累加，这样才能表示Long.MIN_VALUE
+        long multmin = limit / 10;
+        long result = 0;
+        while (index < end) {
+            int digit = bytes[index++] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("value is not an integer");
             }
+            if (result < multmin) {
+                throw new NumberFormatException("value is out of range");
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw new NumberFormatException("value is out of range");
+            }
+            result -= digit;
+        }
+
+        return negative ? result : -result;
+    }
+
+    /**
+     * 将字符串的内容转换为long，对于Sds和SdsSlice直接在其内部数组上解析，不会创建String
+     * @param str 字符串
+     * @return 转换结果
+     * @throws NumberFormatException 内容不是一个合法的整数，或者超出了long的表示范围
+     */
+    public static long parseLong(ZedisString str) {
+        if (str instanceof SdsSlice) {
+            SdsSlice slice = (SdsSlice) str;
+            return parseLong(slice.getBuffer(), slice.getOffset(), slice.length());
+        } else if (str instanceof Sds) {
+            Sds sds = (Sds) str;
+            return parseLong(sds.toArrayWithOutCopy(), 0, sds.length());
         }
 
-        return negative ? -1 * val : val;
+        return Long.parseLong(str.toString());
     }
 
 }
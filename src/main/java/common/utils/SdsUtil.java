@@ -22,12 +22,23 @@ public class SdsUtil {
      * @return 函数返回一个 sds 数组
      */
     public static Sds[] splitArgs(Sds line){
-        byte[] content = line.toArrayWithOutCopy();
+        return splitArgs(line.toArrayWithOutCopy(), 0, line.length());
+    }
+
+    /**
+     * 将字节数组中[start, end)范围内的一行文本分割成多个参数，格式同splitArgs(Sds)
+     * 直接在给定数组上进行解析，无需先将这一行复制出来
+     * @param content 字节数组
+     * @param start 文本的起始位置
+     * @param end 文本的结束位置（不包括）
+     * @return 函数返回一个 sds 数组
+     */
+    public static Sds[] splitArgs(byte[] content, int start, int end){
         List<Sds> list = new ArrayList<>();
 
         Sds current = null;
 
-        int index = 0, length = content.length;
+        int index = start, length = end;
 
         while(true){
             // 跳过空白
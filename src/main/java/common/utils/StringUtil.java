@@ -198,6 +198,151 @@ public class StringUtil {
         return matcher.find();
     }
 
+    /**
+     * 将表示内存大小的字符串转换为字节数，对应redis中的memtoll
+     * 支持的单位（不区分大小写）：b、k（1000）、kb（1024）、m（1000^2）、mb（1024^2）、g（1000^3）、gb（1024^3），没有单位时表示字节
+     * @param str 比如 "1gb"、"32mb"、"100"
+     * @return 字节数，格式错误或者为负数时返回-1
+     */
+    public static long memToLong(String str) {
+        int index = 0;
+        while (index < str.length() && Character.isDigit(str.charAt(index))) {
+            index++;
+        }
+
+        String unit = str.substring(index).toLowerCase();
+        long mul;
+        switch (unit) {
+            case "": case "b": mul = 1; break;
+            case "k": mul = 1000; break;
+            case "kb": mul = 1024; break;
+            case "m": mul = 1000L * 1000; break;
+            case "mb": mul = 1024L * 1024; break;
+            case "g": mul = 1000L * 1000 * 1000; break;
+            case "gb": mul = 1024L * 1024 * 1024; break;
+            default: return -1;
+        }
+
+        if (index == 0) {
+            return -1;
+        }
+        try {
+            return Math.multiplyExact(Long.parseLong(str.substring(0, index)), mul);
+        } catch (ArithmeticException | NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * glob风格的模式匹配，对应redis中的stringmatchlen
+     * 支持的模式：* 匹配任意数量的字符，? 匹配一个字符，[abc]、[^abc]、[a-z] 匹配字符集合，\ 转义下一个字符
+     * @param pattern 模式
+     * @param str 被匹配的字符串
+     * @param nocase 是否忽略大小写
+     * @return 是否匹配
+     */
+    public static boolean stringMatch(String pattern, String str, boolean nocase) {
+        return stringMatch(pattern, 0, str, 0, nocase);
+    }
+
+    private static boolean stringMatch(String pattern, int p, String str, int s, boolean nocase) {
+        int patternLen = pattern.length();
+        int strLen = str.length();
+
+        while (p < patternLen && s < strLen) {
+            char c = pattern.charAt(p);
+            switch (c) {
+                case '*':
+                    // 连续的*等价于一个*
+                    while (p + 1 < patternLen && pattern.charAt(p + 1) == '*') {
+                        p++;
+                    }
+                    if (p + 1 == patternLen) {
+                        return true;
+                    }
+                    for (int i = s; i < strLen; i++) {
+                        if (stringMatch(pattern, p + 1, str, i, nocase)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                case '?':
+                    s++;
+                    break;
+                case '[': {
+                    p++;
+                    boolean not = p < patternLen && pattern.charAt(p) == '^';
+                    if (not) {
+                        p++;
+                    }
+                    boolean match = false;
+                    char sc = str.charAt(s);
+                    while (p < patternLen && pattern.charAt(p) != ']') {
+                        char pc = pattern.charAt(p);
+                        if (pc == '\\' && p + 1 < patternLen) {
+                            p++;
+                            match |= equalsChar(pattern.charAt(p), sc, nocase);
+                        } else if (p + 2 < patternLen && pattern.charAt(p + 1) == '-') {
+                            char start = pc;
+                            char end = pattern.charAt(p + 2);
+                            if (start > end) {
+                                char tmp = start;
+                                start = end;
+                                end = tmp;
+                            }
+                            char target = sc;
+                            if (nocase) {
+                                start = Character.toLowerCase(start);
+                                end = Character.toLowerCase(end);
+                                target = Character.toLowerCase(target);
+                            }
+                            match |= target >= start && target <= end;
+                            p += 2;
+                        } else {
+                            match |= equalsChar(pc, sc, nocase);
+                        }
+                        p++;
+                    }
+                    if (not) {
+                        match = !match;
+                    }
+                    if (!match) {
+                        return false;
+                    }
+                    s++;
+                    break;
+                }
+                case '\\':
+                    // 转义之后按普通字符处理
+                    if (p + 1 < patternLen) {
+                        p++;
+                    }
+                    if (!equalsChar(pattern.charAt(p), str.charAt(s), nocase)) {
+                        return false;
+                    }
+                    s++;
+                    break;
+                default:
+                    if (!equalsChar(c, str.charAt(s), nocase)) {
+                        return false;
+                    }
+                    s++;
+                    break;
+            }
+            p++;
+        }
+
+        // 字符串已经匹配完，剩余的模式只能是*
+        while (p < patternLen && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == patternLen && s == strLen;
+    }
+
+    private static boolean equalsChar(char a, char b, boolean nocase) {
+        return a == b || (nocase && Character.toLowerCase(a) == Character.toLowerCase(b));
+    }
+
     public static String toQuoted(String str) {
         StringBuilder sb = new StringBuilder();
         int len = str.length();
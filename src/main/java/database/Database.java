@@ -4,6 +4,8 @@ import common.expire.InertExpiration;
 import common.expire.PeriodicExpiration;
 import common.struct.ZedisObject;
 import common.struct.ZedisString;
+import common.struct.impl.Dict;
+import common.struct.impl.SdsSlice;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -13,24 +15,46 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class Database {
 
-    private Map<ZedisString, ZedisObject> keySpace;       // 数据库健空间，保存着数据库中所有的键值对, key是字符串，value是5种类型
-    private Map<ZedisString, Long> expires;                // 记录键的过期时间，key为键，值为过期时间 UNIX 时间戳
+    private Dict<ZedisString, ZedisObject> keySpace;      // 数据库健空间，保存着数据库中所有的键值对, key是字符串，value是5种类型
+    private ExpireIndex expires;                           // 记录键的过期时间 UNIX 时间戳，通过键空间节点的metadata按下标访问
     private Map<ZedisString, ZedisObject> blockingKeys;   // 正处于阻塞状态的健
     private Map<ZedisString, ZedisObject> readyKeys;      // 可以解除阻塞状态的健
     private Map<ZedisString, ZedisObject> watchedKeys;    // 正在被watch命令监视的健
 
     //private long id; 舍弃分库相关设计
     private long avgTtl;    // 统计信息，数据库健的评价TTL
+    private long dirty;     // 数据库被修改的次数，对应redis中的server.dirty，由写命令在修改数据库之后增加
 
     private Random random = new Random();
 
     public Database() {
-        this.keySpace = new ConcurrentHashMap<>();
-        this.expires = new ConcurrentHashMap<>();
+        this(false);
+    }
+
+    /**
+     * @param expireTimeIndex 是否维护按过期时间排序的索引，开启后定期删除按时间顺序删除到期的键
+     */
+    public Database(boolean expireTimeIndex) {
+        this.keySpace = new Dict<>();
+        this.expires = new ExpireIndex(expireTimeIndex);
         this.blockingKeys = new ConcurrentHashMap<>();
         this.readyKeys = new ConcurrentHashMap<>();
         this.watchedKeys = new ConcurrentHashMap<>();
         this.avgTtl = 0;
+        this.dirty = 0;
+    }
+
+    /**
+     * 记录数据库被修改，写命令每修改一个键调用一次
+     * 数据库只在其所属的线程中修改，因此不需要同步
+     * @param count 修改的次数
+     */
+    public void incrDirty(long count) {
+        this.dirty += count;
+    }
+
+    public long getDirty() {
+        return this.dirty;
     }
 
     /**
@@ -40,26 +64,30 @@ public class Database {
      * @return
      */
     public ZedisObject lookupByKey(ZedisString key) {
-        // 惰性删除策略，访问数据前如果数据到期，则进行惰性删除
-        delExpiredIfNeeded(key);
-
-        ZedisObject res = this.keySpace.get(key);
+        // 只查找一次键空间，过期时间从节点中读取
+        Dict.Entry<ZedisString, ZedisObject> e = this.keySpace.find(key);
+        if (e == null) {
+            return null;
+        }
 
-        if (res != null) {
-            //todo 更新对象的访问lru时间等
-            return res;
-        } else {
+        // 惰性删除策略，访问数据前如果数据到期，则进行惰性删除
+        if (expireIfNeeded(e)) {
             return null;
         }
+
+        //todo 更新对象的访问lru时间等
+        return e.getValue();
     }
 
     /**
      * 尝试将键值对 key 和 val 添加到数据库中。
+     * 如果key或value是引用查询缓冲区的命令参数（SdsSlice），则在这里创建拥有独立数据的Sds后再保存
      * @param key
      * @param value
      */
     public void add(ZedisString key, ZedisObject value) {
-        ZedisObject oldValue = this.keySpace.put(key, value);
+        // 覆盖已经存在的键时保留原来的键，只有添加新的键时才复制
+        this.keySpace.addOrFind(key, Database::toOwned).setValue(toOwned(value));
     }
 
     /**
@@ -84,10 +112,10 @@ public class Database {
      * @return
      */
     public boolean exists(ZedisString key) {
-        // 惰性删除策略，访问数据前如果数据到期，则进行惰性删除
-        delExpiredIfNeeded(key);
+        Dict.Entry<ZedisString, ZedisObject> e = this.keySpace.find(key);
 
-        return this.keySpace.containsKey(key);
+        // 惰性删除策略，访问数据前如果数据到期，则进行惰性删除
+        return e != null && !expireIfNeeded(e);
     }
 
     /**
@@ -97,16 +125,14 @@ public class Database {
      * @return
      */
     public boolean delete(ZedisString key) {
-        // 惰性删除策略，访问数据前如果数据到期，则进行惰性删除
-        delExpiredIfNeeded(key);
-
-        ZedisObject oldVal = this.keySpace.remove(key);
-
-        if (oldVal == null) {
+        Dict.Entry<ZedisString, ZedisObject> e = this.keySpace.remove(key);
+        if (e == null) {
             return false;
-        } else {
-            return true;
         }
+
+        // 键被删除时同时删除它的过期时间，已经过期的键视为不存在
+        long expire = this.expires.remove(e);
+        return expire == -1 || expire > System.currentTimeMillis();
     }
 
     /**
@@ -114,8 +140,10 @@ public class Database {
      * @param key
      */
     public void remove(ZedisString key) {
-        this.keySpace.remove(key);
-        this.expires.remove(key);
+        Dict.Entry<ZedisString, ZedisObject> e = this.keySpace.remove(key);
+        if (e != null) {
+            this.expires.remove(e);
+        }
     }
 
     /**
@@ -131,54 +159,173 @@ public class Database {
         return this.expires.size();
     }
 
+    /**
+     * 设置键的过期时间，过期时间记录在键空间的节点中
+     * 键必须已经存在于键空间中，键不存在时什么也不做
+     * @param key
+     * @param when 过期时间 UNIX 时间戳（毫秒）
+     */
     public void setExpire(ZedisString key, long when) {
-        this.expires.put(key, when);
+        Dict.Entry<ZedisString, ZedisObject> e = this.keySpace.find(key);
+        if (e != null) {
+            this.expires.put(e, when);
+        }
     }
 
     public long getExpire(ZedisString key) {
+        Dict.Entry<ZedisString, ZedisObject> e = this.keySpace.find(key);
+
         // 惰性删除策略，访问数据前如果数据到期，则进行惰性删除
-        delExpiredIfNeeded(key);
+        if (e == null || expireIfNeeded(e)) {
+            return -1;
+        }
 
         // 返回key的过期时间，如果不存在，则返回-1
-        return this.expires.getOrDefault(key, -1L);
+        return this.expires.get(e);
     }
 
     public Long removeExpire(ZedisString key) {
-        return this.expires.remove(key);
+        Dict.Entry<ZedisString, ZedisObject> e = this.keySpace.find(key);
+        if (e == null) {
+            return null;
+        }
+
+        long expire = this.expires.remove(e);
+        return expire == -1 ? null : expire;
     }
 
 
     public boolean isExpired(ZedisString key) {
-        Long expire = this.expires.get(key);
-        if (expire == null) {
+        Dict.Entry<ZedisString, ZedisObject> e = this.keySpace.find(key);
+        return e != null && isExpired(e);
+    }
+
+    //todo 异步删除
+    public void delExpiredIfNeeded(ZedisString key) {
+        Dict.Entry<ZedisString, ZedisObject> e = this.keySpace.find(key);
+        if (e != null) {
+            expireIfNeeded(e);
+        }
+    }
+
+    private boolean isExpired(Dict.Entry<ZedisString, ZedisObject> e) {
+        long expire = this.expires.get(e);
+        return expire != -1 && expire <= System.currentTimeMillis();
+    }
+
+    /**
+     * 如果节点对应的键已经过期，那么删除它
+     * @param e 键空间中的节点
+     * @return 键是否已经过期
+     */
+    private boolean expireIfNeeded(Dict.Entry<ZedisString, ZedisObject> e) {
+        if (!isExpired(e)) {
             return false;
         }
+        this.keySpace.remove(e.getKey());
+        this.expires.remove(e);
+        return true;
+    }
 
-        if (expire <= System.currentTimeMillis()) {
-            return true;
-        } else {
+    /**
+     * 从过期字典中均匀地随机取样一个键，如果已经过期则删除，对应redis中的activeExpireCycleTryExpire
+     * 取样只读取过期时间数组，键已经过期时才访问键空间的节点，O(1)
+     * @param now 当前时间
+     * @return 取样的键是否已经过期，没有设置了过期时间的键时返回false
+     */
+    public boolean tryExpireRandomKey(long now) {
+        int slot = this.expires.randomSlot(this.random);
+        if (slot == -1 || this.expires.getWhen(slot) > now) {
             return false;
         }
+        remove(this.expires.getEntry(slot).getKey());
+        return true;
     }
 
-    //todo 异步删除
-    public void delExpiredIfNeeded(ZedisString key) {
-        if (isExpired(key)) {
-            this.expires.remove(key);
-            this.keySpace.remove(key);
+    public boolean isExpireTimeIndexEnabled() {
+        return this.expires.getTimeIndex() != null;
+    }
+
+    /**
+     * 按过期时间的顺序删除已经到期的键，只在开启了过期时间索引时可用
+     * @param now 当前时间
+     * @param maxKeys 最多删除的键数量
+     * @return 删除的键数量，小于maxKeys时表示已经没有到期的键
+     */
+    public int expireDueKeys(long now, int maxKeys) {
+        return this.expires.getTimeIndex().expireDue(now, maxKeys, e -> remove(e.getKey()));
+    }
+
+    /**
+     * 从键空间中随机取出一个没有过期的键，对应redis中的dbRandomKey
+     * 取到已经过期的键时删除它并重新选取
+     * @return 数据库为空时返回null
+     */
+    public ZedisString randomKey() {
+        while (true) {
+            Dict.Entry<ZedisString, ZedisObject> e = this.keySpace.randomEntry(this.random);
+            if (e == null) {
+                return null;
+            }
+
+            if (expireIfNeeded(e)) {
+                continue;
+            }
+            return e.getKey();
         }
     }
 
-    //todo 尚未实现自定义dict，所以先采用这种写法
-    public Map.Entry<ZedisString, Long> randomExpire() {
-        List<Map.Entry<ZedisString, Long>> keys = new ArrayList<>(this.expires.entrySet());
-        Map.Entry<ZedisString, Long> randomEntry = keys.get(random.nextInt(keys.size()));
-        return randomEntry;
+    /**
+     * 哈希表的使用率太低时缩容，由serverCron调用，对应redis中的tryResizeHashTables
+     */
+    public void tryResizeHashTables() {
+        this.keySpace.shrinkIfNeeded();
+    }
+
+    /**
+     * 主动rehash，对应redis中的incrementallyRehash
+     * @param millis 最多执行的毫秒数
+     * @return 是否执行了rehash
+     */
+    public boolean incrementallyRehash(long millis) {
+        if (this.keySpace.isRehashing()) {
+            this.keySpace.rehashMilliseconds(millis);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 读取键的过期时间，不执行惰性删除，用于遍历键空间期间不能修改数据库的场景（例如生成RDB快照）
+     * @param e 遍历键空间得到的节点
+     * @return 没有设置过期时间时返回-1
+     */
+    public long peekExpire(Dict.Entry<ZedisString, ZedisObject> e) {
+        return this.expires.get(e);
     }
 
 
 
-    public Map<ZedisString, ZedisObject> getKeySpace() {
+    /**
+     * 命令参数（SdsSlice）只在命令执行期间有效，保存到数据库之前需要转换为拥有独立数据的Sds
+     * @param str
+     * @return
+     */
+    private static ZedisString toOwned(ZedisString str) {
+        if (str instanceof SdsSlice) {
+            return ((SdsSlice) str).toSds();
+        }
+        return str;
+    }
+
+    private static ZedisObject toOwned(ZedisObject obj) {
+        if (obj instanceof SdsSlice) {
+            return ((SdsSlice) obj).toSds();
+        }
+        return obj;
+    }
+
+    public Dict<ZedisString, ZedisObject> getKeySpace() {
         return this.keySpace;
     }
 }
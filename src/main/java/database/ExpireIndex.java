@@ -0,0 +1,180 @@
+package database;
+
+import common.struct.ZedisObject;
+import common.struct.ZedisString;
+import common.struct.impl.Dict;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 过期字典：记录数据库中设置了过期时间的键
+ * 过期时间不再保存在单独的字典中，而是保存在紧凑的基本类型数组中，键空间的节点通过metadata记录键在数组中的下标：
+ *     (1) 按键查找过期时间不需要第二次哈希查找，在键空间中找到节点后直接按下标读取
+ *     (2) 每个带过期时间的键只占用whens中的8字节和entries中的一个引用，没有额外的节点对象和装箱的Long
+ *     (3) 删除时用数组的最后一个元素填补空位，添加、删除都是O(1)
+ *     (4) 随机取样只需要生成一个随机下标，是严格均匀的O(1)操作，取样时只读取whens，键已经过期时才访问键空间的节点
+ * 定期删除每次取样都依赖随机取样，数百万个带过期时间的键也不会拖慢serverCron
+ *
+ * 开启active-expire-time-index时，同时维护一个按过期时间排序的ExpireTimeIndex，定期删除按时间顺序删除到期的键
+ **/
+public class ExpireIndex {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Dict.Entry<ZedisString, ZedisObject> [] entries;   // 带过期时间的键在键空间中的节点，下标[0, size)有效
+    private long [] whens;                                     // 过期时间 UNIX 时间戳（毫秒），与entries一一对应
+    private int [] bucketPositions;                            // 键在时间桶中的下标，没有开启时间索引时为null
+    private int size;
+    private final ExpireTimeIndex timeIndex;                   // 按过期时间排序的索引，没有开启时为null
+
+    public ExpireIndex() {
+        this(false);
+    }
+
+    /**
+     * @param withTimeIndex 是否同时维护按过期时间排序的索引
+     */
+    public ExpireIndex(boolean withTimeIndex) {
+        this.entries = Dict.newEntryArray(INITIAL_CAPACITY);
+        this.whens = new long[INITIAL_CAPACITY];
+        this.bucketPositions = withTimeIndex ? new int[INITIAL_CAPACITY] : null;
+        this.size = 0;
+        this.timeIndex = withTimeIndex ? new ExpireTimeIndex(this) : null;
+    }
+
+    /**
+     * @return 带过期时间的键的数量
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @param e 键空间中的节点
+     * @return 键的过期时间，没有设置过期时间时返回-1
+     */
+    public long get(Dict.Entry<ZedisString, ZedisObject> e) {
+        int slot = e.getMetadata();
+        return slot < 0 ? -1 : this.whens[slot];
+    }
+
+    /**
+     * 设置或更新键的过期时间
+     * @param e 键空间中的节点
+     * @param when
+     */
+    public void put(Dict.Entry<ZedisString, ZedisObject> e, long when) {
+        int slot = e.getMetadata();
+        if (slot >= 0) {
+            long oldWhen = this.whens[slot];
+            this.whens[slot] = when;
+            if (this.timeIndex != null) {
+                this.timeIndex.update(e, oldWhen, when);
+            }
+            return;
+        }
+
+        if (this.size == this.entries.length) {
+            resize(this.size * 2);
+        }
+        slot = this.size++;
+        this.entries[slot] = e;
+        this.whens[slot] = when;
+        e.setMetadata(slot);
+        if (this.timeIndex != null) {
+            this.timeIndex.add(e, when);
+        }
+    }
+
+    /**
+     * 删除键的过期时间
+     * @param e 键空间中的节点，可以是已经从键空间中删除的节点
+     * @return 被删除的过期时间，没有设置过期时间时返回-1
+     */
+    public long remove(Dict.Entry<ZedisString, ZedisObject> e) {
+        int slot = e.getMetadata();
+        if (slot < 0) {
+            return -1;
+        }
+
+        long when = this.whens[slot];
+        if (this.timeIndex != null) {
+            this.timeIndex.remove(e, when);
+        }
+
+        // 用最后一个元素填补被删除元素的位置
+        int last = --this.size;
+        Dict.Entry<ZedisString, ZedisObject> moved = this.entries[last];
+        this.entries[slot] = moved;
+        this.whens[slot] = this.whens[last];
+        if (this.bucketPositions != null) {
+            this.bucketPositions[slot] = this.bucketPositions[last];
+        }
+        moved.setMetadata(slot);
+        this.entries[last] = null;
+        // 被删除的键可能就是最后一个元素，因此最后才清除它的下标
+        e.setMetadata(-1);
+
+        // 元素数量不到容量的1/4时缩小数组
+        if (this.entries.length > INITIAL_CAPACITY && this.size < this.entries.length / 4) {
+            resize(Math.max(this.entries.length / 2, INITIAL_CAPACITY));
+        }
+        return when;
+    }
+
+    /**
+     * 均匀地随机选择一个带过期时间的键
+     * @param random
+     * @return 键的位置，通过getWhen和getEntry读取，过期字典为空时返回-1
+     */
+    public int randomSlot(Random random) {
+        if (this.size == 0) {
+            return -1;
+        }
+        return random.nextInt(this.size);
+    }
+
+    public long getWhen(int slot) {
+        return this.whens[slot];
+    }
+
+    public Dict.Entry<ZedisString, ZedisObject> getEntry(int slot) {
+        return this.entries[slot];
+    }
+
+    public void clear() {
+        // 只有键空间也被清空时才会调用，不需要重置节点的metadata
+        this.entries = Dict.newEntryArray(INITIAL_CAPACITY);
+        this.whens = new long[INITIAL_CAPACITY];
+        if (this.bucketPositions != null) {
+            this.bucketPositions = new int[INITIAL_CAPACITY];
+        }
+        this.size = 0;
+        if (this.timeIndex != null) {
+            this.timeIndex.clear();
+        }
+    }
+
+    private void resize(int capacity) {
+        this.entries = Arrays.copyOf(this.entries, capacity);
+        this.whens = Arrays.copyOf(this.whens, capacity);
+        if (this.bucketPositions != null) {
+            this.bucketPositions = Arrays.copyOf(this.bucketPositions, capacity);
+        }
+    }
+
+    int getBucketPosition(Dict.Entry<ZedisString, ZedisObject> e) {
+        return this.bucketPositions[e.getMetadata()];
+    }
+
+    void setBucketPosition(Dict.Entry<ZedisString, ZedisObject> e, int position) {
+        this.bucketPositions[e.getMetadata()] = position;
+    }
+
+    /**
+     * @return 按过期时间排序的索引，没有开启时返回null
+     */
+    public ExpireTimeIndex getTimeIndex() {
+        return this.timeIndex;
+    }
+}
@@ -0,0 +1,150 @@
+package database;
+
+import common.struct.ZedisObject;
+import common.struct.ZedisString;
+import common.struct.impl.Dict;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * 按过期时间排序的过期键索引，用于确定性的定期删除（active-expire-time-index yes）
+ * 过期时间按BUCKET_MILLIS毫秒划分为时间桶，有序映射中只保存非空的桶，桶内的键不排序：
+ *     (1) 添加、删除一个键是O(log 桶数量)，删除时用桶中最后一个键填补空位
+ *     (2) 定期删除从最早的桶开始，按时间桶的顺序删除所有已经到期的键，不需要随机取样，
+ *         因此即使只有很少一部分键过期，也不会有过期键一直留在内存中
+ * 桶中保存键空间的节点，每个键在桶中的位置记录在ExpireIndex中，键的过期时间也从ExpireIndex中读取
+ **/
+public class ExpireTimeIndex {
+    public static final int BUCKET_SHIFT = 6;                   // 时间桶的跨度为2^6=64毫秒
+    public static final long BUCKET_MILLIS = 1L << BUCKET_SHIFT;
+    private static final int INITIAL_BUCKET_CAPACITY = 4;
+
+    /**
+     * 一个时间桶，保存过期时间在[start, start + BUCKET_MILLIS)之间的键
+     */
+    static class Bucket {
+        private final long id;      // 过期时间 >> BUCKET_SHIFT
+        private Dict.Entry<ZedisString, ZedisObject> [] entries;
+        private int size;
+
+        private Bucket(long id) {
+            this.id = id;
+            this.entries = Dict.newEntryArray(INITIAL_BUCKET_CAPACITY);
+            this.size = 0;
+        }
+    }
+
+    private final ExpireIndex owner;
+    private final TreeMap<Long, Bucket> buckets;
+    private int size;
+
+    ExpireTimeIndex(ExpireIndex owner) {
+        this.owner = owner;
+        this.buckets = new TreeMap<>();
+        this.size = 0;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return 非空时间桶的数量
+     */
+    public int bucketCount() {
+        return this.buckets.size();
+    }
+
+    /**
+     * @param e 已经加入ExpireIndex的节点
+     * @param when 过期时间
+     */
+    void add(Dict.Entry<ZedisString, ZedisObject> e, long when) {
+        long id = when >> BUCKET_SHIFT;
+        Bucket bucket = this.buckets.get(id);
+        if (bucket == null) {
+            bucket = new Bucket(id);
+            this.buckets.put(id, bucket);
+        }
+
+        if (bucket.size == bucket.entries.length) {
+            bucket.entries = Arrays.copyOf(bucket.entries, bucket.size * 2);
+        }
+        this.owner.setBucketPosition(e, bucket.size);
+        bucket.entries[bucket.size++] = e;
+        this.size++;
+    }
+
+    /**
+     * @param e 还没有从ExpireIndex中删除的节点
+     * @param when 节点所在的桶对应的过期时间
+     */
+    void remove(Dict.Entry<ZedisString, ZedisObject> e, long when) {
+        Bucket bucket = this.buckets.get(when >> BUCKET_SHIFT);
+        int position = this.owner.getBucketPosition(e);
+        Dict.Entry<ZedisString, ZedisObject> last = bucket.entries[--bucket.size];
+        bucket.entries[position] = last;
+        this.owner.setBucketPosition(last, position);
+        bucket.entries[bucket.size] = null;
+        this.size--;
+
+        if (bucket.size == 0) {
+            this.buckets.remove(bucket.id);
+        } else if (bucket.entries.length > INITIAL_BUCKET_CAPACITY && bucket.size < bucket.entries.length / 4) {
+            bucket.entries = Arrays.copyOf(bucket.entries, bucket.entries.length / 2);
+        }
+    }
+
+    /**
+     * 过期时间被修改，如果跨越了时间桶则移动到新的桶中
+     * @param e 已经更新了过期时间的节点
+     * @param oldWhen 原来的过期时间
+     * @param when 新的过期时间
+     */
+    void update(Dict.Entry<ZedisString, ZedisObject> e, long oldWhen, long when) {
+        if (oldWhen >> BUCKET_SHIFT != when >> BUCKET_SHIFT) {
+            remove(e, oldWhen);
+            add(e, when);
+        }
+    }
+
+    void clear() {
+        this.buckets.clear();
+        this.size = 0;
+    }
+
+    /**
+     * 按照时间桶的顺序，对已经到期的键调用expire，最多调用maxKeys次
+     * expire必须把键从索引中删除（通过Database.remove或ExpireIndex.remove），
+     * 桶内从后向前遍历，删除当前键时填补空位的是已经遍历过的键，因此不会遗漏
+     * @param now 当前时间
+     * @param maxKeys 最多处理的键数量
+     * @param expire 删除过期键的回调
+     * @return 删除的键数量，小于maxKeys时表示已经没有到期的键
+     */
+    int expireDue(long now, int maxKeys, Consumer<Dict.Entry<ZedisString, ZedisObject>> expire) {
+        int expired = 0;
+        long nowId = now >> BUCKET_SHIFT;
+
+        Map.Entry<Long, Bucket> first;
+        while (expired < maxKeys && (first = this.buckets.firstEntry()) != null && first.getKey() <= nowId) {
+            Bucket bucket = first.getValue();
+            for (int i = bucket.size - 1; i >= 0 && expired < maxKeys; i--) {
+                Dict.Entry<ZedisString, ZedisObject> e = bucket.entries[i];
+                if (this.owner.get(e) <= now) {
+                    expire.accept(e);
+                    expired++;
+                }
+            }
+
+            // 当前时间所在的桶中还有没到期的键，之后的桶都没有到期
+            if (bucket.id == nowId && expired < maxKeys) {
+                break;
+            }
+        }
+        return expired;
+    }
+}
@@ -10,6 +10,7 @@ import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 /**
@@ -22,18 +23,20 @@ public class EventLoop {
     private volatile boolean stop;
     // nio核心组件，用于监听多个channel上发生的事件
     private Selector selector;
-    // io事件表，表的key是每一个channel注册到该selector生成的SelectionKey
-    // 表的value是个FileEvent结构，该结构中也是一个map，保持了该channel上4中类型发生时的处理器
-    private Map<SelectionKey, FileEvent> fileEvents;
-    // 时间事件列表，每次事件循环都会重中取出最近的时间事件进行处理
-    private LinkedList<TimeEvent> timeEvents;
+    // 时间事件堆，按照触发时间排序，每次事件循环都会从中取出已经到达触发时间的时间事件进行处理
+    private TimeEventHeap timeEvents;
+    // 时间事件表，以时间事件的id为键的开放寻址哈希表，用于根据id删除时间事件
+    private TimeEventTable timeEventTable;
+    // 下一个时间事件的id
+    private long nextTimeEventId;
 
     private Procedure<EventLoop> beforeSleep;
 
     private EventLoop() {
         this.stop = false;
-        this.timeEvents = new LinkedList<>();
-        this.fileEvents = new HashMap<>();
+        this.timeEvents = new TimeEventHeap();
+        this.timeEventTable = new TimeEventTable();
+        this.nextTimeEventId = 0;
 
         try {
             this.selector = Selector.open();
@@ -73,22 +76,21 @@ public class EventLoop {
      * @return 处理的事件数量
      */
     private int processEvents() {
-        TimeEvent nearestTimeEvent = this.getNearestTimer();
+        TimeEventHeap.Node nearestTimeEvent = this.getNearestTimer();
         long blockTime = 0;
 
         // 获取最近的时间事件，根据时间事件计算需要阻塞的时长
         if (nearestTimeEvent != null) {
             // 如果时间事件存在的话
             // 那么根据最近可执行时间事件和现在时间的时间差来决定文件事件的阻塞时间
-            long when = nearestTimeEvent.getWhen();
-            long now = System.currentTimeMillis();
+            long remaining = nearestTimeEvent.getWhen() - System.nanoTime();
 
-            if (when <= now) {
-                // 说明时间事件已经执行，不需要阻塞
-                // 由于nio select无法立即返回，因此设置一个很短的时间1ms
+            if (remaining <= 0) {
+                // 说明时间事件已经到达触发时间，不需要阻塞
                 blockTime = -1;
             } else {
-                blockTime = when - now;
+                // Selector的超时时间只能精确到毫秒，向上取整，避免时间事件还没有到达触发时间就被唤醒
+                blockTime = (remaining + 999999) / 1000000;
             }
         } else {
             // 没有时间事件，则一直阻塞
@@ -108,6 +110,9 @@ public class EventLoop {
 
     /**
      * 处理文件事件
+     * 每个channel的FileEvent结构保存在其SelectionKey的附件中，对每个就绪的key，一次处理readyOps中所有就绪的事件：
+     * 先处理accept和connect事件，然后按照先读后写的顺序处理读写事件（设置了BARRIER时先写后读）
+     * 每个处理器执行之后都要重新检查key是否有效以及事件是否仍然被监听，因为处理器可能关闭了连接或者取消了其他事件
      * @param timeout Selector的超时时间
      * @return 处理的事件个数
      */
@@ -128,32 +133,28 @@ public class EventLoop {
 
                 while (keyIterator.hasNext()) {
                     SelectionKey key = keyIterator.next();
-                    FileEvent firedFileEvent = this.fileEvents.get(key);
-
-                    int interestOp = 0;
-                    if (key.isAcceptable()) {
-                        interestOp = SelectionKey.OP_ACCEPT;
-                    } else if (key.isConnectable()) {
-                        interestOp = SelectionKey.OP_CONNECT;
-                    } else if (key.isReadable()) {
-                        interestOp = SelectionKey.OP_READ;
-                    } else if (key.isWritable()) {
-                        interestOp = SelectionKey.OP_WRITE;
-                    } else {
-                        // 异常情况
-                        logger.error("异常情况，监听到未知类型的事件");
+                    keyIterator.remove();
+
+                    FileEvent firedFileEvent = (FileEvent) key.attachment();
+                    if (firedFileEvent == null || !key.isValid()) {
+                        continue;
                     }
 
-                    FileEventHandler handler = firedFileEvent.getEventHandler(interestOp);
-                    if (handler != null) {
-                        handler.handle(ZedisServer.getInstance(), key, firedFileEvent.getClientData());
+                    int readyOps = key.readyOps();
+
+                    fireFileEvent(key, firedFileEvent, readyOps, SelectionKey.OP_ACCEPT);
+                    fireFileEvent(key, firedFileEvent, readyOps, SelectionKey.OP_CONNECT);
+
+                    // 设置了BARRIER时先写后读，否则先读后写
+                    if (firedFileEvent.isBarrier()) {
+                        fireFileEvent(key, firedFileEvent, readyOps, SelectionKey.OP_WRITE);
+                        fireFileEvent(key, firedFileEvent, readyOps, SelectionKey.OP_READ);
                     } else {
-                        // 异常情况，没有相应的处理器
-                        logger.error("异常情况，没有相应的处理器处理事件");
+                        fireFileEvent(key, firedFileEvent, readyOps, SelectionKey.OP_READ);
+                        fireFileEvent(key, firedFileEvent, readyOps, SelectionKey.OP_WRITE);
                     }
 
                     processed++;
-                    keyIterator.remove();
                 }
             }
         } catch (IOException e) {
@@ -163,25 +164,48 @@ public class EventLoop {
         return processed;
     }
 
+    /**
+     * 如果某个事件已经就绪并且仍然被监听，则调用其处理器
+     * @param key 就绪的key
+     * @param fileEvent key的附件
+     * @param readyOps select时就绪的事件集合
+     * @param op 要处理的事件类型
+     */
+    private void fireFileEvent(SelectionKey key, FileEvent fileEvent, int readyOps, int op) {
+        if ((readyOps & op) == 0 || !key.isValid() || (fileEvent.getInterestSet() & op) == 0) {
+            return;
+        }
+
+        FileEventHandler handler = fileEvent.getEventHandler(op);
+        if (handler != null) {
+            handler.handle(ZedisServer.getInstance(), key, fileEvent.getClientData());
+        } else {
+            // 异常情况，没有相应的处理器
+            logger.error("异常情况，没有相应的处理器处理事件");
+        }
+    }
 
     /**
      * 注册新的监听事件
      * @param channel 要注册监听事件的channel
-     * @param interestOp 监听的事件类型
+     * @param interestOp 监听的事件类型，可以与FileEvent.BARRIER进行或操作，表示先处理写事件再处理读事件
      * @param handler 相应事件发生时的处理器
      * @param clientData 客户端数据
      */
     public void registerFileEvent(SelectableChannel channel, int interestOp, FileEventHandler handler, Object clientData) {
+        if (channel == null) {
+            throw new IllegalArgumentException("Illegal argument 'channel', 'interestOp' can not be null");
+        }
+
+        // BARRIER只记录在FileEvent中，不注册到selector上
+        int selectorOp = interestOp & ~FileEvent.BARRIER;
+
         // 参数检查
-        if ((interestOp & channel.validOps()) == 0) {
+        if ((selectorOp & channel.validOps()) == 0) {
             // 事件类型必须是channel支持的事件类型之一
             throw new IllegalArgumentException("Illegal argument 'interestOp','interestOp' is a invalid event type in 'channel'");
         }
 
-        if (channel == null) {
-            throw new IllegalArgumentException("Illegal argument 'channel', 'interestOp' can not be null");
-        }
-
         if (handler == null) {
             throw new IllegalArgumentException("Illegal argument 'handler', 'handler' can not be null");
         }
@@ -196,33 +220,32 @@ public class EventLoop {
         if (registedKey == null) {
             // 该channel没有在该selector上注册过，现在是第一次注册
             try {
-                registedKey = channel.register(this.selector, interestOp);
+                registedKey = channel.register(this.selector, selectorOp);
             } catch (ClosedChannelException e) {
                 logger.error("register file event error, the channel has closed", e);
+                return;
             }
         } else {
             // 该channel已经在该selector上注册过，要注册新事件，需要更新对应key的事件集合
 
             // 更新channel在该selector上监听的事件集合
-            int newInterestOps = registedKey.interestOps() | interestOp;
+            int newInterestOps = registedKey.interestOps() | selectorOp;
             registedKey.interestOps(newInterestOps);
         }
 
         // 更新完底层selector注册的事件类型，还要更新FileEvent中注册的事件类型，使FileEvent和SelectionKey中的事件类型保持一致
 
         // 先判断该channel是否注册过，是否有相应的fileEvent结构
-        FileEvent fileEvent = this.fileEvents.get(registedKey);
+        FileEvent fileEvent = (FileEvent) registedKey.attachment();
 
         if (fileEvent == null) {
-            // 该channel是第一次注册
+            // 该channel是第一次注册，将FileEvent结构作为key的附件
             fileEvent = new FileEvent(interestOp, handler, clientData);
+            registedKey.attach(fileEvent);
         } else {
             // 该channel已经注册过，则要更新其中的事件类型和相应的处理器
             fileEvent.addFileEventHandler(interestOp, handler, clientData);
         }
-
-        // 更新注册的channel和其事件及处理器
-        this.fileEvents.put(registedKey, fileEvent);
     }
 
     /**
@@ -247,7 +270,7 @@ public class EventLoop {
         // 再将channel对应的FileEvent结构中的事件类型及处理器清除
 
         // 获取该key表示的channel对应的FileEvent结构
-        FileEvent fileEvent = this.fileEvents.get(key);
+        FileEvent fileEvent = (FileEvent) key.attachment();
 
         // 若没有fileEvent结构，就不用删除，直接返回
         if (fileEvent == null) {
@@ -262,68 +285,137 @@ public class EventLoop {
         // 从FileEvent结构中移除该类型的事件及其处理器
         fileEvent.removeFileEventHandler(uninterestOp);
 
-        // 判断是否在该channel上未监听任何事件，若没有监听任何事件，则将相应的key和FileEvent结构删除
+        // 判断是否在该channel上未监听任何事件，若没有监听任何事件，则将FileEvent结构从key上删除
         if (key.interestOps() == 0) {
-            this.fileEvents.remove(key);
-            key.channel();
+            key.attach(null);
         }
     }
 
     /**
-     * 处理时间事件（暂未实现）
-     * @return
+     * 处理所有已经到达触发时间的时间事件
+     * 只在开始时获取一次当前时间，每个时间事件的处理都是O(log n)的
+     * 周期性的时间事件在执行后会以本次的当前时间为基准重新加入时间事件堆，因此在同一次调用中不会被重复执行
+     * @return 处理的时间事件数量
      */
     private int processTimeEvents() {
         int processed = 0;
+        long now = System.nanoTime();
 
-        Iterator<TimeEvent> iterator = timeEvents.iterator();
+        TimeEventHeap.Node node;
+        while ((node = this.timeEvents.peek()) != null && node.when - now <= 0) {
+            this.timeEvents.poll();
 
-        while (iterator.hasNext()) {
-            TimeEvent e = iterator.next();
+            long next = node.procedure.process(this, node.id, node.clientData);
+            processed++;
 
-            // 当前时间到达事件的时间, 则可以处理这些事件
-            if (e.getWhen() <= System.currentTimeMillis()) {
-                e.execute();
+            // 时间事件在执行的过程中可能已经被删除了
+            if (this.timeEventTable.get(node.id) != node) {
+                continue;
+            }
 
-                if (e instanceof CycleTimeEvent) {
-                    ((CycleTimeEvent) e).resetFireTime();
-                } else {
-                    iterator.remove();
+            if (next == TimeProcedure.NO_MORE) {
+                // 一次性的时间事件，执行完后删除
+                this.timeEventTable.remove(node.id);
+                if (node.finalizer != null) {
+                    node.finalizer.process(node.clientData);
                 }
+            } else {
+                // 周期性的时间事件，重新计算触发时间后放回时间事件堆
+                node.when = now + Math.max(node.unit.toNanos(next), 1);
+                this.timeEvents.add(node);
             }
         }
 
         return processed;
     }
 
-    public void registerTimeEvent(TimeEvent event) {
-        timeEvents.add(event);
+    /**
+     * 创建一个时间事件，对应redis中的aeCreateTimeEvent
+     * @param delay 距离第一次触发的时长
+     * @param unit delay以及处理函数返回的周期所使用的时间单位，精度可以小于毫秒，但事件循环实际的唤醒精度受Selector超时时间（毫秒）的限制
+     * @param procedure 处理函数，返回TimeProcedure.NO_MORE表示一次性的时间事件，返回非负数表示周期性的时间事件
+     * @param clientData 传给处理函数的数据
+     * @param finalizer 时间事件被删除时调用的函数，可以为null
+     * @return 时间事件的id，可以用于删除该时间事件
+     */
+    public long createTimeEvent(long delay, TimeUnit unit, TimeProcedure procedure, Object clientData, TimeFInalizerProcedure finalizer) {
+        if (procedure == null) {
+            throw new IllegalArgumentException("Illegal argument 'procedure', 'procedure' can not be null");
+        }
+
+        long id = this.nextTimeEventId++;
+        long when = System.nanoTime() + unit.toNanos(Math.max(delay, 0));
+
+        TimeEventHeap.Node node = new TimeEventHeap.Node(id, when, procedure, unit, clientData, finalizer);
+        this.timeEvents.add(node);
+        this.timeEventTable.put(node);
+
+        return id;
     }
 
-    private TimeEvent getNearestTimer() {
-        TimeEvent nearestTimer = null;
+    /**
+     * 删除时间事件，对应redis中的aeDeleteTimeEvent
+     * 可以在时间事件的处理函数中删除时间事件（包括正在执行的时间事件本身）
+     * @param id 时间事件的id
+     * @return 时间事件是否存在
+     */
+    public boolean deleteTimeEvent(long id) {
+        TimeEventHeap.Node node = this.timeEventTable.remove(id);
+        if (node == null) {
+            return false;
+        }
 
-        if (!timeEvents.isEmpty()) {
-            for (TimeEvent e : timeEvents) {
-                if (nearestTimer == null) {
-                    nearestTimer = e;
-                } else {
-                    if (e.getWhen() < nearestTimer.getWhen()) {
-                        nearestTimer = e;
-                    }
-                }
-            }
+        this.timeEvents.remove(node);
+        if (node.finalizer != null) {
+            node.finalizer.process(node.clientData);
         }
 
-        return nearestTimer;
+        return true;
     }
 
     /**
-     * 用于测试： 获取注册的文件事件map
+     * 注册一个TimeEvent对象表示的时间事件，getWhen()返回的是毫秒格式的unix时间
+     * 如果是CycleTimeEvent，那么每次执行后会调用resetFireTime()，并按照新的触发时间继续执行
+     * @param event
+     * @return 时间事件的id
+     */
+    public long registerTimeEvent(TimeEvent event) {
+        long delay = event.getWhen() - System.currentTimeMillis();
+
+        return createTimeEvent(delay, TimeUnit.MILLISECONDS, (eventLoop, id, clientData) -> {
+            event.execute();
+
+            if (event instanceof CycleTimeEvent) {
+                ((CycleTimeEvent) event).resetFireTime();
+                return Math.max(event.getWhen() - System.currentTimeMillis(), 0);
+            }
+            return TimeProcedure.NO_MORE;
+        }, event, null);
+    }
+
+    /**
+     * 获取触发时间最早的时间事件
+     * @return 触发时间最早的时间事件，没有时间事件时返回null
+     */
+    TimeEventHeap.Node getNearestTimer() {
+        return this.timeEvents.peek();
+    }
+
+    /**
+     * 时间事件的数量
      * @return
      */
-    public Map<SelectionKey, FileEvent> getFileEvents() {
-        return Collections.unmodifiableMap(this.fileEvents);
+    public int getTimeEventCount() {
+        return this.timeEvents.size();
+    }
+
+    /**
+     * 获取channel注册的FileEvent结构
+     * @param key channel注册到该selector生成的SelectionKey
+     * @return FileEvent结构，没有注册任何事件时返回null
+     */
+    public FileEvent getFileEvent(SelectionKey key) {
+        return (FileEvent) key.attachment();
     }
 
     public Selector getSelector() {
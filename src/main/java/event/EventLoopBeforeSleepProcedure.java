@@ -1,7 +1,8 @@
 package event;
 
-import common.persistence.AOFPersistence;
+import common.expire.PeriodicExpiration;
 import server.ServerContext;
+import server.ZedisServer;
 
 /**
  * 每次处理事件之前执行
@@ -11,7 +12,25 @@ import server.ServerContext;
 public class EventLoopBeforeSleepProcedure implements Procedure<EventLoop> {
     @Override
     public void call(EventLoop eventLoop) {
+        ZedisServer server = ServerContext.getContext().getServerInstance();
+
+        // 开启了IO线程时，读事件被推迟到这里，由IO线程读取和解析请求，再由主线程执行命令
+        // 必须在写入AOF文件和发送回复之前执行，这样这些命令产生的AOF数据和回复可以在本次循环中一起处理
+        server.handleClientsWithPendingReads();
+
+        // 上一次定期删除因为超时而退出，或者过期键的比例较高时，执行一次快速模式的定期删除
+        if (server.getServerConfig().isActiveExpiredEnable() && server.getMasterHost() == null) {
+            server.getPeriodicExpirator().delExpiredPeriodicaly(PeriodicExpiration.FAST_MODE);
+        }
+
         // 将 AOF 缓冲区的内容写入到 AOF 文件
-        ServerContext.getContext().getServerInstance().getAofPersistence().flushAppendOnlyFile(false);
+        // 必须在发送回复之前执行，保证客户端收到写命令的回复时，命令已经写入了AOF文件
+        server.getAofPersistence().flushAppendOnlyFile(false);
+
+        // 关闭输出缓冲区超过限制等原因被标记为需要关闭的客户端，它们的回复不再发送
+        server.freeClientsInAsyncFreeQueue();
+
+        // 直接发送待写客户端的回复，无法一次发送完的才注册写事件
+        server.handleClientsWithPendingWrites();
     }
 }
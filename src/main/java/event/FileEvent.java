@@ -1,8 +1,6 @@
 package event;
 
 import java.nio.channels.SelectionKey;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * FileEvent用于表示对IO事件的抽象
@@ -17,14 +15,29 @@ import java.util.Map;
  *     SelectionKey.OP_CONNECT
  * 这四类事件用SelectionKey中对应的int值表示
  *
- * 对应每种事件发生时的处理函数则记录在以这些事件int值为key的map中
+ * 对应每种事件发生时的处理函数分别记录在对应的字段中（类似redis中aeFileEvent的rfileProc和wfileProc）
+ *
+ * FileEvent对象会作为channel注册到selector时生成的SelectionKey的附件（attachment），
+ * 事件循环中可以直接从就绪的SelectionKey中取出，不需要再通过map查找
  *
  * @author: zzz
  * @create: 2021-08-27
  */
 public class FileEvent {
+    /**
+     * 与事件类型一起传入EventLoop.registerFileEvent()的标识，对应redis中的AE_BARRIER
+     * 默认情况下，同一次事件循环中channel既可读又可写时，先处理读事件再处理写事件（这样读事件中产生的回复可以立即发送）
+     * 设置了该标识之后顺序相反：先处理写事件再处理读事件，保证读事件中产生的回复不会在beforeSleep之前被发送（如appendfsync为always时需要先将AOF写入磁盘）
+     * 该值不能与SelectionKey中任何事件类型的值冲突
+     */
+    public static final int BARRIER = 1 << 30;
+
     private int ops;    // 该FileEvent对应的channel监听的事件类型集合（不同事件int值的或操作结果）
-    private Map<Integer, FileEventHandler> eventHandlerMap;    // 记录了对应事件类型的处理函数，key为事件类型，value为处理函数
+    private FileEventHandler acceptHandler;     // OP_ACCEPT事件的处理函数
+    private FileEventHandler connectHandler;    // OP_CONNECT事件的处理函数
+    private FileEventHandler readHandler;       // OP_READ事件的处理函数
+    private FileEventHandler writeHandler;      // OP_WRITE事件的处理函数
+    private boolean barrier;                    // 是否先处理写事件再处理读事件
     private Object clientData;     // 客户端传来的数据
 
     /**
@@ -35,10 +48,9 @@ public class FileEvent {
      * @param clientData 客户端数据
      */
     public FileEvent(int interestOp, FileEventHandler handler, Object clientData) {
-        this.eventHandlerMap = new HashMap<>(4);
-        eventHandlerMap.put(interestOp, handler);
-        this.ops = interestOp;
-        this.clientData = clientData;
+        this.ops = 0;
+        this.barrier = false;
+        addFileEventHandler(interestOp, handler, clientData);
     }
 
     /**
@@ -66,7 +78,26 @@ public class FileEvent {
      * @return 处理对象
      */
     public FileEventHandler getEventHandler(int eventType) {
-        return eventHandlerMap.get(eventType);
+        switch (eventType) {
+            case SelectionKey.OP_ACCEPT:
+                return this.acceptHandler;
+            case SelectionKey.OP_CONNECT:
+                return this.connectHandler;
+            case SelectionKey.OP_READ:
+                return this.readHandler;
+            case SelectionKey.OP_WRITE:
+                return this.writeHandler;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 是否设置了BARRIER标识，即先处理写事件再处理读事件
+     * @return
+     */
+    public boolean isBarrier() {
+        return this.barrier;
     }
 
     /**
@@ -75,19 +106,58 @@ public class FileEvent {
      * 由于为了方便实现，设置成每次只能更新一个事件类型和其处理函数
      * 当channel监听新类型事件时，就可以调用该函数，更新FileEvent中记录的信息
      *
-     * @param interestOp
+     * @param interestOp 事件类型，可以带上BARRIER标识
      * @param handler
      * @param clientData
      */
     public void addFileEventHandler(int interestOp, FileEventHandler handler, Object clientData) {
+        if ((interestOp & BARRIER) != 0) {
+            this.barrier = true;
+            interestOp &= ~BARRIER;
+        }
+
+        switch (interestOp) {
+            case SelectionKey.OP_ACCEPT:
+                this.acceptHandler = handler;
+                break;
+            case SelectionKey.OP_CONNECT:
+                this.connectHandler = handler;
+                break;
+            case SelectionKey.OP_READ:
+                this.readHandler = handler;
+                break;
+            case SelectionKey.OP_WRITE:
+                this.writeHandler = handler;
+                break;
+            default:
+                throw new IllegalArgumentException("Illegal argument 'interestOp', only one event type can be added at a time");
+        }
+
         this.ops |= interestOp;
-        this.eventHandlerMap.put(interestOp, handler);
         this.clientData = clientData;
     }
 
+    /**
+     * 移除某个类型的事件及其处理函数
+     * 与redis一样，移除写事件时同时清除BARRIER标识
+     * @param uninterestOp
+     */
     public void removeFileEventHandler(int uninterestOp) {
         this.ops = this.ops & ~uninterestOp;
-        this.eventHandlerMap.remove(uninterestOp);
+
+        if ((uninterestOp & SelectionKey.OP_ACCEPT) != 0) {
+            this.acceptHandler = null;
+        }
+        if ((uninterestOp & SelectionKey.OP_CONNECT) != 0) {
+            this.connectHandler = null;
+        }
+        if ((uninterestOp & SelectionKey.OP_READ) != 0) {
+            this.readHandler = null;
+        }
+        if ((uninterestOp & SelectionKey.OP_WRITE) != 0) {
+            this.writeHandler = null;
+            this.barrier = false;
+        }
     }
 
     public boolean isEmptyFileEvent() {
@@ -99,38 +169,4 @@ public class FileEvent {
         return ans;
     }
 
-    // 由于FileEvent对象会放入到Map之类的容器中，
-    // 为了防止出现异常，需要重写FileEvent类的hashCode方法和equals方法
-
-    @Override
-    public int hashCode(){
-        int hashcode = 0;
-
-        hashcode = hashcode * 31 + this.ops;
-        hashcode = hashcode * 31 + this.clientData.hashCode();
-        hashcode = hashcode * 31 + this.eventHandlerMap.hashCode();
-
-        return hashcode;
-    }
-
-    @Override
-    public boolean equals(Object other) {
-        if (this == other) {
-            return true;
-        }
-
-        if (other == null) {
-            return false;
-        }
-
-        if (other instanceof FileEvent) {
-            FileEvent fo = (FileEvent) other;
-            return (fo.ops == this.ops
-                    && fo.clientData.equals(this.clientData)
-                    && fo.eventHandlerMap.equals(this.eventHandlerMap) )
-                    ? true : false;
-        } else {
-            return false;
-        }
-    }
 }
@@ -2,6 +2,7 @@ package event;
 
 import common.expire.PeriodicExpirator;
 import common.persistence.AOFPersistence;
+import database.Database;
 import server.ZedisServer;
 import server.ServerContext;
 
@@ -15,12 +16,9 @@ public class GlobalCycleTimeEvent implements CycleTimeEvent {
     private long when;
     private long period;
 
-    private PeriodicExpirator periodicExpirator;    // 用于执行定期删除策略
-
     public GlobalCycleTimeEvent(long period) {
         this.period = period;
         this.when = System.currentTimeMillis() + period;
-        this.periodicExpirator = new PeriodicExpirator();
     }
 
 
@@ -31,6 +29,12 @@ public class GlobalCycleTimeEvent implements CycleTimeEvent {
 
     @Override
     public void execute() {
+        // 记录每秒接收连接数的样本
+        ServerContext.getContext().getServerInstance().getStats().trackAcceptRate();
+
+        // 对客户端执行周期性的维护操作（收缩查询缓冲区）
+        ServerContext.getContext().getServerInstance().clientsCron((int) Math.max(1000 / this.period, 1));
+
         // 对数据库执行各种操作
         databasesCron();
 
@@ -61,9 +65,18 @@ public class GlobalCycleTimeEvent implements CycleTimeEvent {
         if (server.getServerConfig().isActiveExpiredEnable() && server.getMasterHost() == null) {
             delExpiredPeriodicaly(PeriodicExpirator.SLOW_MODE);
         }
+
+        // 使用率过低时缩小键空间的哈希表
+        Database db = server.getDatabases();
+        db.tryResizeHashTables();
+
+        // 主动rehash，每次最多使用1毫秒
+        if (server.getServerConfig().isActiveRehashing()) {
+            db.incrementallyRehash(1);
+        }
     }
 
     public void delExpiredPeriodicaly(int type) {
-        this.periodicExpirator.delExpiredPeriodicaly(type);
+        ServerContext.getContext().getServerInstance().getPeriodicExpirator().delExpiredPeriodicaly(type);
     }
 }
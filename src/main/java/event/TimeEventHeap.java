@@ -0,0 +1,170 @@
+package event;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按照时间事件的触发时间排序的最小堆
+ * 每个节点都记录了自己在堆数组中的下标，因此除了取出堆顶之外，还可以在O(log n)的时间内删除任意节点（取消时间事件）
+ * 线程不安全，只能在事件循环线程中使用
+ */
+public class TimeEventHeap {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * 堆中的节点，表示一个已经注册的时间事件
+     */
+    public static class Node {
+        final long id;                          // 时间事件的id
+        long when;                              // 触发时间，System.nanoTime()时间
+        int index;                              // 节点在堆数组中的下标，不在堆中时为-1
+        final TimeProcedure procedure;          // 处理函数
+        final TimeUnit unit;                    // 处理函数返回的周期所使用的时间单位
+        final Object clientData;                // 传给处理函数的数据
+        final TimeFInalizerProcedure finalizer; // 时间事件被删除时调用的函数，可以为null
+
+        Node(long id, long when, TimeProcedure procedure, TimeUnit unit, Object clientData, TimeFInalizerProcedure finalizer) {
+            this.id = id;
+            this.when = when;
+            this.index = -1;
+            this.procedure = procedure;
+            this.unit = unit;
+            this.clientData = clientData;
+            this.finalizer = finalizer;
+        }
+
+        public long getId() {
+            return this.id;
+        }
+
+        public long getWhen() {
+            return this.when;
+        }
+    }
+
+    private Node [] heap;
+    private int size;
+
+    public TimeEventHeap() {
+        this.heap = new Node[DEFAULT_CAPACITY];
+        this.size = 0;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * 获取触发时间最早的节点，但不从堆中删除
+     * @return 堆顶节点，堆为空时返回null
+     */
+    public Node peek() {
+        return this.size == 0 ? null : this.heap[0];
+    }
+
+    /**
+     * 将节点加入堆中
+     * @param node
+     */
+    public void add(Node node) {
+        if (this.size == this.heap.length) {
+            this.heap = Arrays.copyOf(this.heap, this.heap.length * 2);
+        }
+
+        node.index = this.size;
+        this.heap[this.size++] = node;
+        siftUp(node.index);
+    }
+
+    /**
+     * 取出并删除触发时间最早的节点
+     * @return 堆顶节点，堆为空时返回null
+     */
+    public Node poll() {
+        if (this.size == 0) {
+            return null;
+        }
+
+        Node top = this.heap[0];
+        removeAt(0);
+        return top;
+    }
+
+    /**
+     * 从堆中删除指定节点
+     * @param node
+     * @return 节点是否在堆中
+     */
+    public boolean remove(Node node) {
+        int index = node.index;
+        if (index < 0 || index >= this.size || this.heap[index] != node) {
+            return false;
+        }
+
+        removeAt(index);
+        return true;
+    }
+
+    private void removeAt(int index) {
+        Node removed = this.heap[index];
+        int last = --this.size;
+
+        if (index != last) {
+            // 用最后一个节点填补被删除节点的位置，再根据它的触发时间向上或向下调整
+            Node moved = this.heap[last];
+            this.heap[index] = moved;
+            moved.index = index;
+            this.heap[last] = null;
+
+            siftDown(index);
+            if (this.heap[index] == moved) {
+                siftUp(index);
+            }
+        } else {
+            this.heap[last] = null;
+        }
+
+        removed.index = -1;
+    }
+
+    private void siftUp(int index) {
+        Node node = this.heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            Node parentNode = this.heap[parent];
+            if (parentNode.when - node.when <= 0) {
+                break;
+            }
+            this.heap[index] = parentNode;
+            parentNode.index = index;
+            index = parent;
+        }
+        this.heap[index] = node;
+        node.index = index;
+    }
+
+    private void siftDown(int index) {
+        Node node = this.heap[index];
+        int half = this.size >>> 1;
+        while (index < half) {
+            int child = (index << 1) + 1;
+            int right = child + 1;
+            if (right < this.size && this.heap[right].when - this.heap[child].when < 0) {
+                child = right;
+            }
+            Node childNode = this.heap[child];
+            if (node.when - childNode.when <= 0) {
+                break;
+            }
+            this.heap[index] = childNode;
+            childNode.index = index;
+            index = child;
+        }
+        this.heap[index] = node;
+        node.index = index;
+    }
+}
@@ -0,0 +1,115 @@
+package event;
+
+/**
+ * 时间事件表：根据时间事件的id查找已经注册的时间事件，用于删除时间事件
+ * 使用开放寻址（线性探测）的哈希表，直接以节点自身的id作为键，不需要装箱的Long和额外的Entry对象
+ * 删除时将后面同一探测序列中的节点向前移动，不使用墓碑标记
+ * 线程不安全，只能在事件循环线程中使用
+ */
+class TimeEventTable {
+    private static final int MIN_CAPACITY = 16;
+
+    private TimeEventHeap.Node [] table;    // 容量总是2的幂
+    private int size;
+
+    TimeEventTable() {
+        this.table = new TimeEventHeap.Node[MIN_CAPACITY];
+        this.size = 0;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * @param id 时间事件的id
+     * @return 时间事件的节点，不存在时返回null
+     */
+    TimeEventHeap.Node get(long id) {
+        int mask = this.table.length - 1;
+        for (int i = slot(id, mask); this.table[i] != null; i = (i + 1) & mask) {
+            if (this.table[i].id == id) {
+                return this.table[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 加入一个节点，时间事件的id是递增分配的，调用方保证id不重复
+     * @param node
+     */
+    void put(TimeEventHeap.Node node) {
+        // 负载因子不超过1/2
+        if ((this.size + 1) * 2 > this.table.length) {
+            resize(this.table.length * 2);
+        }
+        insert(this.table, node);
+        this.size++;
+    }
+
+    /**
+     * @param id 时间事件的id
+     * @return 被删除的节点，不存在时返回null
+     */
+    TimeEventHeap.Node remove(long id) {
+        int mask = this.table.length - 1;
+        int i = slot(id, mask);
+        while (this.table[i] != null && this.table[i].id != id) {
+            i = (i + 1) & mask;
+        }
+        TimeEventHeap.Node removed = this.table[i];
+        if (removed == null) {
+            return null;
+        }
+
+        // 将之后探测序列中起始位置不在(i, j]之间的节点移到空出的位置，保证查找时不会提前遇到空位
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            TimeEventHeap.Node node = this.table[j];
+            if (node == null) {
+                break;
+            }
+            int home = slot(node.id, mask);
+            if (i <= j ? (i < home && home <= j) : (i < home || home <= j)) {
+                continue;
+            }
+            this.table[i] = node;
+            i = j;
+        }
+        this.table[i] = null;
+        this.size--;
+
+        // 元素数量不到容量的1/8时缩小
+        if (this.table.length > MIN_CAPACITY && this.size * 8 < this.table.length) {
+            resize(this.table.length / 2);
+        }
+        return removed;
+    }
+
+    private void resize(int capacity) {
+        TimeEventHeap.Node [] newTable = new TimeEventHeap.Node[capacity];
+        for (TimeEventHeap.Node node : this.table) {
+            if (node != null) {
+                insert(newTable, node);
+            }
+        }
+        this.table = newTable;
+    }
+
+    private static void insert(TimeEventHeap.Node [] table, TimeEventHeap.Node node) {
+        int mask = table.length - 1;
+        int i = slot(node.id, mask);
+        while (table[i] != null) {
+            i = (i + 1) & mask;
+        }
+        table[i] = node;
+    }
+
+    private static int slot(long id, int mask) {
+        // id是连续分配的，乘以黄金分割常数把相邻的id打散到整个表中
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
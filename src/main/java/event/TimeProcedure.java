@@ -0,0 +1,14 @@
+package event;
+
+/**
+ * 时间事件的处理函数，对应redis中的aeTimeProc
+ * 返回值决定了时间事件是一次性的还是周期性的：
+ * 返回NO_MORE表示时间事件执行完后被删除（一次性）；
+ * 返回非负数表示时间事件在该时长之后再次执行（周期性），时间单位与创建时间事件时指定的单位相同
+ */
+@FunctionalInterface
+public interface TimeProcedure {
+    long NO_MORE = -1;
+
+    long process(EventLoop eventLoop, long id, Object clientData);
+}
@@ -1,12 +1,17 @@
 package event.handler;
 
+import common.shared.SharedObjects;
 import server.client.InnerClient;
 import event.FileEventHandler;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import server.ServerStats;
 import server.ZedisServer;
+import server.config.ServerConfig;
 
 import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
@@ -49,28 +54,96 @@ public class AcceptTcpHandler implements FileEventHandler {
      * 从ServerSocketChannel处接收ACCEPT事件，为相应的连接建立SocketChannel和Client对象
      * 并将这些创建的SocketChannel也存入事件循环
      *
+     * 与redis的acceptTcpHandler一样，一次事件中循环接收多个连接（最多max-accepts-per-call个），
+     * 这样大量客户端同时重连时不需要为每个连接都经过一次select
+     *
      * @return 操作是否成功
      */
     @Override
     public boolean handle(ZedisServer server, SelectionKey selectionKey, Object privateData) {
         ServerSocketChannel ssc = (ServerSocketChannel) selectionKey.channel();
-        SocketChannel socketChannel = null;
-        try {
-            socketChannel = ssc.accept();
-            socketChannel.configureBlocking(false);
-        } catch (IOException e) {
-            e.printStackTrace();
+        ServerConfig config = server.getServerConfig();
+        ServerStats stats = server.getStats();
+
+        int accepted = 0;
+        int rejected = 0;
+        for (int max = config.getMaxAcceptsPerCall(); max > 0; max--) {
+            SocketChannel socketChannel;
+            try {
+                socketChannel = ssc.accept();
+            } catch (IOException e) {
+                logger.warn("Accepting server.client connection error", e);
+                break;
+            }
+
+            // 没有更多等待接收的连接
+            if (socketChannel == null) {
+                break;
+            }
+
+            // 超过了客户端数量上限，在创建客户端之前直接拒绝，不分配任何缓冲区
+            if (stats.getConnectedClients() + accepted >= config.getMaxClients()) {
+                rejectClient(socketChannel);
+                rejected++;
+                continue;
+            }
+
+            try {
+                socketChannel.configureBlocking(false);
+                // 与redis相同：关闭Nagle算法以降低回复的延迟，并按照配置开启keepalive
+                socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                socketChannel.setOption(StandardSocketOptions.SO_KEEPALIVE, config.getTcpKeepAlive() > 0);
+            } catch (IOException e) {
+                logger.warn("Setting up server.client connection error", e);
+                closeQuietly(socketChannel);
+                continue;
+            }
+
+            acceptClient(server, socketChannel);
+            accepted++;
+        }
+
+        stats.recordAccepts(accepted, rejected);
+        return true;
+    }
+
+    private void acceptClient(ZedisServer server, SocketChannel socketChannel) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Accepted server.client connection from " + socketChannel.socket().getRemoteSocketAddress());
+        }
+
+        // 多reactor模式下，连接交给一个reactor，由reactor在自己的线程中创建客户端并注册读事件
+        if (server.getReactorGroup() != null) {
+            server.getReactorGroup().acceptClient(socketChannel);
+            return;
         }
 
         // 创建client
         InnerClient newClient = (InnerClient) InnerClient.createClient(socketChannel);
         server.addClient(newClient);
 
-        logger.info("Accepted server.client connection from " + socketChannel.socket().getRemoteSocketAddress());
-
-        // 将这个与客户端关连的socketChannel也注册到EventLoop, 其中，客户端对象client以事件的clientData传入，这里暂时以null代替
+        // 将这个与客户端关连的socketChannel也注册到EventLoop, 其中，客户端对象client以事件的clientData传入
         server.getEventLoop().registerFileEvent(socketChannel, SelectionKey.OP_READ, ReadQueryFromClientHandler.getHandler(), newClient);
+    }
 
-        return true;
+    /**
+     * 拒绝连接：尽力发送一条编码好的错误回复之后立即关闭连接，对应redis中acceptCommonHandler里超过maxclients的处理
+     * 连接仍然是阻塞模式，但新连接的发送缓冲区是空的，这么短的回复不会阻塞
+     */
+    private void rejectClient(SocketChannel socketChannel) {
+        try {
+            socketChannel.write(ByteBuffer.wrap(SharedObjects.MAX_CLIENTS_ERROR));
+        } catch (IOException e) {
+            // 无论是否发送成功都会关闭连接
+        }
+        closeQuietly(socketChannel);
+    }
+
+    private void closeQuietly(SocketChannel socketChannel) {
+        try {
+            socketChannel.close();
+        } catch (IOException e) {
+            logger.warn("Close server.client socket error.");
+        }
     }
 }
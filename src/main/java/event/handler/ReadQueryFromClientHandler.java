@@ -45,6 +45,11 @@ public class ReadQueryFromClientHandler implements FileEventHandler {
     public boolean handle(ZedisServer server, SelectionKey key, Object privateData) {
         InnerClient client = (InnerClient) privateData;
 
+        // 开启了IO线程时，推迟到beforeSleep中由IO线程读取
+        if (server.postponeClientRead(client)) {
+            return true;
+        }
+
         // 设置服务器的当前客户端
         server.setCurrentClient(client);
 
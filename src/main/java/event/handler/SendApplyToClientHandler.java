@@ -61,8 +61,13 @@ public class SendApplyToClientHandler implements FileEventHandler {
         }
 
         // 如果回复缓冲区空了，则不需要在监听write事件
+        // 需要在回复之后关闭的客户端（比如请求不符合协议），回复发送完之后关闭
         if (client.isNothingToReply()) {
-            server.getEventLoop().unregisterFileEvent(key, SelectionKey.OP_WRITE);
+            if (client.hasFlag(InnerClient.CLIENT_CLOSE_AFTER_REPLY)) {
+                server.distroyClient(key, client);
+            } else {
+                server.getEventLoop().unregisterFileEvent(key, SelectionKey.OP_WRITE);
+            }
         }
 
         server.clearCurrentClient();
@@ -0,0 +1,132 @@
+package remote;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 所有客户端共享的直接内存缓冲区池
+ * 缓冲区按照大小分为若干个等级（1kb、2kb、4kb ... 64kb），每个等级维护一个空闲列表，申请时向上取整到最近的等级
+ * 客户端只在真正需要时（比如有回复需要发送）才从池中申请缓冲区，数据发送完、客户端空闲时立即归还，
+ * 这样大量空闲连接不会各自占用一块直接内存，直接内存的使用量只与同时活跃的客户端数量有关
+ *
+ * 缓冲区可能在IO线程或其他reactor线程中归还，因此每个空闲列表都需要加锁，锁的持有时间很短，竞争不会很激烈
+ * 每个等级缓存的空闲缓冲区的总大小有上限，超过上限时归还的缓冲区直接丢弃，由GC回收
+ **/
+public class BufferPool {
+    public static final int MIN_SIZE_SHIFT = 10;                    // 最小的等级：1kb
+    public static final int MAX_SIZE_SHIFT = 16;                    // 最大的等级：64kb，超过该大小的缓冲区不进入池
+    public static final long MAX_POOLED_BYTES_PER_CLASS = 1024 * 1024 * 16;    // 每个等级最多缓存16mb的空闲缓冲区
+
+    private static volatile BufferPool instance;
+
+    private final ArrayDeque<ByteBuffer> [] freeLists;
+    private final AtomicLong allocatedBytes;    // 从操作系统分配的、由池管理的直接内存总量（包括正在使用的和空闲的）
+    private final AtomicLong pooledBytes;       // 空闲列表中缓冲区的总大小
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    BufferPool() {
+        this.freeLists = new ArrayDeque[MAX_SIZE_SHIFT - MIN_SIZE_SHIFT + 1];
+        for (int i = 0; i < this.freeLists.length; i++) {
+            this.freeLists[i] = new ArrayDeque<>();
+        }
+        this.allocatedBytes = new AtomicLong(0);
+        this.pooledBytes = new AtomicLong(0);
+    }
+
+    /**
+     * 双检锁实现单例模式
+     *
+     * @return BufferPool的实例
+     */
+    public static BufferPool getPool() {
+        if (instance == null) {
+            synchronized (BufferPool.class) {
+                if (instance == null) {
+                    instance = new BufferPool();
+                }
+            }
+        }
+
+        return instance;
+    }
+
+    /**
+     * 申请一个容量不小于size的缓冲区，返回的缓冲区处于写模式（position为0，limit为capacity）
+     * @param size 需要的大小
+     * @return 缓冲区
+     */
+    public ByteBuffer acquire(int size) {
+        int index = sizeClassIndex(size);
+        if (index < 0) {
+            return ByteBuffer.allocateDirect(size);
+        }
+
+        ArrayDeque<ByteBuffer> freeList = this.freeLists[index];
+        ByteBuffer buffer;
+        synchronized (freeList) {
+            buffer = freeList.pollFirst();
+        }
+
+        int capacity = 1 << (index + MIN_SIZE_SHIFT);
+        if (buffer == null) {
+            this.allocatedBytes.addAndGet(capacity);
+            return ByteBuffer.allocateDirect(capacity);
+        }
+
+        this.pooledBytes.addAndGet(-capacity);
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * 归还一个通过acquire申请的缓冲区，归还之后调用方不能再使用该缓冲区
+     * @param buffer 缓冲区
+     */
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        int index = sizeClassIndex(capacity);
+        if (index < 0 || capacity != 1 << (index + MIN_SIZE_SHIFT)) {
+            // 不是由池分配的缓冲区，直接丢弃
+            return;
+        }
+
+        ArrayDeque<ByteBuffer> freeList = this.freeLists[index];
+        synchronized (freeList) {
+            if ((long) (freeList.size() + 1) * capacity <= MAX_POOLED_BYTES_PER_CLASS) {
+                freeList.addFirst(buffer);
+                this.pooledBytes.addAndGet(capacity);
+                return;
+            }
+        }
+
+        // 空闲列表已满，丢弃该缓冲区
+        this.allocatedBytes.addAndGet(-capacity);
+    }
+
+    /**
+     * 计算size所属的等级
+     * @param size
+     * @return 等级在空闲列表数组中的下标，size超过最大等级时返回-1
+     */
+    private static int sizeClassIndex(int size) {
+        if (size > 1 << MAX_SIZE_SHIFT) {
+            return -1;
+        }
+        if (size <= 1 << MIN_SIZE_SHIFT) {
+            return 0;
+        }
+
+        // 向上取整到2的幂
+        int shift = 32 - Integer.numberOfLeadingZeros(size - 1);
+        return shift - MIN_SIZE_SHIFT;
+    }
+
+    public long getAllocatedBytes() {
+        return this.allocatedBytes.get();
+    }
+
+    public long getPooledBytes() {
+        return this.pooledBytes.get();
+    }
+}
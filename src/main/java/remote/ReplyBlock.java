@@ -0,0 +1,69 @@
+package remote;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 回复列表中的一个回复块，对应redis中的clientReplyBlock
+ * 多条较小的回复会被依次追加到同一个回复块中，直到回复块被写满，而不是每条回复单独占用一个节点
+ * 回复块内部的数据分为三部分：
+ * [0, sent)：已经发送给客户端的数据
+ * [sent, used)：等待发送的数据
+ * [used, size)：空闲空间
+ * 线程不安全
+ **/
+class ReplyBlock {
+    private final byte [] buf;          // 保存回复数据的数组
+    private final ByteBuffer view;      // 包装了buf的ByteBuffer，发送数据时使用，避免每次发送都创建新的ByteBuffer
+    private int used;                   // 已经写入的字节数
+    private int sent;                   // 已经发送的字节数
+
+    ReplyBlock(int size) {
+        this.buf = new byte[size];
+        this.view = ByteBuffer.wrap(this.buf);
+        this.used = 0;
+        this.sent = 0;
+    }
+
+    /**
+     * 将数据追加到回复块的空闲空间中，最多追加到回复块写满为止
+     * @param bytes 数据所在的数组
+     * @param offset 数据在数组中的起始位置
+     * @param length 数据长度
+     * @return 实际追加的字节数
+     */
+    int append(byte [] bytes, int offset, int length) {
+        int copyLength = Math.min(length, this.buf.length - this.used);
+        System.arraycopy(bytes, offset, this.buf, this.used, copyLength);
+        this.used += copyLength;
+        return copyLength;
+    }
+
+    /**
+     * 获取等待发送的数据的视图，范围是[sent, used)
+     * @return 等待发送的数据
+     */
+    ByteBuffer pendingView() {
+        this.view.limit(this.used);
+        this.view.position(this.sent);
+        return this.view;
+    }
+
+    /**
+     * 根据pendingView()返回的视图的当前位置，更新已经发送的字节数
+     */
+    void updateSent() {
+        this.sent = this.view.position();
+    }
+
+    boolean isFullySent() {
+        return this.sent == this.used;
+    }
+
+    int pendingLength() {
+        return this.used - this.sent;
+    }
+
+    int size() {
+        return this.buf.length;
+    }
+}
@@ -12,7 +12,6 @@ public class ReplyBuilder {
     }
 
     /**
-     * todo: 这部分可以优化：对于一些常用的字符串，可以提前创建出来，需要的时候直接复用这些对象，而避免频繁创建这些小对象
      * @param str
      * @return
      */
@@ -31,7 +30,6 @@ public class ReplyBuilder {
     }
 
     /**
-     * todo: 这部分可以优化：对于特定范围内的数（0-32）这些常用的数字，可以提前创建出来，需要的时候直接复用这些对象，而避免频繁创建这些小对象
      * 以bulk的形式，返回一个long整数
      * @param l
      * @return
@@ -42,8 +40,7 @@ public class ReplyBuilder {
     }
 
     /**
-     * todo: 这部分可以优化：因为很多错误信息是固定的，可以提前创建出来，需要的时候直接复用这些对象，而避免频繁创建这些小对象
-     * 创建ErrorReply对象
+     * 创建ErrorReply对象，只用于内容不固定的错误信息，固定的错误信息使用SharedObjects中预先编码的回复
      * @param args
      * @return
      */
@@ -52,8 +49,7 @@ public class ReplyBuilder {
     }
 
     /**
-     * todo: 这部分可以优化：因为状态回复一共就几种，可以提前创建出来，需要的时候直接复用这些对象，而避免频繁创建这些小对象
-     * 创建Status回复类型的Reply对象
+     * 创建Status回复类型的Reply对象，只用于内容不固定的状态信息，固定的状态信息使用SharedObjects中预先编码的回复
      * @param args status信息
      * @return StatusReply对象
      */
@@ -62,7 +58,6 @@ public class ReplyBuilder {
     }
 
     /**
-     * todo: 这部分可以优化：对于一些常用的数字（如0、1等），可以提前创建出来，需要的时候直接复用这些对象，而避免频繁创建这些小对象
      * 创建一个整数回复
      * @param l long类型的整数
      * @return
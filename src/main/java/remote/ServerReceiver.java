@@ -1,5 +1,6 @@
 package remote;
 
+import server.ServerContext;
 import server.client.InnerClient;
 import common.struct.impl.Sds;
 import org.apache.commons.logging.Log;
@@ -17,16 +18,27 @@ public class ServerReceiver implements Receiver {
 
     private static Log logger = LogFactory.getLog(ServerReceiver.class);
 
-    private final ByteBuffer socketBuffer;        // 用于从SocketChannel中读取数据
+    public static final int IO_BUF_LEN = 1024 * 16;     // 默认单次从socket读取的数据量：16kb
+    public static final int QUERY_BUFFER_RESIZE_THRESHOLD = 1024 * 4;   // 容量超过该值的查询缓冲区才考虑收缩，同时也是收缩时至少释放的空间
+    public static final long QUERY_BUFFER_IDLE_MILLIS = 2000;       // 客户端空闲超过该时间时，即使峰值不小也收缩查询缓冲区
+
+    /**
+     * 从SocketChannel中读取数据时使用的直接内存缓冲区
+     * 读缓冲区只在一次读取的过程中使用，读取的数据会立即复制到客户端的查询缓冲区中，
+     * 因此同一个线程（事件循环线程）上的所有客户端可以共享同一个读缓冲区，而不需要为每个客户端单独分配
+     */
+    private static final ThreadLocal<ByteBuffer> SHARED_READ_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(IO_BUF_LEN));
+
     private final Sds queryBuffer;                // 查询缓冲区
     private final RequestParser requestParser;    // 请求解析器
     private final InnerClient client;             // 该receiver关联的client对象
+    private int queryBufferPeak;                  // 最近一段时间查询缓冲区长度的峰值，clientsCron据此判断是否需要收缩
 
     public ServerReceiver(InnerClient client) {
-        this.socketBuffer = ByteBuffer.allocateDirect(8);
         this.queryBuffer = Sds.createEmptySds();
         this.requestParser = new RequestParser(client, this.queryBuffer);
         this.client = client;
+        this.queryBufferPeak = 0;
     }
 
 
@@ -37,54 +49,126 @@ public class ServerReceiver implements Receiver {
 
     /**
      * 处理查询缓冲区的数据
+     * @return 是否解析出了一条完整的request，解析出的命令参数存放在client的命令参数列表中
      */
-    public void processRequest() {
-        requestParser.parseRequest();
+    public boolean processRequest() {
+        return requestParser.parseRequest();
+    }
+
+    /**
+     * 删除查询缓冲区中已经处理过的数据
+     * 在每次读事件中处理完所有完整的request之后调用
+     */
+    public void compactQueryBuffer() {
+        requestParser.compactQueryBuffer();
+    }
+
+    /**
+     * 丢弃查询缓冲区中的所有数据，用于已经确定要关闭、不再处理命令的客户端
+     */
+    public void discardQueryBuffer() {
+        this.queryBuffer.clear();
+    }
+
+    /**
+     * @return 请求不符合协议时的错误信息，没有出错时返回null
+     */
+    public String getProtocolError() {
+        return requestParser.getProtocolError();
+    }
+
+    /**
+     * 查询缓冲区中尚未处理的数据是否超过了client-query-buffer-limit
+     * @return 超过限制时返回true
+     */
+    public boolean isQueryBufferLimitReached() {
+        return requestParser.getPendingQueryLength() > ServerContext.getContext().getServerConfig().getClientQueryBufferLimit();
+    }
+
+    /**
+     * 在clientsCron中调用，收缩容量远大于最近峰值的查询缓冲区，对应redis中的clientsCronResizeQueryBuffer
+     * 一次大的请求会使查询缓冲区扩容，但之后即使只有很小的请求，缓冲区也会一直保持该容量：
+     *     (1) 客户端已经空闲了一段时间，释放全部空闲空间，下次读取时再按需扩容
+     *     (2) 容量超过最近峰值的两倍，收缩到峰值大小，避免活跃的客户端在下次读取时又要扩容
+     * 之后重新开始记录峰值
+     * @param idleMillis 客户端的空闲时间（毫秒）
+     * @return 释放的字节数
+     */
+    public int resizeQueryBuffer(long idleMillis) {
+        int capacity = this.queryBuffer.capacity();
+        int length = this.queryBuffer.length();
+        if (capacity > QUERY_BUFFER_RESIZE_THRESHOLD && this.queryBuffer.remainingCapacity() > QUERY_BUFFER_RESIZE_THRESHOLD) {
+            if (idleMillis > QUERY_BUFFER_IDLE_MILLIS) {
+                this.queryBuffer.removeFreeSpace();
+            } else if (capacity / 2 > this.queryBufferPeak) {
+                int size = Math.max(this.queryBufferPeak, length);
+                this.queryBuffer.resize(length, size - length);
+            }
+        }
+
+        // 重新开始记录峰值，峰值从当前的长度开始
+        this.queryBufferPeak = length;
+
+        return capacity - this.queryBuffer.capacity();
     }
 
     /**
      * 从客户端对应的SocketChannel中读取数据到客户端的查询缓冲区
+     * 每次读事件只调用一次read，单次读取的数据量默认为IO_BUF_LEN，
+     * 如果当前正在读取一个大的bulk参数，则一次读取该参数剩余的全部内容（不超过client-read-buffer-max）
      * @return 返回一个int值。返回值为-1表示客户端已经关闭连接，返回值为正数表示读取的字节数，0表示异常情况
      */
     public int readDataFromSocket() {
         SocketChannel channel = this.client.getSocketChannel();
-        int bytesCount = 0;
-        try {
-            this.socketBuffer.clear();
 
-            int byteRead = channel.read(this.socketBuffer);
+        // 正在读取大参数，数据直接读入为该参数预先分配的数组中
+        ByteBuffer bigArgBuffer = this.requestParser.getBigArgBuffer();
+        if (bigArgBuffer != null) {
+            return readBigArgFromSocket(channel, bigArgBuffer);
+        }
+
+        // 确定本次读取的数据量
+        int readLength = IO_BUF_LEN;
+        int pendingBulkLength = this.requestParser.getPendingBulkLength();
+        if (pendingBulkLength > readLength) {
+            readLength = pendingBulkLength;
+        }
+
+        ByteBuffer readBuffer = getReadBuffer(readLength);
 
-            while (byteRead > 0) {
-                bytesCount += byteRead;
+        int byteRead;
+        try {
+            readBuffer.clear();
+            if (readBuffer.capacity() > readLength) {
+                readBuffer.limit(readLength);
+            }
 
-                // 将读取的数据写入查询缓冲区
-                this.socketBuffer.flip();
-                while (this.socketBuffer.hasRemaining()) {
-                    // 将从channel中读取到的数据写入查询缓冲区
-                    byte [] temp = new byte[this.socketBuffer.remaining()];
-                    this.socketBuffer.get(temp);
-                    this.queryBuffer.append(temp);
-                }
+            byteRead = channel.read(readBuffer);
+        } catch (IOException e) {
+            logger.error("Read from SocketChannel error");
+            return -1;
+        }
 
-                this.socketBuffer.clear();
-                byteRead = channel.read(this.socketBuffer);
-            };
+        ServerContext.getContext().getServerInstance().getStats().recordRead(byteRead);
 
-            // 正常读取了数据，直接返回
-            if (bytesCount > 0) {
+        // 正常读取了数据，直接复制到查询缓冲区中
+        if (byteRead > 0) {
+            readBuffer.flip();
+            this.queryBuffer.append(readBuffer);
+            if (this.queryBuffer.length() > this.queryBufferPeak) {
+                this.queryBufferPeak = this.queryBuffer.length();
+            }
 
+            if (logger.isDebugEnabled()) {
                 // 测试，输出从网络中读取的数据
                 logger.debug("服务器接收到数据：" + this.queryBuffer.toString());
-
-                return bytesCount;
             }
 
-            // 客户端关闭连接，返回-1
-            if (byteRead == -1) {
-                return -1;
-            }
-        } catch (IOException e) {
-            logger.error("Read from SocketChannel error");
+            return byteRead;
+        }
+
+        // 客户端关闭连接，返回-1
+        if (byteRead == -1) {
             return -1;
         }
 
@@ -92,6 +176,52 @@ public class ServerReceiver implements Receiver {
         return 0;
     }
 
+    /**
+     * 将socket中的数据直接读入大参数的数组，最多读取到该参数的内容结束为止，之后的数据（包括结尾的\r\n）仍然读入查询缓冲区
+     * @param channel 客户端对应的SocketChannel
+     * @param bigArgBuffer 大参数的缓冲区
+     * @return 返回值的含义与readDataFromSocket相同
+     */
+    private int readBigArgFromSocket(SocketChannel channel, ByteBuffer bigArgBuffer) {
+        int byteRead;
+        try {
+            byteRead = channel.read(bigArgBuffer);
+        } catch (IOException e) {
+            logger.error("Read from SocketChannel error");
+            return -1;
+        }
+
+        ServerContext.getContext().getServerInstance().getStats().recordRead(byteRead);
+
+        if (byteRead > 0) {
+            return byteRead;
+        }
+
+        return byteRead == -1 ? -1 : 0;
+    }
+
+    /**
+     * 获取当前线程共享的读缓冲区
+     * 如果读缓冲区的容量小于本次需要读取的数据量，则对读缓冲区进行扩容，但最大不超过client-read-buffer-max
+     * @param readLength 本次需要读取的数据量
+     * @return 当前线程共享的读缓冲区
+     */
+    private static ByteBuffer getReadBuffer(int readLength) {
+        ByteBuffer readBuffer = SHARED_READ_BUFFER.get();
+
+        if (readBuffer.capacity() < readLength) {
+            int max = ServerContext.getContext().getServerConfig().getClientReadBufferMax();
+            if (readBuffer.capacity() < max) {
+                // 按两倍进行扩容，避免逐步读取大参数的过程中频繁地重新分配
+                int newCapacity = Math.min(Math.max(readLength, readBuffer.capacity() * 2), max);
+                readBuffer = ByteBuffer.allocateDirect(newCapacity);
+                SHARED_READ_BUFFER.set(readBuffer);
+            }
+        }
+
+        return readBuffer;
+    }
+
     public Sds getQueryBuffer() {
         return this.queryBuffer;
     }
@@ -1,16 +1,15 @@
 package remote;
 
 import server.client.InnerClient;
-import event.EventLoop;
-import event.handler.SendApplyToClientHandler;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import server.ServerContext;
+import common.shared.SharedObjects;
 import common.utils.SafeEncoder;
+import server.ServerStats;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.Arrays;
 import java.util.LinkedList;
@@ -18,28 +17,43 @@ import java.util.LinkedList;
 /**
  * 服务器要发送给客户端的回复信息，都会先保存在对应客户端对象的回复缓冲区或回复列表中
  * 当客户端的套接字可写时，调用写处理器，将换成的回复信息发送给客户端
- * 回复消息优先缓存在缓冲区数组中，当缓冲区数组空间不足时，则存入队列中
+ * 回复消息优先缓存在缓冲区数组中，当缓冲区数组空间不足时，则存入回复列表中
+ * 回复列表由若干个回复块组成，多条回复会被连续地追加到回复块中，发送时通过聚集写一次性发送多个回复块
+ * 回复缓冲区在第一次有回复需要缓存时才从BufferPool中申请，所有回复都发送完之后立即归还，空闲的客户端不占用直接内存
  **/
 public class ServerReplyer implements Replyer {
     private static Log logger = LogFactory.getLog(Replyer.class);
 
     public static final int REPLY_CHUNK_BYTES = 16 * 1024;      // 回复缓冲区大小：16kb
     public static final int MAX_WRITE_PER_EVENT = 1024 * 64;    // 每次给一个client回复的最大数据
+    public static final int IOV_MAX = 16;                       // 单次聚集写最多使用的ByteBuffer数量
+
+    private static final byte BULK_PREFIX = '$';
+    private static final byte MULTI_BULK_PREFIX = '*';
+    private static final byte INTEGER_PREFIX = ':';
+    private static final byte [] DELIMITER = {'\r', '\n'};
 
     private InnerClient client;                 // replyer关联的client
     private SocketChannel socketChannel;        // 对应客户端建立连接时创建的SocketChannel
-    private ByteBuffer responseBuffer;          // 固定大小的回复缓冲区，最大缓存16kb,当缓冲区用完或回复太大无法放入buf数组，就会开始使用缓冲队列
-    private boolean isWriteMode;                // 用于记录responseBuffer的当前的读/写模式，默认是write模式
-    private LinkedList<byte[]> responseQueue;   // 回复缓冲队列
-    private ByteBuffer responseQueueBuffer;     // 由于要将队列中的数据发送出去，还是需要借助ByteBuffer，因此另创建一个
+    private ByteBuffer responseBuffer;          // 固定大小的回复缓冲区，最大缓存16kb,当缓冲区用完或回复太大无法放入buf数组，就会开始使用回复列表。始终处于写模式，position即为已写入的字节数，没有待发送的回复时为null
+    private ByteBuffer responseBufferView;      // responseBuffer的视图，发送数据时使用，范围是[responseBufferSent, responseBuffer.position())
+    private int responseBufferSent;             // 回复缓冲区中已经发送的字节数
+    private LinkedList<ReplyBlock> replyBlocks; // 回复列表
+    private long replyBytes;                    // 回复列表中所有回复块占用的内存大小，对应redis中的reply_bytes，用于检查输出缓冲区限制
+
+    // 聚集写时使用的ByteBuffer数组，以及将数字编码为协议格式时使用的临时数组（前缀 + 最多20个字符 + \r\n）
+    // 它们只在一次调用的过程中使用，因此同一个线程上的所有客户端共享同一份，而不需要为每个客户端单独分配
+    private static final ThreadLocal<ByteBuffer []> WRITE_VECTOR = ThreadLocal.withInitial(() -> new ByteBuffer[IOV_MAX]);
+    private static final ThreadLocal<byte []> NUMBER_BUFFER = ThreadLocal.withInitial(() -> new byte[32]);
 
     public ServerReplyer(InnerClient client) {
         this.client = client;
         this.socketChannel = client.getSocketChannel();
-        this.responseBuffer = ByteBuffer.allocateDirect(REPLY_CHUNK_BYTES);
-        this.isWriteMode = true;
-        this.responseQueue = new LinkedList<>();
-        this.responseQueueBuffer = ByteBuffer.allocateDirect(REPLY_CHUNK_BYTES);
+        this.responseBuffer = null;
+        this.responseBufferView = null;
+        this.responseBufferSent = 0;
+        this.replyBlocks = new LinkedList<>();
+        this.replyBytes = 0;
     }
 
     @Override
@@ -48,23 +62,132 @@ public class ServerReplyer implements Replyer {
             return;
         }
 
-        // 将回复消息写入客户端缓冲区或缓冲队列
+        // 将回复消息写入客户端缓冲区或回复列表
         String replyMessage = reply.getReplyMessage();
         addReply(replyMessage);
     }
 
+    /**
+     * 发送一个已经按照协议格式编码好的共享回复（参见SharedObjects），不会创建任何对象
+     * @param sharedReply 共享的回复，不能被修改
+     */
+    public void writeShared(byte [] sharedReply) {
+        if (!prepareClientToWrite(this.client)) {
+            return;
+        }
+
+        addReply(sharedReply, 0, sharedReply.length);
+    }
+
+    /**
+     * 发送一个bulk回复，格式："$3\r\nbar\r\n"
+     * 协议的格式部分和内容直接写入回复缓冲区，不会创建Reply对象和String
+     * @param content 内容所在的数组
+     * @param offset 内容在数组中的起始位置
+     * @param length 内容的长度
+     */
+    public void writeBulk(byte [] content, int offset, int length) {
+        if (!prepareClientToWrite(this.client)) {
+            return;
+        }
+
+        if (length < SharedObjects.SHARED_BULK_HEADER_LEN) {
+            byte [] header = SharedObjects.BULK_HEADERS[length];
+            addReply(header, 0, header.length);
+        } else {
+            addLongWithPrefix(BULK_PREFIX, length);
+        }
+        addReply(content, offset, length);
+        addReply(DELIMITER, 0, DELIMITER.length);
+    }
+
+    /**
+     * 发送一个整数回复，格式：":100\r\n"
+     * @param value 整数
+     */
+    public void writeInteger(long value) {
+        if (!prepareClientToWrite(this.client)) {
+            return;
+        }
+
+        if (value >= 0 && value < SharedObjects.SHARED_INTEGERS) {
+            byte [] shared = SharedObjects.INTEGERS[(int) value];
+            addReply(shared, 0, shared.length);
+        } else {
+            addLongWithPrefix(INTEGER_PREFIX, value);
+        }
+    }
+
+    /**
+     * 发送multi bulk回复的头部，格式："*3\r\n"，之后需要再发送count个元素
+     * @param count 元素数量
+     */
+    public void writeArrayHeader(int count) {
+        if (!prepareClientToWrite(this.client)) {
+            return;
+        }
+
+        if (count >= 0 && count < SharedObjects.SHARED_BULK_HEADER_LEN) {
+            byte [] header = SharedObjects.MULTI_BULK_HEADERS[count];
+            addReply(header, 0, header.length);
+        } else {
+            addLongWithPrefix(MULTI_BULK_PREFIX, count);
+        }
+    }
+
+    /**
+     * 将前缀和整数按照协议格式（比如 "$100\r\n"、":100\r\n"）编码后添加到缓冲区
+     * 数字从后往前直接写入临时数组，不会创建String
+     * @param prefix 前缀
+     * @param value 整数
+     */
+    private void addLongWithPrefix(byte prefix, long value) {
+        byte [] buf = NUMBER_BUFFER.get();
+        int pos = buf.length;
+
+        buf[--pos] = '\n';
+        buf[--pos] = '\r';
+
+        // 以负数的形式进行计算，从而正确处理Long.MIN_VALUE
+        boolean negative = value < 0;
+        long v = negative ? value : -value;
+        do {
+            buf[--pos] = (byte) ('0' - (v % 10));
+            v /= 10;
+        } while (v != 0);
+
+        if (negative) {
+            buf[--pos] = '-';
+        }
+        buf[--pos] = prefix;
+
+        addReply(buf, pos, buf.length - pos);
+    }
+
+    /**
+     * 将字节数组[offset, offset + length)范围内的内容添加到缓冲区，缓冲区的优先级与addReply(String)相同
+     * @param bytes 字节数组
+     * @param offset 起始位置
+     * @param length 长度
+     */
+    private void addReply(byte [] bytes, int offset, int length) {
+        if (!addReplyToBuffer(bytes, offset, length)) {
+            addReplyToList(bytes, offset, length);
+        }
+    }
+
     /**
      * 将回复消息添加到缓冲区
      * 注意缓冲区的优先级：
-     * （1）缓冲区：优先存入这里，当数据过大时无法放入时才考虑放入缓冲队列
-     * （2）缓冲列表：当缓冲队列有数据，则之后的数据也应该放入缓冲队列
+     * （1）缓冲区：优先存入这里，当数据过大时无法放入时才考虑放入回复列表
+     * （2）回复列表：当回复列表有数据，则之后的数据也应该放入回复列表
      * @param replyMessage
      */
     private void addReply(String replyMessage) {
         byte [] messageBytes = SafeEncoder.encode(replyMessage);
 
-        if (!addReplyToBuffer(messageBytes)) {
-            addReplyToQueue(messageBytes);
+        if (!addReplyToBuffer(messageBytes, 0, messageBytes.length)) {
+            addReplyToList(messageBytes, 0, messageBytes.length);
         }
     }
 
@@ -75,8 +198,9 @@ public class ServerReplyer implements Replyer {
      * 函数的行为如下：
      * (1)
      * 当客户端可以接收新数据时（通常情况下都是这样），函数返回 true，
-     * 并将写处理器（write handler）注册到事件循环中，
-     * 这样当套接字可写时，新数据就会被写入。
+     * 并将客户端加入服务器的待写客户端列表中（而不是立即注册写处理器），
+     * 在事件循环下一次进入select之前（beforeSleep），服务器会直接尝试将回复写入套接字，
+     * 只有当内核的发送缓冲区写满，回复无法一次发送完时，才会为客户端注册写处理器（write handler）。
      *
      * (2)
      * 对于那些不应该接收新数据的客户端，比如伪客户端、 master 以及未 ONLINE 的 slave ，
@@ -97,141 +221,221 @@ public class ServerReplyer implements Replyer {
         // TODO
 
         // 无连接的伪客户端总是不可写的
+        // 但用于执行转发命令的伪客户端需要保留回复，由调用方通过takeReplies()取出
         if (this.socketChannel == null) {
-            return false;
+            return this.client.hasFlag(InnerClient.CLIENT_FORWARDED);
         }
 
-        // 一般情况，为客户端套接字安装写处理器到事件循环
-        EventLoop eventLoop = ServerContext.getContext().getEventLoop();
+        // 客户端即将被关闭（比如输出缓冲区超过了限制，或者请求不符合协议），不再缓存新的回复
+        if (this.client.hasFlag(InnerClient.CLIENT_CLOSE_ASAP | InnerClient.CLIENT_CLOSE_AFTER_REPLY)) {
+            return false;
+        }
 
-        // 注册写数据事件和处理器
-        eventLoop.registerFileEvent(this.socketChannel, SelectionKey.OP_WRITE, SendApplyToClientHandler.getHandler(), client);
+        // 一般情况，将客户端加入待写客户端列表
+        // 如果客户端已经有等待发送的回复，说明它已经在待写客户端列表中，或者已经注册了写处理器，不需要重复处理
+        if (isNothingToReply() && !this.client.hasFlag(InnerClient.CLIENT_PENDING_WRITE)) {
+            ServerContext.getContext().getServerInstance().addClientToPendingWrite(this.client);
+        }
 
         return true;
     }
 
     /**
      * 将回复信息缓存到客户端的回复缓冲区中
-     * @param message 回复信息
+     * @param message 回复信息所在的数组
+     * @param offset 回复信息在数组中的起始位置
+     * @param length 回复信息的长度
      * @return 写入是否成功
      */
-    private boolean addReplyToBuffer(byte [] message) {
+    private boolean addReplyToBuffer(byte [] message, int offset, int length) {
         // TODO
         // 计算客户端状态
         // 如果正准备关闭客户端，无须再发送内容
 
         // 如果回复链表里已经有内容，再添加内容到回复缓冲区里面就是错误了
-        if (!this.responseQueue.isEmpty()) {
+        if (!this.replyBlocks.isEmpty()) {
             return false;
         }
 
-        // todo:这个操作会复制数组，需要优化
-        // 写入前要保证ByteBuffer处于写入状态
-        if (!this.isWriteMode) {
-            this.responseBuffer.compact();
-            this.isWriteMode = true;
+        // 第一次缓存回复时才申请回复缓冲区
+        if (this.responseBuffer == null) {
+            if (length > REPLY_CHUNK_BYTES) {
+                return false;
+            }
+            this.responseBuffer = BufferPool.getPool().acquire(REPLY_CHUNK_BYTES);
+            this.responseBufferView = this.responseBuffer.duplicate();
+            this.responseBufferSent = 0;
         }
 
         // 回复缓冲区的空间必须满足
-        if (message.length > this.responseBuffer.remaining()) {
+        if (length > this.responseBuffer.remaining()) {
             return false;
         }
 
         // 复制message到回复缓冲区里面
-        this.responseBuffer.put(message);
+        this.responseBuffer.put(message, offset, length);
 
         return true;
     }
 
     /**
-     * 将回复消息写入回复缓冲队列
-     * @param message
+     * 将回复消息写入回复列表
+     * 优先追加到列表最后一个回复块的空闲空间中，剩余的部分放入新的回复块，新回复块的大小至少为REPLY_CHUNK_BYTES
+     * @param message 回复信息所在的数组
+     * @param offset 回复信息在数组中的起始位置
+     * @param length 回复信息的长度
      */
-    private void addReplyToQueue(byte [] message) {
+    private void addReplyToList(byte [] message, int offset, int length) {
         // TODO
         // 计算客户端状态
         // 如果正准备关闭客户端，无须再发送内容
 
-        // 将回复消息加入缓冲队列
-        this.responseQueue.add(message);
+        ReplyBlock tail = this.replyBlocks.peekLast();
+        if (tail != null) {
+            int appended = tail.append(message, offset, length);
+            offset += appended;
+            length -= appended;
+        }
+
+        if (length > 0) {
+            ReplyBlock block = new ReplyBlock(Math.max(length, REPLY_CHUNK_BYTES));
+            block.append(message, offset, length);
+            this.replyBlocks.add(block);
+            this.replyBytes += block.size();
+
+            // 回复列表增长之后检查输出缓冲区限制
+            this.client.closeClientOnOutputBufferLimitReached();
+        }
     }
 
     /**
-     * 将缓冲区数据写入客户端对应的SocketChannel  buf->channel
-     * @return 返回一个int值。返回值为-1表示客户端已经关闭连接，返回值为正数表示写入的字节数，0表示异常情况
+     * 输出缓冲区占用的内存大小，与redis的getClientOutputBufferMemoryUsage一样只计算回复列表，不包括固定大小的回复缓冲区
+     * @return 字节数
      */
-    public int writeDataToSocket() {
-        // 发给客户端的总数据大小
-        int totalWrittenNum = 0;
+    public long getOutputBufferMemoryUsage() {
+        return this.replyBytes;
+    }
 
-        // 使responseBuffer处于读模式
-        if (this.isWriteMode) {
-            this.responseBuffer.flip();
-            this.isWriteMode = false;
+    /**
+     * 取出回复缓冲区和回复列表中所有还没有发送的数据，并清空回复缓冲区和回复列表
+     * 用于转发命令的伪客户端，取出的数据会交给真正的客户端发送
+     * @return 已经按照协议格式编码好的回复
+     */
+    public byte [] takeReplies() {
+        int bufferLength = this.responseBuffer == null ? 0 : this.responseBuffer.position() - this.responseBufferSent;
+        int length = bufferLength;
+        for (ReplyBlock block : this.replyBlocks) {
+            length += block.pendingLength();
         }
 
-        // 有缓冲的回复内容待发
-        while (this.responseBuffer.hasRemaining() || !this.responseQueue.isEmpty()) {
-            // 如果缓冲区有数据，则优先发送缓冲区内的数据
-            if (this.responseBuffer.hasRemaining()) {
-                int writtenSum = 0; // 单次write写入的字节数
-                int writtenNum = 0; // 发送一条回复过程中的发送字节数量和
-
-                try {
-                    while (this.responseBuffer.hasRemaining()) {
-                        writtenNum = this.socketChannel.write(this.responseBuffer);
-                        writtenSum += writtenNum;
-                        totalWrittenNum += writtenNum;
-                    }
-                } catch (IOException e) {
-                    logger.error("Write reply to server.client error", e);
-                }
+        byte [] replies = new byte[length];
+        if (bufferLength > 0) {
+            this.responseBufferView.limit(this.responseBuffer.position());
+            this.responseBufferView.position(this.responseBufferSent);
+            this.responseBufferView.get(replies, 0, bufferLength);
+        }
 
-                return totalWrittenNum;
-            } else {
-                // 删除队列第一个元素
-                byte [] byteMessage = this.responseQueue.removeFirst();
+        int offset = bufferLength;
+        for (ReplyBlock block : this.replyBlocks) {
+            int pending = block.pendingLength();
+            block.pendingView().get(replies, offset, pending);
+            offset += pending;
+        }
 
-                // 该节点没有内容，直接跳过
-                if (byteMessage.length == 0) {
-                    this.responseQueue.removeFirst();
-                    continue;
-                }
+        this.replyBlocks.clear();
+        this.replyBytes = 0;
+        releaseResponseBuffer();
 
-                int writtenNum = 0; // 单次write写入的字节数
-                int writtenSum = 0; // 发送一条回复过程中的发送字节数量和
+        return replies;
+    }
 
-                // 发送队列中的单条消息
-                int index = 0;      // 字符串的内容会分批先存入ByteBuffer，index用于标记已经写入的位置
-                while (index < byteMessage.length) {
-                    // 将需要写入的数据先写入辅助buf 通过buf写入到channel
-                    this.responseQueueBuffer.clear();
+    /**
+     * 回复缓冲区中的数据都已经发送，将回复缓冲区归还给BufferPool，下次有回复时再重新申请
+     */
+    private void releaseResponseBuffer() {
+        if (this.responseBuffer != null) {
+            BufferPool.getPool().release(this.responseBuffer);
+            this.responseBuffer = null;
+            this.responseBufferView = null;
+            this.responseBufferSent = 0;
+        }
+    }
 
-                    int fillLength = Math.min(byteMessage.length - index, this.responseQueueBuffer.remaining());
-                    this.responseQueueBuffer.put(byteMessage, index, fillLength);
+    /**
+     * 释放客户端持有的所有缓冲区，在客户端被销毁时调用
+     */
+    public void release() {
+        this.replyBlocks.clear();
+        this.replyBytes = 0;
+        releaseResponseBuffer();
+    }
 
-                    this.responseQueueBuffer.flip();
+    /**
+     * 将回复缓冲区和回复列表中的数据写入客户端对应的SocketChannel  buf->channel
+     * 使用聚集写（gathering write，即writev），一次系统调用最多可以发送回复缓冲区以及IOV_MAX - 1个回复块中的数据
+     * @return 返回一个int值。返回值为-1表示客户端已经关闭连接，返回值为正数表示写入的字节数，0表示异常情况
+     */
+    public int writeDataToSocket() {
+        ServerStats stats = ServerContext.getContext().getServerInstance().getStats();
+        stats.recordWriteEvent();
 
-                    try {
-                        while (this.responseQueueBuffer.hasRemaining()) {
-                            writtenNum = this.socketChannel.write(this.responseQueueBuffer);
-                            writtenSum += writtenNum;
-                            totalWrittenNum += writtenNum;
-                        }
-                    } catch (IOException e) {
-                        logger.error("Write reply to server.client error", e);
+        // 发给客户端的总数据大小
+        int totalWrittenNum = 0;
+        ByteBuffer [] writeVector = WRITE_VECTOR.get();
+
+        while (!isNothingToReply()) {
+            // 收集本次要发送的数据：回复缓冲区中的数据在前，之后依次是各个回复块中的数据
+            int count = 0;
+            boolean hasBufferData = this.responseBuffer != null && this.responseBufferSent < this.responseBuffer.position();
+            if (hasBufferData) {
+                this.responseBufferView.limit(this.responseBuffer.position());
+                this.responseBufferView.position(this.responseBufferSent);
+                writeVector[count++] = this.responseBufferView;
+            }
+            for (ReplyBlock block : this.replyBlocks) {
+                if (count == IOV_MAX) {
+                    break;
+                }
+                writeVector[count++] = block.pendingView();
+            }
 
-                        // 如果发送过程中发生异常，而消息又没有发完，则需要将这部分消息重新缓存起来
-                        if (writtenSum < byteMessage.length) {
-                            this.responseQueue.addFirst(Arrays.copyOfRange(byteMessage, writtenSum, byteMessage.length));
-                        }
+            long writtenNum;
+            try {
+                writtenNum = this.socketChannel.write(writeVector, 0, count);
+            } catch (IOException e) {
+                logger.error("Write reply to server.client error", e);
+                Arrays.fill(writeVector, 0, count, null);
+                return totalWrittenNum > 0 ? totalWrittenNum : -1;
+            }
+            Arrays.fill(writeVector, 0, count, null);
+
+            stats.recordWrite(writtenNum);
+
+            // 根据发送的结果，更新回复缓冲区和各个回复块中已发送的位置，发送完的回复块从回复列表中删除
+            int blockCount = count;
+            if (hasBufferData) {
+                blockCount--;
+                this.responseBufferSent = this.responseBufferView.position();
+                if (this.responseBufferSent == this.responseBuffer.position()) {
+                    // 回复缓冲区中的数据发送完，立即归还（回复列表中的数据之后不会再写入回复缓冲区）
+                    releaseResponseBuffer();
+                }
+            }
+            for (int i = 0; i < blockCount; i++) {
+                ReplyBlock block = this.replyBlocks.getFirst();
+                block.updateSent();
+                if (!block.isFullySent()) {
+                    break;
+                }
+                this.replyBlocks.removeFirst();
+                this.replyBytes -= block.size();
+            }
 
-                        // 返回发送异常前已经发送成功的数据长度
-                        return totalWrittenNum;
-                    }
+            totalWrittenNum += writtenNum;
 
-                    index += writtenSum;
-                }
+            // 内核的发送缓冲区已满，等待下一次写事件再继续发送
+            if (writtenNum == 0) {
+                break;
             }
 
             /**
@@ -254,9 +458,6 @@ public class ServerReplyer implements Replyer {
     }
 
     public boolean isNothingToReply() {
-        if (!this.responseBuffer.hasRemaining() && this.responseQueue.isEmpty()) {
-            return true;
-        }
-        return false;
+        return (this.responseBuffer == null || this.responseBufferSent == this.responseBuffer.position()) && this.replyBlocks.isEmpty();
     }
 }
@@ -1,13 +1,16 @@
 package remote.protocol;
 
+import common.struct.impl.SdsSlice;
 import server.client.InnerClient;
 import common.struct.impl.Sds;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import common.utils.ByteUtil;
 import common.utils.SdsUtil;
+import server.ServerContext;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 
 
 /**
@@ -19,6 +22,7 @@ public class RequestParser {
     private static Log logger = LogFactory.getLog(RequestParser.class);
 
     public static final int  INLINE_MAX_SIZE  = 1024 * 64;  /* Max size of inline reads */
+    public static final int  PROTO_MBULK_BIG_ARG = 1024 * 32;   // 长度不小于该值的bulk参数被视为大参数，会被直接读入单独分配的数组中
 
     private final Sds queryBuffer;                          // 该RequestParser关联的queryBuffer
     private final InnerClient client;                       // 该RequestParser关联的client对象
@@ -26,6 +30,13 @@ public class RequestParser {
     private volatile RequestType currentParseRequestType;   // 表示当前正在解析的请求类型
     private volatile int currentMultiBulkRequestItemNum;    // 当前解析的multBulkRequest中的元素数量
     private volatile int currentBulkItemLength;             // 当前解析的multBulkRequest中当前bulk的内容长度
+    private int queryBufferPosition;                        // 查询缓冲区的读游标，在此之前的数据都已经被解析（类似redis中的qb_pos）
+
+    private final ArrayList<SdsSlice> slicePool;            // 用于表示命令参数的SdsSlice对象，在不同的request之间复用
+    private int slicePoolUsed;                              // 当前request已经使用的SdsSlice对象数量
+
+    private ByteBuffer bigArgBuffer;                        // 当前正在读取的大参数，包装了一个与参数长度相同的数组，position即为已经读入的字节数
+    private String protocolError;                           // 请求不符合协议时的错误信息，出错之后不再解析该客户端的任何数据
 
     public RequestParser(InnerClient client, Sds queryBuffer) {
         this.queryBuffer = queryBuffer;
@@ -33,20 +44,34 @@ public class RequestParser {
         this.currentParseRequestType = RequestType.NONE;
         this.currentMultiBulkRequestItemNum = 0;
         this.currentBulkItemLength = -1;
+        this.queryBufferPosition = 0;
+        this.slicePool = new ArrayList<>();
+        this.slicePoolUsed = 0;
     }
 
     /**
      * 解析缓冲区的请求数据
      * 解析出来的命令参数存入client的命令参数列表中
+     * 每次调用最多解析出一条完整的request，调用方可以循环调用，直到返回false为止，从而将缓冲区中所有完整的request都解析出来（pipeline）
+     * 解析时只移动读游标，已解析的数据不会立即从查询缓冲区中删除，而是由调用方在处理完本次读取的数据后调用compactQueryBuffer统一删除
+     * @return 是否解析出了一条完整的request
      */
-    public void parseRequest() {
+    public boolean parseRequest() {
+        if (this.protocolError != null) {
+            return false;
+        }
+
         // 一直循环，直到完整地解析一个request为止
-        while (!this.queryBuffer.isEmpty()) {
+        while (this.queryBufferPosition < this.queryBuffer.length()) {
             // 先从查询缓冲中截取出一段完整命令（以\n结尾）
-            int indexLast = this.queryBuffer.indexOf('\n');
+            int indexLast = this.queryBuffer.indexOf(this.queryBufferPosition, '\n');
             // 当前查询缓冲区内的数据还不完整，暂时无法进行解析
+            // 但是一行（内联命令，或者multi bulk中的参数数量、bulk长度）超过INLINE_MAX_SIZE还没有结束，说明客户端不符合协议
             if(indexLast == -1) {
-                return;
+                if (this.currentBulkItemLength == -1 && this.queryBuffer.length() - this.queryBufferPosition > INLINE_MAX_SIZE) {
+                    return setProtocolError(tooBigLineError());
+                }
+                return false;
             }
 
             /******************************************************
@@ -59,7 +84,8 @@ public class RequestParser {
             if (this.currentParseRequestType == RequestType.NONE) {
                 // 当解析一个新的request，则将之前客户端内的命令列表中的参数清空
                 this.client.getCommandArgs().clear();
-                if (this.queryBuffer.charAt(0) == RequestType.MULTI_BULK_PREFIX) {
+                this.slicePoolUsed = 0;
+                if (this.queryBuffer.charAt(this.queryBufferPosition) == RequestType.MULTI_BULK_PREFIX) {
                     // 多条查询，一般客户端发送来的
                     this.currentParseRequestType = RequestType.MULTI_BULK;
                 } else {
@@ -70,21 +96,139 @@ public class RequestParser {
 
             // 根据当前的request类型，按照相应协议进行解析
             // 将缓冲区的数据转换命令及命令参数
+            // 解析有可能没有成功，因为数据可能不全，此时需要等待更多的数据进入缓冲区
+            // 对于multi bulk request，也有可能只解析了一部分参数
+            boolean parsed;
             if (this.currentParseRequestType == RequestType.INLINE) {
-                // 执行了一次解析
-                // 但有可能没有成功，因为数据可能不全
-                parseInlineRequest();
-                break;
+                parsed = parseInlineRequest();
             } else if (this.currentParseRequestType == RequestType.MULTI_BULK) {
-                // 执行了一次解析
-                // 但有可能没有成功，因为数据可能不全
-                // 也有可能只解析了一部分，因为数据可能不全
-                parseMultiBulkRequest();
-                break;
+                parsed = parseMultiBulkRequest();
             } else {
                 logger.error("Unknow request type");
+                return false;
+            }
+
+            if (!parsed) {
+                return false;
+            }
+
+            // 空白的request（比如单独的换行或 *0\r\n）不包含任何参数，直接跳过，继续解析下一条
+            if (!this.client.getCommandArgs().isEmpty()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * 记录协议错误，并丢弃查询缓冲区中剩余的数据，对应redis中的setProtocolError
+     * 这里不直接回复客户端（解析可能在IO线程中进行），由客户端在执行线程中取出错误信息、回复并关闭连接
+     * @param error 错误信息，不包括"Protocol error: "前缀
+     * @return 总是返回false，表示没有解析出request
+     */
+    private boolean setProtocolError(String error) {
+        this.protocolError = error;
+
+        this.queryBufferPosition = this.queryBuffer.length();
+        this.currentParseRequestType = RequestType.NONE;
+        this.currentMultiBulkRequestItemNum = 0;
+        this.currentBulkItemLength = -1;
+        this.bigArgBuffer = null;
+        this.client.getCommandArgs().clear();
+        this.slicePoolUsed = 0;
+
+        return false;
+    }
+
+    /**
+     * 没有找到行尾时，根据当前正在解析的部分确定错误信息
+     */
+    private String tooBigLineError() {
+        boolean multiBulk = this.currentParseRequestType == RequestType.MULTI_BULK
+                || (this.currentParseRequestType == RequestType.NONE && this.queryBuffer.charAt(this.queryBufferPosition) == RequestType.MULTI_BULK_PREFIX);
+        if (!multiBulk) {
+            return "too big inline request";
+        }
+        return this.currentMultiBulkRequestItemNum == 0 ? "too big mbulk count string" : "too big bulk count string";
+    }
+
+    /**
+     * @return 协议错误信息，没有出错时返回null
+     */
+    public String getProtocolError() {
+        return this.protocolError;
+    }
+
+    /**
+     * 获取客户端尚未执行的请求数据量，用于检查client-query-buffer-limit
+     * 包括查询缓冲区中尚未解析的数据、正在解析的request已经解析出的参数，以及正在读取的大参数已经读入的部分
+     * @return 字节数
+     */
+    public long getPendingQueryLength() {
+        long length = this.queryBuffer.length() - this.queryBufferPosition;
+        if (this.currentParseRequestType != RequestType.NONE) {
+            for (SdsSlice arg : this.client.getCommandArgs()) {
+                length += arg.length();
             }
         }
+        if (this.bigArgBuffer != null) {
+            length += this.bigArgBuffer.position();
+        }
+        return length;
+    }
+
+    /**
+     * 删除查询缓冲区中已经解析过的数据（读游标之前的部分），并将读游标复位
+     * 每次读事件处理完查询缓冲区中所有完整的request后调用一次，避免每解析一条request都移动一次剩余的数据
+     * 如果已解析的数据就是缓冲区的全部内容（最常见的情况），直接清空缓冲区，不需要复制数据
+     */
+    public void compactQueryBuffer() {
+        if (this.queryBufferPosition == 0) {
+            return;
+        }
+
+        // 如果还有一条request只解析了一部分，那么已解析出的参数引用的数据之后会被覆盖，因此要先将这些参数的数据复制出来
+        if (this.currentParseRequestType != RequestType.NONE) {
+            detachCommandArgs();
+        }
+
+        if (this.queryBufferPosition >= this.queryBuffer.length()) {
+            this.queryBuffer.clear();
+        } else {
+            this.queryBuffer.cut(this.queryBufferPosition, this.queryBuffer.length());
+        }
+
+        this.queryBufferPosition = 0;
+    }
+
+    /**
+     * 获取当前正在解析的bulk还需要读入的字节数（包括结尾的\r\n）
+     * ServerReceiver会根据该值决定单次读取的数据量，从而在读取大的bulk参数时减少read调用的次数
+     * @return 当前bulk尚未读入查询缓冲区的字节数，如果当前没有在等待bulk的内容部分，返回0
+     */
+    public int getPendingBulkLength() {
+        // 大参数的内容会通过getBigArgBuffer直接读入单独的数组中，不经过查询缓冲区
+        if (this.currentParseRequestType != RequestType.MULTI_BULK || this.currentBulkItemLength == -1 || this.bigArgBuffer != null) {
+            return 0;
+        }
+
+        // 解析完bulk的长度后，读游标会移动到bulk的内容部分的起始处
+        int pending = this.currentBulkItemLength + 2 - (this.queryBuffer.length() - this.queryBufferPosition);
+        return Math.max(pending, 0);
+    }
+
+    /**
+     * 获取当前正在读取的大参数的缓冲区
+     * ServerReceiver会将socket中的数据直接读入该缓冲区，而不经过查询缓冲区，
+     * 读取完成后，该缓冲区包装的数组会直接作为命令参数（以及之后保存到数据库中的值），不再复制
+     * @return 大参数的缓冲区，如果当前没有正在读取的大参数，或者大参数的内容已经全部读入，返回null
+     */
+    public ByteBuffer getBigArgBuffer() {
+        if (this.bigArgBuffer == null || !this.bigArgBuffer.hasRemaining()) {
+            return null;
+        }
+        return this.bigArgBuffer;
     }
 
     /**
@@ -95,32 +239,29 @@ public class RequestParser {
      */
     private boolean parseInlineRequest() {
         // 查找一行的行尾
-        int indexLast = this.queryBuffer.indexOf('\n');
+        int indexLast = this.queryBuffer.indexOf(this.queryBufferPosition, '\n');
 
         // 收到的查询内容不符合协议内容，出错
         if(indexLast == -1) {
-            if(this.queryBuffer.length() > INLINE_MAX_SIZE) {
-                // todo 错误处理 ，
-                // server.client.addReply(ReplyType.ERROR, "Protocol error: too big inline request");
+            if(this.queryBuffer.length() - this.queryBufferPosition > INLINE_MAX_SIZE) {
+                return setProtocolError("too big inline request");
             }
             return false;
         }
 
+        // 该行（包括行尾的\n）之后的位置，即下一条request的起始处
+        int nextRequestPosition = indexLast + 1;
+
         // 处理\r\n
-        if (indexLast != 0 && this.queryBuffer.charAt(indexLast - 1) == '\r'){
+        if (indexLast != this.queryBufferPosition && this.queryBuffer.charAt(indexLast - 1) == '\r'){
             indexLast--;
         }
 
-        // 提取该条request
-        Sds request = Sds.createSds(indexLast, this.queryBuffer.toArrayWithOutCopy());
-
-        // 根据空格，分割命令的参数
-        Sds[] commandArgs = SdsUtil.splitArgs(request);
+        // 根据空格，分割命令的参数，直接在查询缓冲区上解析该条request，无需将其复制出来
+        Sds[] commandArgs = indexLast == this.queryBufferPosition ? new Sds[0] : SdsUtil.splitArgs(this.queryBuffer.toArrayWithOutCopy(), this.queryBufferPosition, indexLast);
 
         if (commandArgs == null) {
-            //todo 错误处理， Protocol error: unbalanced quotes in request
-            // server.client.addReply(ReplyType.ERROR, "Protocol error: unbalanced quotes in request");
-            return false;
+            return setProtocolError("unbalanced quotes in request");
         }
 
         /******************************************************
@@ -128,13 +269,13 @@ public class RequestParser {
          ******************************************************/
 
         // 将解析的命令参数存入client的命令参数列表
-        ArrayList<Sds> clientCommandList = this.client.getCommandArgs();
+        ArrayList<SdsSlice> clientCommandList = this.client.getCommandArgs();
         for (Sds s : commandArgs) {
-            clientCommandList.add(s);
+            clientCommandList.add(nextSlice(s.toArrayWithOutCopy(), 0, s.length()));
         }
 
-        // 对当前request解析完成，则将request的内容从回复缓冲区中删除，剩余内容是未解析的
-        this.queryBuffer.cut(indexLast + 2, this.queryBuffer.length());
+        // 对当前request解析完成，将读游标移动到下一条request的起始处
+        this.queryBufferPosition = nextRequestPosition;
 
         // 解析成功，将当前正在解析的请求类型设置为无类型
         this.currentParseRequestType = RequestType.NONE;
@@ -153,7 +294,7 @@ public class RequestParser {
      * @return 解析是否成功
      */
     private boolean parseMultiBulkRequest() {
-        int parsePosition = 0;
+        int parsePosition = this.queryBufferPosition;
 
         // 解析读入命令的参数个数
         // 比如 *3\r\n$3\r\nSET\r\n... 将令 c->multibulklen = 3
@@ -161,12 +302,12 @@ public class RequestParser {
         // 每当解析一个新的multi bulk request时，会将当前的request中item的数量记录下来
         // 如果为0，表示正在解析一个新的multi bulk request
         if (this.currentMultiBulkRequestItemNum == 0) {
-            int firstDelimiterIndex = queryBuffer.indexOf('\r');
+            int firstDelimiterIndex = queryBuffer.indexOf(parsePosition, '\r');
             if (firstDelimiterIndex == -1) {
-                if (queryBuffer.length() > INLINE_MAX_SIZE) {
-                    // server.client.addReply(ReplyType.ERROR, "Protocol error: too big mbulk count string");
-                    return false;
+                if (queryBuffer.length() - parsePosition > INLINE_MAX_SIZE) {
+                    return setProtocolError("too big mbulk count string");
                 }
+                return false;
             }
 
             // 缓冲区内的数据应该也要包含\r\n，否则说明是不完整的requst，暂时不解析
@@ -175,12 +316,20 @@ public class RequestParser {
             }
 
             // 协议的第一个字符必须是 '*'，否则格式出错，不解析
-            if (queryBuffer.charAt(0) != '*') {
+            if (queryBuffer.charAt(parsePosition) != '*') {
                 return false;
             }
 
             // 解析出multi bulk request中指定的请求中bulk的个数
-            int requestItemNum = Integer.parseInt(new String(queryBuffer.toArrayWithOutCopy(), 1, firstDelimiterIndex - 1, Protocol.CHARSET));
+            long requestItemNum;
+            try {
+                requestItemNum = ByteUtil.parseLong(queryBuffer.toArrayWithOutCopy(), parsePosition + 1, firstDelimiterIndex - parsePosition - 1);
+            } catch (NumberFormatException e) {
+                return setProtocolError("invalid multibulk length");
+            }
+            if (requestItemNum > Integer.MAX_VALUE) {
+                return setProtocolError("invalid multibulk length");
+            }
 
             // 参数数量之后的位置
             // 比如对于 *3\r\n$3\r\n$SET\r\n... 来说，
@@ -190,7 +339,15 @@ public class RequestParser {
             //              pos
             // 参数数量之后的位置
             parsePosition = firstDelimiterIndex + 2;
-            this.currentMultiBulkRequestItemNum = requestItemNum;
+
+            // *0\r\n 或 *-1\r\n 表示一个空的request，直接丢弃
+            if (requestItemNum <= 0) {
+                this.queryBufferPosition = parsePosition;
+                this.currentParseRequestType = RequestType.NONE;
+                return true;
+            }
+
+            this.currentMultiBulkRequestItemNum = (int) requestItemNum;
         }
 
         // currentMultiBulkRequstItemNum 表示了该multi request剩余待解析的item数量
@@ -203,9 +360,8 @@ public class RequestParser {
                 int delimiterIndex = queryBuffer.indexOf(parsePosition, '\r');
                 if (delimiterIndex == -1) {
                     // 如果超过固定长度还没有\r\n，说明格式错误
-                    if (queryBuffer.length() > INLINE_MAX_SIZE) {
-                        // server.client.addReply(ReplyType.ERROR, "Protocol error: too big bulk count string");
-                        return false;
+                    if (queryBuffer.length() - parsePosition > INLINE_MAX_SIZE) {
+                        return setProtocolError("too big bulk count string");
                     }
                     // 如果只是单纯没找到\r\n，说明可能request数据还不全，暂时不解析
                     break;
@@ -218,62 +374,133 @@ public class RequestParser {
 
                 // 确保协议符合参数格式，单个bulk以$开头，检查其中的 $...
                 // 比如 $3\r\nSET\r\n
-                if ((char) queryBuffer.charAt(parsePosition) != '$') {
-                    // todo "Protocol error: expected '$', got '%c'"
-                    // server.client.addReply(ReplyType.ERROR, "Protocol error: expected '$'");
-                    return false;
+                if (queryBuffer.charAt(parsePosition) != '$') {
+                    return setProtocolError("expected '$', got '" + queryBuffer.charAt(parsePosition) + "'");
                 }
 
                 // 解析单个bulk中$后指定的长度
-                int bulkItemLength = Integer.parseInt(new String(queryBuffer.toArrayWithOutCopy(), parsePosition + 1, delimiterIndex - parsePosition - 1, Protocol.CHARSET));
-                if (bulkItemLength < 0 || bulkItemLength > 512 * 1024 * 1024) {
-                    // todo Protocol error: invalid bulk length
-                    // server.client.addReply(ReplyType.ERROR, "Protocol error: invalid bulk length");
-                    return false;
+                long bulkLength;
+                try {
+                    bulkLength = ByteUtil.parseLong(queryBuffer.toArrayWithOutCopy(), parsePosition + 1, delimiterIndex - parsePosition - 1);
+                } catch (NumberFormatException e) {
+                    bulkLength = -1;
+                }
+                if (bulkLength < 0 || bulkLength > ServerContext.getContext().getServerConfig().getProtoMaxBulkLen()) {
+                    return setProtocolError("invalid bulk length");
                 }
 
+                int bulkItemLength = (int) bulkLength;
+
                 // 将parsePosition指定到当前bulk的内容起始处
                 parsePosition = delimiterIndex + 2;
 
                 // 记录当前multi request中当前解析的bulk内容长度
                 this.currentBulkItemLength = bulkItemLength;
+
+                // 大参数：预先分配一个与参数长度完全相同的数组，参数剩余的内容会从socket直接读入该数组
+                if (bulkItemLength >= PROTO_MBULK_BIG_ARG) {
+                    this.bigArgBuffer = ByteBuffer.wrap(new byte[bulkItemLength]);
+                }
             }
 
-            // 当前parsePosition指向一个bulk item的内容部分的起始处
-            // 确保内容符合协议格式，即单个bulk item的内容部分，后面也要确保包含\r\n
-            // 比如 $3\r\nSET\r\n 就检查 SET 之后的 \r\n
-            // 如果不满足，说明request数据不全，暂不解析
-            if (queryBuffer.length() - parsePosition < this.currentBulkItemLength + 2) {
-                break;
+            ArrayList<SdsSlice> clientCommandList = client.getCommandArgs();
+            if (this.bigArgBuffer != null) {
+                // 查询缓冲区中可能已经读入了大参数的一部分内容，先将这部分内容复制到大参数的数组中
+                int copyLength = Math.min(queryBuffer.length() - parsePosition, this.bigArgBuffer.remaining());
+                if (copyLength > 0) {
+                    this.bigArgBuffer.put(queryBuffer.toArrayWithOutCopy(), parsePosition, copyLength);
+                    parsePosition += copyLength;
+                }
+
+                // 大参数的内容还没有读完，或者结尾的\r\n还没有读入，暂不解析
+                if (this.bigArgBuffer.hasRemaining() || queryBuffer.length() - parsePosition < 2) {
+                    break;
+                }
+
+                // 大参数的数组由该参数独占，保存到数据库时不需要再复制
+                SdsSlice arg = nextOwnedSlice(this.bigArgBuffer.array());
+                clientCommandList.add(arg);
+
+                // 跳过结尾的\r\n
+                parsePosition += 2;
+                this.bigArgBuffer = null;
             } else {
-                // 将单个bulk item的内容提取出来
+                // 当前parsePosition指向一个bulk item的内容部分的起始处
+                // 确保内容符合协议格式，即单个bulk item的内容部分，后面也要确保包含\r\n
+                // 比如 $3\r\nSET\r\n 就检查 SET 之后的 \r\n
+                // 如果不满足，说明request数据不全，暂不解析
+                if (queryBuffer.length() - parsePosition < this.currentBulkItemLength + 2) {
+                    break;
+                }
+
+                // 将单个bulk item的内容提取出来，参数直接引用查询缓冲区中的数据，不进行复制
                 // 由于multi bulk中的参数可能是分多次解析出来的，因此，是逐步添加到客户端的命令参数列表中
-                Sds arg = Sds.createSds(Arrays.copyOfRange(queryBuffer.toArrayWithOutCopy(), parsePosition, parsePosition + this.currentBulkItemLength));
-                ArrayList<Sds> clientCommandList = client.getCommandArgs();
+                SdsSlice arg = nextSlice(queryBuffer.toArrayWithOutCopy(), parsePosition, this.currentBulkItemLength);
                 clientCommandList.add(arg);
 
                 // 将parsePosition的位置移动到下一个bulk item的起始处
                 parsePosition += this.currentBulkItemLength + 2;
-
-                // 当前bulk内容解析完成，将currentBulkItemLength复位
-                this.currentBulkItemLength = -1;
-                // 每解析完一个bulk，就将currentMultiBulkRequestItemNum的数量减一
-                this.currentMultiBulkRequestItemNum--;
             }
-        }
 
-        // 从 querybuf 中删除已被解析的内容
-        if (parsePosition > 0) {
-            queryBuffer.cut(parsePosition, queryBuffer.length());
+            // 当前bulk内容解析完成，将currentBulkItemLength复位
+            this.currentBulkItemLength = -1;
+            // 每解析完一个bulk，就将currentMultiBulkRequestItemNum的数量减一
+            this.currentMultiBulkRequestItemNum--;
         }
 
+        // 将读游标移动到已解析内容之后，已被解析的内容要等本次读取的数据处理完之后才会从 querybuf 中删除
+        this.queryBufferPosition = parsePosition;
+
         // 如果本条命令的所有参数都已读取完，那么返回
         if (this.currentMultiBulkRequestItemNum == 0) {
             this.currentParseRequestType = RequestType.NONE;
             return true;
         }
 
-        // 如果还有参数未读取完，那么就协议内容有错
         return false;
     }
+
+    /**
+     * 获取一个SdsSlice对象来表示命令参数，优先复用之前request使用过的对象
+     * @param buf 参数数据所在的数组
+     * @param offset 参数在数组中的起始位置
+     * @param length 参数长度
+     * @return 表示命令参数的SdsSlice
+     */
+    private SdsSlice nextSlice(byte [] buf, int offset, int length) {
+        SdsSlice slice;
+        if (this.slicePoolUsed < this.slicePool.size()) {
+            slice = this.slicePool.get(this.slicePoolUsed);
+            slice.reset(buf, offset, length);
+        } else {
+            slice = new SdsSlice(buf, offset, length);
+            this.slicePool.add(slice);
+        }
+        this.slicePoolUsed++;
+
+        return slice;
+    }
+
+    /**
+     * 获取一个SdsSlice对象来表示独占整个数组的命令参数（大参数），优先复用之前request使用过的对象
+     * @param buf 参数独占的数组
+     * @return 表示命令参数的SdsSlice
+     */
+    private SdsSlice nextOwnedSlice(byte [] buf) {
+        SdsSlice slice = nextSlice(buf, 0, buf.length);
+        slice.resetOwned(buf);
+        return slice;
+    }
+
+    /**
+     * 将引用了查询缓冲区的命令参数的数据复制出来，使其不再依赖查询缓冲区
+     */
+    private void detachCommandArgs() {
+        byte [] buf = this.queryBuffer.toArrayWithOutCopy();
+        for (SdsSlice arg : this.client.getCommandArgs()) {
+            if (arg.getBuffer() == buf) {
+                arg.detach();
+            }
+        }
+    }
 }
@@ -0,0 +1,170 @@
+package server;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import server.client.InnerClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * IO线程，对应redis 6中的threaded I/O（networking.c中的io_threads_*）
+ * 命令仍然只在主线程（事件循环线程）中执行，IO线程只负责：
+ *     (1) 从套接字读取数据，并解析出客户端的第一条命令
+ *     (2) 将回复缓冲区中的数据写入套接字
+ * 主线程在beforeSleep中把待处理的客户端按照轮询的方式分配给各个IO线程（主线程自己也处理其中一份），然后等待所有IO线程处理完成，
+ * 因此同一时刻一个客户端只会被一个线程访问，并且在IO线程工作期间主线程不会执行任何命令，数据库等状态仍然只会被主线程访问
+ *
+ * IO线程没有任务时先自旋等待一段时间，以降低主线程分配任务之后的唤醒延迟，自旋之后仍然没有任务则挂起，由主线程唤醒
+ * io-threads不应该超过CPU核数
+ **/
+public class IOThreads {
+    private static Log logger = LogFactory.getLog(IOThreads.class);
+
+    public static final int IO_THREADS_OP_READ = 0;
+    public static final int IO_THREADS_OP_WRITE = 1;
+
+    private static final int SPIN_COUNT = 1000;         // IO线程挂起之前自旋等待任务的次数
+
+    private final int threadNum;                        // 线程数量，包括主线程
+    private final Thread [] threads;                    // IO线程，下标为0的位置表示主线程，不创建新线程
+    private final List<List<InnerClient>> threadLists;  // 每个线程需要处理的客户端
+    private final AtomicInteger [] pendings;            // 每个线程还没有处理完的客户端数量，为0表示该线程空闲
+    private volatile int op;                            // 当前的操作类型：读或写
+    private volatile boolean stop;
+
+    /**
+     * @param threadNum 线程数量（包括主线程），对应配置项io-threads
+     */
+    public IOThreads(int threadNum) {
+        this.threadNum = threadNum;
+        this.threads = new Thread[threadNum];
+        this.threadLists = new ArrayList<>(threadNum);
+        this.pendings = new AtomicInteger[threadNum];
+        this.stop = false;
+
+        for (int i = 0; i < threadNum; i++) {
+            this.threadLists.add(new ArrayList<>());
+            this.pendings[i] = new AtomicInteger(0);
+        }
+    }
+
+    /**
+     * 创建并启动IO线程
+     */
+    public void start() {
+        for (int i = 1; i < this.threadNum; i++) {
+            final int id = i;
+            Thread thread = new Thread(() -> ioThreadMain(id), "io_thd_" + id);
+            thread.setDaemon(true);
+            this.threads[i] = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * 停止所有IO线程
+     */
+    public void stop() {
+        this.stop = true;
+        for (int i = 1; i < this.threadNum; i++) {
+            LockSupport.unpark(this.threads[i]);
+        }
+    }
+
+    public int getThreadNum() {
+        return this.threadNum;
+    }
+
+    /**
+     * 由主线程调用，使用所有IO线程并行地处理客户端的读或写，返回时所有客户端都已经处理完毕
+     * 读操作的结果（读取的字节数、是否解析出了命令）和写操作的结果都记录在客户端中，由主线程在之后进一步处理
+     * 与redis的stopThreadedIOIfNeeded()一样，待处理的客户端较少时直接在主线程中处理，避免线程间同步的开销
+     * @param clients 待处理的客户端
+     * @param op IO_THREADS_OP_READ或IO_THREADS_OP_WRITE
+     * @return 是否使用了IO线程
+     */
+    public boolean handleClients(List<InnerClient> clients, int op) {
+        if (clients.size() < this.threadNum * 2) {
+            processClients(clients, op);
+            return false;
+        }
+
+        // 先设置操作类型，再通过pendings发布任务，IO线程读到pendings之后就能看到操作类型和分配的客户端
+        this.op = op;
+
+        int index = 0;
+        for (InnerClient client : clients) {
+            this.threadLists.get(index % this.threadNum).add(client);
+            index++;
+        }
+
+        for (int i = 1; i < this.threadNum; i++) {
+            int count = this.threadLists.get(i).size();
+            if (count > 0) {
+                this.pendings[i].set(count);
+                LockSupport.unpark(this.threads[i]);
+            }
+        }
+
+        // 主线程处理分配给自己的客户端
+        List<InnerClient> mainList = this.threadLists.get(0);
+        processClients(mainList, op);
+        mainList.clear();
+
+        // 等待所有IO线程处理完成
+        for (int i = 1; i < this.threadNum; i++) {
+            while (this.pendings[i].get() != 0) {
+                Thread.yield();
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * IO线程的主循环
+     * @param id 线程编号
+     */
+    private void ioThreadMain(int id) {
+        List<InnerClient> clients = this.threadLists.get(id);
+        AtomicInteger pending = this.pendings[id];
+
+        while (!this.stop) {
+            // 先自旋等待任务，长时间没有任务时挂起线程
+            // 自旋时让出CPU，避免线程数量多于CPU核数时自旋的IO线程抢占主线程的CPU时间
+            for (int i = 0; i < SPIN_COUNT && pending.get() == 0; i++) {
+                Thread.yield();
+            }
+
+            if (pending.get() == 0) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            try {
+                processClients(clients, this.op);
+            } catch (RuntimeException e) {
+                logger.error("IO thread " + id + " process clients error", e);
+            } finally {
+                // 无论是否出现异常，都要通知主线程本线程已经处理完毕，否则主线程会一直等待
+                clients.clear();
+                pending.set(0);
+            }
+        }
+    }
+
+    private static void processClients(List<InnerClient> clients, int op) {
+        if (op == IO_THREADS_OP_WRITE) {
+            for (InnerClient client : clients) {
+                client.writeReplyInIOThread();
+            }
+        } else {
+            for (InnerClient client : clients) {
+                client.readQueryInIOThread();
+            }
+        }
+    }
+}
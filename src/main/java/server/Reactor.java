@@ -0,0 +1,208 @@
+package server;
+
+import command.AbstractCommand;
+import command.CommandExecutor;
+import common.expire.PeriodicExpirator;
+import common.struct.impl.SdsSlice;
+import database.Database;
+import event.EventLoop;
+import event.handler.ReadQueryFromClientHandler;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import server.client.InnerClient;
+
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 多reactor模式（server-threads大于1）下的一个reactor
+ * 每个reactor在自己的线程中运行一个独立的事件循环，并且拥有键空间的一个分区（一个独立的Database），
+ * 分配给它的客户端的读写事件、命令的执行、分区内过期键的删除都只在该线程中进行，reactor之间不共享任何可变状态
+ *
+ * reactor之间只通过消息队列（mailbox）通信：其他线程把任务放入队列并唤醒该reactor的selector，
+ * 任务在该reactor的beforeSleep中依次执行，用于接收新的连接、执行转发过来的命令以及接收转发命令的回复
+ **/
+public class Reactor {
+    private static Log logger = LogFactory.getLog(Reactor.class);
+
+    private final int id;                       // reactor编号，同时也是其拥有的键空间分区的编号
+    private final ReactorGroup group;
+    private final EventLoop eventLoop;
+    private final Database database;            // 该reactor拥有的键空间分区
+    private final ConcurrentLinkedQueue<Runnable> mailbox;  // 其他线程发送给该reactor的任务，无锁队列
+    private final AtomicBoolean wakeupPending;  // 是否已经唤醒了selector但还没有处理mailbox，用于合并多次唤醒
+    private final List<InnerClient> clients;    // 分配给该reactor的客户端
+    private final List<InnerClient> clientsPendingWrite;    // 有等待发送的回复，但还没有注册写处理器的客户端
+    private final List<InnerClient> clientsToClose;         // 等待在beforeSleep中关闭的客户端
+    private final InnerClient forwardClient;    // 执行其他reactor转发过来的命令时使用的伪客户端
+    private final PeriodicExpirator periodicExpirator;
+    private boolean activeExpire;               // 是否主动删除过期键，在启动reactor线程之前设置
+    private Thread thread;
+
+    Reactor(int id, ReactorGroup group) {
+        this.id = id;
+        this.group = group;
+        this.eventLoop = EventLoop.createEventLoop();
+        this.database = new Database(ServerContext.getContext().getServerConfig().isActiveExpireTimeIndex());
+        this.mailbox = new ConcurrentLinkedQueue<>();
+        this.wakeupPending = new AtomicBoolean(false);
+        this.clients = new LinkedList<>();
+        this.clientsPendingWrite = new ArrayList<>();
+        this.clientsToClose = new ArrayList<>();
+        this.forwardClient = InnerClient.createForwardClient(this.database);
+        this.periodicExpirator = new PeriodicExpirator(this.database);
+
+        this.eventLoop.setBeforeSleep(eventLoop -> beforeSleep());
+    }
+
+    /**
+     * 启动reactor线程
+     * @param cronPeriod 定期删除过期键、维护客户端的周期（毫秒）
+     * @param activeExpire 是否主动删除过期键
+     * @param activeRehashing 是否主动rehash
+     */
+    void start(long cronPeriod, boolean activeExpire, boolean activeRehashing) {
+        this.activeExpire = activeExpire;
+        int hz = (int) Math.max(1000 / cronPeriod, 1);
+        this.eventLoop.createTimeEvent(cronPeriod, TimeUnit.MILLISECONDS, (eventLoop, id, clientData) -> {
+            ZedisServer.getInstance().clientsCron(this.clients, hz);
+            if (activeExpire) {
+                this.periodicExpirator.delExpiredPeriodicaly(PeriodicExpirator.SLOW_MODE);
+            }
+            this.database.tryResizeHashTables();
+            if (activeRehashing) {
+                this.database.incrementallyRehash(1);
+            }
+            return cronPeriod;
+        }, null, null);
+
+        this.thread = new Thread(this.eventLoop::eventLoopMain, "reactor_" + this.id);
+        this.thread.start();
+    }
+
+    /**
+     * 向该reactor发送一个任务，可以在任意线程中调用
+     * 任务会在该reactor的线程中执行，同一个线程发送的任务按照发送的顺序执行
+     * 在reactor处理mailbox之前的多次发送只唤醒一次selector，减少系统调用
+     * @param task
+     */
+    public void post(Runnable task) {
+        this.mailbox.add(task);
+        if (this.wakeupPending.compareAndSet(false, true)) {
+            this.eventLoop.getSelector().wakeup();
+        }
+    }
+
+    /**
+     * 每次进入select之前执行：先处理其他线程发送过来的任务，再按需执行快速模式的定期删除，最后发送客户端的回复
+     */
+    private void beforeSleep() {
+        // 先清除标记再处理mailbox：之后发送的任务要么在本次被处理，要么会重新唤醒selector
+        this.wakeupPending.set(false);
+
+        Runnable task;
+        while ((task = this.mailbox.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.error("Reactor " + this.id + " run task error", e);
+            }
+        }
+
+        if (this.activeExpire) {
+            this.periodicExpirator.delExpiredPeriodicaly(PeriodicExpirator.FAST_MODE);
+        }
+
+        ZedisServer.getInstance().freeClientsInAsyncFreeQueue(this.clientsToClose, this.eventLoop);
+        ZedisServer.getInstance().handleClientsWithPendingWrites(this.clientsPendingWrite, this.eventLoop);
+    }
+
+    /**
+     * 在该reactor的线程中执行：为新的连接创建客户端，并注册读事件
+     * @param socketChannel 主线程接收的连接
+     */
+    void acceptClient(SocketChannel socketChannel) {
+        InnerClient client = (InnerClient) InnerClient.createClient(socketChannel);
+        client.setReactor(this);
+        client.selectDatabase(this.database);
+        this.clients.add(client);
+
+        this.eventLoop.registerFileEvent(socketChannel, SelectionKey.OP_READ, ReadQueryFromClientHandler.getHandler(), client);
+    }
+
+    /**
+     * 在该reactor的线程中执行：使用伪客户端在本分区中执行其他reactor转发过来的命令
+     * @param command 命令
+     * @param args 命令参数，必须是不依赖于原客户端查询缓冲区的副本
+     * @return 命令的回复
+     */
+    byte [] executeForwarded(AbstractCommand command, List<SdsSlice> args) {
+        this.forwardClient.getCommandArgs().addAll(args);
+        try {
+            CommandExecutor.getExecutor().execute(command, this.forwardClient);
+        } finally {
+            this.forwardClient.getCommandArgs().clear();
+        }
+        return this.forwardClient.takeReplies();
+    }
+
+    public void addClientToPendingWrite(InnerClient client) {
+        client.addFlag(InnerClient.CLIENT_PENDING_WRITE);
+        this.clientsPendingWrite.add(client);
+    }
+
+    public void closeClientAsync(InnerClient client) {
+        if (!client.hasFlag(InnerClient.CLIENT_CLOSE_ASAP)) {
+            client.addFlag(InnerClient.CLIENT_CLOSE_ASAP);
+            this.clientsToClose.add(client);
+        }
+    }
+
+    /**
+     * 在该reactor的线程中执行：销毁客户端
+     * @param key 客户端在该reactor的selector上注册的key
+     * @param client
+     */
+    public void destroyClient(SelectionKey key, InnerClient client) {
+        this.clients.remove(client);
+
+        // 从待写客户端列表中删除（在handleClientsWithPendingWrites中关闭客户端时，由调用方负责清空列表）
+        if (client.hasFlag(InnerClient.CLIENT_PENDING_WRITE)) {
+            client.removeFlag(InnerClient.CLIENT_PENDING_WRITE);
+            this.clientsPendingWrite.remove(client);
+        }
+
+        if (key != null && key.isValid()) {
+            this.eventLoop.unregisterFileEvent(key, SelectionKey.OP_READ);
+            this.eventLoop.unregisterFileEvent(key, SelectionKey.OP_WRITE);
+        }
+        if (client.getSocketChannel().isOpen()) {
+            ZedisServer.getInstance().getStats().recordClientClosed();
+        }
+        client.distroy();
+
+        logger.info("disconnect with server.client.");
+    }
+
+    public int getId() {
+        return this.id;
+    }
+
+    public ReactorGroup getGroup() {
+        return this.group;
+    }
+
+    public EventLoop getEventLoop() {
+        return this.eventLoop;
+    }
+
+    public Database getDatabase() {
+        return this.database;
+    }
+}
@@ -0,0 +1,231 @@
+package server;
+
+import command.AbstractCommand;
+import command.CommandExecutor;
+import common.shared.SharedObjects;
+import common.struct.ZedisString;
+import common.struct.impl.SdsSlice;
+import common.utils.ByteUtil;
+import server.client.InnerClient;
+
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * 多reactor模式（server-threads大于1）下的所有reactor
+ * 键空间按照key的hash值被划分为server-threads个分区，第i个分区属于第i个reactor
+ * 主线程只负责接收连接，新的连接按照轮询的方式分配给各个reactor
+ *
+ * 客户端的命令在其所属的reactor中执行，如果命令的key属于其他reactor，则：
+ *     (1) 复制命令参数，将命令转发到拥有该key的reactor，由该reactor使用伪客户端执行，得到编码好的回复
+ *     (2) 回复再被发送回客户端所属的reactor，追加到客户端的回复缓冲区中
+ * 在收到转发命令的回复之前，客户端的后续命令不会被处理，从而保证回复的顺序与命令的顺序相同
+ *
+ * 多个key分布在不同分区的命令（如DEL）由客户端所属的reactor作为协调者：
+ * 按照分区拆分成多个子命令分别转发，收到所有子命令的回复后再合并为一个回复，目前只支持回复为整数的命令，合并时将各个整数相加
+ *
+ * 依赖全局状态的命令（订阅发布、SAVE/BGSAVE）以及需要访问整个键空间的命令（SCAN、RANDOMKEY）在该模式下不支持
+ **/
+public class ReactorGroup {
+    private final Reactor [] reactors;
+    private int nextReactor;        // 下一个新连接分配给的reactor，只在主线程中使用
+
+    public ReactorGroup(int reactorNum) {
+        this.reactors = new Reactor[reactorNum];
+        for (int i = 0; i < reactorNum; i++) {
+            this.reactors[i] = new Reactor(i, this);
+        }
+        this.nextReactor = 0;
+    }
+
+    /**
+     * 启动所有reactor线程
+     * @param cronPeriod 定期删除过期键的周期（毫秒）
+     * @param activeExpire 是否主动删除过期键
+     * @param activeRehashing 是否在定时任务中主动rehash
+     */
+    public void start(long cronPeriod, boolean activeExpire, boolean activeRehashing) {
+        for (Reactor reactor : this.reactors) {
+            reactor.start(cronPeriod, activeExpire, activeRehashing);
+        }
+    }
+
+    /**
+     * 在主线程中调用：将新的连接分配给一个reactor
+     * @param socketChannel
+     */
+    public void acceptClient(SocketChannel socketChannel) {
+        Reactor reactor = this.reactors[this.nextReactor];
+        this.nextReactor = (this.nextReactor + 1) % this.reactors.length;
+
+        reactor.post(() -> reactor.acceptClient(socketChannel));
+    }
+
+    /**
+     * 计算key所属的分区
+     * @param key
+     * @return 分区编号，即拥有该分区的reactor的编号
+     */
+    public int partitionOf(ZedisString key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return (h & 0x7fffffff) % this.reactors.length;
+    }
+
+    public int getReactorNum() {
+        return this.reactors.length;
+    }
+
+    /**
+     * 在客户端所属的reactor中执行命令，或者将命令转发到拥有其key的reactor
+     * 调用返回之后，调用方会清空客户端的命令参数，因此转发时必须复制参数
+     * @param command 命令
+     * @param client 客户端，参数在client的命令参数列表中
+     */
+    public void dispatch(AbstractCommand command, InnerClient client) {
+        Reactor origin = client.getReactor();
+        ArrayList<SdsSlice> args = client.getCommandArgs();
+
+        if (command.getFirstKey() == 0) {
+            // 没有key的命令在当前reactor中执行，依赖全局状态的命令不支持，
+            // 结果取决于整个键空间的命令（R）在当前reactor中只能看到一个分区，同样不支持
+            if (command.hasFlag(AbstractCommand.CMD_PUBSUB | AbstractCommand.CMD_ADMIN | AbstractCommand.CMD_RANDOM)) {
+                client.replyShared(SharedObjects.UNSUPPORTED_COMMAND_ERROR);
+                return;
+            }
+            CommandExecutor.getExecutor().execute(command, client);
+            return;
+        }
+
+        // 按照分区对key进行分组，分组中是key参数的位置
+        int lastKey = command.getLastKey() < 0 ? args.size() + command.getLastKey() : command.getLastKey();
+        TreeMap<Integer, List<Integer>> partitions = new TreeMap<>();
+        for (int i = command.getFirstKey(); i <= lastKey && i < args.size(); i += command.getKeyStep()) {
+            partitions.computeIfAbsent(partitionOf(args.get(i)), p -> new ArrayList<>()).add(i);
+        }
+
+        if (partitions.size() == 1) {
+            int partition = partitions.firstKey();
+            if (partition == origin.getId()) {
+                // 所有key都属于当前reactor，直接执行
+                CommandExecutor.getExecutor().execute(command, client);
+            } else {
+                forward(command, copyArgs(args), client, this.reactors[partition], reply -> {
+                    client.replyRaw(reply);
+                    return true;
+                });
+            }
+            return;
+        }
+
+        // 多个key分布在不同的分区，按照分区拆分成子命令
+        if (command.getKeyStep() != 1 || lastKey != args.size() - 1) {
+            client.replyShared(SharedObjects.CROSS_PARTITION_ERROR);
+            return;
+        }
+
+        MultiPartitionReply merger = new MultiPartitionReply(client, partitions.size());
+        for (java.util.Map.Entry<Integer, List<Integer>> entry : partitions.entrySet()) {
+            List<SdsSlice> subArgs = new ArrayList<>();
+            for (int i = 0; i < command.getFirstKey(); i++) {
+                subArgs.add(copyArg(args.get(i)));
+            }
+            for (int index : entry.getValue()) {
+                subArgs.add(copyArg(args.get(index)));
+            }
+            forward(command, subArgs, client, this.reactors[entry.getKey()], merger::merge);
+        }
+    }
+
+    /**
+     * 将命令转发到owner执行，回复由客户端所属的reactor处理
+     * 在所有转发的回复都处理完之前，客户端不会处理后续命令
+     * @param command 命令
+     * @param args 命令参数的副本
+     * @param client 客户端
+     * @param owner 拥有命令的key的reactor
+     * @param replyHandler 在客户端所属的reactor中处理回复，返回true表示客户端的所有转发命令都已经完成
+     */
+    private void forward(AbstractCommand command, List<SdsSlice> args, InnerClient client, Reactor owner, ReplyHandler replyHandler) {
+        Reactor origin = client.getReactor();
+        client.addFlag(InnerClient.CLIENT_WAITING_FORWARD);
+
+        owner.post(() -> {
+            byte [] reply = owner.executeForwarded(command, args);
+
+            origin.post(() -> {
+                // 等待回复期间客户端可能已经断开连接
+                if (!client.getSocketChannel().isOpen()) {
+                    return;
+                }
+
+                if (replyHandler.handle(reply)) {
+                    // 继续处理查询缓冲区中剩余的命令
+                    client.removeFlag(InnerClient.CLIENT_WAITING_FORWARD);
+                    client.processInputData();
+                }
+            });
+        });
+    }
+
+    private static List<SdsSlice> copyArgs(List<SdsSlice> args) {
+        List<SdsSlice> copy = new ArrayList<>(args.size());
+        for (SdsSlice arg : args) {
+            copy.add(copyArg(arg));
+        }
+        return copy;
+    }
+
+    /**
+     * 复制一个参数，参数可能引用了客户端的查询缓冲区，转发之后查询缓冲区可能会被修改
+     */
+    private static SdsSlice copyArg(SdsSlice arg) {
+        byte [] buf = Arrays.copyOfRange(arg.getBuffer(), arg.getOffset(), arg.getOffset() + arg.length());
+        return new SdsSlice(buf, 0, buf.length);
+    }
+
+    @FunctionalInterface
+    private interface ReplyHandler {
+        boolean handle(byte [] reply);
+    }
+
+    /**
+     * 合并多个分区的子命令的整数回复，只在客户端所属的reactor中使用
+     */
+    private static class MultiPartitionReply {
+        private final InnerClient client;
+        private int remaining;      // 还没有收到回复的子命令数量
+        private long sum;
+        private byte [] error;      // 第一个非整数的回复
+
+        MultiPartitionReply(InnerClient client, int count) {
+            this.client = client;
+            this.remaining = count;
+            this.sum = 0;
+            this.error = null;
+        }
+
+        boolean merge(byte [] reply) {
+            // 整数回复的格式为 ":<n>\r\n"
+            if (reply.length > 3 && reply[0] == ':') {
+                this.sum += ByteUtil.parseLong(reply, 1, reply.length - 3);
+            } else if (this.error == null) {
+                this.error = reply;
+            }
+
+            if (--this.remaining > 0) {
+                return false;
+            }
+
+            if (this.error != null) {
+                this.client.replyRaw(this.error);
+            } else {
+                this.client.replyInteger(this.sum);
+            }
+            return true;
+        }
+    }
+}
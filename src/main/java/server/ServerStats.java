@@ -0,0 +1,316 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 服务器运行时的统计信息，对应redis中server结构里的 stat_* 属性
+ * 这些统计信息会通过INFO命令展示给客户端
+ * 为了未来可能涉及的并发情况（比如多个线程同时进行网络读写），计数器都使用原子类型
+ **/
+public class ServerStats {
+    private final AtomicLong netInputBytes;       // 从网络读取的总字节数
+    private final AtomicLong readsProcessed;      // 从网络读取数据的系统调用（read）次数
+    private final AtomicLong netOutputBytes;      // 向网络写入的总字节数
+    private final AtomicLong writesProcessed;     // 向网络写入数据的系统调用（write/writev）次数
+    private final AtomicLong writeEvents;         // 向客户端发送回复的次数（每次处理一个客户端的写事件记一次）
+    private final AtomicLong ioThreadedReads;     // 由IO线程处理的读事件数量
+    private final AtomicLong ioThreadedWrites;    // 由IO线程处理的写事件数量
+    private final AtomicLong connectedClients;    // 当前连接的客户端数量
+    private final AtomicLong connectionsReceived; // 接受的连接总数
+    private final AtomicLong rejectedConnections; // 因为超过maxclients而被拒绝的连接数
+    private final AtomicLong acceptCalls;         // 处理ACCEPT事件的次数，与connectionsReceived一起反映每次事件接收的连接数
+    private final AtomicLong outputBufferLimitDisconnections;  // 因为输出缓冲区超过限制而被关闭的客户端数量
+    private final AtomicLong queryBufferLimitDisconnections;   // 因为查询缓冲区超过限制而被关闭的客户端数量
+    private final AtomicLong protocolErrors;      // 因为请求不符合协议而被关闭的客户端数量
+    private final AtomicLong queryBufferBytesReclaimed;        // clientsCron收缩查询缓冲区释放的总字节数
+    private final AtomicLong expiredKeys;         // 定期删除删除的过期键数量
+    private final AtomicLong expireCycleTimeUsed; // 定期删除使用的总时间（纳秒）
+    private final AtomicLong expireTimeCapReached;             // 定期删除因为用完时间而退出的次数
+    private volatile double expiredStalePerc;     // 过期键在取样中所占比例（百分比）的估计，多reactor模式下为最近一次执行的reactor的估计
+
+    // 每秒接收的连接数，对应redis中的trackInstantaneousMetric：每次serverCron记录一个样本，取最近METRIC_SAMPLES个样本的平均值
+    public static final int METRIC_SAMPLES = 16;
+    private final long [] acceptRateSamples;
+    private int acceptRateIndex;
+    private long lastSampleTime;
+    private long lastSampleAccepts;
+
+    public ServerStats() {
+        this.netInputBytes = new AtomicLong(0);
+        this.readsProcessed = new AtomicLong(0);
+        this.netOutputBytes = new AtomicLong(0);
+        this.writesProcessed = new AtomicLong(0);
+        this.writeEvents = new AtomicLong(0);
+        this.ioThreadedReads = new AtomicLong(0);
+        this.ioThreadedWrites = new AtomicLong(0);
+        this.connectedClients = new AtomicLong(0);
+        this.connectionsReceived = new AtomicLong(0);
+        this.rejectedConnections = new AtomicLong(0);
+        this.acceptCalls = new AtomicLong(0);
+        this.outputBufferLimitDisconnections = new AtomicLong(0);
+        this.queryBufferLimitDisconnections = new AtomicLong(0);
+        this.protocolErrors = new AtomicLong(0);
+        this.queryBufferBytesReclaimed = new AtomicLong(0);
+        this.expiredKeys = new AtomicLong(0);
+        this.expireCycleTimeUsed = new AtomicLong(0);
+        this.expireTimeCapReached = new AtomicLong(0);
+        this.expiredStalePerc = 0;
+        this.acceptRateSamples = new long[METRIC_SAMPLES];
+        this.acceptRateIndex = 0;
+        this.lastSampleTime = System.currentTimeMillis();
+        this.lastSampleAccepts = 0;
+    }
+
+    /**
+     * 记录一次从网络读取数据的操作
+     * @param bytes 本次读取的字节数
+     */
+    public void recordRead(long bytes) {
+        this.readsProcessed.incrementAndGet();
+        if (bytes > 0) {
+            this.netInputBytes.addAndGet(bytes);
+        }
+    }
+
+    /**
+     * 记录一次向网络写入数据的系统调用
+     * @param bytes 本次写入的字节数
+     */
+    public void recordWrite(long bytes) {
+        this.writesProcessed.incrementAndGet();
+        if (bytes > 0) {
+            this.netOutputBytes.addAndGet(bytes);
+        }
+    }
+
+    /**
+     * 记录一次向客户端发送回复的操作，一次操作中可能包含多次写入的系统调用
+     */
+    public void recordWriteEvent() {
+        this.writeEvents.incrementAndGet();
+    }
+
+    /**
+     * 记录由IO线程处理的读事件
+     * @param count 客户端数量
+     */
+    public void recordIOThreadedReads(long count) {
+        this.ioThreadedReads.addAndGet(count);
+    }
+
+    /**
+     * 记录由IO线程处理的写事件
+     * @param count 客户端数量
+     */
+    public void recordIOThreadedWrites(long count) {
+        this.ioThreadedWrites.addAndGet(count);
+    }
+
+    /**
+     * 记录一次ACCEPT事件的处理结果
+     * @param accepted 接受的连接数
+     * @param rejected 拒绝的连接数
+     */
+    public void recordAccepts(long accepted, long rejected) {
+        this.acceptCalls.incrementAndGet();
+        this.connectionsReceived.addAndGet(accepted);
+        this.connectedClients.addAndGet(accepted);
+        this.rejectedConnections.addAndGet(rejected);
+    }
+
+    /**
+     * 记录一个客户端断开连接
+     */
+    public void recordClientClosed() {
+        this.connectedClients.decrementAndGet();
+    }
+
+    /**
+     * 记录一个因为输出缓冲区超过限制而被关闭的客户端
+     */
+    public void recordOutputBufferLimitDisconnection() {
+        this.outputBufferLimitDisconnections.incrementAndGet();
+    }
+
+    public long getOutputBufferLimitDisconnections() {
+        return this.outputBufferLimitDisconnections.get();
+    }
+
+    /**
+     * 记录一个因为查询缓冲区超过限制而被关闭的客户端
+     */
+    public void recordQueryBufferLimitDisconnection() {
+        this.queryBufferLimitDisconnections.incrementAndGet();
+    }
+
+    public long getQueryBufferLimitDisconnections() {
+        return this.queryBufferLimitDisconnections.get();
+    }
+
+    /**
+     * 记录一个发送了不符合协议的请求的客户端
+     */
+    public void recordProtocolError() {
+        this.protocolErrors.incrementAndGet();
+    }
+
+    public long getProtocolErrors() {
+        return this.protocolErrors.get();
+    }
+
+    /**
+     * 记录clientsCron收缩查询缓冲区释放的字节数
+     * @param bytes
+     */
+    public void recordQueryBufferReclaimed(long bytes) {
+        if (bytes > 0) {
+            this.queryBufferBytesReclaimed.addAndGet(bytes);
+        }
+    }
+
+    public long getQueryBufferBytesReclaimed() {
+        return this.queryBufferBytesReclaimed.get();
+    }
+
+    /**
+     * 记录一次定期删除（慢速模式或快速模式）的结果
+     * @param expired 删除的过期键数量
+     * @param nanos 使用的时间（纳秒）
+     * @param timeLimitExit 是否因为用完时间而退出
+     * @param stalePerc 执行之后过期键比例的估计
+     */
+    public void recordExpireCycle(long expired, long nanos, boolean timeLimitExit, double stalePerc) {
+        if (expired > 0) {
+            this.expiredKeys.addAndGet(expired);
+        }
+        this.expireCycleTimeUsed.addAndGet(nanos);
+        if (timeLimitExit) {
+            this.expireTimeCapReached.incrementAndGet();
+        }
+        this.expiredStalePerc = stalePerc;
+    }
+
+    public long getExpiredKeys() {
+        return this.expiredKeys.get();
+    }
+
+    public long getExpireCycleTimeUsed() {
+        return this.expireCycleTimeUsed.get();
+    }
+
+    public long getExpireTimeCapReached() {
+        return this.expireTimeCapReached.get();
+    }
+
+    public double getExpiredStalePerc() {
+        return this.expiredStalePerc;
+    }
+
+    /**
+     * 在serverCron中调用，记录一个每秒接收连接数的样本
+     */
+    public void trackAcceptRate() {
+        long now = System.currentTimeMillis();
+        long accepts = this.connectionsReceived.get();
+        long elapsed = now - this.lastSampleTime;
+
+        this.acceptRateSamples[this.acceptRateIndex] = elapsed > 0 ? (accepts - this.lastSampleAccepts) * 1000 / elapsed : 0;
+        this.acceptRateIndex = (this.acceptRateIndex + 1) % METRIC_SAMPLES;
+        this.lastSampleTime = now;
+        this.lastSampleAccepts = accepts;
+    }
+
+    public long getInstantaneousAcceptRate() {
+        long sum = 0;
+        for (long sample : this.acceptRateSamples) {
+            sum += sample;
+        }
+        return sum / METRIC_SAMPLES;
+    }
+
+    public long getConnectedClients() {
+        return this.connectedClients.get();
+    }
+
+    public long getConnectionsReceived() {
+        return this.connectionsReceived.get();
+    }
+
+    public long getRejectedConnections() {
+        return this.rejectedConnections.get();
+    }
+
+    public long getAcceptCalls() {
+        return this.acceptCalls.get();
+    }
+
+    public long getNetInputBytes() {
+        return this.netInputBytes.get();
+    }
+
+    public long getReadsProcessed() {
+        return this.readsProcessed.get();
+    }
+
+    public long getNetOutputBytes() {
+        return this.netOutputBytes.get();
+    }
+
+    public long getWritesProcessed() {
+        return this.writesProcessed.get();
+    }
+
+    public long getWriteEvents() {
+        return this.writeEvents.get();
+    }
+
+    public long getIOThreadedReads() {
+        return this.ioThreadedReads.get();
+    }
+
+    public long getIOThreadedWrites() {
+        return this.ioThreadedWrites.get();
+    }
+
+    /**
+     * 按照INFO命令的格式生成统计信息
+     * @return INFO命令中 # Stats 部分的内容
+     */
+    public String toInfoString() {
+        StringBuilder info = new StringBuilder();
+
+        info.append("# Clients\r\n");
+        info.append("connected_clients:").append(getConnectedClients()).append("\r\n");
+        info.append("\r\n");
+
+        info.append("# Stats\r\n");
+        info.append("total_connections_received:").append(getConnectionsReceived()).append("\r\n");
+        info.append("rejected_connections:").append(getRejectedConnections()).append("\r\n");
+        info.append("total_accept_calls:").append(getAcceptCalls()).append("\r\n");
+        long acceptCalls = getAcceptCalls();
+        info.append("avg_accepts_per_call:").append(acceptCalls == 0 ? "0.00" : String.format("%.2f", (double) (getConnectionsReceived() + getRejectedConnections()) / acceptCalls)).append("\r\n");
+        info.append("instantaneous_accepts_per_sec:").append(getInstantaneousAcceptRate()).append("\r\n");
+        info.append("client_output_buffer_limit_disconnections:").append(getOutputBufferLimitDisconnections()).append("\r\n");
+        info.append("client_query_buffer_limit_disconnections:").append(getQueryBufferLimitDisconnections()).append("\r\n");
+        info.append("total_protocol_errors:").append(getProtocolErrors()).append("\r\n");
+        info.append("query_buffer_bytes_reclaimed:").append(getQueryBufferBytesReclaimed()).append("\r\n");
+        info.append("expired_keys:").append(getExpiredKeys()).append("\r\n");
+        info.append("expired_stale_perc:").append(String.format("%.2f", getExpiredStalePerc())).append("\r\n");
+        info.append("expired_time_cap_reached_count:").append(getExpireTimeCapReached()).append("\r\n");
+        info.append("expire_cycle_cpu_milliseconds:").append(getExpireCycleTimeUsed() / 1000000).append("\r\n");
+        info.append("total_net_input_bytes:").append(getNetInputBytes()).append("\r\n");
+        info.append("total_reads_processed:").append(getReadsProcessed()).append("\r\n");
+        info.append("total_net_output_bytes:").append(getNetOutputBytes()).append("\r\n");
+        info.append("total_writes_processed:").append(getWritesProcessed()).append("\r\n");
+        info.append("total_write_events_processed:").append(getWriteEvents()).append("\r\n");
+
+        // 平均每次发送回复时写入的字节数和系统调用次数
+        long writeEvents = getWriteEvents();
+        info.append("avg_bytes_per_write_event:").append(writeEvents == 0 ? 0 : getNetOutputBytes() / writeEvents).append("\r\n");
+        info.append("avg_writes_per_write_event:").append(writeEvents == 0 ? "0.00" : String.format("%.2f", (double) getWritesProcessed() / writeEvents)).append("\r\n");
+        info.append("io_threaded_reads_processed:").append(getIOThreadedReads()).append("\r\n");
+        info.append("io_threaded_writes_processed:").append(getIOThreadedWrites()).append("\r\n");
+
+        return info.toString();
+    }
+}
@@ -1,13 +1,17 @@
 package server;
 
 import common.persistence.AOFPersistence;
+import common.persistence.AofFsyncFrequency;
 import common.persistence.RDBPersistence;
 import database.Database;
 import event.EventLoopBeforeSleepProcedure;
+import event.FileEvent;
+import common.expire.PeriodicExpirator;
 import event.GlobalCycleTimeEvent;
 import pubsub.PubSub;
 import server.client.InnerClient;
 import event.handler.AcceptTcpHandler;
+import event.handler.SendApplyToClientHandler;
 import event.EventLoop;
 import org.apache.commons.logging.LogFactory;
 import server.config.ServerConfig;
@@ -16,6 +20,7 @@ import org.apache.commons.logging.Log;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.channels.*;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -24,18 +29,28 @@ public class ZedisServer {
 
     private static Log logger = LogFactory.getLog(ZedisServer.class);
 
+    public static final int CLIENTS_CRON_MIN_ITERATIONS = 5;   // clientsCron每次至少处理的客户端数量
+
     private ServerContext context = ServerContext.getContext();
 
     private ServerConfig serverConfig;  // 服务端配置
     private EventLoop eventLoop;        // 事件循环
     private List<InnerClient> clients; // 保存了所有连接到服务器的客户端结构
+    private List<InnerClient> clientsPendingWrite;  // 有等待发送的回复，但还没有注册写处理器的客户端
+    private List<InnerClient> clientsPendingRead;   // 读事件被推迟，等待IO线程读取和解析的客户端
+    private List<InnerClient> clientsToClose;       // 等待在beforeSleep中关闭的客户端，对应redis中的clients_to_close
+    private IOThreads ioThreads;        // IO线程，io-threads大于1时才会创建
+    private ReactorGroup reactorGroup;  // 多reactor模式下的所有reactor，server-threads大于1时才会创建
     private static volatile ZedisServer serverInstance; // 服务器实例
 
     private volatile InnerClient currentClient;    // 当前客户端，仅用于奔溃报告
 
+    private ServerStats stats;          // 服务器运行时的统计信息
 
     private Database databases;
 
+    private PeriodicExpirator periodicExpirator;    // 定期删除过期键，慢速模式由serverCron调用，快速模式由beforeSleep调用
+
     /**
      * slave模式
      */
@@ -61,6 +76,7 @@ public class ZedisServer {
 
     public ZedisServer() {
         super();
+        this.stats = new ServerStats();
     }
 
     public static void main(String[] args) {
@@ -108,6 +124,30 @@ public class ZedisServer {
 
         // 创建保存客户端结构的链表
         this.clients = new LinkedList<>();
+        this.clientsPendingWrite = new ArrayList<>();
+        this.clientsPendingRead = new ArrayList<>();
+        this.clientsToClose = new ArrayList<>();
+
+        // 多reactor模式，主线程只负责接收连接
+        if (this.serverConfig.getServerThreads() > 1) {
+            if (this.serverConfig.isAofOn()) {
+                logger.fatal("appendonly is not supported when server-threads is greater than 1");
+                System.exit(1);
+            }
+            if (this.serverConfig.getIoThreads() > 1) {
+                logger.warn("io-threads is ignored when server-threads is greater than 1");
+            }
+
+            this.reactorGroup = new ReactorGroup(this.serverConfig.getServerThreads());
+            this.reactorGroup.start(1000 / this.serverConfig.getHz(), this.serverConfig.isActiveExpiredEnable(),
+                    this.serverConfig.isActiveRehashing());
+            logger.info("Multi-reactor mode enabled, server threads: " + this.serverConfig.getServerThreads());
+        } else if (this.serverConfig.getIoThreads() > 1) {
+            // IO线程
+            this.ioThreads = new IOThreads(this.serverConfig.getIoThreads());
+            this.ioThreads.start();
+            logger.info("Threaded I/O enabled, io threads: " + this.serverConfig.getIoThreads());
+        }
 
         // 订阅发布
         this.pubSub = new PubSub();
@@ -119,14 +159,15 @@ public class ZedisServer {
         this.rdbPersistence = new RDBPersistence(this);
 
         // 创建数据库
-        this.databases = new Database();
+        this.databases = new Database(this.serverConfig.isActiveExpireTimeIndex());
+        this.periodicExpirator = new PeriodicExpirator(this.databases);
 
         // 打开TCP监听端口
         ServerSocketChannel serverSocketChannel = null;
         try {
             serverSocketChannel = ServerSocketChannel.open();
             serverSocketChannel.configureBlocking(false);
-            serverSocketChannel.socket().bind(new InetSocketAddress(this.serverConfig.getPort()));
+            serverSocketChannel.socket().bind(new InetSocketAddress(this.serverConfig.getPort()), this.serverConfig.getTcpBacklog());
         } catch (IOException e) {
             logger.info(this.serverConfig.getPort());
             logger.fatal("Init the server socket channel error", e);
@@ -217,15 +258,214 @@ public class ZedisServer {
         this.clients.add(client);
     }
 
+    /**
+     * 将客户端加入待写客户端列表，在beforeSleep中统一发送这些客户端的回复
+     * @param client 有新的回复需要发送的客户端
+     */
+    public void addClientToPendingWrite(InnerClient client) {
+        if (client.getReactor() != null) {
+            client.getReactor().addClientToPendingWrite(client);
+            return;
+        }
+
+        client.addFlag(InnerClient.CLIENT_PENDING_WRITE);
+        this.clientsPendingWrite.add(client);
+    }
+
+    /**
+     * 开启了IO线程并且io-threads-do-reads为yes时，将客户端的读事件推迟到beforeSleep中，由IO线程统一读取和解析，对应redis中的postponeClientRead
+     * @param client 触发了读事件的客户端
+     * @return 是否推迟了读事件，返回false时由调用方直接处理读事件
+     */
+    public boolean postponeClientRead(InnerClient client) {
+        if (this.ioThreads == null || !this.serverConfig.isIoThreadsDoReads()) {
+            return false;
+        }
+
+        if (!client.hasFlag(InnerClient.CLIENT_PENDING_READ)) {
+            client.addFlag(InnerClient.CLIENT_PENDING_READ);
+            this.clientsPendingRead.add(client);
+        }
+        return true;
+    }
+
+    /**
+     * 在事件循环进入select之前调用，处理被推迟读事件的客户端
+     * 先由IO线程并行地读取数据并解析出每个客户端的第一条命令，然后由主线程依次执行这些命令，以及查询缓冲区中剩余的命令
+     * @return 处理的客户端数量
+     */
+    public int handleClientsWithPendingReads() {
+        int processed = this.clientsPendingRead.size();
+        if (processed == 0) {
+            return 0;
+        }
+
+        if (this.ioThreads.handleClients(this.clientsPendingRead, IOThreads.IO_THREADS_OP_READ)) {
+            this.stats.recordIOThreadedReads(processed);
+        }
+
+        for (InnerClient client : this.clientsPendingRead) {
+            client.removeFlag(InnerClient.CLIENT_PENDING_READ);
+
+            int readNum = client.getIOResult();
+            if (readNum == -1) {
+                // 客户端断开连接，需要关闭SocketChannel
+                distroyClient(client.getSocketChannel().keyFor(this.eventLoop.getSelector()), client);
+                continue;
+            } else if (readNum == 0) {
+                logger.error("客户端数据读取异常");
+                continue;
+            }
+
+            setCurrentClient(client);
+            client.processPendingInputData();
+            clearCurrentClient();
+        }
+        this.clientsPendingRead.clear();
+
+        return processed;
+    }
+
+    /**
+     * 在事件循环进入select之前调用，直接将待写客户端列表中各个客户端的回复写入套接字
+     * 大多数情况下回复可以一次发送完，这样就不需要注册写事件，也就省去了一次事件循环
+     * 只有回复没有发送完（内核的发送缓冲区已满，或单次发送的数据量达到上限）时，才为客户端注册写处理器，由写事件继续发送剩余的回复
+     * 开启了IO线程时，先由IO线程并行地发送回复，再由主线程根据发送的结果关闭客户端或注册写处理器
+     * @return 处理的客户端数量
+     */
+    public int handleClientsWithPendingWrites() {
+        return handleClientsWithPendingWrites(this.clientsPendingWrite, this.eventLoop);
+    }
+
+    /**
+     * 发送待写客户端列表中各个客户端的回复，多reactor模式下由各个reactor在自己的线程中调用
+     * @param clientsPendingWrite 待写客户端列表，处理完之后被清空
+     * @param eventLoop 客户端注册所在的事件循环
+     * @return 处理的客户端数量
+     */
+    public int handleClientsWithPendingWrites(List<InnerClient> clientsPendingWrite, EventLoop eventLoop) {
+        int processed = clientsPendingWrite.size();
+        if (processed == 0) {
+            return 0;
+        }
+
+        boolean useIOThreads = this.ioThreads != null && this.reactorGroup == null;
+        if (useIOThreads && this.ioThreads.handleClients(clientsPendingWrite, IOThreads.IO_THREADS_OP_WRITE)) {
+            this.stats.recordIOThreadedWrites(processed);
+        }
+
+        for (InnerClient client : clientsPendingWrite) {
+            client.removeFlag(InnerClient.CLIENT_PENDING_WRITE);
+
+            SocketChannel channel = client.getSocketChannel();
+            if (!channel.isOpen()) {
+                continue;
+            }
+
+            // 发送失败，说明连接已经断开，关闭客户端
+            int written = useIOThreads ? client.getIOResult() : client.writeData();
+            if (written == -1) {
+                distroyClient(channel.keyFor(eventLoop.getSelector()), client);
+                continue;
+            }
+
+            // 回复已经发送完，需要在回复之后关闭的客户端（比如请求不符合协议）可以关闭了
+            if (client.isNothingToReply() && client.hasFlag(InnerClient.CLIENT_CLOSE_AFTER_REPLY)) {
+                distroyClient(channel.keyFor(eventLoop.getSelector()), client);
+                continue;
+            }
+
+            // 回复没有发送完，注册写处理器，等套接字可写时继续发送
+            // appendfsync为always时设置BARRIER：同一次事件循环中先写后读，
+            // 避免读事件中执行的写命令在AOF写入磁盘之前就通过写处理器把回复发送给客户端
+            if (!client.isNothingToReply()) {
+                int interestOp = SelectionKey.OP_WRITE;
+                if (this.serverConfig.getAppendFsync() == AofFsyncFrequency.ALWAYS) {
+                    interestOp |= FileEvent.BARRIER;
+                }
+                eventLoop.registerFileEvent(channel, interestOp, SendApplyToClientHandler.getHandler(), client);
+            }
+        }
+        clientsPendingWrite.clear();
+
+        return processed;
+    }
+
+    /**
+     * 标记客户端，使其在事件循环的beforeSleep中被关闭，对应redis中的freeClientAsync
+     * 用于不能立即关闭客户端的场景，比如在添加回复的过程中发现输出缓冲区超过了限制
+     * @param client
+     */
+    public void closeClientAsync(InnerClient client) {
+        if (client.getReactor() != null) {
+            client.getReactor().closeClientAsync(client);
+            return;
+        }
+
+        if (!client.hasFlag(InnerClient.CLIENT_CLOSE_ASAP)) {
+            client.addFlag(InnerClient.CLIENT_CLOSE_ASAP);
+            this.clientsToClose.add(client);
+        }
+    }
+
+    /**
+     * 关闭所有被标记为需要关闭的客户端，在beforeSleep中调用，对应redis中的freeClientsInAsyncFreeQueue
+     * @param clientsToClose 等待关闭的客户端，处理完之后被清空
+     * @param eventLoop 客户端注册所在的事件循环
+     * @return 关闭的客户端数量
+     */
+    public int freeClientsInAsyncFreeQueue(List<InnerClient> clientsToClose, EventLoop eventLoop) {
+        int count = clientsToClose.size();
+        for (InnerClient client : clientsToClose) {
+            SocketChannel channel = client.getSocketChannel();
+            if (channel.isOpen()) {
+                distroyClient(channel.keyFor(eventLoop.getSelector()), client);
+            }
+        }
+        clientsToClose.clear();
+
+        return count;
+    }
+
+    public int freeClientsInAsyncFreeQueue() {
+        return freeClientsInAsyncFreeQueue(this.clientsToClose, this.eventLoop);
+    }
+
+    /**
+     * 对客户端执行周期性的维护操作，目前只收缩查询缓冲区，对应redis中的clientsCron
+     * 每次只处理一部分客户端，使所有客户端大约每秒被处理一次，从而在有大量连接时也不会阻塞事件循环：
+     * 每次从列表尾部取出一个客户端放到列表头部再处理，这样下次调用会从上次停止的地方继续
+     * @param clients 客户端列表，多reactor模式下为reactor自己的客户端列表
+     * @param hz 每秒调用的次数
+     */
+    public void clientsCron(List<InnerClient> clients, int hz) {
+        int numClients = clients.size();
+        int iterations = Math.min(numClients, Math.max(numClients / hz, CLIENTS_CRON_MIN_ITERATIONS));
+
+        long now = System.currentTimeMillis();
+        long reclaimed = 0;
+        while (iterations-- > 0) {
+            InnerClient client = clients.remove(clients.size() - 1);
+            clients.add(0, client);
+
+            reclaimed += client.resizeQueryBuffer(now);
+        }
+        this.stats.recordQueryBufferReclaimed(reclaimed);
+    }
+
+    public void clientsCron(int hz) {
+        clientsCron(this.clients, hz);
+    }
+
     public static ZedisServer getInstance() {
         return serverInstance;
     }
 
-    public synchronized void setCurrentClient(InnerClient client) {
+    public void setCurrentClient(InnerClient client) {
         this.currentClient = client;
     }
 
-    public synchronized void clearCurrentClient() {
+    public void clearCurrentClient() {
         this.currentClient = null;
     }
 
@@ -234,13 +474,33 @@ public class ZedisServer {
      * @param client
      */
     public void distroyClient(SelectionKey key, InnerClient client) {
-        if (this.currentClient.equals(client)) {
+        if (client.getReactor() != null) {
+            client.getReactor().destroyClient(key, client);
+            return;
+        }
+
+        if (client.equals(this.currentClient)) {
             this.clearCurrentClient();
         }
 
         this.clients.remove(client);
 
+        // 从待写客户端列表中删除（在handleClientsWithPendingWrites中关闭客户端时，由调用方负责清空列表）
+        if (client.hasFlag(InnerClient.CLIENT_PENDING_WRITE)) {
+            client.removeFlag(InnerClient.CLIENT_PENDING_WRITE);
+            this.clientsPendingWrite.remove(client);
+        }
+
+        // 从待读客户端列表中删除（在handleClientsWithPendingReads中关闭客户端时，由调用方负责清空列表）
+        if (client.hasFlag(InnerClient.CLIENT_PENDING_READ)) {
+            client.removeFlag(InnerClient.CLIENT_PENDING_READ);
+            this.clientsPendingRead.remove(client);
+        }
+
         if (client.getSocketChannel() != null) {
+            if (client.getSocketChannel().isOpen()) {
+                this.stats.recordClientClosed();
+            }
             this.eventLoop.unregisterFileEvent(key, SelectionKey.OP_READ);
             this.eventLoop.unregisterFileEvent(key, SelectionKey.OP_WRITE);
             client.distroy();
@@ -253,10 +513,22 @@ public class ZedisServer {
         return this.serverConfig;
     }
 
+    public ReactorGroup getReactorGroup() {
+        return this.reactorGroup;
+    }
+
+    public ServerStats getStats() {
+        return this.stats;
+    }
+
     public Database getDatabases() {
         return this.databases;
     }
 
+    public PeriodicExpirator getPeriodicExpirator() {
+        return this.periodicExpirator;
+    }
+
 
 
     public String getMasterHost() {
@@ -3,8 +3,11 @@ package server.client;
 import command.AbstractCommand;
 import command.CommandExecutor;
 import command.commands.AuthCommand;
+import common.shared.SharedObjects;
 import common.struct.ZedisString;
 import common.struct.impl.Sds;
+import common.struct.impl.SdsSlice;
+import common.utils.SafeEncoder;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import pubsub.Channel;
@@ -12,8 +15,10 @@ import pubsub.Pattern;
 import remote.*;
 import remote.protocol.RequestType;
 import database.Database;
+import server.Reactor;
 import server.ZedisServer;
 import server.ServerContext;
+import server.config.ClientBufferLimit;
 
 import java.io.IOException;
 import java.nio.channels.SocketChannel;
@@ -25,6 +30,18 @@ import java.util.*;
 public class InnerClient implements Client {
     private static Log logger = LogFactory.getLog(InnerClient.class);
 
+    /**********************************************
+     * 客户端状态标志
+     *********************************************/
+
+    public static final int CLIENT_PENDING_WRITE = 1 << 0;  // 客户端有等待发送的回复，已经在服务器的待写客户端列表中，但还没有注册写处理器
+    public static final int CLIENT_PENDING_READ = 1 << 1;   // 开启了IO线程，客户端的读事件被推迟到beforeSleep中由IO线程处理
+    public static final int CLIENT_PENDING_COMMAND = 1 << 2;    // IO线程已经为客户端解析出了一条完整的命令，等待主线程执行
+    public static final int CLIENT_FORWARDED = 1 << 3;      // 用于执行其他reactor转发过来的命令的伪客户端，回复保留在回复缓冲区中，由调用方取出
+    public static final int CLIENT_WAITING_FORWARD = 1 << 4;    // 客户端的命令被转发到其他reactor执行，在收到回复之前不处理后续命令
+    public static final int CLIENT_CLOSE_ASAP = 1 << 5;     // 客户端将在事件循环的beforeSleep中被关闭，不再执行命令，也不再缓存回复
+    public static final int CLIENT_CLOSE_AFTER_REPLY = 1 << 6;  // 回复缓冲区中已有的回复发送完之后关闭客户端，不再执行命令（比如请求不符合协议）
+
     // 客户端的名字
     private String name;
     // 套接字描述符
@@ -36,17 +53,23 @@ public class InnerClient implements Client {
     // 当前正在使用的数据库
     private Database database;
     // 参数对象数组,客户端通过网络收到的命令经过解析，都会被放到这个里面
-    private ArrayList<Sds> commandArgs;
+    private ArrayList<SdsSlice> commandArgs;
     // 代表认证的状态
     private boolean authenticated;
-    // 创建客户端的时间
-    private Date createTime;
-    // 客户端最后一次和服务器互动的时间
-    private Date lastInteractionTime;
+    // 创建客户端的时间（毫秒时间戳）
+    private long createTime;
+    // 客户端最后一次和服务器互动的时间（毫秒时间戳）
+    private long lastInteractionTime;
     // 客户端状态标志
     private int flags;              /* REDIS_SLAVE | REDIS_MONITOR | REDIS_MULTI ... */
     // 请求的类型：内联命令还是多条命令
     private volatile RequestType requestType;
+    // IO线程中读写套接字的结果（返回值含义与readData()/writeData()相同），由主线程在IO线程处理完成之后使用
+    private int ioResult;
+    // 客户端所属的reactor，server-threads大于1时才会设置，客户端的所有事件和命令都由该reactor的线程处理
+    private Reactor reactor;
+    // 输出缓冲区开始超过soft limit的时间（毫秒时间戳），为0表示当前没有超过soft limit
+    private long obufSoftLimitReachedTime;
 
     /**********************************************
      * 订阅发布功能
@@ -55,20 +78,34 @@ public class InnerClient implements Client {
     // 这个字典记录了客户端所有订阅的频道
     // 键为频道名字，值为 NULL
     // 也即是，一个频道的集合
+    // 大多数客户端不会使用订阅发布功能，因此在第一次订阅时才创建
     private Map<String, Channel> pubSubChannels;
 
     // 链表，包含多个 pubsubPattern 结构
     // 记录了所有订阅频道的客户端的信息
     // 新 pubsubPattern 结构总是被添加到表尾
+    // 与pubSubChannels一样，在第一次订阅时才创建
     private Map<String, Pattern> pubSubPatterns;
 
     public int getFlags() {
         return this.flags;
     }
 
+    public boolean hasFlag(int flag) {
+        return (this.flags & flag) != 0;
+    }
+
+    public void addFlag(int flag) {
+        this.flags |= flag;
+    }
+
+    public void removeFlag(int flag) {
+        this.flags &= ~flag;
+    }
+
     private InnerClient() {
-        this.pubSubChannels = new HashMap<>();
-        this.pubSubPatterns = new HashMap<>();
+        this.pubSubChannels = null;
+        this.pubSubPatterns = null;
     }
 
     /**
@@ -85,7 +122,7 @@ public class InnerClient implements Client {
         client.receiver = new ServerReceiver(client);
         client.commandArgs = new ArrayList<>();
         client.database = ServerContext.getContext().getDatabases();
-        client.createTime = client.lastInteractionTime = new Date();
+        client.createTime = client.lastInteractionTime = System.currentTimeMillis();
         client.authenticated = false;
         client.flags = 0;
         client.requestType = RequestType.NONE; // 请求类型，默认为0，表示没有类型
@@ -93,21 +130,140 @@ public class InnerClient implements Client {
         return client;
     }
 
+    /**
+     * 创建一个用于执行转发命令的伪客户端，命令的回复不会发送，而是通过takeReplies()取出
+     * @param database 执行命令时使用的数据库（键空间分区）
+     * @return
+     */
+    public static InnerClient createForwardClient(Database database) {
+        InnerClient client = (InnerClient) createClient(null);
+        client.database = database;
+        client.authenticated = true;
+        client.flags = CLIENT_FORWARDED;
+        return client;
+    }
+
     public int readData() {
-        return this.receiver.readDataFromSocket();
+        int readNum = this.receiver.readDataFromSocket();
+        if (readNum > 0) {
+            this.lastInteractionTime = System.currentTimeMillis();
+        }
+        return readNum;
     }
 
     public int writeData() {
         return this.replyer.writeDataToSocket();
     }
 
+    /**
+     * 在IO线程中执行：从套接字读取数据，并解析出第一条完整的命令，但不执行（命令只能在主线程中执行）
+     * 解析出了命令时设置CLIENT_PENDING_COMMAND标志，查询缓冲区中剩余的命令由主线程在processPendingInputData()中继续处理
+     * 已经确定要关闭的客户端不再解析，读入的数据由主线程在processInputData()中丢弃
+     */
+    public void readQueryInIOThread() {
+        this.ioResult = readData();
+
+        if (this.ioResult > 0 && !hasFlag(CLIENT_CLOSE_AFTER_REPLY | CLIENT_CLOSE_ASAP)
+                && !this.receiver.isQueryBufferLimitReached() && this.receiver.processRequest()) {
+            addFlag(CLIENT_PENDING_COMMAND);
+        }
+    }
+
+    /**
+     * 在IO线程中执行：将回复写入套接字
+     */
+    public void writeReplyInIOThread() {
+        this.ioResult = this.socketChannel.isOpen() ? writeData() : 0;
+    }
+
+    public int getIOResult() {
+        return this.ioResult;
+    }
+
+    public Reactor getReactor() {
+        return this.reactor;
+    }
+
+    public void setReactor(Reactor reactor) {
+        this.reactor = reactor;
+    }
+
+    /**
+     * 在主线程中执行：IO线程读取数据之后，先执行IO线程已经解析出的命令，再继续处理查询缓冲区中剩余的数据
+     */
+    public void processPendingInputData() {
+        if (hasFlag(CLIENT_PENDING_COMMAND)) {
+            removeFlag(CLIENT_PENDING_COMMAND);
+            // IO线程解析之后客户端可能已经被标记为关闭，不再执行该命令
+            if (hasFlag(CLIENT_CLOSE_AFTER_REPLY | CLIENT_CLOSE_ASAP)) {
+                this.commandArgs.clear();
+            } else {
+                processCommandArgs();
+            }
+        }
+
+        processInputData();
+    }
+
     /**
      * 处理查询缓冲区的数据
+     * 客户端可能以pipeline的方式一次发送多条命令，因此查询缓冲区中可能存在多条完整的request，
+     * 这里循环解析并执行，直到缓冲区中剩下的数据无法构成一条完整的request为止，
+     * 这些命令产生的回复都会先累积在回复缓冲区中，之后在一次写事件中一起发送给客户端
+     * 所有request处理完之后，再一次性将已处理的数据从查询缓冲区中删除
      */
     public void processInputData() {
-        this.receiver.processRequest();
-        // 处理传入的命令
-        processCommandArgs();
+        // 已经确定要关闭的客户端，之后读入的数据直接丢弃
+        if (hasFlag(CLIENT_CLOSE_AFTER_REPLY | CLIENT_CLOSE_ASAP)) {
+            this.receiver.discardQueryBuffer();
+            return;
+        }
+
+        if (closeClientOnQueryBufferLimitReached()) {
+            return;
+        }
+
+        while (!hasFlag(CLIENT_WAITING_FORWARD | CLIENT_CLOSE_ASAP) && this.receiver.processRequest()) {
+            // 处理传入的命令
+            processCommandArgs();
+        }
+
+        this.receiver.compactQueryBuffer();
+
+        // 请求不符合协议：回复错误信息，并在回复发送完之后关闭客户端，对应redis中的setProtocolError
+        String protocolError = this.receiver.getProtocolError();
+        if (protocolError != null && !hasFlag(CLIENT_CLOSE_AFTER_REPLY)) {
+            logger.info("Protocol error (" + protocolError + ") from client, closing connection");
+            ServerContext.getContext().getServerInstance().getStats().recordProtocolError();
+            replyError("Protocol error: " + protocolError);
+            addFlag(CLIENT_CLOSE_AFTER_REPLY);
+        }
+    }
+
+    /**
+     * 如果查询缓冲区超过了client-query-buffer-limit，则异步地关闭客户端
+     * 客户端可能不断地发送不完整的请求（比如一个很长、但一直没有结束的参数），使查询缓冲区无限制地增长
+     * @return 是否关闭了客户端
+     */
+    public boolean closeClientOnQueryBufferLimitReached() {
+        if (this.socketChannel == null || !this.receiver.isQueryBufferLimitReached()) {
+            return false;
+        }
+
+        logger.warn("Closing client that reached max query buffer length, query buffer " + this.receiver.getQueryBuffer().length() + " bytes");
+        ZedisServer server = ServerContext.getContext().getServerInstance();
+        server.getStats().recordQueryBufferLimitDisconnection();
+        server.closeClientAsync(this);
+        return true;
+    }
+
+    /**
+     * 在clientsCron中调用，收缩客户端的查询缓冲区
+     * @param now 当前时间（毫秒）
+     * @return 释放的字节数
+     */
+    public int resizeQueryBuffer(long now) {
+        return this.receiver.resizeQueryBuffer(now - this.lastInteractionTime);
     }
 
     /**
@@ -135,25 +291,25 @@ public class InnerClient implements Client {
         // 如果找不到相应的命令实现，服务器不再执行后续步骤，并向客户端返回一个错误。
         // (2)根据命令名称获得的命令实现，可以获得该命令arity属性，
         // 检查命令请求所给定的参数个数是否正确，当参数个数不正确时，不再执行后续步骤，直接向客户端返回一个错误。
-        String commandName = this.commandArgs.get(0).toString();
-        AbstractCommand command = (AbstractCommand) CommandExecutor.getExecutor().lookupCommand(commandName);
+        // 直接使用argv[0]的字节查找命令（忽略大小写），只有出错时才需要将命令名称转换为String
+        AbstractCommand command = CommandExecutor.getExecutor().lookupCommand(this.commandArgs.get(0));
 
         if (command == null) {
             // 没找到命令
             // 回复错误信息
-            replyError("unknow command " + commandName);
+            replyError("unknow command " + this.commandArgs.get(0).toString());
             return;
         } else if ((!command.isGreaterThanArity() && command.getArity() != this.commandArgs.size()) || this.commandArgs.size() < command.getArity()) {
             // 参数个数错误
             // 回复错误信息
-            replyError("wrong number of arguments for " + commandName + " command");
+            replyError("wrong number of arguments for " + this.commandArgs.get(0).toString() + " command");
             return;
         }
 
         // (3)检查客户端是否已经通过了身份验证，
         // 未通过身份验证的客户端只能执行AUTH命令，
         // 如果未通过身份验证的客户端试图执行除AUTH命令之外的其他命令，那么服务器将向客户端返回一个错误。
-        if (ZedisServer.getInstance().getServerConfig().getRequirePassword() != null
+        if (ServerContext.getContext().getServerConfig().getRequirePassword() != null
             && !this.authenticated
             && ! (command instanceof AuthCommand)) {
             // 回复错误信息
@@ -191,7 +347,12 @@ public class InnerClient implements Client {
         // [暂时不实现] 判断是否是事务模式，如果是就将命令加入队列中
         // 否则直接执行
 
-        CommandExecutor.getExecutor().execute(command, this);
+        if (this.reactor != null) {
+            // 多reactor模式下，key不属于当前reactor的命令会被转发到拥有该key的reactor执行
+            this.reactor.getGroup().dispatch(command, this);
+        } else {
+            CommandExecutor.getExecutor().execute(command, this);
+        }
 
         // 清除该客户端当前缓存的命令参数
         this.commandArgs.clear();
@@ -202,6 +363,7 @@ public class InnerClient implements Client {
      */
     @Override
     public void distroy() {
+        this.replyer.release();
         try {
             this.socketChannel.close();
         } catch (IOException e) {
@@ -229,24 +391,104 @@ public class InnerClient implements Client {
         return receiver;
     }
 
-    public ArrayList<Sds> getCommandArgs() {
+    public ArrayList<SdsSlice> getCommandArgs() {
         return this.commandArgs;
     }
 
     public void updateLastInteraction() {
-        this.lastInteractionTime = new Date();
+        this.lastInteractionTime = System.currentTimeMillis();
     }
 
     public boolean isNothingToReply() {
         return this.replyer.isNothingToReply();
     }
 
+    /**
+     * 获取客户端的类型，用于确定输出缓冲区限制，对应redis中的getClientType
+     * @return ClientBufferLimit.CLIENT_TYPE_*
+     */
+    public int getClientType() {
+        if (!getPubSubChannels().isEmpty() || !getPubSubPatterns().isEmpty()) {
+            return ClientBufferLimit.CLIENT_TYPE_PUBSUB;
+        }
+        return ClientBufferLimit.CLIENT_TYPE_NORMAL;
+    }
+
+    /**
+     * 检查客户端的输出缓冲区是否超过了限制，对应redis中的checkClientOutputBufferLimits
+     * 同时负责记录和清除开始超过soft limit的时间
+     * @return 是否需要关闭客户端
+     */
+    public boolean checkClientOutputBufferLimits() {
+        long used = this.replyer.getOutputBufferMemoryUsage();
+        ClientBufferLimit limit = ServerContext.getContext().getServerConfig().getClientOutputBufferLimit(getClientType());
+
+        boolean hard = limit.getHardLimitBytes() > 0 && used >= limit.getHardLimitBytes();
+        boolean soft = limit.getSoftLimitBytes() > 0 && used >= limit.getSoftLimitBytes();
+
+        // 超过soft limit的持续时间达到soft seconds时才需要关闭客户端
+        if (soft) {
+            long now = System.currentTimeMillis();
+            if (this.obufSoftLimitReachedTime == 0) {
+                this.obufSoftLimitReachedTime = now;
+                soft = false;
+            } else if (now - this.obufSoftLimitReachedTime <= limit.getSoftLimitSeconds() * 1000) {
+                soft = false;
+            }
+        } else {
+            this.obufSoftLimitReachedTime = 0;
+        }
+
+        return hard || soft;
+    }
+
+    /**
+     * 如果输出缓冲区超过了限制，则异步地关闭客户端
+     * 这个函数在添加回复的过程中调用，这时关闭客户端是不安全的，因此只是标记客户端，由事件循环在beforeSleep中关闭
+     */
+    public void closeClientOnOutputBufferLimitReached() {
+        if (this.socketChannel == null || hasFlag(CLIENT_CLOSE_ASAP)) {
+            return;
+        }
+
+        if (checkClientOutputBufferLimits()) {
+            logger.warn("Client scheduled to be closed ASAP for overcoming of output buffer limits, class "
+                    + ClientBufferLimit.getClientTypeName(getClientType()) + ", output buffer " + this.replyer.getOutputBufferMemoryUsage() + " bytes");
+            ZedisServer server = ServerContext.getContext().getServerInstance();
+            server.getStats().recordOutputBufferLimitDisconnection();
+            server.closeClientAsync(this);
+        }
+    }
+
     /*******************************************
      * 向客户端发送回复
      *******************************************/
     public void replyNil() {
-        Reply reply = ReplyBuilder.buildNilReply();
-        replyer.reply(reply, this);
+        replyer.writeShared(SharedObjects.NULL_BULK);
+    }
+
+    /**
+     * 发送一个共享的回复（参见SharedObjects），比如+OK、:0、固定的错误信息等
+     * @param sharedReply 已经按照协议格式编码好的回复
+     */
+    public void replyShared(byte [] sharedReply) {
+        replyer.writeShared(sharedReply);
+    }
+
+    /**
+     * 发送一个已经按照协议格式编码好的回复，比如从执行转发命令的伪客户端中取出的回复
+     * @param reply 编码好的回复
+     */
+    public void replyRaw(byte [] reply) {
+        replyer.writeShared(reply);
+    }
+
+    /**
+     * 取出所有还没有发送的回复，只用于执行转发命令的伪客户端
+     * @return 编码好的回复
+     */
+    public byte [] takeReplies() {
+        return replyer.takeReplies();
     }
 
     public void replyStatus(String str) {
@@ -268,30 +510,51 @@ public class InnerClient implements Client {
     }
 
     public void replyBulk(String str) {
-        Reply reply = ReplyBuilder.buildBulkReply(str);
-        replyer.reply(reply, this);
+        byte [] content = SafeEncoder.encode(str);
+        replyer.writeBulk(content, 0, content.length);
     }
 
+    /**
+     * 以bulk的形式回复一个字符串，对于Sds和SdsSlice直接发送其内部数组中的数据，不会转换为String
+     * @param s
+     */
     public void replyBulk(ZedisString s) {
-        replyBulk(s.toString());
+        if (s instanceof SdsSlice) {
+            SdsSlice slice = (SdsSlice) s;
+            replyer.writeBulk(slice.getBuffer(), slice.getOffset(), slice.length());
+        } else if (s instanceof Sds) {
+            Sds sds = (Sds) s;
+            replyer.writeBulk(sds.toArrayWithOutCopy(), 0, sds.length());
+        } else {
+            replyBulk(s.toString());
+        }
     }
 
     public void replyInteger(long l) {
-        Reply reply = ReplyBuilder.buildIntegerReply(l);
-        replyer.reply(reply, this);
+        replyer.writeInteger(l);
+    }
+
+    /**
+     * 发送multi bulk回复的头部："*<count>\r\n"，之后的count个元素由调用方逐个发送，用于嵌套的multi bulk回复
+     * @param count 元素数量
+     */
+    public void replyArrayHeader(int count) {
+        replyer.writeArrayHeader(count);
     }
 
     public void replyMultiBulk(List<String> bulks) {
-        Reply reply = ReplyBuilder.buildMultiBulkReply(bulks);
-        replyer.reply(reply, this);
+        replyer.writeArrayHeader(bulks.size());
+        for (String bulk : bulks) {
+            replyBulk(bulk);
+        }
     }
 
     public Map<String, Channel> getPubSubChannels() {
-        return this.pubSubChannels;
+        return this.pubSubChannels == null ? Collections.emptyMap() : this.pubSubChannels;
     }
 
     public Map<String, Pattern> getPubSubPatterns() {
-        return this.pubSubPatterns;
+        return this.pubSubPatterns == null ? Collections.emptyMap() : this.pubSubPatterns;
     }
 
     /**
@@ -300,6 +563,10 @@ public class InnerClient implements Client {
      * @return
      */
     public boolean subscribeChannel(Channel channel) {
+        if (this.pubSubChannels == null) {
+            this.pubSubChannels = new HashMap<>();
+        }
+
         if (this.pubSubChannels.containsKey(channel.getName())) {
             return false;
         } else {
@@ -309,13 +576,17 @@ public class InnerClient implements Client {
     }
 
     public boolean unsubscribeChannel(String channelName) {
-        if (this.pubSubChannels.remove(channelName) != null) {
+        if (this.pubSubChannels != null && this.pubSubChannels.remove(channelName) != null) {
             return true;
         }
         return false;
     }
 
     public boolean subscribePattern(Pattern pattern) {
+        if (this.pubSubPatterns == null) {
+            this.pubSubPatterns = new HashMap<>();
+        }
+
         if (this.pubSubPatterns.containsKey(pattern.getName())) {
             return false;
         } else {
@@ -325,7 +596,7 @@ public class InnerClient implements Client {
     }
 
     public boolean unsubscribePattern(String patternName) {
-        if (this.pubSubPatterns.remove(patternName) != null) {
+        if (this.pubSubPatterns != null && this.pubSubPatterns.remove(patternName) != null) {
             return true;
         }
         return false;
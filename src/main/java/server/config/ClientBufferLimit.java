@@ -0,0 +1,79 @@
+package server.config;
+
+/**
+ * 一类客户端的输出缓冲区限制，对应redis中的clientBufferLimitsConfig
+ * 配置格式：client-output-buffer-limit <class> <hard limit> <soft limit> <soft seconds>
+ *     (1) 输出缓冲区的大小达到hard limit时，立即关闭客户端
+ *     (2) 输出缓冲区的大小持续超过soft limit达到soft seconds秒时，关闭客户端
+ * 限制为0表示不做限制
+ **/
+public class ClientBufferLimit {
+    public static final int CLIENT_TYPE_NORMAL = 0;     // 普通客户端
+    public static final int CLIENT_TYPE_REPLICA = 1;    // 从服务器（目前还没有实现复制功能，只保留配置）
+    public static final int CLIENT_TYPE_PUBSUB = 2;     // 订阅了频道或模式的客户端
+    public static final int CLIENT_TYPE_COUNT = 3;
+
+    private final long hardLimitBytes;
+    private final long softLimitBytes;
+    private final long softLimitSeconds;
+
+    public ClientBufferLimit(long hardLimitBytes, long softLimitBytes, long softLimitSeconds) {
+        this.hardLimitBytes = hardLimitBytes;
+        this.softLimitBytes = softLimitBytes;
+        this.softLimitSeconds = softLimitSeconds;
+    }
+
+    /**
+     * 根据名字获取客户端类型
+     * @param name normal、replica（或slave）、pubsub
+     * @return 客户端类型，名字错误时返回-1
+     */
+    public static int getClientTypeByName(String name) {
+        switch (name.toLowerCase()) {
+            case "normal": return CLIENT_TYPE_NORMAL;
+            case "replica": case "slave": return CLIENT_TYPE_REPLICA;
+            case "pubsub": return CLIENT_TYPE_PUBSUB;
+            default: return -1;
+        }
+    }
+
+    public static String getClientTypeName(int type) {
+        switch (type) {
+            case CLIENT_TYPE_NORMAL: return "normal";
+            case CLIENT_TYPE_REPLICA: return "replica";
+            case CLIENT_TYPE_PUBSUB: return "pubsub";
+            default: return null;
+        }
+    }
+
+    /**
+     * 与redis相同的默认配置
+     * normal 0 0 0
+     * replica 256mb 64mb 60
+     * pubsub 32mb 8mb 60
+     */
+    public static ClientBufferLimit [] defaultLimits() {
+        ClientBufferLimit [] limits = new ClientBufferLimit[CLIENT_TYPE_COUNT];
+        limits[CLIENT_TYPE_NORMAL] = new ClientBufferLimit(0, 0, 0);
+        limits[CLIENT_TYPE_REPLICA] = new ClientBufferLimit(1024L * 1024 * 256, 1024L * 1024 * 64, 60);
+        limits[CLIENT_TYPE_PUBSUB] = new ClientBufferLimit(1024L * 1024 * 32, 1024L * 1024 * 8, 60);
+        return limits;
+    }
+
+    public long getHardLimitBytes() {
+        return this.hardLimitBytes;
+    }
+
+    public long getSoftLimitBytes() {
+        return this.softLimitBytes;
+    }
+
+    public long getSoftLimitSeconds() {
+        return this.softLimitSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return this.hardLimitBytes + " " + this.softLimitBytes + " " + this.softLimitSeconds;
+    }
+}
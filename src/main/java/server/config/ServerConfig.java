@@ -24,6 +24,20 @@ public class ServerConfig {
     private String aofFileName;     // aof持久化存储的文件路径
     private AofFsyncFrequency appendFsync;  // aof写入文件后，将数据从系统缓冲区强制同步到磁盘的频率
     private String rdbFileName;     // rdb持久化存储的文件路径
+    private int clientReadBufferMax;    // 从socket读取数据时，每个事件循环线程共享的读缓冲区的最大大小
+    private int ioThreads;          // IO线程数量（包括主线程），为1时不使用IO线程
+    private boolean ioThreadsDoReads;   // 是否使用IO线程读取和解析请求，为false时IO线程只负责发送回复
+    private int serverThreads;      // reactor线程数量，大于1时键空间被划分到多个reactor中
+    private int maxClients;         // 同时连接的客户端数量上限，超过上限的连接会被直接拒绝
+    private int maxAcceptsPerCall;  // 一次ACCEPT事件中最多接收的连接数量
+    private int tcpKeepAlive;       // 大于0时为客户端连接开启SO_KEEPALIVE
+    private int tcpBacklog;         // 监听套接字的backlog，即已完成握手、等待accept的连接队列长度
+    private ClientBufferLimit [] clientOutputBufferLimits;  // 各类客户端的输出缓冲区限制，下标为客户端类型
+    private long clientQueryBufferLimit;    // 单个客户端查询缓冲区的大小上限，超过上限的客户端会被关闭
+    private long protoMaxBulkLen;   // 请求中单个bulk参数的最大长度
+    private boolean activeRehashing;    // 是否在serverCron中主动rehash，否则只在访问字典时渐进式rehash
+    private boolean activeExpireTimeIndex;  // 是否维护按过期时间排序的索引，定期删除按时间顺序删除到期的键，而不是随机取样
+    private int activeExpireEffort;     // 定期删除的力度（1-10），越大删除过期键越及时，占用的CPU也越多
 
 
     private boolean isActiveExpiredEnable;
@@ -37,6 +51,23 @@ public class ServerConfig {
     public static final int MAX_HZ = 500;
     public static final String DEFAULT_AOF_FILE_NAME = "appendonly.aof";
     public static final String DEFAULT_RDB_FILE_NAME = "dump.rdb";
+    public static final int DEFAULT_CLIENT_READ_BUFFER_MAX = 1024 * 1024;   // 1MB
+    public static final int MIN_CLIENT_READ_BUFFER_MAX = 1024 * 16;         // 16KB
+    public static final int DEFAULT_IO_THREADS = 1;
+    public static final int IO_THREADS_MAX_NUM = 128;
+    public static final int DEFAULT_SERVER_THREADS = 1;
+    public static final int SERVER_THREADS_MAX_NUM = 128;
+    public static final int DEFAULT_MAX_CLIENTS = 10000;
+    public static final int DEFAULT_MAX_ACCEPTS_PER_CALL = 1000;
+    public static final int DEFAULT_TCP_KEEPALIVE = 300;
+    public static final int DEFAULT_TCP_BACKLOG = 511;
+    public static final long DEFAULT_CLIENT_QUERY_BUFFER_LIMIT = 1024L * 1024 * 1024;   // 1GB
+    public static final long MIN_CLIENT_QUERY_BUFFER_LIMIT = 1024L * 1024;              // 1MB
+    public static final long DEFAULT_PROTO_MAX_BULK_LEN = 1024L * 1024 * 512;           // 512MB
+    public static final long MIN_PROTO_MAX_BULK_LEN = 1024L * 1024;                     // 1MB
+    public static final int DEFAULT_ACTIVE_EXPIRE_EFFORT = 1;
+    public static final int MIN_ACTIVE_EXPIRE_EFFORT = 1;
+    public static final int MAX_ACTIVE_EXPIRE_EFFORT = 10;
 
     private ServerConfig() {
         super();
@@ -51,6 +82,20 @@ public class ServerConfig {
         this.aofFileName = DEFAULT_AOF_FILE_NAME;
         this.appendFsync = AofFsyncFrequency.EVERY_SECONDS;
         this.rdbFileName = DEFAULT_RDB_FILE_NAME;
+        this.clientReadBufferMax = DEFAULT_CLIENT_READ_BUFFER_MAX;
+        this.ioThreads = DEFAULT_IO_THREADS;
+        this.ioThreadsDoReads = false;
+        this.serverThreads = DEFAULT_SERVER_THREADS;
+        this.maxClients = DEFAULT_MAX_CLIENTS;
+        this.maxAcceptsPerCall = DEFAULT_MAX_ACCEPTS_PER_CALL;
+        this.tcpKeepAlive = DEFAULT_TCP_KEEPALIVE;
+        this.tcpBacklog = DEFAULT_TCP_BACKLOG;
+        this.clientOutputBufferLimits = ClientBufferLimit.defaultLimits();
+        this.clientQueryBufferLimit = DEFAULT_CLIENT_QUERY_BUFFER_LIMIT;
+        this.protoMaxBulkLen = DEFAULT_PROTO_MAX_BULK_LEN;
+        this.activeRehashing = true;
+        this.activeExpireTimeIndex = false;
+        this.activeExpireEffort = DEFAULT_ACTIVE_EXPIRE_EFFORT;
         this.isActiveExpiredEnable = true;
     }
 
@@ -72,6 +117,20 @@ public class ServerConfig {
             serverConfig.aofFileName = builder.aofFileName;
             serverConfig.appendFsync = builder.appendFsync;
             serverConfig.rdbFileName = builder.rdbFileName;
+            serverConfig.clientReadBufferMax = builder.clientReadBufferMax;
+            serverConfig.ioThreads = builder.ioThreads;
+            serverConfig.ioThreadsDoReads = builder.ioThreadsDoReads;
+            serverConfig.serverThreads = builder.serverThreads;
+            serverConfig.maxClients = builder.maxClients;
+            serverConfig.maxAcceptsPerCall = builder.maxAcceptsPerCall;
+            serverConfig.tcpKeepAlive = builder.tcpKeepAlive;
+            serverConfig.tcpBacklog = builder.tcpBacklog;
+            serverConfig.clientOutputBufferLimits = builder.clientOutputBufferLimits.clone();
+            serverConfig.clientQueryBufferLimit = builder.clientQueryBufferLimit;
+            serverConfig.protoMaxBulkLen = builder.protoMaxBulkLen;
+            serverConfig.activeRehashing = builder.activeRehashing;
+            serverConfig.activeExpireTimeIndex = builder.activeExpireTimeIndex;
+            serverConfig.activeExpireEffort = builder.activeExpireEffort;
             serverConfig.isActiveExpiredEnable = builder.isActiveExpiredEnable;
         }
 
@@ -134,7 +193,13 @@ public class ServerConfig {
             if ("timeout".equals(option) && argv.length == 2) {
                 // TODO
             } else if ("tcp-keepalive".equals(option) && argv.length == 2) {
-                // TODO
+                // JDK 8无法设置keepalive探测的间隔，这里只根据是否大于0开启或关闭SO_KEEPALIVE，探测间隔使用系统默认值
+                int keepAlive = Integer.valueOf(argv[1]);
+                if (keepAlive < 0) {
+                    err = "Invalid tcp-keepalive value";
+                    printFatalConfigError(lineNum, lines[i], err);
+                }
+                this.tcpKeepAlive = keepAlive;
             } else if ("port".equals(option) && argv.length == 2) {
                 int port = Integer.valueOf(argv[1]);
                 if (port < 0 || port > 65535) {
@@ -142,8 +207,94 @@ public class ServerConfig {
                     printFatalConfigError(lineNum, lines[i], err);
                 }
                 this.port = port;
+            } else if ("client-read-buffer-max".equals(option) && argv.length == 2) {
+                // 读缓冲区最大可以增长到的大小，读取大的bulk参数时，读缓冲区会按需增长到该大小
+                int max = Integer.valueOf(argv[1]);
+                if (max < MIN_CLIENT_READ_BUFFER_MAX) {
+                    err = "client-read-buffer-max can't be less than " + MIN_CLIENT_READ_BUFFER_MAX;
+                    printFatalConfigError(lineNum, lines[i], err);
+                }
+                this.clientReadBufferMax = max;
+            } else if ("io-threads".equals(option) && argv.length == 2) {
+                // IO线程数量，包括主线程，命令仍然只在主线程中执行，IO线程只负责读取、解析请求和发送回复
+                int threads = Integer.valueOf(argv[1]);
+                if (threads < 1 || threads > IO_THREADS_MAX_NUM) {
+                    err = "Invalid number of io threads";
+                    printFatalConfigError(lineNum, lines[i], err);
+                }
+                this.ioThreads = threads;
+            } else if ("io-threads-do-reads".equals(option) && argv.length == 2) {
+                if ("yes".equals(argv[1])) {
+                    this.ioThreadsDoReads = true;
+                } else if ("no".equals(argv[1])) {
+                    this.ioThreadsDoReads = false;
+                } else {
+                    err = "argument must be yes or no";
+                    printFatalConfigError(lineNum, lines[i], err);
+                }
+            } else if ("server-threads".equals(option) && argv.length == 2) {
+                // reactor线程数量，每个reactor运行独立的事件循环并拥有键空间的一个分区
+                int threads = Integer.valueOf(argv[1]);
+                if (threads < 1 || threads > SERVER_THREADS_MAX_NUM) {
+                    err = "Invalid number of server threads";
+                    printFatalConfigError(lineNum, lines[i], err);
+                }
+                this.serverThreads = threads;
             } else if ("tcp-backlog".equals(option) && argv.length == 2) {
-                // TODO
+                int backlog = Integer.valueOf(argv[1]);
+                if (backlog < 0) {
+                    err = "Invalid backlog value";
+                    printFatalConfigError(lineNum, lines[i], err);
+                }
+                this.tcpBacklog = backlog;
+            } else if ("client-output-buffer-limit".equals(option) && argv.length >= 5 && (argv.length - 1) % 4 == 0) {
+                // 一行中可以同时配置多类客户端，每类客户端4个参数：<class> <hard limit> <soft limit> <soft seconds>
+                for (int j = 1; j < argv.length; j += 4) {
+                    int type = ClientBufferLimit.getClientTypeByName(argv[j]);
+                    if (type == -1) {
+                        err = "Unrecognized client limit class";
+                        printFatalConfigError(lineNum, lines[i], err);
+                    }
+
+                    long hard = StringUtil.memToLong(argv[j + 1]);
+                    long soft = StringUtil.memToLong(argv[j + 2]);
+                    long softSeconds = StringUtil.isInteger(argv[j + 3]) ? Long.parseLong(argv[j + 3]) : -1;
+                    if (hard < 0 || soft < 0 || softSeconds < 0) {
+                        err = "Negative or malformed number in client-output-buffer-limit";
+                        printFatalConfigError(lineNum, lines[i], err);
+                    }
+                    this.clientOutputBufferLimits[type] = new ClientBufferLimit(hard, soft, softSeconds);
+                }
+            } else if ("client-query-buffer-limit".equals(option) && argv.length == 2) {
+                long limit = StringUtil.memToLong(argv[1]);
+                if (limit < MIN_CLIENT_QUERY_BUFFER_LIMIT) {
+                    err = "client-query-buffer-limit must be at least 1mb";
+                    printFatalConfigError(lineNum, lines[i], err);
+                }
+                this.clientQueryBufferLimit = limit;
+            } else if ("proto-max-bulk-len".equals(option) && argv.length == 2) {
+                // bulk的长度在解析时被转换为int，因此不能超过Integer.MAX_VALUE
+                long len = StringUtil.memToLong(argv[1]);
+                if (len < MIN_PROTO_MAX_BULK_LEN || len > Integer.MAX_VALUE) {
+                    err = "proto-max-bulk-len must be between 1mb and 2gb";
+                    printFatalConfigError(lineNum, lines[i], err);
+                }
+                this.protoMaxBulkLen = len;
+            } else if ("maxclients".equals(option) && argv.length == 2) {
+                int max = Integer.valueOf(argv[1]);
+                if (max < 1) {
+                    err = "Invalid max clients limit";
+                    printFatalConfigError(lineNum, lines[i], err);
+                }
+                this.maxClients = max;
+            } else if ("max-accepts-per-call".equals(option) && argv.length == 2) {
+                // 大量客户端同时重连时，一次ACCEPT事件中接收多个连接，减少事件循环的次数
+                int max = Integer.valueOf(argv[1]);
+                if (max < 1) {
+                    err = "Invalid max accepts per call";
+                    printFatalConfigError(lineNum, lines[i], err);
+                }
+                this.maxAcceptsPerCall = max;
             } else if ("bind".equals(option) && argv.length >= 2) {
                 // TODO
             } else if ("unixsocket".equals(option) && argv.length == 2) {
@@ -202,7 +353,30 @@ public class ServerConfig {
             } else if ("rdbchecksum".equals(option) && argv.length == 2) {
                 // TODO
             } else if ("activerehashing".equals(option) && argv.length == 2) {
-                // TODO
+                if ("yes".equals(argv[1])) {
+                    this.activeRehashing = true;
+                } else if ("no".equals(argv[1])) {
+                    this.activeRehashing = false;
+                } else {
+                    err = "argument must be yes or no";
+                    printFatalConfigError(lineNum, lines[i], err);
+                }
+            } else if ("active-expire-time-index".equals(option) && argv.length == 2) {
+                if ("yes".equals(argv[1])) {
+                    this.activeExpireTimeIndex = true;
+                } else if ("no".equals(argv[1])) {
+                    this.activeExpireTimeIndex = false;
+                } else {
+                    err = "argument must be yes or no";
+                    printFatalConfigError(lineNum, lines[i], err);
+                }
+            } else if ("active-expire-effort".equals(option) && argv.length == 2) {
+                int effort = Integer.valueOf(argv[1]);
+                if (effort < MIN_ACTIVE_EXPIRE_EFFORT || effort > MAX_ACTIVE_EXPIRE_EFFORT) {
+                    err = "active-expire-effort must be between " + MIN_ACTIVE_EXPIRE_EFFORT + " and " + MAX_ACTIVE_EXPIRE_EFFORT;
+                    printFatalConfigError(lineNum, lines[i], err);
+                }
+                this.activeExpireEffort = effort;
             } else if ("daemonize".equals(option) && argv.length == 2) {
                 if ("yes".equals(argv[1])) {
                     this.daemonize = true;
@@ -385,6 +559,66 @@ public class ServerConfig {
         return this.rdbFileName;
     }
 
+    public int getClientReadBufferMax() {
+        return this.clientReadBufferMax;
+    }
+
+    public int getIoThreads() {
+        return this.ioThreads;
+    }
+
+    public boolean isIoThreadsDoReads() {
+        return this.ioThreadsDoReads;
+    }
+
+    public int getServerThreads() {
+        return this.serverThreads;
+    }
+
+    public int getMaxClients() {
+        return this.maxClients;
+    }
+
+    public int getMaxAcceptsPerCall() {
+        return this.maxAcceptsPerCall;
+    }
+
+    public int getTcpKeepAlive() {
+        return this.tcpKeepAlive;
+    }
+
+    public int getTcpBacklog() {
+        return this.tcpBacklog;
+    }
+
+    /**
+     * @param clientType 客户端类型，参见ClientBufferLimit.CLIENT_TYPE_*
+     * @return 该类客户端的输出缓冲区限制
+     */
+    public ClientBufferLimit getClientOutputBufferLimit(int clientType) {
+        return this.clientOutputBufferLimits[clientType];
+    }
+
+    public long getClientQueryBufferLimit() {
+        return this.clientQueryBufferLimit;
+    }
+
+    public long getProtoMaxBulkLen() {
+        return this.protoMaxBulkLen;
+    }
+
+    public boolean isActiveRehashing() {
+        return this.activeRehashing;
+    }
+
+    public boolean isActiveExpireTimeIndex() {
+        return this.activeExpireTimeIndex;
+    }
+
+    public int getActiveExpireEffort() {
+        return this.activeExpireEffort;
+    }
+
     public boolean isActiveExpiredEnable() {
         return this.isActiveExpiredEnable;
     }
@@ -403,6 +637,20 @@ public class ServerConfig {
         private String aofFileName;
         private AofFsyncFrequency appendFsync;
         private String rdbFileName;
+        private int clientReadBufferMax;
+        private int ioThreads;
+        private boolean ioThreadsDoReads;
+        private int serverThreads;
+        private int maxClients;
+        private int maxAcceptsPerCall;
+        private int tcpKeepAlive;
+        private int tcpBacklog;
+        private ClientBufferLimit [] clientOutputBufferLimits;
+        private long clientQueryBufferLimit;
+        private long protoMaxBulkLen;
+        private boolean activeRehashing;
+        private boolean activeExpireTimeIndex;
+        private int activeExpireEffort;
         private boolean isActiveExpiredEnable;
 
         public ServerConfigBuilder() {
@@ -416,6 +664,20 @@ public class ServerConfig {
             this.aofFileName = DEFAULT_AOF_FILE_NAME;
             this.appendFsync = AofFsyncFrequency.EVERY_SECONDS;
             this.rdbFileName = DEFAULT_RDB_FILE_NAME;
+            this.clientReadBufferMax = DEFAULT_CLIENT_READ_BUFFER_MAX;
+            this.ioThreads = DEFAULT_IO_THREADS;
+            this.ioThreadsDoReads = false;
+            this.serverThreads = DEFAULT_SERVER_THREADS;
+            this.maxClients = DEFAULT_MAX_CLIENTS;
+            this.maxAcceptsPerCall = DEFAULT_MAX_ACCEPTS_PER_CALL;
+            this.tcpKeepAlive = DEFAULT_TCP_KEEPALIVE;
+            this.tcpBacklog = DEFAULT_TCP_BACKLOG;
+            this.clientOutputBufferLimits = ClientBufferLimit.defaultLimits();
+            this.clientQueryBufferLimit = DEFAULT_CLIENT_QUERY_BUFFER_LIMIT;
+            this.protoMaxBulkLen = DEFAULT_PROTO_MAX_BULK_LEN;
+            this.activeRehashing = true;
+            this.activeExpireTimeIndex = false;
+            this.activeExpireEffort = DEFAULT_ACTIVE_EXPIRE_EFFORT;
             this.isActiveExpiredEnable = true;
         }
 
@@ -468,6 +730,76 @@ public class ServerConfig {
             this.rdbFileName = fileName;
             return this;
         }
+
+        public ServerConfigBuilder setClientReadBufferMax(int max) {
+            this.clientReadBufferMax = max;
+            return this;
+        }
+
+        public ServerConfigBuilder setIoThreads(int ioThreads) {
+            this.ioThreads = ioThreads;
+            return this;
+        }
+
+        public ServerConfigBuilder setIoThreadsDoReads(boolean doReads) {
+            this.ioThreadsDoReads = doReads;
+            return this;
+        }
+
+        public ServerConfigBuilder setServerThreads(int serverThreads) {
+            this.serverThreads = serverThreads;
+            return this;
+        }
+
+        public ServerConfigBuilder setMaxClients(int maxClients) {
+            this.maxClients = maxClients;
+            return this;
+        }
+
+        public ServerConfigBuilder setMaxAcceptsPerCall(int maxAcceptsPerCall) {
+            this.maxAcceptsPerCall = maxAcceptsPerCall;
+            return this;
+        }
+
+        public ServerConfigBuilder setTcpKeepAlive(int tcpKeepAlive) {
+            this.tcpKeepAlive = tcpKeepAlive;
+            return this;
+        }
+
+        public ServerConfigBuilder setTcpBacklog(int tcpBacklog) {
+            this.tcpBacklog = tcpBacklog;
+            return this;
+        }
+
+        public ServerConfigBuilder setClientOutputBufferLimit(int clientType, ClientBufferLimit limit) {
+            this.clientOutputBufferLimits[clientType] = limit;
+            return this;
+        }
+
+        public ServerConfigBuilder setClientQueryBufferLimit(long limit) {
+            this.clientQueryBufferLimit = limit;
+            return this;
+        }
+
+        public ServerConfigBuilder setProtoMaxBulkLen(long len) {
+            this.protoMaxBulkLen = len;
+            return this;
+        }
+
+        public ServerConfigBuilder setActiveRehashing(boolean activeRehashing) {
+            this.activeRehashing = activeRehashing;
+            return this;
+        }
+
+        public ServerConfigBuilder setActiveExpireTimeIndex(boolean activeExpireTimeIndex) {
+            this.activeExpireTimeIndex = activeExpireTimeIndex;
+            return this;
+        }
+
+        public ServerConfigBuilder setActiveExpireEffort(int activeExpireEffort) {
+            this.activeExpireEffort = activeExpireEffort;
+            return this;
+        }
     }
 
     public void printConfig() {
@@ -476,5 +808,20 @@ public class ServerConfig {
         System.out.println("databases:" + this.dbNumber);
         System.out.println("daemonize:" + this.daemonize);
         System.out.println("requirepass:" + this.requirePassword);
+        System.out.println("io-threads:" + this.ioThreads);
+        System.out.println("io-threads-do-reads:" + this.ioThreadsDoReads);
+        System.out.println("server-threads:" + this.serverThreads);
+        System.out.println("maxclients:" + this.maxClients);
+        System.out.println("max-accepts-per-call:" + this.maxAcceptsPerCall);
+        System.out.println("tcp-keepalive:" + this.tcpKeepAlive);
+        System.out.println("tcp-backlog:" + this.tcpBacklog);
+        for (int type = 0; type < ClientBufferLimit.CLIENT_TYPE_COUNT; type++) {
+            System.out.println("client-output-buffer-limit:" + ClientBufferLimit.getClientTypeName(type) + " " + this.clientOutputBufferLimits[type]);
+        }
+        System.out.println("client-query-buffer-limit:" + this.clientQueryBufferLimit);
+        System.out.println("proto-max-bulk-len:" + this.protoMaxBulkLen);
+        System.out.println("activerehashing:" + this.activeRehashing);
+        System.out.println("active-expire-time-index:" + this.activeExpireTimeIndex);
+        System.out.println("active-expire-effort:" + this.activeExpireEffort);
     }
 }
@@ -0,0 +1,61 @@
+package command;
+
+import common.struct.impl.SdsSlice;
+import common.utils.SafeEncoder;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 对比直接使用参数字节查找命令与先转换为String再查找HashMap的耗时，不属于单元测试，需要手动运行：
+ *     java -cp ... command.CommandTableBenchmark [查找次数]
+ */
+public class CommandTableBenchmark {
+
+    private static SdsSlice slice(String s) {
+        byte [] buf = SafeEncoder.encode("*1\r\n$" + s.length() + "\r\n" + s + "\r\n");
+        int offset = 4 + 1 + String.valueOf(s.length()).length() + 2;
+        return new SdsSlice(buf, offset, s.length());
+    }
+
+    public static void main(String [] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+
+        String [] names = {"get", "SET", "incr", "Expire", "pttl", "del", "publish", "unknown"};
+        SdsSlice [] slices = new SdsSlice[names.length];
+        for (int i = 0; i < names.length; i++) {
+            slices[i] = slice(names[i]);
+        }
+
+        CommandExecutor executor = CommandExecutor.getExecutor();
+        Map<String, AbstractCommand> map = new HashMap<>();
+        for (String name : new String[] {"get", "set", "expire", "pttl", "del", "publish"}) {
+            map.put(name, executor.lookupCommand(name));
+        }
+
+        long found = 0;
+
+        // 预热
+        for (int i = 0; i < rounds; i++) {
+            SdsSlice arg = slices[i % slices.length];
+            found += executor.lookupCommand(arg) == null ? 0 : 1;
+            found += map.get(arg.toString().toLowerCase()) == null ? 0 : 1;
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            found += executor.lookupCommand(slices[i % slices.length]) == null ? 0 : 1;
+        }
+        long tableTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            found += map.get(slices[i % slices.length].toString().toLowerCase()) == null ? 0 : 1;
+        }
+        long mapTime = System.nanoTime() - start;
+
+        System.out.println("CommandTable.lookup(bytes): " + tableTime / rounds + " ns/op");
+        System.out.println("toString + toLowerCase + HashMap.get: " + mapTime / rounds + " ns/op");
+        System.out.println("found: " + found);
+    }
+}
@@ -0,0 +1,91 @@
+package command;
+
+import common.persistence.AOFPersistence;
+import common.persistence.AofFsyncFrequency;
+import common.struct.ZedisString;
+import common.struct.impl.Sds;
+import common.struct.impl.SdsSlice;
+import database.Database;
+import org.junit.Assert;
+import org.junit.Test;
+import server.ServerContext;
+import server.ZedisServer;
+import server.client.InnerClient;
+import server.config.ServerConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TestCommandExecutor {
+
+    /**
+     * 记录传播到AOF的命令，不写入文件
+     */
+    private static class RecordingAOFPersistence extends AOFPersistence {
+        private final List<String> fed = new ArrayList<>();
+
+        RecordingAOFPersistence(String aofFileName) {
+            super(aofFileName, AofFsyncFrequency.NO);
+        }
+
+        @Override
+        public void feedCommand(List<? extends ZedisString> command) {
+            List<String> args = new ArrayList<>();
+            for (ZedisString arg : command) {
+                args.add(arg.toString());
+            }
+            this.fed.add(String.join(" ", args));
+        }
+    }
+
+    private static void execute(InnerClient client, String... args) {
+        for (String arg : args) {
+            client.getCommandArgs().add(SdsSlice.createSlice(Sds.createSds(arg)));
+        }
+        CommandExecutor executor = CommandExecutor.getExecutor();
+        executor.execute(executor.lookupCommand(args[0]), client);
+        client.getCommandArgs().clear();
+    }
+
+    /**
+     * 只有确实修改了数据库的命令才会写入AOF：读命令、条件不满足的SETNX、键不存在时的EXPIRE都不会写入
+     */
+    @Test
+    public void testOnlyDirtyingCommandsFeedAof() throws IOException {
+        File aofFile = File.createTempFile("zedis", ".aof");
+        aofFile.deleteOnExit();
+        RecordingAOFPersistence aof = new RecordingAOFPersistence(aofFile.getPath());
+
+        ZedisServer oldServer = ServerContext.getContext().getServerInstance();
+        ServerConfig oldConfig = ServerContext.getContext().getServerConfig();
+        ServerContext.getContext().setServerInstance(new ZedisServer() {
+            @Override
+            public AOFPersistence getAofPersistence() {
+                return aof;
+            }
+        });
+        ServerContext.getContext().setServerConfig(ServerConfig.build(new ServerConfig.ServerConfigBuilder().setAof(true)));
+        try {
+            Database db = new Database();
+            db.add(Sds.createSds("existing"), Sds.createSds("v"));
+            InnerClient client = InnerClient.createForwardClient(db);
+
+            execute(client, "get", "existing");
+            execute(client, "setnx", "existing", "other");
+            execute(client, "expire", "missing", "100");
+            Assert.assertTrue(aof.fed.isEmpty());
+
+            execute(client, "set", "k", "v");
+            execute(client, "del", "k");
+            Assert.assertEquals(Arrays.asList("set k v", "del k"), aof.fed);
+            Assert.assertEquals("v", db.lookupByKey(Sds.createSds("existing")).toString());
+        } finally {
+            ServerContext.getContext().setServerInstance(oldServer);
+            ServerContext.getContext().setServerConfig(oldConfig);
+            aof.destroy();
+        }
+    }
+}
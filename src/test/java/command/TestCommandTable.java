@@ -0,0 +1,76 @@
+package command;
+
+import common.struct.impl.SdsSlice;
+import common.utils.SafeEncoder;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class TestCommandTable {
+
+    private static SdsSlice slice(String s) {
+        byte [] buf = SafeEncoder.encode("*1\r\n$" + s.length() + "\r\n" + s + "\r\n");
+        int offset = 4 + 1 + String.valueOf(s.length()).length() + 2;
+        return new SdsSlice(buf, offset, s.length());
+    }
+
+    @Test
+    public void testLookupIgnoreCase() {
+        CommandExecutor executor = CommandExecutor.getExecutor();
+        AbstractCommand get = executor.lookupCommand("get");
+        Assert.assertNotNull(get);
+        Assert.assertSame(get, executor.lookupCommand("GET"));
+        Assert.assertSame(get, executor.lookupCommand(slice("gEt")));
+        Assert.assertSame(executor.lookupCommand("pexpireat"), executor.lookupCommand(slice("PEXPIREAT")));
+
+        Assert.assertNull(executor.lookupCommand(slice("ge")));
+        Assert.assertNull(executor.lookupCommand(slice("gett")));
+        Assert.assertNull(executor.lookupCommand(slice("gat")));
+        Assert.assertNull(executor.lookupCommand(slice("")));
+    }
+
+    @Test
+    public void testPutAndResize() {
+        String [] names = {"get", "set", "del", "ttl", "ping", "echo", "info"};
+        CommandTable table = new CommandTable();
+        AbstractCommand [] commands = new AbstractCommand[100];
+        for (int i = 0; i < commands.length; i++) {
+            commands[i] = CommandExecutor.getExecutor().lookupCommand(names[i % names.length]);
+            table.put("cmd" + i, commands[i]);
+        }
+        table.put("CMD0", commands[1]);
+
+        Assert.assertEquals(100, table.size());
+        Assert.assertFalse(commands[0] == commands[1]);
+        Assert.assertSame(commands[1], table.lookup("cmd0"));
+        for (int i = 1; i < commands.length; i++) {
+            Assert.assertSame(commands[i], table.lookup("Cmd" + i));
+        }
+        Assert.assertNull(table.lookup("cmd100"));
+    }
+
+    @Test
+    public void testParseFlags() {
+        Assert.assertEquals(AbstractCommand.CMD_WRITE | AbstractCommand.CMD_DENYOOM | AbstractCommand.CMD_FAST, AbstractCommand.parseFlags("wmF"));
+        Assert.assertEquals(0, AbstractCommand.parseFlags(""));
+
+        AbstractCommand publish = CommandExecutor.getExecutor().lookupCommand("publish");
+        Assert.assertTrue(publish.hasFlag(AbstractCommand.CMD_PUBSUB));
+        Assert.assertFalse(publish.hasFlag(AbstractCommand.CMD_WRITE));
+        Assert.assertEquals("[pubsub, loading, stale, fast]", publish.getFlagNames().toString());
+
+        // 所有命令要么是读命令，要么是写命令，要么是管理命令或订阅发布命令
+        for (AbstractCommand command : CommandExecutor.getExecutor().getCommands()) {
+            Assert.assertTrue(command.getName(), command.hasFlag(AbstractCommand.CMD_WRITE | AbstractCommand.CMD_READONLY
+                    | AbstractCommand.CMD_ADMIN | AbstractCommand.CMD_PUBSUB));
+            Assert.assertSame(command, CommandExecutor.getExecutor().lookupCommand(command.getName()));
+        }
+
+        try {
+            AbstractCommand.parseFlags("wx");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // 不支持的属性
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package common.expire;
+
+import common.struct.ZedisString;
+import common.struct.impl.Sds;
+import database.Database;
+import org.junit.Assert;
+import org.junit.Test;
+import server.ServerContext;
+import server.config.ServerConfig;
+
+public class TestPeriodicExpirator {
+
+    private static Database createDatabase(int keys, int expiredPercent) {
+        long now = System.currentTimeMillis();
+        Database db = new Database();
+        Sds value = Sds.createSds("v");
+        for (int i = 0; i < keys; i++) {
+            ZedisString key = Sds.createSds("session:" + i);
+            db.add(key, value);
+            db.setExpire(key, i % 100 < expiredPercent ? now - 1 : now + 3600 * 1000);
+        }
+        return db;
+    }
+
+    /**
+     * 慢速模式用完时间之后，快速模式在beforeSleep中继续删除过期键，每次只执行很短的时间
+     */
+    @Test
+    public void testFastCycleAfterSlowCycleTimeLimit() throws InterruptedException {
+        ServerContext.getContext().setServerConfig(ServerConfig.build());
+
+        // 所有的键都已经过期，每一轮取样的过期键比例都高于可以接受的比例，只会因为超时而退出
+        int keys = 1000000;
+        Database db = createDatabase(keys, 100);
+        PeriodicExpirator expirator = new PeriodicExpirator(db);
+
+        // 没有用完时间，也没有估计过期键的比例时，快速模式什么也不做
+        expirator.delExpiredPeriodicaly(PeriodicExpiration.FAST_MODE);
+        Assert.assertEquals(keys, db.expiredKeyNums());
+
+        long start = System.nanoTime();
+        expirator.delExpiredPeriodicaly(PeriodicExpiration.SLOW_MODE);
+        long slowMillis = (System.nanoTime() - start) / 1000000;
+        int afterSlow = db.expiredKeyNums();
+        Assert.assertTrue(expirator.isTimeLimitExit());
+        Assert.assertTrue(expirator.getStaleRatio() > 0);
+        // hz为10时慢速模式每次最多使用25毫秒，每16轮检查一次时间
+        Assert.assertTrue(slowMillis < 200);
+        Assert.assertTrue(afterSlow < keys);
+
+        // 慢速模式超时退出，快速模式继续删除，并且同样在EXPIRE_CYCLE_FAST_DURATION微秒之后超时退出
+        start = System.nanoTime();
+        expirator.delExpiredPeriodicaly(PeriodicExpiration.FAST_MODE);
+        int afterFast = db.expiredKeyNums();
+        Assert.assertTrue(afterFast < afterSlow);
+        Assert.assertTrue(expirator.isTimeLimitExit());
+
+        // 两次快速模式之间至少间隔两倍的执行时间，只有确实没有超过这个间隔时才能断言第二次什么也不做
+        expirator.delExpiredPeriodicaly(PeriodicExpiration.FAST_MODE);
+        if (System.nanoTime() - start < PeriodicExpiration.EXPIRE_CYCLE_FAST_DURATION * 2 * 1000) {
+            Assert.assertEquals(afterFast, db.expiredKeyNums());
+        }
+
+        // 超过间隔之后，上一次超时退出的快速模式会再次执行
+        Thread.sleep(PeriodicExpiration.EXPIRE_CYCLE_FAST_DURATION * 2 / 1000 + 1);
+        int beforeFast = db.expiredKeyNums();
+        expirator.delExpiredPeriodicaly(PeriodicExpiration.FAST_MODE);
+        Assert.assertTrue(db.expiredKeyNums() < beforeFast);
+    }
+
+    /**
+     * 上一次没有超时，并且过期键比例的估计低于可以接受的比例时，即使超过了两次快速模式的间隔也不执行快速模式
+     */
+    @Test
+    public void testFastCycleSkippedWhenStaleRatioAcceptable() throws InterruptedException {
+        ServerContext.getContext().setServerConfig(ServerConfig.build());
+
+        int keys = 100000;
+        Database db = createDatabase(keys, 1);
+        PeriodicExpirator expirator = new PeriodicExpirator(db);
+
+        expirator.delExpiredPeriodicaly(PeriodicExpiration.SLOW_MODE);
+        Assert.assertFalse(expirator.isTimeLimitExit());
+        Assert.assertTrue(expirator.getStaleRatio() < PeriodicExpirator.EXPIRE_CYCLE_ACCEPTABLE_STALE);
+        int afterSlow = db.expiredKeyNums();
+        Assert.assertTrue(afterSlow > keys / 100 * 99);
+
+        Thread.sleep(PeriodicExpiration.EXPIRE_CYCLE_FAST_DURATION * 2 / 1000 + 1);
+        expirator.delExpiredPeriodicaly(PeriodicExpiration.FAST_MODE);
+        Assert.assertEquals(afterSlow, db.expiredKeyNums());
+    }
+
+    /**
+     * active-expire-effort越大，可以接受的过期键比例越低，一次慢速模式删除的过期键越多
+     */
+    @Test
+    public void testActiveExpireEffort() {
+        int keys = 100000;
+        int[] remaining = new int[2];
+        int[] efforts = {1, 10};
+        for (int i = 0; i < efforts.length; i++) {
+            ServerContext.getContext().setServerConfig(ServerConfig.build(new ServerConfig.ServerConfigBuilder()
+                    .setActiveExpireEffort(efforts[i])));
+            Database db = createDatabase(keys, 20);
+            new PeriodicExpirator(db).delExpiredPeriodicaly(PeriodicExpiration.SLOW_MODE);
+            remaining[i] = db.expiredKeyNums() - keys / 100 * 80;
+        }
+        ServerContext.getContext().setServerConfig(ServerConfig.build());
+
+        Assert.assertTrue(remaining[1] < remaining[0]);
+    }
+}
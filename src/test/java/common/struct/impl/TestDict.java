@@ -0,0 +1,167 @@
+package common.struct.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+public class TestDict {
+
+    @Test
+    public void testPutGetRemove() {
+        Dict<Sds, Integer> dict = new Dict<>();
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertNull(dict.put(Sds.createSds("key:" + i), i));
+        }
+        Assert.assertEquals(10000, dict.size());
+        Assert.assertEquals(Integer.valueOf(1), dict.put(Sds.createSds("key:1"), -1));
+        Assert.assertEquals(10000, dict.size());
+
+        // 可以使用内容相同的SdsSlice查找
+        byte [] buf = "xxkey:2xx".getBytes();
+        Assert.assertEquals(Integer.valueOf(2), dict.get(new SdsSlice(buf, 2, 5)));
+
+        for (int i = 0; i < 10000; i += 2) {
+            Assert.assertNotNull(dict.remove(Sds.createSds("key:" + i)));
+        }
+        Assert.assertNull(dict.remove(Sds.createSds("key:0")));
+        Assert.assertEquals(5000, dict.size());
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertEquals(i % 2 == 1, dict.containsKey(Sds.createSds("key:" + i)));
+        }
+
+        int count = 0;
+        for (Dict.Entry<Sds, Integer> e : dict) {
+            Assert.assertEquals(1, Integer.parseInt(e.getKey().toString().substring(4)) % 2);
+            count++;
+        }
+        Assert.assertEquals(5000, count);
+    }
+
+    /**
+     * 用SdsSlice添加键时，只有添加新节点才转换为Sds，覆盖已经存在的键时保留原来的键
+     */
+    @Test
+    public void testAddOrFindConvertsKeyOnlyOnInsert() {
+        Dict<Sds, Integer> dict = new Dict<>();
+        int [] converted = new int[1];
+        byte [] buf = "xxkeyxx".getBytes();
+
+        Dict.Entry<Sds, Integer> e = dict.addOrFind(new SdsSlice(buf, 2, 3), slice -> {
+            converted[0]++;
+            return slice.toSds();
+        });
+        e.setValue(1);
+        Sds key = e.getKey();
+        Assert.assertEquals(1, converted[0]);
+
+        Dict.Entry<Sds, Integer> found = dict.addOrFind(new SdsSlice(buf, 2, 3), slice -> {
+            converted[0]++;
+            return slice.toSds();
+        });
+        Assert.assertSame(e, found);
+        Assert.assertSame(key, found.getKey());
+        Assert.assertEquals(Integer.valueOf(1), found.getValue());
+        Assert.assertEquals(1, converted[0]);
+        Assert.assertEquals(1, dict.size());
+
+        // 保存的键不引用原来的数组
+        buf[2] = 'K';
+        Assert.assertEquals(Integer.valueOf(1), dict.get(Sds.createSds("key")));
+    }
+
+    /**
+     * 扩容是渐进式的：一次添加操作最多迁移一个桶，rehash期间两个哈希表中的键都能被找到
+     */
+    @Test
+    public void testIncrementalRehash() {
+        Dict<Integer, Integer> dict = new Dict<>();
+        for (int i = 0; i < 1024; i++) {
+            dict.put(i, i);
+        }
+        while (dict.isRehashing()) {
+            dict.rehash(100);
+        }
+
+        // 第1025个键触发扩容，扩容后还有大量节点留在0号哈希表中
+        dict.put(1024, 1024);
+        Assert.assertTrue(dict.isRehashing());
+        for (int i = 0; i <= 1024; i++) {
+            Assert.assertEquals(Integer.valueOf(i), dict.get(i));
+        }
+
+        while (dict.rehash(10)) {
+        }
+        Assert.assertFalse(dict.isRehashing());
+        Assert.assertEquals(1025, dict.size());
+        Assert.assertEquals(2048, dict.slots());
+
+        // 使用率过低时缩容，同样是渐进式的
+        dict.put(5000, 0);
+        for (int i = 0; i < 2000; i++) {
+            dict.remove(i);
+        }
+        Assert.assertTrue(dict.shrinkIfNeeded());
+        Assert.assertTrue(dict.isRehashing());
+        dict.rehashMilliseconds(10);
+        Assert.assertFalse(dict.isRehashing());
+        Assert.assertEquals(1, dict.size());
+        Assert.assertEquals(Dict.DICT_HT_INITIAL_SIZE, dict.slots());
+    }
+
+    /**
+     * 遍历开始前就存在、遍历期间没有被删除的键，即使遍历期间字典扩容或缩容，也都会被scan返回
+     */
+    @Test
+    public void testScanDuringResize() {
+        Dict<Integer, Integer> dict = new Dict<>();
+        for (int i = 0; i < 1000; i++) {
+            dict.put(i, i);
+        }
+
+        Set<Integer> seen = new HashSet<>();
+        long cursor = 0;
+        int calls = 0;
+        do {
+            cursor = dict.scan(cursor, e -> seen.add(e.getKey()));
+            calls++;
+            // 遍历到一半时先扩容，再删除新加的键触发缩容
+            if (calls == 100) {
+                for (int i = 1000; i < 10000; i++) {
+                    dict.put(i, i);
+                }
+            } else if (calls == 300) {
+                for (int i = 1000; i < 10000; i++) {
+                    dict.remove(i);
+                }
+                dict.shrinkIfNeeded();
+            }
+            dict.rehash(1);
+        } while (cursor != 0);
+
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(String.valueOf(i), seen.contains(i));
+        }
+    }
+
+    @Test
+    public void testRandomEntry() {
+        Dict<Integer, Integer> dict = new Dict<>();
+        Random random = new Random(1);
+        Assert.assertNull(dict.randomEntry(random));
+
+        for (int i = 0; i < 100; i++) {
+            dict.put(i, i);
+        }
+        Map<Integer, Integer> hits = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            Dict.Entry<Integer, Integer> e = dict.randomEntry(random);
+            hits.merge(e.getKey(), 1, Integer::sum);
+        }
+        Assert.assertEquals(100, hits.size());
+    }
+}
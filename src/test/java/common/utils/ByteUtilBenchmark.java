@@ -0,0 +1,38 @@
+package common.utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 对比ByteUtil.parseLong与先转换为String再调用Long.parseLong的耗时，不属于单元测试，需要手动运行：
+ *     java -cp ... common.utils.ByteUtilBenchmark [解析次数]
+ */
+public class ByteUtilBenchmark {
+
+    public static void main(String [] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+        byte [] bytes = SafeEncoder.encode("$1048576\r\n");
+        long sum = 0;
+
+        // 预热
+        for (int i = 0; i < rounds; i++) {
+            sum += ByteUtil.parseLong(bytes, 1, 7);
+            sum += Long.parseLong(new String(bytes, 1, 7, StandardCharsets.UTF_8));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sum += ByteUtil.parseLong(bytes, 1, 7);
+        }
+        long byteParseTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sum += Long.parseLong(new String(bytes, 1, 7, StandardCharsets.UTF_8));
+        }
+        long stringParseTime = System.nanoTime() - start;
+
+        System.out.println("ByteUtil.parseLong: " + byteParseTime / rounds + " ns/op");
+        System.out.println("new String + Long.parseLong: " + stringParseTime / rounds + " ns/op");
+        System.out.println("sum: " + sum);
+    }
+}
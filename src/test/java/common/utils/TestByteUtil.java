@@ -1,5 +1,7 @@
 package common.utils;
 
+import common.struct.impl.Sds;
+import common.struct.impl.SdsSlice;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -51,7 +53,35 @@ public class TestByteUtil {
 
         Assert.assertEquals(-29874, ByteUtil.transformBytesToLong(bytes1));
         Assert.assertEquals(20714010, ByteUtil.transformBytesToLong(bytes4));
-        Assert.assertEquals(0, ByteUtil.transformBytesToLong(bytes3));
-//        ByteUtil.transformBytesToLong(bytes2);
+        for (byte [] illegal : new byte [][] {bytes2, bytes3, SafeEncoder.encode("9223372036854775808")}) {
+            try {
+                ByteUtil.transformBytesToLong(illegal);
+                Assert.fail("'" + SafeEncoder.encode(illegal) + "' should not be parsed");
+            } catch (NumberFormatException e) {
+                // 预期的异常
+            }
+        }
+    }
+
+    @Test
+    public void testParseLong() {
+        byte [] bytes = SafeEncoder.encode("*3$-128+7");
+
+        Assert.assertEquals(3, ByteUtil.parseLong(bytes, 1, 1));
+        Assert.assertEquals(-128, ByteUtil.parseLong(bytes, 3, 4));
+        Assert.assertEquals(7, ByteUtil.parseLong(bytes, 7, 2));
+        Assert.assertEquals(Long.MAX_VALUE, ByteUtil.parseLong(Sds.createSds(String.valueOf(Long.MAX_VALUE))));
+        Assert.assertEquals(Long.MIN_VALUE, ByteUtil.parseLong(Sds.createSds(String.valueOf(Long.MIN_VALUE))));
+        Assert.assertEquals(-29874, ByteUtil.parseLong(new SdsSlice(SafeEncoder.encode("x-0029874x"), 1, 8)));
+
+        String [] illegals = {"", "-", "+", "12a", " 1", "9223372036854775808", "-9223372036854775809", "99999999999999999999"};
+        for (String illegal : illegals) {
+            try {
+                ByteUtil.parseLong(Sds.createSds(illegal));
+                Assert.fail("'" + illegal + "' should not be parsed");
+            } catch (NumberFormatException e) {
+                // 预期的异常
+            }
+        }
     }
 }
@@ -1,5 +1,6 @@
 package common.utils;
 
+import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Arrays;
@@ -53,4 +54,33 @@ public class TestStringUtil {
         System.out.println(res1);
 
     }
+
+    @Test
+    public void testMemToLong() {
+        Assert.assertEquals(100, StringUtil.memToLong("100"));
+        Assert.assertEquals(100, StringUtil.memToLong("100b"));
+        Assert.assertEquals(1000, StringUtil.memToLong("1k"));
+        Assert.assertEquals(1024, StringUtil.memToLong("1KB"));
+        Assert.assertEquals(32L * 1024 * 1024, StringUtil.memToLong("32mb"));
+        Assert.assertEquals(2L * 1024 * 1024 * 1024, StringUtil.memToLong("2gb"));
+        Assert.assertEquals(-1, StringUtil.memToLong("mb"));
+        Assert.assertEquals(-1, StringUtil.memToLong("-1"));
+        Assert.assertEquals(-1, StringUtil.memToLong("10xb"));
+    }
+
+    @Test
+    public void testStringMatch() {
+        Assert.assertTrue(StringUtil.stringMatch("*", "", false));
+        Assert.assertTrue(StringUtil.stringMatch("user:*", "user:1000", false));
+        Assert.assertTrue(StringUtil.stringMatch("h?llo", "hello", false));
+        Assert.assertTrue(StringUtil.stringMatch("h[ae]llo", "hallo", false));
+        Assert.assertFalse(StringUtil.stringMatch("h[^e]llo", "hello", false));
+        Assert.assertTrue(StringUtil.stringMatch("h[a-c]llo", "hbllo", false));
+        Assert.assertTrue(StringUtil.stringMatch("a*b*c", "axxbyyc", false));
+        Assert.assertFalse(StringUtil.stringMatch("a*b*c", "axxbyy", false));
+        Assert.assertTrue(StringUtil.stringMatch("a\\*", "a*", false));
+        Assert.assertFalse(StringUtil.stringMatch("a\\*", "ab", false));
+        Assert.assertTrue(StringUtil.stringMatch("USER:*", "user:1", true));
+        Assert.assertFalse(StringUtil.stringMatch("USER:*", "user:1", false));
+    }
 }
@@ -0,0 +1,58 @@
+package database;
+
+import common.expire.PeriodicExpirator;
+import common.struct.ZedisString;
+import common.struct.impl.Sds;
+import server.ServerContext;
+import server.config.ServerConfig;
+
+/**
+ * 数百万个带过期时间的键时，随机取样、一次慢速定期删除以及过期时间索引删除到期键的耗时，不属于单元测试，需要手动运行：
+ *     java -cp ... database.ExpireIndexBenchmark [键的数量]
+ * 其中1%的键已经过期
+ */
+public class ExpireIndexBenchmark {
+
+    public static void main(String [] args) {
+        ServerContext.getContext().setServerConfig(ServerConfig.build());
+
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        long now = System.currentTimeMillis();
+        Database sampled = new Database();
+        Database indexed = new Database(true);
+        Sds value = Sds.createSds("v");
+        for (int i = 0; i < keys; i++) {
+            long when = i % 100 == 0 ? now - 1 - i : now + 3600 * 1000;
+            ZedisString key = Sds.createSds("session:" + i);
+            sampled.add(key, value);
+            sampled.setExpire(key, when);
+            indexed.add(key, value);
+            indexed.setExpire(key, when);
+        }
+        int due = (keys + 99) / 100;
+
+        int samples = 1000000;
+        long alive = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < samples; i++) {
+            alive += sampled.tryExpireRandomKey(now) ? 0 : 1;
+        }
+        long sampleNanos = (System.nanoTime() - start) / samples;
+        System.out.println(keys + " volatile keys, tryExpireRandomKey: " + sampleNanos + " ns/op, " + alive + " alive samples");
+
+        start = System.nanoTime();
+        new PeriodicExpirator(sampled).delExpiredPeriodicaly(PeriodicExpirator.SLOW_MODE);
+        System.out.println("slow expire cycle with random sampling: " + (System.nanoTime() - start) / 1000 + " us, "
+                + (sampled.expiredKeyNums() - (keys - due)) + " of " + due + " due keys left");
+
+        PeriodicExpirator expirator = new PeriodicExpirator(indexed);
+        int cycles = 0;
+        start = System.nanoTime();
+        while (indexed.expiredKeyNums() > keys - due) {
+            expirator.delExpiredPeriodicaly(PeriodicExpirator.SLOW_MODE);
+            cycles++;
+        }
+        System.out.println("time index expired " + due + " due keys in " + cycles + " cycles, "
+                + (System.nanoTime() - start) / 1000 + " us");
+    }
+}
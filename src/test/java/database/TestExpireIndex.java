@@ -0,0 +1,182 @@
+package database;
+
+import common.expire.PeriodicExpirator;
+import common.struct.ZedisObject;
+import common.struct.ZedisString;
+import common.struct.impl.Dict;
+import common.struct.impl.Sds;
+import org.junit.Assert;
+import org.junit.Test;
+import server.ServerContext;
+import server.config.ServerConfig;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class TestExpireIndex {
+
+    private static Dict.Entry<ZedisString, ZedisObject> entry(Dict<ZedisString, ZedisObject> keySpace, int i) {
+        return keySpace.addOrFind(Sds.createSds("key:" + i));
+    }
+
+    @Test
+    public void testPutRemoveRandom() {
+        Dict<ZedisString, ZedisObject> keySpace = new Dict<>();
+        ExpireIndex index = new ExpireIndex();
+        Random random = new Random(1);
+        Assert.assertEquals(-1, index.randomSlot(random));
+
+        for (int i = 0; i < 1000; i++) {
+            index.put(entry(keySpace, i), i);
+        }
+        index.put(entry(keySpace, 1), -2);
+        Assert.assertEquals(1000, index.size());
+        Assert.assertEquals(-2, index.get(entry(keySpace, 1)));
+
+        for (int i = 0; i < 1000; i += 2) {
+            Assert.assertEquals(i, index.remove(entry(keySpace, i)));
+        }
+        Assert.assertEquals(-1, index.remove(entry(keySpace, 0)));
+        Assert.assertEquals(-1, index.get(entry(keySpace, 0)));
+        Assert.assertEquals(500, index.size());
+
+        // 删除最后添加的键
+        index.put(entry(keySpace, 1000), 1000);
+        Assert.assertEquals(1000, index.remove(entry(keySpace, 1000)));
+        Assert.assertEquals(-1, index.get(entry(keySpace, 1000)));
+        Assert.assertEquals(500, index.size());
+
+        // 随机取样只返回剩下的键，并且每个键都能被取到
+        Map<String, Integer> hits = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            int slot = index.randomSlot(random);
+            Dict.Entry<ZedisString, ZedisObject> e = index.getEntry(slot);
+            Assert.assertEquals(1, Integer.parseInt(e.getKey().toString().substring(4)) % 2);
+            Assert.assertEquals(index.getWhen(slot), index.get(e));
+            hits.merge(e.getKey().toString(), 1, Integer::sum);
+        }
+        Assert.assertEquals(500, hits.size());
+
+        for (int i = 1; i < 1000; i += 2) {
+            index.remove(entry(keySpace, i));
+        }
+        Assert.assertEquals(0, index.size());
+        Assert.assertEquals(-1, index.randomSlot(random));
+    }
+
+    /**
+     * 随机取样只删除已经过期的键，耗时见ExpireIndexBenchmark
+     */
+    @Test
+    public void testTryExpireRandomKeyOnlyRemovesExpiredKeys() {
+        ServerContext.getContext().setServerConfig(ServerConfig.build());
+
+        int keys = 10000;
+        long now = System.currentTimeMillis();
+        Database db = new Database();
+        Sds value = Sds.createSds("v");
+        for (int i = 0; i < keys; i++) {
+            ZedisString key = Sds.createSds("session:" + i);
+            db.add(key, value);
+            db.setExpire(key, i % 2 == 0 ? now - 1 : now + 3600 * 1000);
+        }
+
+        int removed = 0;
+        while (db.expiredKeyNums() > keys / 2) {
+            removed += db.tryExpireRandomKey(now) ? 1 : 0;
+        }
+        Assert.assertEquals(keys / 2, removed);
+        for (int i = 0; i < keys; i++) {
+            Assert.assertEquals(i % 2 == 1, db.exists(Sds.createSds("session:" + i)));
+        }
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertFalse(db.tryExpireRandomKey(now));
+        }
+        Assert.assertEquals(keys / 2, db.expiredKeyNums());
+    }
+
+    @Test
+    public void testTimeIndexExpiresDueKeysInOrder() {
+        Dict<ZedisString, ZedisObject> keySpace = new Dict<>();
+        ExpireIndex index = new ExpireIndex(true);
+        Random random = new Random(1);
+        long now = 1000000;
+        for (int i = 0; i < 10000; i++) {
+            index.put(entry(keySpace, i), now - 5000 + random.nextInt(10000));
+        }
+        // 修改过期时间：跨越时间桶以及同一个桶内
+        index.put(entry(keySpace, 0), now + 100000);
+        index.put(entry(keySpace, 1), now - 100000);
+        index.remove(entry(keySpace, 2));
+        Assert.assertEquals(index.size(), index.getTimeIndex().size());
+
+        int due = 0;
+        for (int i = 0; i < 10000; i++) {
+            long when = index.get(entry(keySpace, i));
+            due += when != -1 && when <= now ? 1 : 0;
+        }
+
+        // 每次最多删除100个键，按时间桶的顺序删除，只删除到期的键
+        long [] lastBucket = {Long.MIN_VALUE};
+        int expired = 0;
+        int step;
+        do {
+            step = index.getTimeIndex().expireDue(now, 100, e -> {
+                long when = index.get(e);
+                Assert.assertTrue(when <= now);
+                long bucket = when >> ExpireTimeIndex.BUCKET_SHIFT;
+                Assert.assertTrue(bucket >= lastBucket[0]);
+                lastBucket[0] = bucket;
+                index.remove(e);
+            });
+            Assert.assertTrue(step <= 100);
+            expired += step;
+        } while (step == 100);
+
+        Assert.assertEquals(due, expired);
+        Assert.assertEquals(-1, index.get(entry(keySpace, 1)));
+        Assert.assertEquals(now + 100000, index.get(entry(keySpace, 0)));
+        Assert.assertEquals(9999 - due, index.size());
+        for (int i = 0; i < index.size(); i++) {
+            Assert.assertTrue(index.getWhen(index.randomSlot(random)) > now);
+        }
+        Assert.assertEquals(0, index.getTimeIndex().expireDue(now, 100, e -> Assert.fail()));
+    }
+
+    /**
+     * 只有很少一部分键过期时，随机取样的定期删除在第一轮就会停止，过期时间索引则会删除所有到期的键
+     */
+    @Test
+    public void testTimeIndexRemovesAllDueKeys() {
+        ServerContext.getContext().setServerConfig(ServerConfig.build());
+
+        int keys = 100000;
+        long now = System.currentTimeMillis();
+        Database sampled = new Database();
+        Database indexed = new Database(true);
+        Sds value = Sds.createSds("v");
+        for (int i = 0; i < keys; i++) {
+            long when = i % 100 == 0 ? now - 1 - i : now + 3600 * 1000;
+            ZedisString key = Sds.createSds("session:" + i);
+            sampled.add(key, value);
+            sampled.setExpire(key, when);
+            indexed.add(key, value);
+            indexed.setExpire(key, when);
+        }
+
+        new PeriodicExpirator(sampled).delExpiredPeriodicaly(PeriodicExpirator.SLOW_MODE);
+
+        // 每次调用的工作量有上限，没删完的键在之后的调用中继续删除
+        PeriodicExpirator expirator = new PeriodicExpirator(indexed);
+        while (indexed.expiredKeyNums() > keys / 100 * 99) {
+            expirator.delExpiredPeriodicaly(PeriodicExpirator.SLOW_MODE);
+        }
+
+        // 过期键只占1%，随机取样在第一轮之后就会停止
+        Assert.assertTrue(sampled.expiredKeyNums() > keys / 100 * 99);
+        Assert.assertEquals(keys / 100 * 99, indexed.expiredKeyNums());
+        Assert.assertFalse(indexed.exists(Sds.createSds("session:0")));
+        Assert.assertTrue(indexed.exists(Sds.createSds("session:1")));
+    }
+}
@@ -0,0 +1,78 @@
+package event;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 大量连接同时就绪时，事件循环分派事件的耗时，不属于单元测试，需要手动运行：
+ *     java -cp ... event.EventLoopBenchmark [连接数量]
+ * 每个连接占用两个文件描述符，需要注意ulimit -n的限制
+ */
+public class EventLoopBenchmark {
+
+    public static void main(String [] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        EventLoop eventLoop = EventLoop.createEventLoop();
+        Method processFileEvents = EventLoop.class.getDeclaredMethod("processFileEvents", long.class);
+        processFileEvents.setAccessible(true);
+
+        ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0), count);
+        List<SocketChannel> channels = new ArrayList<>();
+
+        int [] fired = new int[1];
+        FileEventHandler handler = (server1, key, data) -> {
+            fired[0]++;
+            return true;
+        };
+        for (int i = 0; i < count; i++) {
+            SocketChannel client = SocketChannel.open(server.getLocalAddress());
+            channels.add(client);
+            SocketChannel accepted = server.accept();
+            accepted.configureBlocking(false);
+            channels.add(accepted);
+            eventLoop.registerFileEvent(accepted, SelectionKey.OP_READ, handler, null);
+            eventLoop.registerFileEvent(accepted, SelectionKey.OP_WRITE, handler, null);
+        }
+
+        ByteBuffer data = ByteBuffer.allocate(1);
+        for (int i = 0; i < channels.size(); i += 2) {
+            data.clear();
+            channels.get(i).write(data);
+        }
+
+        // 读处理器不读取数据，所有的连接一直都是可读可写的
+        // 注意：JDK的epoll实现一次select最多返回1024个就绪的key，所以连接较多时需要多次select才能处理完一轮
+        int total = count * 20;
+        processFileEvents.invoke(eventLoop, 1000L);
+        fired[0] = 0;
+
+        long start = System.nanoTime();
+        int processed = 0;
+        int selects = 0;
+        while (processed < total) {
+            processed += (Integer) processFileEvents.invoke(eventLoop, 1000L);
+            selects++;
+        }
+        long cost = System.nanoTime() - start;
+
+        System.out.println(count + " connections, " + processed + " ready keys in " + selects + " selects: "
+                + cost / 1000000 + " ms, " + cost / processed + " ns per ready key, " + fired[0] + " handler calls");
+
+        close(server, channels);
+        eventLoop.getSelector().close();
+    }
+
+    private static void close(ServerSocketChannel server, List<SocketChannel> channels) throws IOException {
+        for (SocketChannel channel : channels) {
+            channel.close();
+        }
+        server.close();
+    }
+}
@@ -1,44 +1,227 @@
 package event;
 
 import junit.framework.Assert;
-import org.junit.BeforeClass;
+import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 
 
 
 public class TestEventLoop {
-    private static EventLoop eventLoop;
+    private EventLoop eventLoop;
 
-    @BeforeClass
-    public static void initEventLoop() {
+    @Before
+    public void initEventLoop() {
         eventLoop = EventLoop.createEventLoop();
     }
 
-    @Test
-    public void testGetNearestTimer() throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
+    private int processTimeEvents() throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
+        Class<EventLoop> clazz = EventLoop.class;
+        Method declaredMethod = clazz.getDeclaredMethod("processTimeEvents");
+        declaredMethod.setAccessible(true);
+        Object invoke = declaredMethod.invoke(eventLoop);
+        declaredMethod.setAccessible(false);
 
-        for (int i = 0; i < 10; i++) {
-//            TimeEvent e = new TimeEvent(i, 10 - i, i * 10, new TimeProcedure() {
-//                @Override
-//                public int process(Object data) {
-//                    System.out.println("....");
-//                    return 0;
-//                }
-//            });
-//            eventLoop.registerTimeEvent(e);
-        }
+        return (Integer) invoke;
+    }
 
+    private int processFileEvents(long timeout) throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
         Class<EventLoop> clazz = EventLoop.class;
-        Method declaredMethod = clazz.getDeclaredMethod("getNearestTimer");
+        Method declaredMethod = clazz.getDeclaredMethod("processFileEvents", long.class);
         declaredMethod.setAccessible(true);
-        Object invoke = declaredMethod.invoke(eventLoop);
+        Object invoke = declaredMethod.invoke(eventLoop, timeout);
         declaredMethod.setAccessible(false);
 
-        TimeEvent nearestTimer = (TimeEvent)invoke;
-        Assert.assertEquals("1:90", nearestTimer.getWhen() + ":" + nearestTimer.getWhen());
+        return (Integer) invoke;
+    }
+
+    /**
+     * 创建一对已经连接的SocketChannel，返回服务端一侧的channel（非阻塞），客户端一侧的channel放入clients中
+     */
+    private SocketChannel connect(ServerSocketChannel server, List<SocketChannel> clients) throws IOException {
+        SocketChannel client = SocketChannel.open(server.getLocalAddress());
+        clients.add(client);
+
+        SocketChannel accepted = server.accept();
+        accepted.configureBlocking(false);
+        return accepted;
+    }
+
+    private void closeAll(ServerSocketChannel server, List<SocketChannel> channels) throws IOException {
+        for (SocketChannel channel : channels) {
+            channel.close();
+        }
+        server.close();
+        eventLoop.getSelector().close();
+    }
+
+    @Test
+    public void testGetNearestTimer() {
+        long [] ids = new long[10];
+        for (int i = 0; i < 10; i++) {
+            ids[i] = eventLoop.createTimeEvent((10 - i) * 10, TimeUnit.SECONDS, (loop, id, data) -> TimeProcedure.NO_MORE, null, null);
+        }
+
+        // 最后注册的时间事件最早触发
+        Assert.assertEquals(ids[9], eventLoop.getNearestTimer().getId());
+
+        // 删除之后，次早触发的时间事件成为堆顶
+        Assert.assertTrue(eventLoop.deleteTimeEvent(ids[9]));
+        Assert.assertFalse(eventLoop.deleteTimeEvent(ids[9]));
+        Assert.assertEquals(ids[8], eventLoop.getNearestTimer().getId());
+
+        // 删除中间的时间事件不影响顺序
+        eventLoop.deleteTimeEvent(ids[3]);
+        Assert.assertEquals(8, eventLoop.getTimeEventCount());
+        Assert.assertEquals(ids[8], eventLoop.getNearestTimer().getId());
+    }
+
+    @Test
+    public void testOneShotAndPeriodicTimeEvent() throws Exception {
+        List<Long> fired = new ArrayList<>();
+        List<Object> finalized = new ArrayList<>();
+
+        long oneShot = eventLoop.createTimeEvent(0, TimeUnit.MILLISECONDS, (loop, id, data) -> {
+            fired.add(id);
+            return TimeProcedure.NO_MORE;
+        }, "one-shot", finalized::add);
+        long periodic = eventLoop.createTimeEvent(0, TimeUnit.MILLISECONDS, (loop, id, data) -> {
+            fired.add(id);
+            return 1;
+        }, "periodic", finalized::add);
+        eventLoop.createTimeEvent(1, TimeUnit.HOURS, (loop, id, data) -> TimeProcedure.NO_MORE, null, null);
+
+        // 两个时间事件都到达了触发时间，周期性的时间事件在同一次处理中不会被重复执行
+        Assert.assertEquals(2, processTimeEvents());
+        Assert.assertEquals(2, fired.size());
+        Assert.assertEquals(1, finalized.size());
+        Assert.assertEquals("one-shot", finalized.get(0));
+        Assert.assertEquals(2, eventLoop.getTimeEventCount());
+
+        Thread.sleep(2);
+        Assert.assertEquals(1, processTimeEvents());
+        Assert.assertEquals(periodic, (long) fired.get(2));
+
+        // 删除周期性的时间事件
+        Assert.assertTrue(eventLoop.deleteTimeEvent(periodic));
+        Assert.assertEquals("periodic", finalized.get(1));
+        Thread.sleep(2);
+        Assert.assertEquals(0, processTimeEvents());
+        Assert.assertFalse(eventLoop.deleteTimeEvent(oneShot));
+    }
+
+    @Test
+    public void testDeleteTimeEventInProcedure() throws Exception {
+        List<Object> finalized = new ArrayList<>();
+
+        eventLoop.createTimeEvent(0, TimeUnit.MILLISECONDS, (loop, id, data) -> {
+            loop.deleteTimeEvent(id);
+            return 1;
+        }, "self", finalized::add);
+
+        Assert.assertEquals(1, processTimeEvents());
+        Assert.assertEquals(0, eventLoop.getTimeEventCount());
+        Assert.assertEquals(1, finalized.size());
+    }
+
+    @Test
+    public void testDispatchAllReadyOps() throws Exception {
+        ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        List<SocketChannel> channels = new ArrayList<>();
+        SocketChannel channel = connect(server, channels);
+        channels.add(channel);
+        channels.get(0).write(ByteBuffer.wrap(new byte[] {'a'}));
+
+        // 读处理器不读取数据，channel会一直保持可读
+        List<String> fired = new ArrayList<>();
+        eventLoop.registerFileEvent(channel, SelectionKey.OP_READ, (server1, key, data) -> fired.add("read"), null);
+        eventLoop.registerFileEvent(channel, SelectionKey.OP_WRITE, (server1, key, data) -> fired.add("write"), null);
+
+        // 同一个key的读写事件在一次处理中都被执行，先读后写
+        Assert.assertEquals(1, processFileEvents(1000));
+        Assert.assertEquals(2, fired.size());
+        Assert.assertEquals("read", fired.get(0));
+        Assert.assertEquals("write", fired.get(1));
+
+        // 设置BARRIER之后先写后读
+        fired.clear();
+        eventLoop.registerFileEvent(channel, SelectionKey.OP_WRITE | FileEvent.BARRIER, (server1, key, data) -> fired.add("write"), null);
+        SelectionKey key = channel.keyFor(eventLoop.getSelector());
+        Assert.assertTrue(eventLoop.getFileEvent(key).isBarrier());
+        Assert.assertEquals(SelectionKey.OP_READ | SelectionKey.OP_WRITE, key.interestOps());
+
+        Assert.assertEquals(1, processFileEvents(1000));
+        Assert.assertEquals("write", fired.get(0));
+        Assert.assertEquals("read", fired.get(1));
+
+        // 取消写事件时同时清除BARRIER
+        eventLoop.unregisterFileEvent(key, SelectionKey.OP_WRITE);
+        Assert.assertFalse(eventLoop.getFileEvent(key).isBarrier());
+        eventLoop.unregisterFileEvent(key, SelectionKey.OP_READ);
+        Assert.assertNull(eventLoop.getFileEvent(key));
+
+        closeAll(server, channels);
+    }
+
+    @Test
+    public void testHandlerClosesChannel() throws Exception {
+        ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        List<SocketChannel> channels = new ArrayList<>();
+        SocketChannel channel = connect(server, channels);
+        channels.get(0).write(ByteBuffer.wrap(new byte[] {'a'}));
+
+        // 读处理器关闭了连接，同一次处理中不应该再执行写处理器
+        List<String> fired = new ArrayList<>();
+        eventLoop.registerFileEvent(channel, SelectionKey.OP_READ, (server1, key, data) -> {
+            fired.add("read");
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+                Assert.fail();
+            }
+            return true;
+        }, null);
+        eventLoop.registerFileEvent(channel, SelectionKey.OP_WRITE, (server1, key, data) -> fired.add("write"), null);
+
+        Assert.assertEquals(1, processFileEvents(1000));
+        Assert.assertEquals(1, fired.size());
+        Assert.assertEquals("read", fired.get(0));
+
+        closeAll(server, channels);
+    }
+
+    @Test
+    public void testManyTimeEvents() throws Exception {
+        int count = 100000;
+        long [] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = eventLoop.createTimeEvent((i * 7919L) % count, TimeUnit.MILLISECONDS, (loop, id, data) -> TimeProcedure.NO_MORE, null, null);
+        }
+        for (int i = 0; i < count; i += 2) {
+            eventLoop.deleteTimeEvent(ids[i]);
+        }
+        Assert.assertEquals(count / 2, eventLoop.getTimeEventCount());
+
+        // 堆顶总是触发时间最早的时间事件
+        long last = Long.MIN_VALUE;
+        while (eventLoop.getNearestTimer() != null) {
+            TimeEventHeap.Node node = eventLoop.getNearestTimer();
+            Assert.assertTrue(node.getWhen() - last >= 0 || last == Long.MIN_VALUE);
+            last = node.getWhen();
+            eventLoop.deleteTimeEvent(node.getId());
+        }
+        Assert.assertEquals(0, eventLoop.getTimeEventCount());
     }
 }
@@ -0,0 +1,235 @@
+package remote.protocol;
+
+import common.struct.impl.Sds;
+import common.struct.impl.SdsSlice;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import remote.ServerReceiver;
+import server.ServerContext;
+import server.ZedisServer;
+import server.client.InnerClient;
+import server.config.ServerConfig;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TestRequestParser {
+
+    @Before
+    public void initServer() {
+        if (ServerContext.getContext().getServerInstance() == null) {
+            ServerContext.getContext().setServerInstance(new ZedisServer());
+        }
+        ServerContext.getContext().setServerConfig(ServerConfig.build(new ServerConfig.ServerConfigBuilder().setProtoMaxBulkLen(1024 * 1024)));
+    }
+
+    private static String parseError(String request) {
+        Sds queryBuffer = Sds.createEmptySds();
+        RequestParser parser = new RequestParser(InnerClient.createForwardClient(null), queryBuffer);
+        queryBuffer.append(request);
+        while (parser.parseRequest()) {
+        }
+        return parser.getProtocolError();
+    }
+
+    private static List<String> args(InnerClient client) {
+        List<String> args = new ArrayList<>();
+        for (SdsSlice arg : client.getCommandArgs()) {
+            args.add(arg.toString());
+        }
+        return args;
+    }
+
+    /**
+     * 一次读入的多条request可以逐条解析出来，最后一条不完整的request等数据读全之后再解析
+     */
+    @Test
+    public void testPipelinedRequests() {
+        InnerClient client = InnerClient.createForwardClient(null);
+        Sds queryBuffer = Sds.createEmptySds();
+        RequestParser parser = new RequestParser(client, queryBuffer);
+        queryBuffer.append("*1\r\n$4\r\nping\r\n*3\r\n$3\r\nset\r\n$1\r\na\r\n$2\r\nbc\r\n\r\nget a\r\n*0\r\n*2\r\n$3\r\nget\r\n$1");
+
+        Assert.assertTrue(parser.parseRequest());
+        Assert.assertEquals(Arrays.asList("ping"), args(client));
+        Assert.assertTrue(parser.parseRequest());
+        Assert.assertEquals(Arrays.asList("set", "a", "bc"), args(client));
+        // 空行和*0都是空白的request，直接跳过
+        Assert.assertTrue(parser.parseRequest());
+        Assert.assertEquals(Arrays.asList("get", "a"), args(client));
+        Assert.assertFalse(parser.parseRequest());
+
+        queryBuffer.append("\r\nb\r\n");
+        Assert.assertTrue(parser.parseRequest());
+        Assert.assertEquals(Arrays.asList("get", "b"), args(client));
+        Assert.assertFalse(parser.parseRequest());
+        Assert.assertNull(parser.getProtocolError());
+    }
+
+    /**
+     * 命令参数直接引用查询缓冲区中的数据，压缩查询缓冲区时，只解析了一部分的request的参数会被复制出来
+     */
+    @Test
+    public void testArgsSurviveCompaction() {
+        InnerClient client = InnerClient.createForwardClient(null);
+        Sds queryBuffer = Sds.createEmptySds();
+        RequestParser parser = new RequestParser(client, queryBuffer);
+        queryBuffer.append("*2\r\n$3\r\nget\r\n$1\r\na\r\n");
+
+        Assert.assertTrue(parser.parseRequest());
+        SdsSlice first = client.getCommandArgs().get(0);
+        Assert.assertSame(queryBuffer.toArrayWithOutCopy(), first.getBuffer());
+        Assert.assertSame(queryBuffer.toArrayWithOutCopy(), client.getCommandArgs().get(1).getBuffer());
+        parser.compactQueryBuffer();
+        Assert.assertEquals(0, queryBuffer.length());
+
+        // 之前的request使用过的SdsSlice对象会被复用
+        queryBuffer.append("*3\r\n$3\r\nset\r\n$3\r\nkey\r\n$5\r\nhel");
+        Assert.assertFalse(parser.parseRequest());
+        Assert.assertEquals(Arrays.asList("set", "key"), args(client));
+        Assert.assertSame(first, client.getCommandArgs().get(0));
+
+        parser.compactQueryBuffer();
+        Assert.assertEquals("hel", queryBuffer.toString());
+        for (SdsSlice arg : client.getCommandArgs()) {
+            Assert.assertNotSame(queryBuffer.toArrayWithOutCopy(), arg.getBuffer());
+        }
+
+        // 查询缓冲区中原来的数据被覆盖之后，已经解析出的参数不受影响
+        queryBuffer.append("lo\r\n*1\r\n$4\r\nping\r\n");
+        Assert.assertTrue(parser.parseRequest());
+        Assert.assertEquals(Arrays.asList("set", "key", "hello"), args(client));
+        Assert.assertSame(queryBuffer.toArrayWithOutCopy(), client.getCommandArgs().get(2).getBuffer());
+        Assert.assertTrue(parser.parseRequest());
+        Assert.assertEquals(Arrays.asList("ping"), args(client));
+    }
+
+    /**
+     * 解析只移动读游标，已解析的数据在compactQueryBuffer时才统一从查询缓冲区中删除
+     */
+    @Test
+    public void testReadCursor() {
+        InnerClient client = InnerClient.createForwardClient(null);
+        Sds queryBuffer = Sds.createEmptySds();
+        RequestParser parser = new RequestParser(client, queryBuffer);
+        String ping = "*1\r\n$4\r\nping\r\n";
+        String partial = "*2\r\n$3\r\nget\r\n$10\r\nabc";
+        queryBuffer.append(ping + ping + partial);
+        int total = queryBuffer.length();
+
+        Assert.assertTrue(parser.parseRequest());
+        Assert.assertEquals(total, queryBuffer.length());
+        Assert.assertEquals(total - ping.length(), parser.getPendingQueryLength());
+        Assert.assertTrue(parser.parseRequest());
+        Assert.assertEquals(total, queryBuffer.length());
+
+        // 正在解析的request已经解析出的参数也算作尚未执行的数据，bulk还差7个字节的内容和结尾的\r\n
+        Assert.assertFalse(parser.parseRequest());
+        Assert.assertEquals("get".length() + "abc".length(), parser.getPendingQueryLength());
+        Assert.assertEquals(9, parser.getPendingBulkLength());
+
+        // 压缩只删除读游标之前的数据
+        parser.compactQueryBuffer();
+        Assert.assertEquals("abc", queryBuffer.toString());
+        Assert.assertEquals(9, parser.getPendingBulkLength());
+        parser.compactQueryBuffer();
+        Assert.assertEquals("abc", queryBuffer.toString());
+
+        queryBuffer.append("defghij\r\n");
+        Assert.assertTrue(parser.parseRequest());
+        Assert.assertEquals(Arrays.asList("get", "abcdefghij"), args(client));
+        Assert.assertEquals(0, parser.getPendingQueryLength());
+        Assert.assertEquals(0, parser.getPendingBulkLength());
+        parser.compactQueryBuffer();
+        Assert.assertEquals(0, queryBuffer.length());
+    }
+
+    /**
+     * 大参数预先分配与参数长度相同的数组，分多次读入的内容直接写入该数组，不经过查询缓冲区
+     */
+    @Test
+    public void testBigArgSplitAcrossReads() {
+        InnerClient client = InnerClient.createForwardClient(null);
+        Sds queryBuffer = Sds.createEmptySds();
+        RequestParser parser = new RequestParser(client, queryBuffer);
+        int length = RequestParser.PROTO_MBULK_BIG_ARG + 1000;
+        byte [] value = new byte[length];
+        for (int i = 0; i < length; i++) {
+            value[i] = (byte) ('a' + i % 26);
+        }
+
+        // 第一次读取时，查询缓冲区中已经有大参数的一部分内容
+        queryBuffer.append("*3\r\n$3\r\nset\r\n$1\r\nk\r\n$" + length + "\r\n");
+        queryBuffer.append(new String(value, 0, 100, StandardCharsets.US_ASCII));
+        Assert.assertFalse(parser.parseRequest());
+        ByteBuffer bigArg = parser.getBigArgBuffer();
+        Assert.assertNotNull(bigArg);
+        Assert.assertEquals(length, bigArg.capacity());
+        Assert.assertEquals(100, bigArg.position());
+        Assert.assertEquals(0, parser.getPendingBulkLength());
+        parser.compactQueryBuffer();
+        Assert.assertEquals(0, queryBuffer.length());
+
+        // 之后的数据分多次直接读入大参数的数组
+        int position = 100;
+        while (position < length) {
+            int chunk = Math.min(ServerReceiver.IO_BUF_LEN, length - position);
+            Assert.assertSame(bigArg, parser.getBigArgBuffer());
+            bigArg.put(value, position, chunk);
+            position += chunk;
+            Assert.assertFalse(parser.parseRequest());
+        }
+        Assert.assertNull(parser.getBigArgBuffer());
+        Assert.assertEquals("set".length() + "k".length() + length, parser.getPendingQueryLength());
+
+        // 结尾的\r\n读入之后，大参数独占的数组直接作为命令参数，不再复制
+        queryBuffer.append("\r\n");
+        Assert.assertTrue(parser.parseRequest());
+        SdsSlice arg = client.getCommandArgs().get(2);
+        Assert.assertSame(bigArg.array(), arg.getBuffer());
+        Assert.assertEquals(0, arg.getOffset());
+        Assert.assertEquals(length, arg.length());
+        Assert.assertArrayEquals(value, bigArg.array());
+        Assert.assertEquals(Arrays.asList("set", "k"), args(client).subList(0, 2));
+    }
+
+    @Test
+    public void testProtocolError() {
+        Assert.assertNull(parseError("*2\r\n$3\r\nget\r\n$1\r\na\r\nping\r\n"));
+        Assert.assertNull(parseError("*2\r\n$3\r\nget\r\n$1\r\n"));
+        Assert.assertEquals("invalid multibulk length", parseError("*x\r\n"));
+        Assert.assertEquals("expected '$', got '+'", parseError("*1\r\n+ping\r\n"));
+        Assert.assertEquals("invalid bulk length", parseError("*1\r\n$-1\r\n"));
+        Assert.assertEquals("invalid bulk length", parseError("*2\r\n$3\r\nset\r\n$1048577\r\n"));
+        Assert.assertEquals("unbalanced quotes in request", parseError("set a \"b\r\n"));
+
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i <= RequestParser.INLINE_MAX_SIZE; i++) {
+            line.append('1');
+        }
+        Assert.assertEquals("too big inline request", parseError(line.toString()));
+        Assert.assertEquals("too big mbulk count string", parseError("*" + line));
+        Assert.assertEquals("too big bulk count string", parseError("*1\r\n$" + line));
+    }
+
+    @Test
+    public void testErrorDiscardsQueryBuffer() {
+        Sds queryBuffer = Sds.createEmptySds();
+        RequestParser parser = new RequestParser(InnerClient.createForwardClient(null), queryBuffer);
+        queryBuffer.append("*1\r\n$4\r\nping\r\n*1\r\n!\r\n*1\r\n$4\r\nping\r\n");
+
+        // 出错之前的request仍然可以正常解析，出错之后的数据全部被丢弃
+        Assert.assertTrue(parser.parseRequest());
+        Assert.assertFalse(parser.parseRequest());
+        Assert.assertNotNull(parser.getProtocolError());
+        parser.compactQueryBuffer();
+        Assert.assertEquals(0, queryBuffer.length());
+
+        queryBuffer.append("*1\r\n$4\r\nping\r\n");
+        Assert.assertFalse(parser.parseRequest());
+    }
+}
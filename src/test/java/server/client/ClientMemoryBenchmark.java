@@ -0,0 +1,51 @@
+package server.client;
+
+import server.ServerContext;
+import server.ZedisServer;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 空闲连接的堆内存和直接内存占用，不属于单元测试，需要手动运行：
+ *     java -cp ... server.client.ClientMemoryBenchmark [客户端数量]
+ */
+public class ClientMemoryBenchmark {
+
+    public static void main(String [] args) {
+        ServerContext.getContext().setServerInstance(new ZedisServer());
+
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        List<InnerClient> clients = new ArrayList<>(count);
+
+        long directBefore = directMemoryUsed();
+        long heapBefore = heapUsed();
+        for (int i = 0; i < count; i++) {
+            clients.add((InnerClient) InnerClient.createClient(null));
+        }
+        long heapAfter = heapUsed();
+        long directAfter = directMemoryUsed();
+
+        System.out.println(clients.size() + " idle clients: " + (heapAfter - heapBefore) / count + " bytes heap, "
+                + (directAfter - directBefore) / count + " bytes direct per client");
+    }
+
+    private static long directMemoryUsed() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+
+    private static long heapUsed() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,66 @@
+package server.client;
+
+import common.utils.SafeEncoder;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import remote.BufferPool;
+import remote.ServerReplyer;
+import server.ServerContext;
+import server.ZedisServer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestClientMemory {
+
+    @Before
+    public void initServer() {
+        if (ServerContext.getContext().getServerInstance() == null) {
+            ServerContext.getContext().setServerInstance(new ZedisServer());
+        }
+    }
+
+    @Test
+    public void testReplyBufferIsPooled() {
+        BufferPool pool = BufferPool.getPool();
+        InnerClient client = InnerClient.createForwardClient(null);
+
+        // 第一次回复时才申请回复缓冲区，取出回复之后归还
+        long pooled = pool.getPooledBytes();
+        client.replyInteger(12345);
+        client.replyBulk("hello");
+        Assert.assertEquals(":12345\r\n$5\r\nhello\r\n", SafeEncoder.encode(client.takeReplies()));
+        Assert.assertTrue(client.isNothingToReply());
+        Assert.assertTrue(pool.getPooledBytes() >= Math.max(pooled, ServerReplyer.REPLY_CHUNK_BYTES));
+
+        // 另一个客户端复用池中的缓冲区，不需要重新分配
+        long allocated = pool.getAllocatedBytes();
+        InnerClient other = InnerClient.createForwardClient(null);
+        other.replyInteger(1);
+        Assert.assertEquals(allocated, pool.getAllocatedBytes());
+        Assert.assertEquals(":1\r\n", SafeEncoder.encode(other.takeReplies()));
+    }
+
+    /**
+     * 空闲的客户端不持有回复缓冲区和查询缓冲区，堆内存和直接内存的占用见ClientMemoryBenchmark
+     */
+    @Test
+    public void testIdleClientHoldsNoBuffers() {
+        int count = 1000;
+        List<InnerClient> clients = new ArrayList<>(count);
+        BufferPool pool = BufferPool.getPool();
+
+        long allocated = pool.getAllocatedBytes();
+        for (int i = 0; i < count; i++) {
+            clients.add((InnerClient) InnerClient.createClient(null));
+        }
+
+        // 没有从缓冲池中申请回复缓冲区
+        Assert.assertEquals(allocated, pool.getAllocatedBytes());
+        for (InnerClient client : clients) {
+            Assert.assertTrue(client.isNothingToReply());
+            Assert.assertEquals(0, client.getReceiver().getQueryBuffer().capacity());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package server.client;
+
+import common.struct.impl.Sds;
+import common.utils.SafeEncoder;
+import database.Database;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import server.ServerContext;
+import server.ZedisServer;
+import server.config.ServerConfig;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+public class TestInnerClient {
+
+    @Before
+    public void initServer() {
+        if (ServerContext.getContext().getServerInstance() == null) {
+            ServerContext.getContext().setServerInstance(new ZedisServer());
+        }
+        ServerContext.getContext().setServerConfig(ServerConfig.build());
+    }
+
+    /**
+     * IO线程读取数据时，已经确定要关闭的客户端不再解析命令，IO线程已经解析出的命令也不再执行
+     */
+    @Test
+    public void testClosingClientSkipsThreadedRead() throws IOException {
+        Database db = new Database();
+        try (ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+             SocketChannel peer = SocketChannel.open(server.getLocalAddress());
+             SocketChannel accepted = server.accept()) {
+            InnerClient client = (InnerClient) InnerClient.createClient(accepted);
+            client.selectDatabase(db);
+            // 测试中没有初始化服务器的待写客户端列表，回复只保存在客户端的回复缓冲区中
+            client.addFlag(InnerClient.CLIENT_PENDING_WRITE);
+
+            // 正常的客户端：IO线程解析出第一条命令，主线程执行
+            send(peer, "*3\r\n$3\r\nset\r\n$8\r\nthreaded\r\n$1\r\nv\r\n");
+            client.readQueryInIOThread();
+            Assert.assertTrue(client.hasFlag(InnerClient.CLIENT_PENDING_COMMAND));
+            client.processPendingInputData();
+            Assert.assertFalse(client.hasFlag(InnerClient.CLIENT_PENDING_COMMAND));
+            Assert.assertTrue(db.exists(Sds.createSds("threaded")));
+
+            // IO线程解析之后客户端被标记为关闭：清除标志，不执行命令
+            send(peer, "*3\r\n$3\r\nset\r\n$7\r\nclosing\r\n$1\r\nv\r\n");
+            client.readQueryInIOThread();
+            Assert.assertTrue(client.hasFlag(InnerClient.CLIENT_PENDING_COMMAND));
+            client.addFlag(InnerClient.CLIENT_CLOSE_AFTER_REPLY);
+            client.processPendingInputData();
+            Assert.assertFalse(client.hasFlag(InnerClient.CLIENT_PENDING_COMMAND));
+            Assert.assertFalse(db.exists(Sds.createSds("closing")));
+
+            // 已经标记为关闭的客户端：IO线程只读取数据，不解析
+            send(peer, "*3\r\n$3\r\nset\r\n$6\r\nclosed\r\n$1\r\nv\r\n");
+            client.readQueryInIOThread();
+            Assert.assertTrue(client.getIOResult() > 0);
+            Assert.assertFalse(client.hasFlag(InnerClient.CLIENT_PENDING_COMMAND));
+            Assert.assertTrue(client.getCommandArgs().isEmpty());
+            client.processPendingInputData();
+            Assert.assertFalse(db.exists(Sds.createSds("closed")));
+            Assert.assertEquals(0, client.getReceiver().getQueryBuffer().length());
+        }
+    }
+
+    private static void send(SocketChannel channel, String data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(SafeEncoder.encode(data));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
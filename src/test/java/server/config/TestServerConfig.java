@@ -1,5 +1,6 @@
 package server.config;
 
+import org.junit.Assert;
 import org.junit.Test;
 
 
@@ -25,4 +26,18 @@ public class TestServerConfig {
         config.loadConfigFromFile(file);
     }
 
+    @Test
+    public void testClientOutputBufferLimit() {
+        ServerConfig config = ServerConfig.build();
+        config.loadConfigFromString("client-output-buffer-limit normal 1mb 256kb 10 pubsub 0 0 0\n");
+
+        ClientBufferLimit normal = config.getClientOutputBufferLimit(ClientBufferLimit.CLIENT_TYPE_NORMAL);
+        Assert.assertEquals(1024 * 1024, normal.getHardLimitBytes());
+        Assert.assertEquals(256 * 1024, normal.getSoftLimitBytes());
+        Assert.assertEquals(10, normal.getSoftLimitSeconds());
+        Assert.assertEquals(0, config.getClientOutputBufferLimit(ClientBufferLimit.CLIENT_TYPE_PUBSUB).getHardLimitBytes());
+
+        // 没有配置的客户端类型使用默认值
+        Assert.assertEquals(1024L * 1024 * 256, config.getClientOutputBufferLimit(ClientBufferLimit.CLIENT_TYPE_REPLICA).getHardLimitBytes());
+    }
 }